@@ -1,22 +1,28 @@
 package dev.mars.agent;
 
 import dev.mars.agent.api.HttpApiVerticle;
+import dev.mars.agent.api.Readiness;
 import dev.mars.agent.config.HandlerFactory;
 import dev.mars.agent.config.LlmClientFactory;
 import dev.mars.agent.config.PipelineConfig;
 import dev.mars.agent.config.PipelineConfigLoader;
 import dev.mars.agent.config.McpConfig;
 import dev.mars.agent.config.ToolFactory;
+import dev.mars.agent.config.WarmupConfig;
 import dev.mars.agent.event.EventSinkVerticle;
 import dev.mars.agent.llm.LlmClient;
+import dev.mars.agent.llm.WarmupPlan;
 import dev.mars.mcp.McpServerVerticle;
 import dev.mars.agent.memory.InMemoryMemoryStore;
 import dev.mars.agent.memory.MemoryStore;
+import dev.mars.agent.memory.SegmentedLogMemoryStore;
+import dev.mars.agent.memory.WriteBehindMemoryStore;
 import dev.mars.agent.processor.DeterministicFailureProcessorVerticle;
 import dev.mars.agent.processor.FailureHandler;
 import dev.mars.agent.runner.AgentRunnerVerticle;
 import dev.mars.agent.ui.PipelineUiVerticle;
 import dev.mars.agent.ui.WorkflowUiVerticle;
+import dev.mars.mcp.tool.BlockingExecutor;
 import dev.mars.mcp.tool.Tool;
 import dev.mars.mcp.tool.ToolRegistry;
 import io.vertx.core.AbstractVerticle;
@@ -33,9 +39,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.logging.LogManager;
 
@@ -72,12 +81,20 @@ import java.util.logging.LogManager;
  *   <li>{@link DeterministicFailureProcessorVerticle}</li>
  *   <li>{@link AgentRunnerVerticle}</li>
  *   <li>{@link EventSinkVerticle}</li>
+ *   <li>LLM warm-up (optional, see {@link WarmupConfig})</li>
  *   <li>{@link HttpApiVerticle} (last, so HTTP traffic only arrives once
  *       the pipeline is ready)</li>
  *   <li>{@link McpServerVerticle} (optional, only if MCP is enabled in
  *       config)</li>
  * </ol>
  *
+ * <h2>Readiness</h2>
+ * {@code GET /health} answers {@code 503} until every verticle is
+ * deployed, then {@code 200} with the warm-up report (see
+ * {@link Readiness}). {@code GET /stats} reports the LLM client's and
+ * the memory store's counters ({@link LlmClient#stats()},
+ * {@link MemoryStore#stats()}).
+ *
  * @see PipelineConfig
  * @see PipelineConfigLoader
  */
@@ -90,14 +107,28 @@ public class MainVerticle extends AbstractVerticle {
   private static final Logger LOG = Logger.getLogger(MainVerticle.class.getName());
 
   private final PipelineConfig pipelineConfig;
+  /** The injected store, or {@code null} to open the durable log in {@link #start}. */
   private final MemoryStore memory;
+  private SegmentedLogMemoryStore durable;
+  /** The store the agent runner uses, once resolved. */
+  private MemoryStore store;
+  /** Executors created for blocking tools and handlers; closed in {@link #stop}. */
+  private final List<BlockingExecutor> executors = new ArrayList<>();
 
   /**
    * Default constructor: loads configuration from the classpath YAML
-   * file and uses an in-memory store.
+   * file and uses the durable memory log if {@code memory.log} enables
+   * it, else an in-memory store bounded by the {@code memory} section.
    */
   public MainVerticle() {
-    this(PipelineConfigLoader.load(), new InMemoryMemoryStore());
+    this(PipelineConfigLoader.load());
+  }
+
+  private MainVerticle(PipelineConfig pipelineConfig) {
+    this(pipelineConfig, pipelineConfig.memory().log().enabled() ? null
+        : new InMemoryMemoryStore(pipelineConfig.memory().toBounds(),
+            eviction -> LOG.fine(() -> "Memory: case " + eviction.caseId() + " left the store ("
+                + eviction.cause() + ", " + eviction.log().size() + " log entries)")));
   }
 
   /**
@@ -123,10 +154,11 @@ public class MainVerticle extends AbstractVerticle {
     String inbound = cfg.addresses().inbound();
     String agent   = cfg.addresses().agent();
     String events  = cfg.addresses().events();
+    String cancel  = cfg.addresses().cancel();
 
     // ── Resolve tools via factory (before LLM — OpenAI needs tool schemas) ──
     Tool[] toolArray = cfg.tools().stream()
-        .map(tc -> ToolFactory.create(tc.type(), vertx, events))
+        .map(tc -> ToolFactory.create(tc, vertx, events, executors::add))
         .toArray(Tool[]::new);
     var tools = ToolRegistry.of(toolArray);
     LOG.info("Tools resolved: " + tools.keySet());
@@ -140,7 +172,7 @@ public class MainVerticle extends AbstractVerticle {
     Map<String, FailureHandler> failureHandlers = new LinkedHashMap<>();
     for (var hc : cfg.handlers()) {
       failureHandlers.put(hc.reason(),
-          HandlerFactory.create(hc.type(), hc.params(), vertx, events));
+          HandlerFactory.create(hc, vertx, events, executors::add));
     }
     LOG.info("Failure handlers resolved: " + failureHandlers.keySet());
 
@@ -153,13 +185,19 @@ public class MainVerticle extends AbstractVerticle {
         .put("http.port", cfg.http().port())
         .put("request.timeout.ms", cfg.http().requestTimeoutMs())
         .put("agent.max.steps", cfg.agent().maxSteps())
-        .put("agent.timeout.ms", cfg.agent().timeoutMs());
+        .put("agent.timeout.ms", cfg.agent().timeoutMs())
+        .put("agent.budget.max.tokens", cfg.agent().budget().maxTokens())
+        .put("agent.budget.max.wallclock.ms", cfg.agent().budget().maxWallClockMs())
+        .put("agent.budget.max.calls.per.tool", cfg.agent().budget().maxCallsPerTool())
+        .put("agent.budget.max.tool.latency.ms", cfg.agent().budget().maxToolLatencyMs());
     if (mcpCfg != null) {
       childConfig.put("mcp.port", mcpCfg.port());
       childConfig.put("mcp.basePath", mcpCfg.basePath());
     }
     childConfig.mergeIn(config());
     DeploymentOptions childOpts = new DeploymentOptions().setConfig(childConfig);
+    Readiness readiness = new Readiness();
+    JsonObject warmupReport = new JsonObject();
 
     // ── Deploy verticles in order ───────────────────────────────────
     LOG.info("Deploying verticles in sequence...");
@@ -167,19 +205,24 @@ public class MainVerticle extends AbstractVerticle {
           new DeterministicFailureProcessorVerticle(inbound, agent, failureHandlers), childOpts)
       .compose(id -> {
         LOG.info("DeterministicFailureProcessorVerticle deployed");
-        return vertx.deployVerticle(
-          new AgentRunnerVerticle(agent, llm, tools, memory, cfg.schema().caseIdField()), childOpts);
+        return resolveMemory(cfg);
       })
+      .compose(store -> vertx.deployVerticle(
+          new AgentRunnerVerticle(agent, llm, tools, store, cfg.schema().caseIdField(), cancel),
+          childOpts))
       .compose(id -> {
         LOG.info("AgentRunnerVerticle deployed");
         return vertx.deployVerticle(new EventSinkVerticle(events));
       })
       .compose(id -> {
         LOG.info("EventSinkVerticle deployed");
-        return vertx.deployVerticle(
-          new HttpApiVerticle(cfg.http().route(), inbound,
-              cfg.schema().allowedFields(), cfg.schema().requiredFields()), childOpts);
+        return warmUp(llm, cfg).map(warmupReport::mergeIn);
       })
+      .compose(report -> vertx.deployVerticle(
+          new HttpApiVerticle(cfg.http().route(), inbound,
+              cfg.schema().allowedFields(), cfg.schema().requiredFields(), cancel, readiness,
+              () -> new JsonObject().put("llm", llm.stats()).put("memory", store.stats())),
+          childOpts))
       .compose(id -> {
         if (mcpCfg != null && mcpCfg.enabled()) {
           LOG.info("MCP server enabled — deploying McpServerVerticle on port " + childConfig.getInteger("mcp.port"));
@@ -196,7 +239,7 @@ public class MainVerticle extends AbstractVerticle {
       .compose(id -> {
         LOG.info("Deploying WorkflowUiVerticle on port " + childConfig.getInteger("workflow.port", 8082));
         return vertx.deployVerticle(
-            new WorkflowUiVerticle(inbound, events, cfg.http().requestTimeoutMs()), childOpts);
+            new WorkflowUiVerticle(inbound, events, cfg.http().requestTimeoutMs(), cancel), childOpts);
       })
       .onSuccess(id -> {
         int httpPort      = childConfig.getInteger("http.port", 8080);
@@ -207,6 +250,7 @@ public class MainVerticle extends AbstractVerticle {
 
         String api    = "http://localhost:" + httpPort + cfg.http().route();
         String health = "http://localhost:" + httpPort + "/health";
+        String stats  = "http://localhost:" + httpPort + "/stats";
         String mcp    = mcpOn ? "http://localhost:" + mcpPort + "/mcp" : "(disabled)";
         String ui       = "http://localhost:" + uiPort + "/ui/";
         String workflow = "http://localhost:" + workflowPort + "/workflow/";
@@ -218,11 +262,14 @@ public class MainVerticle extends AbstractVerticle {
             + mid('═', W) + "\n"
             + row("API      " + api, W) + "\n"
             + row("Health   " + health, W) + "\n"
+            + row("Stats    " + stats, W) + "\n"
             + row("MCP      " + mcp, W) + "\n"
             + row("UI       " + ui, W) + "\n"
             + row("Runner   " + workflow, W) + "\n"
             + bot('═', W);
         LOG.info(banner);
+        readiness.markReady(warmupReport.isEmpty()
+            ? new JsonObject() : new JsonObject().put("warmup", warmupReport));
         startPromise.complete();
       })
       .onFailure(err -> {
@@ -231,6 +278,90 @@ public class MainVerticle extends AbstractVerticle {
       });
   }
 
+  @Override
+  public void stop(Promise<Void> stopPromise) {
+    executors.forEach(BlockingExecutor::close);
+    executors.clear();
+    // Queued write-behind entries must reach the log before it closes
+    Future<Void> drained = store instanceof WriteBehindMemoryStore writeBehind
+        ? writeBehind.flushAll().onFailure(err ->
+            LOG.warning("Memory: write-behind entries not flushed at shutdown: " + err.getMessage()))
+        : Future.succeededFuture();
+    if (durable == null) {
+      drained.onComplete(ar -> stopPromise.complete());
+      return;
+    }
+    drained.transform(ar -> durable.close()).onComplete(stopPromise);
+  }
+
+  /**
+   * The memory store for the agent runner: the injected one, or the
+   * durable log opened (and recovered) from {@code memory.log}; wrapped
+   * for write-behind when configured.
+   */
+  private Future<MemoryStore> resolveMemory(PipelineConfig cfg) {
+    Future<MemoryStore> base;
+    if (memory != null) {
+      base = Future.succeededFuture(memory);
+    } else {
+      base = SegmentedLogMemoryStore.open(vertx, cfg.memory().log().toSettings())
+          .<MemoryStore>map(store -> {
+            durable = store;
+            return store;
+          });
+    }
+    return base.map(m -> {
+      MemoryStore store = cfg.memory().writeBehind()
+          ? new WriteBehindMemoryStore(vertx, m,
+              cfg.memory().maxBatchSize(), cfg.memory().flushDelayMs())
+          : m;
+      LOG.info("Memory store resolved: " + store.getClass().getSimpleName()
+          + (store != m ? " over " + m.getClass().getSimpleName() : ""));
+      this.store = store;
+      return store;
+    });
+  }
+
+  /**
+   * Warm the LLM client with synthetic events — one per configured
+   * handler reason plus one no handler knows — before the HTTP API
+   * listens. Best-effort: a failure or timeout is logged and startup
+   * carries on, since the only cost is a slower first case.
+   *
+   * @return the client's warm-up report; empty when disabled
+   */
+  private Future<JsonObject> warmUp(LlmClient llm, PipelineConfig cfg) {
+    WarmupConfig warmup = cfg.warmup();
+    if (!warmup.enabled()) {
+      return Future.succeededFuture(new JsonObject());
+    }
+    String caseIdField = cfg.schema().caseIdField();
+    List<JsonObject> events = new ArrayList<>();
+    for (var hc : cfg.handlers()) {
+      events.add(new JsonObject()
+          .put(caseIdField, "WARMUP-" + events.size())
+          .put("reason", hc.reason()));
+    }
+    events.add(new JsonObject()
+        .put(caseIdField, "WARMUP-" + events.size())
+        .put("reason", "Unrecognised settlement failure"));
+    var plan = new WarmupPlan(warmup.connections(), warmup.iterations(), events);
+    LOG.info("Warming up LLM client: connections=" + plan.connections()
+        + " iterations=" + plan.iterations() + " events=" + events.size());
+    long start = System.nanoTime();
+    return llm.warmUp(plan)
+        .timeout(warmup.timeoutMs(), TimeUnit.MILLISECONDS)
+        .map(report -> {
+          LOG.info("LLM warm-up finished in " + (System.nanoTime() - start) / 1_000_000
+              + " ms: " + report.encode());
+          return report;
+        })
+        .recover(err -> {
+          LOG.warning("LLM warm-up incomplete, continuing startup: " + err.getMessage());
+          return Future.succeededFuture(new JsonObject().put("error", String.valueOf(err.getMessage())));
+        });
+  }
+
   /**
    * Loads {@code logging.properties} from the classpath, ensures the
    * {@code logs/} directory exists, and injects the JVM start timestamp
@@ -2,10 +2,13 @@ package dev.mars.agent.config;
 
 import dev.mars.agent.handler.EscalateHandler;
 import dev.mars.agent.handler.LookupEnrichHandler;
+import dev.mars.agent.processor.BlockingFailureHandler;
 import dev.mars.agent.processor.FailureHandler;
+import dev.mars.mcp.tool.BlockingExecutor;
 import io.vertx.core.Vertx;
 
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -28,7 +31,10 @@ import java.util.logging.Logger;
  * </table>
  *
  * <p>To add a new handler type, register it in the {@code switch}
- * expression in {@link #create}.
+ * expression in {@link #create(String, Map, Vertx, String)}. Handlers
+ * implemented against {@link BlockingFailureHandler} are dispatched to a
+ * virtual-thread or worker executor by
+ * {@link #create(HandlerConfig, Vertx, String)}.
  */
 public final class HandlerFactory {
 
@@ -36,6 +42,52 @@ public final class HandlerFactory {
 
   private HandlerFactory() {}
 
+  /**
+   * Create a {@link FailureHandler} from its YAML configuration. Blocking
+   * handlers are wrapped so that each call runs on the executor described
+   * by the handler's {@link ExecutionConfig}.
+   *
+   * @param config        the handler configuration
+   * @param vertx         the Vert.x instance
+   * @param eventsAddress the event bus address for outbound events
+   * @return a configured, event-loop-safe handler instance
+   * @throws IllegalArgumentException if the type is unknown or required
+   *         params are missing
+   */
+  public static FailureHandler create(HandlerConfig config, Vertx vertx, String eventsAddress) {
+    return create(config, vertx, eventsAddress, executor -> {});
+  }
+
+  /**
+   * As {@link #create(HandlerConfig, Vertx, String)}, handing any executor
+   * created for a blocking handler to {@code executors} so the caller can
+   * {@link BlockingExecutor#close() close} it on shutdown.
+   *
+   * @param config        the handler configuration
+   * @param vertx         the Vert.x instance
+   * @param eventsAddress the event bus address for outbound events
+   * @param executors     receives each executor created
+   * @return a configured, event-loop-safe handler instance
+   * @throws IllegalArgumentException if the type is unknown or required
+   *         params are missing
+   */
+  public static FailureHandler create(HandlerConfig config, Vertx vertx, String eventsAddress,
+                                      Consumer<BlockingExecutor> executors) {
+    FailureHandler handler = create(config.type(), config.params(), vertx, eventsAddress);
+    if (handler instanceof BlockingFailureHandler blocking) {
+      ExecutionConfig exec = config.execution() != null ? config.execution() : ExecutionConfig.DEFAULT;
+      LOG.info("Handler " + config.type() + " is blocking — dispatching to " + exec.mode()
+          + " executor (maxConcurrency=" + exec.maxConcurrency() + ")");
+      BlockingExecutor executor = exec.toExecutor(vertx, "handler-" + config.type());
+      executors.accept(executor);
+      return BlockingFailureHandler.onExecutor(blocking, executor);
+    }
+    if (config.execution() != null) {
+      LOG.warning("Execution settings ignored for non-blocking handler: " + config.type());
+    }
+    return handler;
+  }
+
   /**
    * Create a {@link FailureHandler} from a type alias and parameters.
    *
@@ -1,14 +1,38 @@
 package dev.mars.agent.config;
 
 import dev.mars.agent.handler.TradeFailureRuleLoader;
+import dev.mars.agent.llm.BatchSettings;
+import dev.mars.agent.llm.BatchWindow;
+import dev.mars.agent.llm.BatchingLlmClient;
+import dev.mars.agent.llm.CachingLlmClient;
+import dev.mars.agent.llm.CascadeSettings;
+import dev.mars.agent.llm.CascadingLlmClient;
+import dev.mars.agent.llm.CoalescingLlmClient;
+import dev.mars.agent.llm.FaultInjectingLlmClient;
+import dev.mars.agent.llm.FaultProfile;
+import dev.mars.agent.llm.LatencyProfile;
 import dev.mars.agent.llm.LlmClient;
+import dev.mars.agent.llm.LocalBatchBackend;
 import dev.mars.agent.llm.OpenAiLlmClient;
+import dev.mars.agent.llm.OpenAiSettings;
+import dev.mars.agent.llm.RateLimits;
+import dev.mars.agent.llm.ReloadingStubLlmClient;
+import dev.mars.agent.llm.RetryPolicy;
+import dev.mars.agent.llm.RoutingLlmClient;
+import dev.mars.agent.llm.RoutingSettings;
+import dev.mars.agent.llm.YamlStubRuleLoader;
 import dev.mars.mcp.tool.Tool;
 import io.vertx.core.Vertx;
 
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -20,7 +44,8 @@ import java.util.logging.Logger;
  *   <tr><th>Alias</th><th>Description</th><th>Required params</th></tr>
  *   <tr>
  *     <td>{@code stub}</td>
- *     <td>Rule-based stub using {@link TradeFailureRuleLoader}.
+ *     <td>Rule-based stub using {@link TradeFailureRuleLoader}, or the
+ *         YAML rules named by {@code rules.file} / {@code rules.resource}.
  *         No network calls — suitable for local dev and testing.</td>
  *     <td><em>none</em></td>
  *   </tr>
@@ -32,6 +57,98 @@ import java.util.logging.Logger;
  *   </tr>
  * </table>
  *
+ * <h2>Optional {@code stub} params</h2>
+ * <ul>
+ *   <li>{@code rules.file} — a {@link YamlStubRuleLoader} rule file on
+ *       disk; edits are picked up by a {@link ReloadingStubLlmClient}
+ *       polling every {@code rules.reloadMs} (default 2000; {@code 0}
+ *       loads the file once).</li>
+ *   <li>{@code rules.resource} — a YAML rule file on the classpath,
+ *       loaded once.</li>
+ *   <li>{@code inject.latency} — a {@link LatencyProfile} spec
+ *       ({@code fixed:<ms>}, {@code lognormal:<median>:<p99>},
+ *       {@code empirical:<upToMs>=<weight>,...}) applied to every
+ *       decision.</li>
+ *   <li>{@code inject.throttleRate}, {@code inject.retryAfterMs},
+ *       {@code inject.errorRate}, {@code inject.timeoutRate},
+ *       {@code inject.timeoutMs}, {@code inject.seed} — fractions of
+ *       decisions failed with {@code 429}, {@code 500} or a timeout; see
+ *       {@link FaultInjectingLlmClient}. All default to off, so load tests
+ *       can model provider behaviour while staying offline.</li>
+ * </ul>
+ *
+ * <h2>Optional {@code openai} params</h2>
+ * <ul>
+ *   <li>{@code temperature} — sampling temperature (default
+ *       {@value OpenAiLlmClient#DEFAULT_TEMPERATURE}).</li>
+ *   <li>{@code stream} — {@code "true"} to stream the response and start
+ *       the tool as soon as its call is complete (default {@code false}).</li>
+ *   <li>{@code strict} — {@code "true"} for strict function calling:
+ *       the model must call a tool, arguments are validated against the
+ *       tool's schema, and an invalid answer gets one repair call
+ *       (default {@code false}).</li>
+ *   <li>{@code coalesce} — {@code "true"} to share one upstream call
+ *       between concurrent identical decisions via a
+ *       {@link CoalescingLlmClient} (default {@code false}); independent
+ *       of the cache, which sits in front of it.</li>
+ *   <li>{@code cache.enabled} — wrap the client in a
+ *       {@link CachingLlmClient} (default {@code false}).</li>
+ *   <li>{@code cache.maxEntries}, {@code cache.ttlMs} — in-memory LRU
+ *       bound and entry lifetime ({@code 0} = defaults / no expiry).</li>
+ *   <li>{@code cache.dir} — directory for the on-disk tier; omit for
+ *       memory only.</li>
+ *   <li>{@code cache.maxTemperature} — the cache is refused when
+ *       {@code temperature} exceeds this (default {@code 0.2}), since
+ *       replaying one sample is only sound for near-deterministic
+ *       decoding.</li>
+ *   <li>{@code history.tokenBudget} — estimated-token budget for the step
+ *       history in each prompt (default 1500).</li>
+ *   <li>{@code rateLimit.requestsPerMinute}, {@code rateLimit.tokensPerMinute}
+ *       — client-side pacing to the provider's limits ({@code 0} =
+ *       unlimited, the default).</li>
+ *   <li>{@code retry.maxRetries}, {@code retry.baseDelayMs},
+ *       {@code retry.maxDelayMs} — retries of {@code 429}/{@code 5xx}
+ *       responses (default 3 retries, 500 ms doubling up to 20 s).</li>
+ * </ul>
+ *
+ * <h2>Multiple {@code openai} backends</h2>
+ * With {@code backends} set to a comma-separated list of names, one
+ * client is built per name from {@code backend.<name>.endpoint} (required),
+ * {@code backend.<name>.apiKey} and {@code backend.<name>.model} (both
+ * defaulting to the top-level params), and calls are routed by a
+ * {@link RoutingLlmClient}: lowest latency/error EWMA first, hedged to
+ * the next backend after its p95. Tuned by {@code routing.hedge}
+ * (default {@code true}), {@code routing.initialHedgeDelayMs},
+ * {@code routing.minHedgeDelayMs} and {@code routing.ewmaAlpha}.
+ *
+ * <h2>Model cascade</h2>
+ * With {@code cascade.model} set (e.g. {@code gpt-4o-mini}), a small
+ * model on {@code cascade.endpoint}/{@code cascade.apiKey} (defaulting to
+ * the top-level params) decides first and a {@link CascadingLlmClient}
+ * escalates to the configured {@code model} when needed. Rules:
+ * {@code cascade.largeSteps} (comma-separated step indices),
+ * {@code cascade.largeTools} (comma-separated tool names),
+ * {@code cascade.minConfidence} (default 0.5),
+ * {@code cascade.severities} (default {@code HIGH,CRITICAL}) and
+ * {@code cascade.validateArgs} (default {@code true}).
+ *
+ * <h2>Batch mode</h2>
+ * With {@code batch.enabled} set, a {@link BatchingLlmClient} defers
+ * decisions for cases whose reason is in {@code batch.reasons} or that
+ * were classified with a severity in {@code batch.severities} (default
+ * {@code LOW}) to a batch backend. Batches are submitted every
+ * {@code batch.flushMs} (default 60 000) or at {@code batch.maxSize}
+ * (default 500) requests, only inside {@code batch.windows}
+ * (comma-separated {@code HH:mm-HH:mm}; default any time), and polled
+ * every {@code batch.pollMs} (default 30 000). A decision still waiting
+ * after {@code batch.maxDeferralMs} (default 86 400 000) fails. The
+ * backend is the file-based {@link LocalBatchBackend} under
+ * {@code batch.dir} (default {@code batch}), which works through each
+ * file against {@code endpoint} — a development stand-in: its calls are
+ * paced by the interactive rate limiter, but still spend the endpoint's
+ * interactive quota, and a warning is logged unless the endpoint is
+ * local.
+ *
  * <p>To add a new LLM backend, register it in the {@code switch}
  * expression in {@link #create}.
  */
@@ -39,6 +156,9 @@ public final class LlmClientFactory {
 
   private static final Logger LOG = Logger.getLogger(LlmClientFactory.class.getName());
 
+  private static final double DEFAULT_CACHE_MAX_TEMPERATURE = 0.2;
+  private static final long DEFAULT_RULES_RELOAD_MS = 2_000;
+
   private LlmClientFactory() {}
 
   /**
@@ -57,16 +177,61 @@ public final class LlmClientFactory {
     LOG.info("Creating LLM client: type=" + type);
     return switch (type) {
       case "stub" -> {
-        LOG.info("Stub LLM client created with trade-failure rules");
-        yield new TradeFailureRuleLoader().load().toClient();
+        LlmClient stub;
+        String file = params.get("rules.file");
+        String resource = params.get("rules.resource");
+        if (file != null) {
+          long reloadMs = longParam(params, "rules.reloadMs", DEFAULT_RULES_RELOAD_MS);
+          LOG.info("Stub LLM client created with rules from " + file
+              + (reloadMs > 0 ? " (reload every " + reloadMs + " ms)" : ""));
+          stub = reloadMs > 0
+              ? new ReloadingStubLlmClient(vertx, Path.of(file), reloadMs)
+              : new YamlStubRuleLoader(Path.of(file)).load().toClient();
+        } else if (resource != null) {
+          LOG.info("Stub LLM client created with rules from classpath:" + resource);
+          stub = YamlStubRuleLoader.fromResource(resource).load().toClient();
+        } else {
+          LOG.info("Stub LLM client created with trade-failure rules");
+          stub = new TradeFailureRuleLoader().load().toClient();
+        }
+        yield withFaults(stub, params, vertx);
       }
 
       case "openai" -> {
-        String endpoint = requireParam(params, "endpoint", type);
-        String apiKey   = resolveEnvVar(requireParam(params, "apiKey", type));
-        String model    = requireParam(params, "model", type);
-        LOG.info("OpenAI LLM client created: endpoint=" + endpoint + " model=" + model);
-        yield new OpenAiLlmClient(vertx, endpoint, apiKey, model, tools);
+        String model = requireParam(params, "model", type);
+        OpenAiSettings settings = OpenAiSettings.DEFAULTS
+            .withTemperature(doubleParam(params, "temperature", OpenAiLlmClient.DEFAULT_TEMPERATURE))
+            .withStream(Boolean.parseBoolean(params.getOrDefault("stream", "false")))
+            .withStrict(Boolean.parseBoolean(params.getOrDefault("strict", "false")))
+            .withHistoryTokenBudget((int) longParam(params, "history.tokenBudget", 0))
+            .withRateLimits(new RateLimits(
+                (int) longParam(params, "rateLimit.requestsPerMinute", 0),
+                longParam(params, "rateLimit.tokensPerMinute", 0)))
+            .withRetry(new RetryPolicy(
+                (int) longParam(params, "retry.maxRetries", RetryPolicy.DEFAULTS.maxRetries()),
+                longParam(params, "retry.baseDelayMs", RetryPolicy.DEFAULTS.baseDelayMs()),
+                longParam(params, "retry.maxDelayMs", RetryPolicy.DEFAULTS.maxDelayMs())));
+        LlmClient client;
+        OpenAiLlmClient direct = null;
+        if (params.containsKey("backends")) {
+          client = routed(params, vertx, model, settings, tools);
+        } else {
+          String endpoint = requireParam(params, "endpoint", type);
+          String apiKey   = resolveEnvVar(requireParam(params, "apiKey", type));
+          LOG.info("OpenAI LLM client created: endpoint=" + endpoint + " model=" + model);
+          direct = new OpenAiLlmClient(vertx, endpoint, apiKey, model, settings, tools);
+          client = direct;
+        }
+        if (params.containsKey("cascade.model")) {
+          client = cascaded(params, vertx, client, settings, tools);
+        }
+        if (Boolean.parseBoolean(params.getOrDefault("batch.enabled", "false"))) {
+          client = batched(params, vertx, client, direct, model, settings, tools);
+        }
+        if (Boolean.parseBoolean(params.getOrDefault("coalesce", "false"))) {
+          client = new CoalescingLlmClient(client);
+        }
+        yield withCache(client, params, vertx, settings.temperature());
       }
 
       default -> {
@@ -84,6 +249,200 @@ public final class LlmClientFactory {
     return create(type, params, vertx, Collections.emptyList());
   }
 
+  /**
+   * Build one {@link OpenAiLlmClient} per name in {@code backends} from
+   * its {@code backend.<name>.*} params and route between them with a
+   * {@link RoutingLlmClient}.
+   */
+  private static LlmClient routed(Map<String, String> params, Vertx vertx, String model,
+                                  OpenAiSettings settings, Collection<Tool> tools) {
+    List<RoutingLlmClient.Backend> backends = new ArrayList<>();
+    for (String raw : params.get("backends").split(",")) {
+      String name = raw.trim();
+      if (name.isEmpty()) {
+        continue;
+      }
+      String prefix = "backend." + name + ".";
+      String endpoint = requireParam(params, prefix + "endpoint", "openai");
+      String apiKey = params.containsKey(prefix + "apiKey")
+          ? requireParam(params, prefix + "apiKey", "openai")
+          : requireParam(params, "apiKey", "openai");
+      String backendModel = params.getOrDefault(prefix + "model", model);
+      LOG.info("OpenAI LLM backend '" + name + "': endpoint=" + endpoint + " model=" + backendModel);
+      backends.add(new RoutingLlmClient.Backend(name, new OpenAiLlmClient(
+          vertx, endpoint, resolveEnvVar(apiKey), backendModel, settings, tools)));
+    }
+    if (backends.isEmpty()) {
+      throw new IllegalArgumentException("LLM param 'backends' names no backends");
+    }
+    RoutingSettings routing = RoutingSettings.DEFAULTS
+        .withHedge(Boolean.parseBoolean(params.getOrDefault("routing.hedge", "true")))
+        .withHedgeDelays(
+            longParam(params, "routing.initialHedgeDelayMs", RoutingSettings.DEFAULTS.initialHedgeDelayMs()),
+            longParam(params, "routing.minHedgeDelayMs", RoutingSettings.DEFAULTS.minHedgeDelayMs()))
+        .withEwmaAlpha(doubleParam(params, "routing.ewmaAlpha", RoutingSettings.DEFAULTS.ewmaAlpha()));
+    return new RoutingLlmClient(vertx, backends, routing);
+  }
+
+  /**
+   * Put a small {@code cascade.model} client in front of {@code large}
+   * with a {@link CascadingLlmClient}.
+   */
+  private static LlmClient cascaded(Map<String, String> params, Vertx vertx, LlmClient large,
+                                    OpenAiSettings settings, Collection<Tool> tools) {
+    String model = requireParam(params, "cascade.model", "openai");
+    String endpoint = params.containsKey("cascade.endpoint")
+        ? requireParam(params, "cascade.endpoint", "openai")
+        : requireParam(params, "endpoint", "openai");
+    String apiKey = params.containsKey("cascade.apiKey")
+        ? requireParam(params, "cascade.apiKey", "openai")
+        : requireParam(params, "apiKey", "openai");
+    Set<Integer> largeSteps = new LinkedHashSet<>();
+    for (String step : listParam(params, "cascade.largeSteps")) {
+      try {
+        largeSteps.add(Integer.parseInt(step));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("LLM param 'cascade.largeSteps' must list integers: " + step);
+      }
+    }
+    CascadeSettings cascade = CascadeSettings.DEFAULTS
+        .withLarge(largeSteps, new LinkedHashSet<>(listParam(params, "cascade.largeTools")))
+        .withMinConfidence(doubleParam(params, "cascade.minConfidence", CascadeSettings.DEFAULTS.minConfidence()))
+        .withValidateArgs(Boolean.parseBoolean(params.getOrDefault("cascade.validateArgs", "true")));
+    if (params.containsKey("cascade.severities")) {
+      cascade = cascade.withSeverities(new LinkedHashSet<>(listParam(params, "cascade.severities")));
+    }
+    LOG.info("LLM cascade: small model=" + model + " endpoint=" + endpoint + " rules=" + cascade);
+    LlmClient small = new OpenAiLlmClient(vertx, endpoint, resolveEnvVar(apiKey), model, settings, tools);
+    return new CascadingLlmClient(small, large, cascade, tools);
+  }
+
+  /**
+   * Defer batch-eligible decisions of {@code interactive} to a
+   * {@link LocalBatchBackend} with a {@link BatchingLlmClient}.
+   *
+   * <p>The local backend is a development stand-in: it sends every line
+   * to the interactive endpoint. With a single backend ({@code direct})
+   * it sends through that client, so its calls share the interactive rate
+   * limiter and retries; otherwise it gets a limiter of its own.
+   */
+  private static LlmClient batched(Map<String, String> params, Vertx vertx, LlmClient interactive,
+                                   OpenAiLlmClient direct, String model, OpenAiSettings settings,
+                                   Collection<Tool> tools) {
+    String endpoint = requireParam(params, "endpoint", "openai");
+    OpenAiLlmClient renderer = direct != null ? direct : new OpenAiLlmClient(vertx, endpoint,
+        resolveEnvVar(requireParam(params, "apiKey", "openai")), model, settings.withStream(false), tools);
+    if (!isLoopback(endpoint)) {
+      LOG.warning("LLM batch mode uses the local batch stand-in, which sends batch lines to "
+          + endpoint + " as interactive calls; use it for development only");
+    }
+    Set<String> severities = params.containsKey("batch.severities")
+        ? Set.copyOf(listParam(params, "batch.severities"))
+        : BatchSettings.DEFAULTS.severities();
+    List<BatchWindow> windows = new ArrayList<>();
+    for (String spec : listParam(params, "batch.windows")) {
+      windows.add(BatchWindow.parse(spec));
+    }
+    BatchSettings batch = BatchSettings.DEFAULTS
+        .withEligibility(Set.copyOf(listParam(params, "batch.reasons")), severities)
+        .withWindows(windows)
+        .withSchedule(
+            (int) longParam(params, "batch.maxSize", BatchSettings.DEFAULTS.maxBatchSize()),
+            longParam(params, "batch.flushMs", BatchSettings.DEFAULTS.flushIntervalMs()),
+            longParam(params, "batch.pollMs", BatchSettings.DEFAULTS.pollIntervalMs()))
+        .withMaxDeferral(longParam(params, "batch.maxDeferralMs",
+            BatchSettings.DEFAULTS.maxDeferralMs()));
+    Path dir = Path.of(params.getOrDefault("batch.dir", "batch"));
+    LOG.info("LLM batch mode: dir=" + dir + " rules=" + batch);
+    return new BatchingLlmClient(vertx, interactive, renderer,
+        new LocalBatchBackend(vertx, dir, renderer::complete), batch);
+  }
+
+  private static boolean isLoopback(String endpoint) {
+    try {
+      String host = URI.create(endpoint).getHost();
+      return host != null && (host.equals("localhost") || host.startsWith("127.") || host.equals("[::1]"));
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Wrap {@code client} in a {@link FaultInjectingLlmClient} when any
+   * {@code inject.*} param asks for latency or failures.
+   */
+  private static LlmClient withFaults(LlmClient client, Map<String, String> params, Vertx vertx) {
+    FaultProfile faults = FaultProfile.NONE
+        .withLatency(LatencyProfile.parse(params.get("inject.latency")))
+        .withErrorRate(doubleParam(params, "inject.errorRate", 0))
+        .withThrottle(doubleParam(params, "inject.throttleRate", 0),
+            longParam(params, "inject.retryAfterMs", FaultProfile.NONE.retryAfterMs()))
+        .withTimeouts(doubleParam(params, "inject.timeoutRate", 0),
+            longParam(params, "inject.timeoutMs", FaultProfile.NONE.timeoutMs()));
+    if (faults.isNone()) {
+      return client;
+    }
+    String seed = params.get("inject.seed");
+    LOG.info("LLM fault injection: " + faults);
+    return new FaultInjectingLlmClient(vertx, client, faults,
+        seed == null || seed.isBlank() ? null : longParam(params, "inject.seed", 0));
+  }
+
+  /**
+   * Wrap {@code client} in a {@link CachingLlmClient} when
+   * {@code cache.enabled} is set and the temperature is low enough for a
+   * cached answer to stand in for a fresh one.
+   */
+  private static LlmClient withCache(LlmClient client, Map<String, String> params,
+                                     Vertx vertx, double temperature) {
+    if (!Boolean.parseBoolean(params.getOrDefault("cache.enabled", "false"))) {
+      return client;
+    }
+    double maxTemperature = doubleParam(params, "cache.maxTemperature", DEFAULT_CACHE_MAX_TEMPERATURE);
+    if (temperature > maxTemperature) {
+      LOG.warning("LLM cache disabled: temperature " + temperature
+          + " exceeds cache.maxTemperature " + maxTemperature);
+      return client;
+    }
+    String dir = params.get("cache.dir");
+    return new CachingLlmClient(vertx, client,
+        (int) longParam(params, "cache.maxEntries", 0),
+        longParam(params, "cache.ttlMs", 0),
+        dir == null || dir.isBlank() ? null : Path.of(dir));
+  }
+
+  private static long longParam(Map<String, String> params, String key, long defaultValue) {
+    String value = params.get(key);
+    try {
+      return value == null || value.isBlank() ? defaultValue : Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("LLM param '" + key + "' must be an integer: " + value);
+    }
+  }
+
+  private static double doubleParam(Map<String, String> params, String key, double defaultValue) {
+    String value = params.get(key);
+    try {
+      return value == null || value.isBlank() ? defaultValue : Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("LLM param '" + key + "' must be a number: " + value);
+    }
+  }
+
+  /** Comma-separated values, trimmed, blanks dropped; empty when absent. */
+  private static List<String> listParam(Map<String, String> params, String key) {
+    String value = params.get(key);
+    List<String> items = new ArrayList<>();
+    if (value != null) {
+      for (String raw : value.split(",")) {
+        if (!raw.isBlank()) {
+          items.add(raw.trim());
+        }
+      }
+    }
+    return items;
+  }
+
   private static String requireParam(Map<String, String> params, String key, String type) {
     String value = params.get(key);
     if (value == null || value.isBlank()) {
@@ -5,9 +5,13 @@ import dev.mars.agent.tool.LookupTool;
 import dev.mars.agent.tool.NotifyTool;
 import dev.mars.agent.tool.PublishEventTool;
 import dev.mars.agent.tool.RaiseTicketTool;
+import dev.mars.mcp.tool.BlockingExecutor;
+import dev.mars.mcp.tool.BlockingTool;
+import dev.mars.mcp.tool.CachingTool;
 import dev.mars.mcp.tool.Tool;
 import io.vertx.core.Vertx;
 
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -28,7 +32,15 @@ import java.util.logging.Logger;
  * </table>
  *
  * <p>To add a new tool type, register it in the {@code switch}
- * expression in {@link #create}.
+ * expression in {@link #create(String, Vertx, String)}.
+ *
+ * <p>{@link #create(ToolConfig, Vertx, String)} additionally:
+ * <ul>
+ *   <li>dispatches {@link BlockingTool}s to a virtual-thread or worker
+ *       executor according to the tool's {@link ExecutionConfig}, and</li>
+ *   <li>applies the tool's {@link ToolCacheConfig cache} policy, wrapping
+ *       read-only tools in a {@link CachingTool}.</li>
+ * </ul>
  */
 public final class ToolFactory {
 
@@ -36,6 +48,48 @@ public final class ToolFactory {
 
   private ToolFactory() {}
 
+  /**
+   * Create a {@link Tool} from its YAML configuration, applying the
+   * configured execution mode and cache policy (if any).
+   *
+   * @param config        the tool configuration
+   * @param vertx         the Vert.x instance
+   * @param eventsAddress the event bus address for outbound events
+   * @return a configured (possibly caching) tool instance
+   * @throws IllegalArgumentException if the type is unknown
+   */
+  public static Tool create(ToolConfig config, Vertx vertx, String eventsAddress) {
+    return create(config, vertx, eventsAddress, executor -> {});
+  }
+
+  /**
+   * As {@link #create(ToolConfig, Vertx, String)}, handing any executor
+   * created for a blocking tool to {@code executors} so the caller can
+   * {@link BlockingExecutor#close() close} it on shutdown.
+   *
+   * @param config        the tool configuration
+   * @param vertx         the Vert.x instance
+   * @param eventsAddress the event bus address for outbound events
+   * @param executors     receives each executor created
+   * @return a configured (possibly caching) tool instance
+   * @throws IllegalArgumentException if the type is unknown
+   */
+  public static Tool create(ToolConfig config, Vertx vertx, String eventsAddress,
+                            Consumer<BlockingExecutor> executors) {
+    Tool tool = create(config.type(), vertx, eventsAddress);
+    if (tool instanceof BlockingTool blocking) {
+      ExecutionConfig exec = config.execution() != null ? config.execution() : ExecutionConfig.DEFAULT;
+      LOG.info("Tool " + tool.name() + " is blocking — dispatching to " + exec.mode()
+          + " executor (maxConcurrency=" + exec.maxConcurrency() + ")");
+      BlockingExecutor executor = exec.toExecutor(vertx, tool.name());
+      executors.accept(executor);
+      tool = BlockingTool.onExecutor(blocking, executor);
+    } else if (config.execution() != null) {
+      LOG.warning("Execution settings ignored for non-blocking tool: " + tool.name());
+    }
+    return config.cache() == null ? tool : CachingTool.wrap(tool, config.cache().toPolicy());
+  }
+
   /**
    * Create a {@link Tool} from a type alias.
    *
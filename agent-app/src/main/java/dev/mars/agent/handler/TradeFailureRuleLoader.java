@@ -90,6 +90,11 @@ import java.util.logging.Logger;
  *   <li><b>Notify</b> — Slack to Operations team.</li>
  * </ol>
  *
+ * <p>Every rule declares the {@code reason} keywords it answers to via
+ * {@link StubLlmClient#keywordRule(java.util.Collection, StubRule)}; the
+ * client matches all of them in one pass over the reason, so rules only
+ * decide which step to take.
+ *
  * <p>Each rule uses {@code stop: false} to continue the agent loop
  * until the final step sets {@code stop: true}. Rules inspect
  * {@code state.getInteger("step")} to determine which step of the
@@ -106,7 +111,7 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
   public StubRuleSet load() {
 
     // ── LEI keyword rule — 3-step chain ──────────────────────────────
-    StubRule leiRule = new StubRule() {
+    StubRule leiRule = StubLlmClient.keywordRule(List.of("lei"), new StubRule() {
       @Override
       public JsonObject tryMatch(JsonObject event) {
         // single-arg version not used when state is available
@@ -115,9 +120,6 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
 
       @Override
       public JsonObject tryMatch(JsonObject event, JsonObject state) {
-        String reason = event.getString("reason", "").toLowerCase();
-        if (!reason.contains("lei")) return null;
-
         int step = state != null ? state.getInteger("step", 0) : 0;
         String tradeId = event.getString("tradeId", "unknown");
 
@@ -164,10 +166,11 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
               .put("stop", true);
         };
       }
-    };
+    });
 
     // ── Settlement Amount Mismatch — 4-step chain ─────────────────────
-    StubRule mismatchRule = new StubRule() {
+    StubRule mismatchRule = StubLlmClient.keywordRule(
+        List.of("amount", "mismatch", "settlement mismatch"), new StubRule() {
       @Override
       public JsonObject tryMatch(JsonObject event) {
         return tryMatch(event, new JsonObject().put("step", 0));
@@ -175,10 +178,6 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
 
       @Override
       public JsonObject tryMatch(JsonObject event, JsonObject state) {
-        String reason = event.getString("reason", "").toLowerCase();
-        if (!reason.contains("amount") && !reason.contains("mismatch")
-            && !reason.contains("settlement mismatch")) return null;
-
         int step = state != null ? state.getInteger("step", 0) : 0;
         String tradeId = event.getString("tradeId", "unknown");
 
@@ -268,10 +267,10 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
               .put("stop", true);
         };
       }
-    };
+    });
 
     // ── Duplicate Trade — 4-step chain ──────────────────────────────
-    StubRule duplicateRule = new StubRule() {
+    StubRule duplicateRule = StubLlmClient.keywordRule(List.of("duplicate"), new StubRule() {
       @Override
       public JsonObject tryMatch(JsonObject event) {
         return tryMatch(event, new JsonObject().put("step", 0));
@@ -279,9 +278,6 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
 
       @Override
       public JsonObject tryMatch(JsonObject event, JsonObject state) {
-        String reason = event.getString("reason", "").toLowerCase();
-        if (!reason.contains("duplicate")) return null;
-
         int step = state != null ? state.getInteger("step", 0) : 0;
         String tradeId = event.getString("tradeId", "unknown");
 
@@ -368,10 +364,11 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
               .put("stop", true);
         };
       }
-    };
+    });
 
     // ── Regulatory Deadline at Risk — 4-step chain ──────────────────
-    StubRule regulatoryRule = new StubRule() {
+    StubRule regulatoryRule = StubLlmClient.keywordRule(
+        List.of("regulatory", "deadline", "compliance", "t+1"), new StubRule() {
       @Override
       public JsonObject tryMatch(JsonObject event) {
         return tryMatch(event, new JsonObject().put("step", 0));
@@ -379,10 +376,6 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
 
       @Override
       public JsonObject tryMatch(JsonObject event, JsonObject state) {
-        String reason = event.getString("reason", "").toLowerCase();
-        if (!reason.contains("regulatory") && !reason.contains("deadline")
-            && !reason.contains("compliance") && !reason.contains("t+1")) return null;
-
         int step = state != null ? state.getInteger("step", 0) : 0;
         String tradeId = event.getString("tradeId", "unknown");
 
@@ -477,7 +470,7 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
               .put("stop", true);
         };
       }
-    };
+    });
 
     // ── Fallback rule — 3-step chain for any unrecognised reason ──────
     StubRule fallback = new StubRule() {
@@ -550,7 +543,8 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
     // • Crafts nuanced communications — Legal needs different detail than
     //   Compliance, and the tone must reflect confidence level.
     //
-    StubRule sanctionsRule = new StubRule() {
+    StubRule sanctionsRule = StubLlmClient.keywordRule(
+        List.of("sanction", "screening", "ofac", "watchlist", "aml"), new StubRule() {
       @Override
       public JsonObject tryMatch(JsonObject event) {
         return tryMatch(event, new JsonObject().put("step", 0));
@@ -558,11 +552,6 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
 
       @Override
       public JsonObject tryMatch(JsonObject event, JsonObject state) {
-        String reason = event.getString("reason", "").toLowerCase();
-        if (!reason.contains("sanction") && !reason.contains("screening")
-            && !reason.contains("ofac") && !reason.contains("watchlist")
-            && !reason.contains("aml")) return null;
-
         int step = state != null ? state.getInteger("step", 0) : 0;
         String tradeId = event.getString("tradeId", "unknown");
 
@@ -717,7 +706,7 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
               .put("stop", true);
         };
       }
-    };
+    });
 
     // ── Multi-Leg Cascade — 5-step structural reasoning chain ─────────
     //
@@ -731,7 +720,8 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
     // • Knows that an SSI mismatch (BIC format issue) is a data problem,
     //   not a credit or market problem, and communicates accordingly.
     //
-    StubRule cascadeRule = new StubRule() {
+    StubRule cascadeRule = StubLlmClient.keywordRule(
+        List.of("cascade", "linked", "swap leg", "multi-leg"), new StubRule() {
       @Override
       public JsonObject tryMatch(JsonObject event) {
         return tryMatch(event, new JsonObject().put("step", 0));
@@ -739,10 +729,6 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
 
       @Override
       public JsonObject tryMatch(JsonObject event, JsonObject state) {
-        String reason = event.getString("reason", "").toLowerCase();
-        if (!reason.contains("cascade") && !reason.contains("linked")
-            && !reason.contains("swap leg") && !reason.contains("multi-leg")) return null;
-
         int step = state != null ? state.getInteger("step", 0) : 0;
         String tradeId = event.getString("tradeId", "unknown");
 
@@ -899,7 +885,7 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
               .put("stop", true);
         };
       }
-    };
+    });
 
     // ── Counterparty Credit Event — 5-step cross-domain chain ─────────
     //
@@ -914,7 +900,8 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
     // • Distinguishes between "we owe them" and "they owe us" positions
     //   to correctly assess directional risk.
     //
-    StubRule creditEventRule = new StubRule() {
+    StubRule creditEventRule = StubLlmClient.keywordRule(
+        List.of("credit", "downgrade", "default", "rating"), new StubRule() {
       @Override
       public JsonObject tryMatch(JsonObject event) {
         return tryMatch(event, new JsonObject().put("step", 0));
@@ -922,10 +909,6 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
 
       @Override
       public JsonObject tryMatch(JsonObject event, JsonObject state) {
-        String reason = event.getString("reason", "").toLowerCase();
-        if (!reason.contains("credit") && !reason.contains("downgrade")
-            && !reason.contains("default") && !reason.contains("rating")) return null;
-
         int step = state != null ? state.getInteger("step", 0) : 0;
         String tradeId = event.getString("tradeId", "unknown");
 
@@ -1098,7 +1081,7 @@ public class TradeFailureRuleLoader implements StubRuleLoader {
               .put("stop", true);
         };
       }
-    };
+    });
 
     LOG.info("Loaded trade-failure stub rules: 7 multi-step rules + multi-step fallback");
     return new StubRuleSet(
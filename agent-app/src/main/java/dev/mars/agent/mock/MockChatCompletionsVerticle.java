@@ -0,0 +1,320 @@
+package dev.mars.agent.mock;
+
+import dev.mars.agent.handler.TradeFailureRuleLoader;
+import dev.mars.agent.llm.LatencyProfile;
+import dev.mars.agent.llm.LlmClient;
+import dev.mars.agent.llm.TokenEstimator;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local, OpenAI-compatible {@code POST /chat/completions} endpoint that
+ * answers with scripted tool calls, so the real
+ * {@link dev.mars.agent.llm.OpenAiLlmClient OpenAiLlmClient} — HTTP,
+ * JSON encoding, streaming and response parsing — can be load-tested
+ * offline.
+ *
+ * <h2>Scenarios</h2>
+ * Decisions come from the same {@link TradeFailureRuleLoader} rules the
+ * {@code stub} client uses. The trade-failure event and step number are
+ * recovered from the user message that {@code OpenAiLlmClient} renders
+ * (the fenced JSON under {@code ## Trade Failure Event} and
+ * {@code "This is step N"}), run through the rules, and returned as a
+ * single {@code tool_calls} entry.
+ *
+ * <h2>Configuration</h2>
+ * Read from the verticle config:
+ * <table>
+ *   <tr><th>Key</th><th>Default</th><th>Meaning</th></tr>
+ *   <tr><td>{@code port}</td><td>0</td><td>listen port ({@code 0} = any free port,
+ *       see {@link #actualPort()})</td></tr>
+ *   <tr><td>{@code latency}</td><td>{@code none}</td><td>time to first byte, a
+ *       {@link LatencyProfile} spec such as {@code "lognormal:400:3000"}</td></tr>
+ *   <tr><td>{@code streamChunkMs}</td><td>5</td><td>delay between streamed chunks</td></tr>
+ *   <tr><td>{@code streamChunkChars}</td><td>16</td><td>argument characters per chunk</td></tr>
+ *   <tr><td>{@code throttleRate}</td><td>0</td><td>fraction of requests answered
+ *       {@code 429}</td></tr>
+ *   <tr><td>{@code retryAfterMs}</td><td>1000</td><td>wait advertised on a
+ *       {@code 429} ({@code retry-after-ms} and {@code Retry-After})</td></tr>
+ *   <tr><td>{@code seed}</td><td><em>random</em></td><td>seed for latency and
+ *       throttling draws, for repeatable runs</td></tr>
+ * </table>
+ *
+ * <p>Requests with {@code "stream": true} get Server-Sent Events: the tool
+ * name, the arguments in {@code streamChunkChars} pieces, a usage chunk
+ * when {@code stream_options.include_usage} is set, then
+ * {@code [DONE]}. Every response carries a {@code usage} block estimated
+ * with {@link TokenEstimator}.
+ *
+ * <p>Run standalone with {@link #main}: {@code java -cp agent-app-fat.jar
+ * dev.mars.agent.mock.MockChatCompletionsVerticle [port] [latency]}.
+ */
+public class MockChatCompletionsVerticle extends AbstractVerticle {
+
+  private static final Logger LOG = Logger.getLogger(MockChatCompletionsVerticle.class.getName());
+
+  private static final Pattern EVENT_BLOCK =
+      Pattern.compile("## Trade Failure Event\\s*```json\\s*(\\{.*?})\\s*```", Pattern.DOTALL);
+  private static final Pattern STEP = Pattern.compile("This is step (\\d+)");
+
+  private final LlmClient scenarios;
+
+  private HttpServer server;
+  private SplittableRandom random;
+  private LatencyProfile latency;
+  private long streamChunkMs;
+  private int streamChunkChars;
+  private double throttleRate;
+  private long retryAfterMs;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private final AtomicLong streamed = new AtomicLong();
+  private final AtomicLong callIds = new AtomicLong();
+
+  /** Serve the {@link TradeFailureRuleLoader} scenarios. */
+  public MockChatCompletionsVerticle() {
+    this(new TradeFailureRuleLoader().load().toClient());
+  }
+
+  /** Serve the decisions of {@code scenarios} (typically a stub client). */
+  public MockChatCompletionsVerticle(LlmClient scenarios) {
+    this.scenarios = scenarios;
+  }
+
+  @Override
+  public void start(Promise<Void> startPromise) {
+    JsonObject cfg = config();
+    latency = LatencyProfile.parse(cfg.getString("latency"));
+    streamChunkMs = cfg.getLong("streamChunkMs", 5L);
+    streamChunkChars = Math.max(1, cfg.getInteger("streamChunkChars", 16));
+    throttleRate = cfg.getDouble("throttleRate", 0.0);
+    retryAfterMs = cfg.getLong("retryAfterMs", 1000L);
+    Long seed = cfg.getLong("seed");
+    random = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+
+    vertx.createHttpServer()
+      .requestHandler(this::handle)
+      .listen(cfg.getInteger("port", 0))
+      .onSuccess(s -> {
+        server = s;
+        LOG.info("Mock chat-completions endpoint on http://localhost:" + s.actualPort()
+            + " latency=" + latency + " throttleRate=" + throttleRate);
+        startPromise.complete();
+      })
+      .onFailure(startPromise::fail);
+  }
+
+  /** The bound port, once started. */
+  public int actualPort() {
+    return server.actualPort();
+  }
+
+  /** Counters: {@code requests}, {@code throttled} and {@code streamed}. */
+  public JsonObject stats() {
+    return new JsonObject()
+        .put("requests", requests.get())
+        .put("throttled", throttled.get())
+        .put("streamed", streamed.get());
+  }
+
+  private void handle(HttpServerRequest req) {
+    if (req.method() != HttpMethod.POST || !req.path().endsWith("/chat/completions")) {
+      req.response().setStatusCode(404).end();
+      return;
+    }
+    req.body().onSuccess(body -> {
+      requests.incrementAndGet();
+      long delay;
+      boolean throttle;
+      synchronized (this) {
+        delay = latency.sampleMs(random);
+        throttle = throttleRate > 0 && random.nextDouble() < throttleRate;
+      }
+      if (delay > 0) {
+        vertx.setTimer(delay, t -> respond(req, body, throttle));
+      } else {
+        respond(req, body, throttle);
+      }
+    });
+  }
+
+  private void respond(HttpServerRequest req, Buffer body, boolean throttle) {
+    HttpServerResponse resp = req.response();
+    if (throttle) {
+      throttled.incrementAndGet();
+      resp.setStatusCode(429)
+          .putHeader("content-type", "application/json")
+          .putHeader("retry-after-ms", String.valueOf(retryAfterMs))
+          .putHeader("Retry-After", String.valueOf((retryAfterMs + 999) / 1000))
+          .end(error("Rate limit reached (mock)").encode());
+      return;
+    }
+    JsonObject request;
+    JsonObject event;
+    int step;
+    try {
+      request = body.toJsonObject();
+      String prompt = lastUserMessage(request);
+      Matcher em = EVENT_BLOCK.matcher(prompt);
+      Matcher sm = STEP.matcher(prompt);
+      if (!em.find()) {
+        throw new IllegalArgumentException("no trade failure event in prompt");
+      }
+      event = new JsonObject(em.group(1));
+      step = sm.find() ? Integer.parseInt(sm.group(1)) : 0;
+    } catch (RuntimeException e) {
+      resp.setStatusCode(400).putHeader("content-type", "application/json")
+          .end(error(e.getMessage()).encode());
+      return;
+    }
+
+    scenarios.decideNext(event, new JsonObject().put("step", step))
+      .onFailure(err -> resp.setStatusCode(500).putHeader("content-type", "application/json")
+          .end(error(err.getMessage()).encode()))
+      .onSuccess(cmd -> {
+        String callId = "call_mock_" + callIds.incrementAndGet();
+        String tool = cmd.getString("tool");
+        String args = cmd.getJsonObject("args", new JsonObject()).encode();
+        JsonObject usage = usage(body, tool, args);
+        if (request.getBoolean("stream", false)) {
+          streamed.incrementAndGet();
+          JsonObject streamOptions = request.getJsonObject("stream_options");
+          boolean includeUsage = streamOptions != null && streamOptions.getBoolean("include_usage", false);
+          stream(resp, callId, tool, args, includeUsage ? usage : null);
+        } else {
+          resp.putHeader("content-type", "application/json")
+              .end(completion(request, callId, tool, args, usage).encode());
+        }
+      });
+  }
+
+  // ── Response shapes ───────────────────────────────────────────────
+
+  private static String lastUserMessage(JsonObject request) {
+    JsonArray messages = request.getJsonArray("messages", new JsonArray());
+    for (int i = messages.size() - 1; i >= 0; i--) {
+      JsonObject m = messages.getJsonObject(i);
+      if ("user".equals(m.getString("role"))) {
+        return m.getString("content", "");
+      }
+    }
+    throw new IllegalArgumentException("no user message");
+  }
+
+  private static JsonObject usage(Buffer requestBody, String tool, String args) {
+    int prompt = TokenEstimator.estimate(requestBody.toString());
+    int completion = TokenEstimator.estimate(tool) + TokenEstimator.estimate(args)
+        + TokenEstimator.MESSAGE_OVERHEAD;
+    return new JsonObject()
+        .put("prompt_tokens", prompt)
+        .put("completion_tokens", completion)
+        .put("total_tokens", prompt + completion);
+  }
+
+  private static JsonObject toolCall(String callId, String tool, String args) {
+    return new JsonObject()
+        .put("id", callId)
+        .put("type", "function")
+        .put("function", new JsonObject().put("name", tool).put("arguments", args));
+  }
+
+  private static JsonObject completion(JsonObject request, String callId, String tool,
+                                       String args, JsonObject usage) {
+    return new JsonObject()
+        .put("id", "chatcmpl-" + callId)
+        .put("object", "chat.completion")
+        .put("created", System.currentTimeMillis() / 1000)
+        .put("model", request.getString("model", "mock"))
+        .put("choices", new JsonArray().add(new JsonObject()
+            .put("index", 0)
+            .put("message", new JsonObject()
+                .put("role", "assistant")
+                .putNull("content")
+                .put("tool_calls", new JsonArray().add(toolCall(callId, tool, args))))
+            .put("finish_reason", "tool_calls")))
+        .put("usage", usage);
+  }
+
+  private static JsonObject error(String message) {
+    return new JsonObject().put("error", new JsonObject()
+        .put("message", message).put("type", "mock_error"));
+  }
+
+  /** Stream the tool call as SSE chunks, {@code streamChunkMs} apart. */
+  private void stream(HttpServerResponse resp, String callId, String tool, String args,
+                      JsonObject usage) {
+    resp.setChunked(true)
+        .putHeader("content-type", "text/event-stream")
+        .putHeader("cache-control", "no-cache");
+    JsonArray chunks = new JsonArray();
+    chunks.add(delta(new JsonObject()
+        .put("index", 0).put("id", callId).put("type", "function")
+        .put("function", new JsonObject().put("name", tool).put("arguments", ""))));
+    for (int i = 0; i < args.length(); i += streamChunkChars) {
+      chunks.add(delta(new JsonObject().put("index", 0).put("function", new JsonObject()
+          .put("arguments", args.substring(i, Math.min(args.length(), i + streamChunkChars))))));
+    }
+    chunks.add(new JsonObject().put("choices", new JsonArray().add(new JsonObject()
+        .put("index", 0).put("delta", new JsonObject()).put("finish_reason", "tool_calls"))));
+    if (usage != null) {
+      chunks.add(new JsonObject().put("choices", new JsonArray()).put("usage", usage));
+    }
+    writeChunks(resp, chunks, 0);
+  }
+
+  private void writeChunks(HttpServerResponse resp, JsonArray chunks, int i) {
+    if (resp.closed()) {
+      return;
+    }
+    if (i == chunks.size()) {
+      resp.end("data: [DONE]\n\n");
+      return;
+    }
+    Future<Void> written = resp.write("data: " + chunks.getJsonObject(i).encode() + "\n\n");
+    if (streamChunkMs > 0) {
+      written.onComplete(ar -> vertx.setTimer(streamChunkMs, t -> writeChunks(resp, chunks, i + 1)));
+    } else {
+      written.onComplete(ar -> writeChunks(resp, chunks, i + 1));
+    }
+  }
+
+  private static JsonObject delta(JsonObject toolCall) {
+    return new JsonObject().put("choices", new JsonArray().add(new JsonObject()
+        .put("index", 0)
+        .put("delta", new JsonObject().put("tool_calls", new JsonArray().add(toolCall)))));
+  }
+
+  /**
+   * Standalone launcher: {@code [port] [latency-spec]}, defaulting to
+   * port 8089 and no added latency.
+   */
+  public static void main(String[] args) {
+    JsonObject config = new JsonObject()
+        .put("port", args.length > 0 ? Integer.parseInt(args[0]) : 8089)
+        .put("latency", args.length > 1 ? args[1] : "none");
+    Vertx vertx = Vertx.vertx();
+    vertx.deployVerticle(new MockChatCompletionsVerticle(),
+            new DeploymentOptions().setConfig(config))
+      .onFailure(err -> {
+        System.err.println("Failed to start mock endpoint: " + err.getMessage());
+        vertx.close();
+      });
+  }
+}
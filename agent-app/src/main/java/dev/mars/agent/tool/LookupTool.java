@@ -299,6 +299,11 @@ public class LookupTool implements Tool {
         + "(counterparty, security, settlement details).";
   }
 
+  @Override
+  public boolean readOnly() {
+    return true;
+  }
+
   @Override
   public JsonObject schema() {
     return new JsonObject()
@@ -314,6 +319,19 @@ public class LookupTool implements Tool {
         .put("required", new JsonArray().add("tradeId"));
   }
 
+  /**
+   * The trade ID actually looked up (the case ID when none is given) and
+   * the requested fields, with an absent or empty list made explicit as
+   * {@code []} — "all sections".
+   */
+  @Override
+  public JsonObject resolveArgs(JsonObject args, AgentContext ctx) {
+    JsonArray fields = args.getJsonArray("fields");
+    return new JsonObject()
+        .put("tradeId", args.getString("tradeId", ctx.caseId()))
+        .put("fields", fields == null ? new JsonArray() : fields.copy());
+  }
+
   @Override
   public Future<JsonObject> invoke(JsonObject args, AgentContext ctx) {
     String tradeId = args.getString("tradeId", ctx.caseId());
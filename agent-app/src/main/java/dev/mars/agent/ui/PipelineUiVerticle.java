@@ -101,7 +101,8 @@ public class PipelineUiVerticle extends AbstractVerticle {
     json.put("addresses", new JsonObject()
         .put("inbound", cfg.addresses().inbound())
         .put("agent", cfg.addresses().agent())
-        .put("events", cfg.addresses().events()));
+        .put("events", cfg.addresses().events())
+        .put("cancel", cfg.addresses().cancel()));
 
     // http
     json.put("http", new JsonObject()
@@ -10,6 +10,7 @@ import io.vertx.ext.web.Router;
 import io.vertx.ext.web.handler.BodyHandler;
 
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -34,6 +35,10 @@ import java.util.logging.Logger;
  * <ul>
  *   <li>{@code workflow.port} — HTTP port (default 8082)</li>
  * </ul>
+ *
+ * <p>When a cancel address is supplied, a run whose request fails, times
+ * out or whose browser connection drops is cancelled by publishing its
+ * {@code correlationId} there, just as {@code HttpApiVerticle} does.
  */
 public class WorkflowUiVerticle extends AbstractVerticle {
 
@@ -42,6 +47,7 @@ public class WorkflowUiVerticle extends AbstractVerticle {
   private final String inboundAddress;
   private final String eventsAddress;
   private final long requestTimeoutMs;
+  private final String cancelAddress;
 
   /**
    * Active SSE connections keyed by tradeId. Multiple connections for the
@@ -58,9 +64,22 @@ public class WorkflowUiVerticle extends AbstractVerticle {
    * @param requestTimeoutMs timeout for the pipeline request/reply
    */
   public WorkflowUiVerticle(String inboundAddress, String eventsAddress, long requestTimeoutMs) {
+    this(inboundAddress, eventsAddress, requestTimeoutMs, null);
+  }
+
+  /**
+   * @param inboundAddress   event bus address to send trade failures to
+   * @param eventsAddress    event bus address to subscribe to for domain events
+   * @param requestTimeoutMs timeout for the pipeline request/reply
+   * @param cancelAddress    event bus address to publish cancel signals on
+   *                         (e.g. "agent.required.cancel"), or {@code null}
+   */
+  public WorkflowUiVerticle(String inboundAddress, String eventsAddress, long requestTimeoutMs,
+                            String cancelAddress) {
     this.inboundAddress = inboundAddress;
     this.eventsAddress = eventsAddress;
     this.requestTimeoutMs = requestTimeoutMs;
+    this.cancelAddress = cancelAddress;
   }
 
   @Override
@@ -132,6 +151,15 @@ public class WorkflowUiVerticle extends AbstractVerticle {
       // send stage event: received
       pushStage(tradeId, "received", "Request received by workflow runner");
 
+      String correlationId = payload.getString("correlationId", UUID.randomUUID().toString());
+      payload.put("correlationId", correlationId);
+      HttpServerResponse response = ctx.response();
+      response.closeHandler(v -> {
+        if (!response.ended()) {
+          cancel(correlationId, "client disconnected");
+        }
+      });
+
       DeliveryOptions opts = new DeliveryOptions().setSendTimeout(requestTimeoutMs);
 
       // send stage event: dispatching
@@ -151,6 +179,7 @@ public class WorkflowUiVerticle extends AbstractVerticle {
           .onFailure(err -> {
             LOG.log(Level.WARNING, "Workflow run failed for tradeId=" + tradeId, err);
             pushStage(tradeId, "error", err.getMessage());
+            cancel(correlationId, err.getMessage());
 
             ctx.response()
                 .setStatusCode(500)
@@ -238,6 +267,15 @@ public class WorkflowUiVerticle extends AbstractVerticle {
     sseClients.clear();
   }
 
+  /** Publish a cancel signal so the agent stops an abandoned run. */
+  private void cancel(String correlationId, String reason) {
+    if (cancelAddress != null) {
+      vertx.eventBus().publish(cancelAddress, new JsonObject()
+          .put("correlationId", correlationId)
+          .put("reason", reason));
+    }
+  }
+
   /**
    * Push a stage-progress SSE event to the connected client for the
    * given tradeId.
@@ -0,0 +1,86 @@
+package dev.mars.agent;
+
+import dev.mars.agent.config.LlmConfig;
+import dev.mars.agent.config.PipelineConfig;
+import dev.mars.agent.config.PipelineConfigLoader;
+import dev.mars.agent.config.WarmupConfig;
+import dev.mars.agent.memory.InMemoryMemoryStore;
+import dev.mars.agent.mock.MockChatCompletionsVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Deploys the full verticle stack against the mock chat-completions
+ * server and reads the LLM and memory counters back over
+ * {@code GET /stats}.
+ */
+@ExtendWith(VertxExtension.class)
+class StatsEndpointTest {
+
+  @Test
+  void stats_route_reports_llm_and_memory_counters(Vertx vertx, VertxTestContext ctx)
+      throws Exception {
+    int port;
+    try (var socket = new java.net.ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    var mock = new MockChatCompletionsVerticle();
+    var options = new DeploymentOptions().setConfig(new JsonObject()
+        .put("http.port", port)
+        .put("ui.port", 0)
+        .put("workflow.port", 0));
+
+    vertx.deployVerticle(mock)
+        .compose(id -> {
+          PipelineConfig yaml = PipelineConfigLoader.load();
+          var llm = new LlmConfig("openai", Map.of(
+              "endpoint", "http://localhost:" + mock.actualPort(),
+              "apiKey", "sk-mock",
+              "model", "gpt-4o",
+              "cache.enabled", "true"));
+          var cfg = new PipelineConfig(yaml.addresses(), yaml.http(), yaml.schema(), yaml.agent(),
+              yaml.handlers(), yaml.tools(), llm, null, yaml.memory(), WarmupConfig.DISABLED);
+          return vertx.deployVerticle(new MainVerticle(cfg, new InMemoryMemoryStore()), options)
+              .map(cfg);
+        })
+        .compose(cfg -> vertx.eventBus().request(cfg.addresses().inbound(),
+            new JsonObject().put("tradeId", "T-3").put("reason", "LEI not found")))
+        .compose(reply -> vertx.createHttpClient().request(HttpMethod.GET, port, "localhost", "/stats"))
+        .compose(req -> req.send())
+        .compose(resp -> resp.body().map(body -> {
+          ctx.verify(() -> {
+            assertEquals(200, resp.statusCode());
+            JsonObject stats = body.toJsonObject();
+
+            JsonObject cache = stats.getJsonObject("llm");
+            assertTrue(cache.getLong("misses") > 0, cache.encode());
+            // The provider client sits at the bottom of the decorator chain
+            JsonObject provider = cache;
+            while (provider.containsKey("delegate")) {
+              provider = provider.getJsonObject("delegate");
+            }
+            assertTrue(provider.getJsonObject("promptCache").getLong("calls") > 0,
+                provider.encode());
+            assertNotNull(provider.getJsonObject("rateLimit"));
+
+            JsonObject memory = stats.getJsonObject("memory");
+            while (memory.containsKey("delegate")) {
+              memory = memory.getJsonObject("delegate");
+            }
+            assertEquals(1, memory.getInteger("cases"));
+          });
+          return body;
+        }))
+        .onComplete(ctx.succeedingThenComplete());
+  }
+}
@@ -1,13 +1,25 @@
 package dev.mars.agent.config;
 
+import dev.mars.agent.llm.BatchingLlmClient;
+import dev.mars.agent.llm.CachingLlmClient;
+import dev.mars.agent.llm.CascadingLlmClient;
+import dev.mars.agent.llm.CoalescingLlmClient;
+import dev.mars.agent.llm.FaultInjectingLlmClient;
 import dev.mars.agent.llm.LlmClient;
 import dev.mars.agent.llm.OpenAiLlmClient;
+import dev.mars.agent.llm.ReloadingStubLlmClient;
+import dev.mars.agent.llm.RoutingLlmClient;
 import dev.mars.agent.llm.StubLlmClient;
+import dev.mars.mcp.tool.AgentContext;
+import dev.mars.mcp.tool.Tool;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxExtension;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -21,6 +33,34 @@ class LlmClientFactoryTest {
     assertInstanceOf(StubLlmClient.class, client);
   }
 
+  @Test
+  void stub_with_inject_params_is_wrapped(Vertx vertx) {
+    LlmClient client = LlmClientFactory.create("stub",
+        Map.of("inject.latency", "empirical:50=1,200=1", "inject.throttleRate", "0.1",
+            "inject.seed", "7"), vertx);
+    assertInstanceOf(FaultInjectingLlmClient.class, client);
+    assertThrows(IllegalArgumentException.class, () -> LlmClientFactory.create("stub",
+        Map.of("inject.latency", "gaussian:1:2"), vertx));
+  }
+
+  @Test
+  void stub_loads_yaml_rules(Vertx vertx) {
+    LlmClient fromResource = LlmClientFactory.create("stub",
+        Map.of("rules.resource", "stub-rules.yaml"), vertx);
+    JsonObject cmd = fromResource.decideNext(
+        new JsonObject().put("tradeId", "T-1").put("reason", "Duplicate trade"),
+        new JsonObject().put("step", 3)).result();
+    assertEquals("comms.notify", cmd.getString("tool"));
+    assertEquals("pagerduty", cmd.getJsonObject("args").getString("channel"));
+
+    LlmClient fromFile = LlmClientFactory.create("stub",
+        Map.of("rules.file", "src/main/resources/stub-rules.yaml"), vertx);
+    assertInstanceOf(ReloadingStubLlmClient.class, fromFile);
+    ((ReloadingStubLlmClient) fromFile).close();
+    assertInstanceOf(StubLlmClient.class, LlmClientFactory.create("stub",
+        Map.of("rules.file", "src/main/resources/stub-rules.yaml", "rules.reloadMs", "0"), vertx));
+  }
+
   @Test
   void openai_requires_endpoint(Vertx vertx) {
     var ex = assertThrows(IllegalArgumentException.class,
@@ -55,6 +95,147 @@ class LlmClientFactoryTest {
     assertInstanceOf(OpenAiLlmClient.class, client);
   }
 
+  @Test
+  void openai_cache_enabled_wraps_client(Vertx vertx) {
+    LlmClient client = LlmClientFactory.create("openai",
+        Map.of("endpoint", "https://api.example.com",
+               "apiKey", "sk-literal-key",
+               "model", "gpt-4",
+               "cache.enabled", "true",
+               "cache.ttlMs", "60000"), vertx);
+    assertInstanceOf(CachingLlmClient.class, client);
+  }
+
+  @Test
+  void openai_backends_create_routing_client(Vertx vertx) {
+    LlmClient client = LlmClientFactory.create("openai",
+        Map.of("backends", "primary, dr",
+               "backend.primary.endpoint", "https://primary.example.com",
+               "backend.dr.endpoint", "https://dr.example.com",
+               "backend.dr.apiKey", "sk-dr",
+               "apiKey", "sk-literal-key",
+               "model", "gpt-4",
+               "routing.minHedgeDelayMs", "20"), vertx);
+    assertInstanceOf(RoutingLlmClient.class, client);
+    assertEquals(2, ((RoutingLlmClient) client).stats().getJsonArray("backends").size());
+  }
+
+  @Test
+  void openai_backend_requires_endpoint(Vertx vertx) {
+    var ex = assertThrows(IllegalArgumentException.class,
+        () -> LlmClientFactory.create("openai",
+            Map.of("backends", "primary,dr",
+                   "backend.primary.endpoint", "https://primary.example.com",
+                   "apiKey", "key", "model", "gpt-4"), vertx));
+    assertTrue(ex.getMessage().contains("backend.dr.endpoint"));
+  }
+
+  @Test
+  void openai_coalesce_wraps_client(Vertx vertx) {
+    LlmClient client = LlmClientFactory.create("openai",
+        Map.of("endpoint", "https://api.example.com",
+               "apiKey", "sk-literal-key",
+               "model", "gpt-4",
+               "coalesce", "true"), vertx);
+    assertInstanceOf(CoalescingLlmClient.class, client);
+  }
+
+  @Test
+  void openai_strict_requires_a_tool_call(Vertx vertx) {
+    Tool lookup = new Tool() {
+      @Override
+      public String name() { return "data.lookup"; }
+      @Override
+      public JsonObject schema() { return new JsonObject().put("type", "object"); }
+      @Override
+      public Future<JsonObject> invoke(JsonObject args, AgentContext ctx) {
+        return Future.succeededFuture(new JsonObject());
+      }
+    };
+    LlmClient client = LlmClientFactory.create("openai",
+        Map.of("endpoint", "https://api.example.com",
+               "apiKey", "sk-literal-key",
+               "model", "gpt-4",
+               "strict", "true"), vertx, List.of(lookup));
+    JsonObject body = assertInstanceOf(OpenAiLlmClient.class, client)
+        .batchRequest(new JsonObject(), new JsonObject());
+    assertEquals("required", body.getString("tool_choice"));
+    assertTrue(body.getJsonArray("tools").getJsonObject(0).getJsonObject("function").getBoolean("strict"));
+  }
+
+  @Test
+  void openai_cascade_model_wraps_client(Vertx vertx) {
+    LlmClient client = LlmClientFactory.create("openai",
+        Map.of("endpoint", "https://api.example.com",
+               "apiKey", "sk-literal-key",
+               "model", "gpt-4o",
+               "cascade.model", "gpt-4o-mini",
+               "cascade.largeSteps", "2, 3",
+               "cascade.largeTools", "events.publish"), vertx);
+    assertInstanceOf(CascadingLlmClient.class, client);
+  }
+
+  @Test
+  void openai_cascade_rejects_non_integer_steps(Vertx vertx) {
+    var ex = assertThrows(IllegalArgumentException.class,
+        () -> LlmClientFactory.create("openai",
+            Map.of("endpoint", "https://api.example.com",
+                   "apiKey", "sk-literal-key",
+                   "model", "gpt-4o",
+                   "cascade.model", "gpt-4o-mini",
+                   "cascade.largeSteps", "first"), vertx));
+    assertTrue(ex.getMessage().contains("cascade.largeSteps"));
+  }
+
+  @Test
+  void openai_batch_mode_wraps_client(Vertx vertx) {
+    LlmClient client = LlmClientFactory.create("openai",
+        Map.of("endpoint", "https://api.example.com",
+               "apiKey", "sk-literal-key",
+               "model", "gpt-4o",
+               "batch.enabled", "true",
+               "batch.reasons", "Stale price",
+               "batch.windows", "22:00-06:00"), vertx);
+    var batching = assertInstanceOf(BatchingLlmClient.class, client);
+    assertTrue(batching.defers(new io.vertx.core.json.JsonObject().put("reason", "Stale price"),
+        new io.vertx.core.json.JsonObject()));
+    batching.close();
+  }
+
+  @Test
+  void openai_batch_rejects_bad_window(Vertx vertx) {
+    assertThrows(IllegalArgumentException.class,
+        () -> LlmClientFactory.create("openai",
+            Map.of("endpoint", "https://api.example.com",
+                   "apiKey", "sk-literal-key",
+                   "model", "gpt-4o",
+                   "batch.enabled", "true",
+                   "batch.windows", "overnight"), vertx));
+  }
+
+  @Test
+  void openai_cache_refused_for_high_temperature(Vertx vertx) {
+    LlmClient client = LlmClientFactory.create("openai",
+        Map.of("endpoint", "https://api.example.com",
+               "apiKey", "sk-literal-key",
+               "model", "gpt-4",
+               "temperature", "0.8",
+               "cache.enabled", "true"), vertx);
+    assertInstanceOf(OpenAiLlmClient.class, client);
+    assertEquals(0.8, ((OpenAiLlmClient) client).temperature());
+  }
+
+  @Test
+  void invalid_numeric_param_throws(Vertx vertx) {
+    var ex = assertThrows(IllegalArgumentException.class,
+        () -> LlmClientFactory.create("openai",
+            Map.of("endpoint", "https://api.example.com",
+                   "apiKey", "sk-literal-key",
+                   "model", "gpt-4",
+                   "temperature", "warm"), vertx));
+    assertTrue(ex.getMessage().contains("temperature"));
+  }
+
   @Test
   void unknown_type_throws(Vertx vertx) {
     var ex = assertThrows(IllegalArgumentException.class,
@@ -13,6 +13,7 @@ class PipelineConfigLoaderTest {
     assertEquals("trade.failures", cfg.addresses().inbound());
     assertEquals("agent.required", cfg.addresses().agent());
     assertEquals("events.out", cfg.addresses().events());
+    assertEquals("agent.required.cancel", cfg.addresses().cancel());
   }
 
   @Test
@@ -40,6 +41,15 @@ class PipelineConfigLoaderTest {
     assertEquals(10_000, cfg.agent().timeoutMs());
   }
 
+  @Test
+  void yaml_agent_budget_is_unlimited_by_default() {
+    PipelineConfig cfg = PipelineConfigLoader.load("pipeline.yaml");
+    assertEquals(0, cfg.agent().budget().maxTokens());
+    assertEquals(0, cfg.agent().budget().maxWallClockMs());
+    assertEquals(0, cfg.agent().budget().maxCallsPerTool());
+    assertEquals(0, cfg.agent().budget().maxToolLatencyMs());
+  }
+
   @Test
   void yaml_handlers_are_parsed() {
     PipelineConfig cfg = PipelineConfigLoader.load("pipeline.yaml");
@@ -66,12 +76,47 @@ class PipelineConfigLoaderTest {
     assertEquals("notify", cfg.tools().get(4).type());
   }
 
+  @Test
+  void yaml_tool_cache_is_parsed() {
+    PipelineConfig cfg = PipelineConfigLoader.load("pipeline.yaml");
+    assertNull(cfg.tools().get(0).cache());
+    var cache = cfg.tools().get(2).cache();
+    assertNotNull(cache);
+    assertTrue(cache.enabled());
+    assertEquals("global", cache.scope());
+    assertEquals(java.util.List.of("tradeId", "fields"), cache.keyFields());
+  }
+
   @Test
   void yaml_llm_is_parsed() {
     PipelineConfig cfg = PipelineConfigLoader.load("pipeline.yaml");
     assertEquals("stub", cfg.llm().type());
   }
 
+  @Test
+  void yaml_memory_section_is_parsed() {
+    PipelineConfig cfg = PipelineConfigLoader.load("pipeline.yaml");
+    assertFalse(cfg.memory().writeBehind());
+    assertEquals(64, cfg.memory().maxBatchSize());
+    assertEquals(0, cfg.memory().flushDelayMs());
+    assertEquals(50_000, cfg.memory().maxCases());
+    assertEquals(200, cfg.memory().maxLogEntries());
+    assertEquals(86_400_000, cfg.memory().idleTtlMs());
+    assertEquals(268_435_456, cfg.memory().maxBytes());
+    assertFalse(cfg.memory().log().enabled());
+    assertEquals("always", cfg.memory().log().fsync());
+    assertEquals(60_000, cfg.memory().log().snapshotIntervalMs());
+  }
+
+  @Test
+  void yaml_warmup_section_is_parsed() {
+    PipelineConfig cfg = PipelineConfigLoader.load("pipeline.yaml");
+    assertTrue(cfg.warmup().enabled());
+    assertEquals(4, cfg.warmup().connections());
+    assertEquals(200, cfg.warmup().iterations());
+    assertEquals(10_000, cfg.warmup().timeoutMs());
+  }
+
   @Test
   void missing_resource_throws() {
     var ex = assertThrows(IllegalStateException.class,
@@ -5,12 +5,15 @@ import dev.mars.agent.tool.LookupTool;
 import dev.mars.agent.tool.NotifyTool;
 import dev.mars.agent.tool.PublishEventTool;
 import dev.mars.agent.tool.RaiseTicketTool;
+import dev.mars.mcp.tool.CachingTool;
 import dev.mars.mcp.tool.Tool;
 import io.vertx.core.Vertx;
 import io.vertx.junit5.VertxExtension;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(VertxExtension.class)
@@ -51,6 +54,38 @@ class ToolFactoryTest {
     assertEquals("comms.notify", tool.name());
   }
 
+  @Test
+  void cache_config_wraps_read_only_tool(Vertx vertx) {
+    var cfg = new ToolConfig("lookup",
+        new ToolCacheConfig(true, "global", List.of("tradeId"), 0, 0));
+    Tool tool = ToolFactory.create(cfg, vertx, "events.out");
+    assertInstanceOf(CachingTool.class, tool);
+    assertEquals("data.lookup", tool.name());
+  }
+
+  @Test
+  void cache_config_is_ignored_for_side_effecting_tool(Vertx vertx) {
+    var cfg = new ToolConfig("notify",
+        new ToolCacheConfig(true, "global", List.of("tradeId"), 0, 0));
+    Tool tool = ToolFactory.create(cfg, vertx, "events.out");
+    assertInstanceOf(NotifyTool.class, tool);
+  }
+
+  @Test
+  void execution_config_is_ignored_for_non_blocking_tool(Vertx vertx) {
+    var cfg = new ToolConfig("classify", null, new ExecutionConfig("worker", 4));
+    Tool tool = ToolFactory.create(cfg, vertx, "events.out");
+    assertInstanceOf(ClassifyTool.class, tool);
+  }
+
+  @Test
+  void non_blocking_tool_hands_out_no_executor(Vertx vertx) {
+    var cfg = new ToolConfig("classify", null, new ExecutionConfig("worker", 4));
+    var executors = new java.util.ArrayList<dev.mars.mcp.tool.BlockingExecutor>();
+    ToolFactory.create(cfg, vertx, "events.out", executors::add);
+    assertTrue(executors.isEmpty());
+  }
+
   @Test
   void unknown_type_throws(Vertx vertx) {
     var ex = assertThrows(IllegalArgumentException.class,
@@ -1,6 +1,7 @@
 package dev.mars.agent.handler;
 import dev.mars.mcp.tool.Tool;
 
+import dev.mars.agent.llm.KeywordRule;
 import dev.mars.agent.llm.StubLlmClient;
 import dev.mars.agent.llm.StubRuleSet;
 import org.junit.jupiter.api.Test;
@@ -19,6 +20,18 @@ class TradeFailureRuleLoaderTest {
     assertNotNull(ruleSet.fallback());
   }
 
+  @Test
+  void every_rule_declares_its_keywords() {
+    var rules = new TradeFailureRuleLoader().load().rules();
+    assertTrue(rules.stream().allMatch(r -> r instanceof KeywordRule), "all rules indexable");
+    // First match wins: "LEI" comes before the mismatch rule's keywords
+    var result = new TradeFailureRuleLoader().load().toClient()
+        .decideNext(new JsonObject().put("tradeId", "T-1").put("reason", "LEI mismatch"),
+            new JsonObject().put("step", 1))
+        .result();
+    assertEquals("ReferenceData", result.getJsonObject("args").getString("category"));
+  }
+
   @Test
   void lei_step0_triggers_lookup() {
     var loader = new TradeFailureRuleLoader();
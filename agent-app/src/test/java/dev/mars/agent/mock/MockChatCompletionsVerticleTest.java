@@ -0,0 +1,107 @@
+package dev.mars.agent.mock;
+
+import dev.mars.agent.llm.LlmApiException;
+import dev.mars.agent.llm.OpenAiLlmClient;
+import dev.mars.agent.llm.OpenAiSettings;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class MockChatCompletionsVerticleTest {
+
+  private static final JsonObject LEI_EVENT = new JsonObject()
+      .put("tradeId", "T-900").put("reason", "Missing LEI for counterparty");
+
+  private static Future<MockChatCompletionsVerticle> deploy(Vertx vertx, JsonObject config) {
+    var mock = new MockChatCompletionsVerticle();
+    return vertx.deployVerticle(mock, new DeploymentOptions().setConfig(config)).map(id -> mock);
+  }
+
+  private static OpenAiLlmClient client(Vertx vertx, MockChatCompletionsVerticle mock,
+                                        OpenAiSettings settings) {
+    return new OpenAiLlmClient(vertx, "http://localhost:" + mock.actualPort(),
+        "sk-mock", "gpt-4o", settings, List.of());
+  }
+
+  @Test
+  void real_client_follows_the_scripted_scenario(Vertx vertx, VertxTestContext ctx) {
+    deploy(vertx, new JsonObject()).onComplete(ctx.succeeding(mock -> {
+      var client = client(vertx, mock, OpenAiSettings.DEFAULTS);
+      client.decideNext(LEI_EVENT, new JsonObject().put("step", 0))
+        .compose(first -> client.decideNext(LEI_EVENT, new JsonObject().put("step", 1))
+            .map(second -> List.of(first, second)))
+        .onComplete(ctx.succeeding(cmds -> ctx.verify(() -> {
+          assertEquals("data.lookup", cmds.get(0).getString("tool"));
+          assertEquals("T-900", cmds.get(0).getJsonObject("args").getString("tradeId"));
+          assertTrue(cmds.get(0).getJsonObject("usage").getInteger("prompt_tokens") > 100);
+          assertEquals("case.classify", cmds.get(1).getString("tool"));
+          assertEquals("ReferenceData", cmds.get(1).getJsonObject("args").getString("category"));
+          assertEquals(2, mock.stats().getLong("requests"));
+          ctx.completeNow();
+        })));
+    }));
+  }
+
+  @Test
+  void streaming_requests_get_sse_chunks(Vertx vertx, VertxTestContext ctx) {
+    deploy(vertx, new JsonObject().put("streamChunkChars", 8).put("streamChunkMs", 1))
+      .onComplete(ctx.succeeding(mock -> client(vertx, mock, OpenAiSettings.DEFAULTS.withStream(true))
+        .decideNext(LEI_EVENT, new JsonObject().put("step", 2))
+        .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+          assertEquals("case.raiseTicket", cmd.getString("tool"));
+          assertEquals("T-900", cmd.getJsonObject("args").getString("tradeId"));
+          assertEquals(1, mock.stats().getLong("streamed"));
+          ctx.completeNow();
+        })))));
+  }
+
+  @Test
+  void throttling_returns_429_with_retry_after(Vertx vertx, VertxTestContext ctx) {
+    deploy(vertx, new JsonObject().put("throttleRate", 1.0).put("retryAfterMs", 250))
+      .onComplete(ctx.succeeding(mock -> client(vertx, mock, OpenAiSettings.DEFAULTS)
+        .decideNext(LEI_EVENT, new JsonObject().put("step", 0))
+        .onComplete(ctx.failing(err -> ctx.verify(() -> {
+          var api = assertInstanceOf(LlmApiException.class, err);
+          assertEquals(429, api.status());
+          assertEquals(250, api.retryAfterMs());
+          assertEquals(1, mock.stats().getLong("throttled"));
+          ctx.completeNow();
+        })))));
+  }
+
+  @Test
+  void latency_profile_delays_responses(Vertx vertx, VertxTestContext ctx) {
+    deploy(vertx, new JsonObject().put("latency", "fixed:150")).onComplete(ctx.succeeding(mock -> {
+      long start = System.currentTimeMillis();
+      client(vertx, mock, OpenAiSettings.DEFAULTS)
+        .decideNext(LEI_EVENT, new JsonObject().put("step", 0))
+        .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+          assertTrue(System.currentTimeMillis() - start >= 140);
+          ctx.completeNow();
+        })));
+    }));
+  }
+
+  @Test
+  void prompt_without_event_is_rejected(Vertx vertx, VertxTestContext ctx) {
+    deploy(vertx, new JsonObject()).onComplete(ctx.succeeding(mock ->
+      vertx.createHttpClient()
+        .request(io.vertx.core.http.HttpMethod.POST, mock.actualPort(), "localhost", "/chat/completions")
+        .compose(req -> req.send(new JsonObject().put("messages", new io.vertx.core.json.JsonArray()
+            .add(new JsonObject().put("role", "user").put("content", "hello"))).encode()))
+        .onComplete(ctx.succeeding(resp -> ctx.verify(() -> {
+          assertEquals(400, resp.statusCode());
+          ctx.completeNow();
+        })))));
+  }
+}
@@ -22,6 +22,11 @@ class LookupToolTest {
     assertEquals("data.lookup", tool.name());
   }
 
+  @Test
+  void is_read_only() {
+    assertTrue(new LookupTool().readOnly());
+  }
+
   @Test
   void description_is_not_empty() {
     var tool = new LookupTool();
@@ -39,6 +44,20 @@ class LookupToolTest {
     assertTrue(required.contains("tradeId"));
   }
 
+  @Test
+  void resolved_args_fill_trade_id_from_case_and_default_fields() {
+    var tool = new LookupTool();
+
+    var resolved = tool.resolveArgs(new JsonObject(), testCtx());
+    assertEquals("case-1", resolved.getString("tradeId"));
+    assertEquals(new JsonArray(), resolved.getJsonArray("fields"));
+
+    var explicit = tool.resolveArgs(new JsonObject().put("tradeId", "T-9")
+        .put("fields", new JsonArray().add("security")), testCtx());
+    assertEquals("T-9", explicit.getString("tradeId"));
+    assertEquals(new JsonArray().add("security"), explicit.getJsonArray("fields"));
+  }
+
   @Test
   void invoke_returns_full_data_without_fields_filter() {
     var tool = new LookupTool();
@@ -1,6 +1,7 @@
 package dev.mars.agent.api;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonObject;
@@ -8,6 +9,8 @@ import io.vertx.ext.web.Router;
 import io.vertx.ext.web.handler.BodyHandler;
 
 import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -22,7 +25,11 @@ import java.util.stream.Collectors;
  *
  * <h2>Endpoints</h2>
  * <ul>
- *   <li>{@code GET /health} — returns {@code {"status":"UP"}}.</li>
+ *   <li>{@code GET /health} — returns {@code {"status":"UP"}} once the
+ *       pipeline is {@linkplain Readiness ready}, {@code 503} with
+ *       {@code {"status":"STARTING"}} before.</li>
+ *   <li>{@code GET /stats} — the pipeline's monitoring counters, as
+ *       supplied by the bootstrap (LLM client and memory store).</li>
  *   <li>{@code POST <routePath>} — accepts a JSON body, validates that
  *       all {@code requiredFields} are present, sanitises the payload to
  *       the {@code allowedFields} whitelist, then dispatches it over the
@@ -43,6 +50,14 @@ import java.util.stream.Collectors;
  * downstream. This prevents unexpected or malicious data from reaching
  * the processor or LLM agent.
  *
+ * <h2>Cancellation</h2>
+ * Each dispatched payload is stamped with a {@code correlationId} (kept
+ * from the body if {@code correlationId} is an allowed field, generated
+ * otherwise). When a {@code cancelAddress} is configured and the
+ * request times out, fails, or the client disconnects before the reply
+ * is written, {@code {"correlationId", "reason"}} is published there so
+ * the agent runner can stop the abandoned run.
+ *
  */
 public class HttpApiVerticle extends AbstractVerticle {
 
@@ -53,6 +68,9 @@ public class HttpApiVerticle extends AbstractVerticle {
   private final String targetAddress;
   private final Set<String> allowedFields;
   private final Set<String> requiredFields;
+  private final String cancelAddress;
+  private final Readiness readiness;
+  private final Supplier<JsonObject> stats;
 
   /**
    * Creates a new HTTP API verticle with the given routing and validation
@@ -74,6 +92,79 @@ public class HttpApiVerticle extends AbstractVerticle {
                          String targetAddress,
                          Set<String> allowedFields,
                          Set<String> requiredFields) {
+    this(routePath, targetAddress, allowedFields, requiredFields, null);
+  }
+
+  /**
+   * Creates a new HTTP API verticle that also propagates cancellation of
+   * abandoned requests.
+   *
+   * @param routePath      the POST route path
+   * @param targetAddress  the event bus address to dispatch payloads to
+   * @param allowedFields  field names forwarded downstream
+   * @param requiredFields field names that must be present
+   * @param cancelAddress  the event bus address to publish cancel signals
+   *                       on, or {@code null} to disable
+   * @throws IllegalArgumentException if {@code requiredFields} contains
+   *         names not present in {@code allowedFields}
+   */
+  public HttpApiVerticle(String routePath,
+                         String targetAddress,
+                         Set<String> allowedFields,
+                         Set<String> requiredFields,
+                         String cancelAddress) {
+    this(routePath, targetAddress, allowedFields, requiredFields, cancelAddress, Readiness.ready());
+  }
+
+  /**
+   * Creates a new HTTP API verticle whose health check follows the
+   * bootstrap's readiness.
+   *
+   * @param routePath      the POST route path
+   * @param targetAddress  the event bus address to dispatch payloads to
+   * @param allowedFields  field names forwarded downstream
+   * @param requiredFields field names that must be present
+   * @param cancelAddress  the event bus address to publish cancel signals
+   *                       on, or {@code null} to disable
+   * @param readiness      reported by {@code GET /health}
+   * @throws IllegalArgumentException if {@code requiredFields} contains
+   *         names not present in {@code allowedFields}
+   */
+  public HttpApiVerticle(String routePath,
+                         String targetAddress,
+                         Set<String> allowedFields,
+                         Set<String> requiredFields,
+                         String cancelAddress,
+                         Readiness readiness) {
+    this(routePath, targetAddress, allowedFields, requiredFields, cancelAddress, readiness,
+        JsonObject::new);
+  }
+
+  /**
+   * Creates a new HTTP API verticle that also serves monitoring counters.
+   *
+   * @param routePath      the POST route path
+   * @param targetAddress  the event bus address to dispatch payloads to
+   * @param allowedFields  field names forwarded downstream
+   * @param requiredFields field names that must be present
+   * @param cancelAddress  the event bus address to publish cancel signals
+   *                       on, or {@code null} to disable
+   * @param readiness      reported by {@code GET /health}
+   * @param stats          called for each {@code GET /stats}; must be
+   *                       cheap and non-blocking
+   * @throws IllegalArgumentException if {@code requiredFields} contains
+   *         names not present in {@code allowedFields}
+   */
+  public HttpApiVerticle(String routePath,
+                         String targetAddress,
+                         Set<String> allowedFields,
+                         Set<String> requiredFields,
+                         String cancelAddress,
+                         Readiness readiness,
+                         Supplier<JsonObject> stats) {
+    this.cancelAddress = cancelAddress;
+    this.stats = stats;
+    this.readiness = readiness;
     this.routePath = routePath;
     this.targetAddress = targetAddress;
     this.allowedFields = Set.copyOf(allowedFields);
@@ -103,8 +194,13 @@ public class HttpApiVerticle extends AbstractVerticle {
     router.route().handler(BodyHandler.create());
 
     router.get("/health").handler(ctx -> ctx.response()
+      .setStatusCode(readiness.isReady() ? 200 : 503)
+      .putHeader("content-type", "application/json")
+      .end(readiness.toJson().encode()));
+
+    router.get("/stats").handler(ctx -> ctx.response()
       .putHeader("content-type", "application/json")
-      .end(new JsonObject().put("status", "UP").encode()));
+      .end(stats.get().encode()));
 
     router.post(routePath).handler(ctx -> {
       JsonObject event = ctx.body().asJsonObject();
@@ -139,8 +235,18 @@ public class HttpApiVerticle extends AbstractVerticle {
         }
       }
 
+      String correlationId = sanitized.getString("correlationId", UUID.randomUUID().toString());
+      sanitized.put("correlationId", correlationId);
+
       LOG.fine("Dispatching sanitised payload to " + targetAddress + ": " + sanitized.encode());
 
+      HttpServerResponse response = ctx.response();
+      response.closeHandler(v -> {
+        if (!response.ended()) {
+          cancel(correlationId, "client disconnected");
+        }
+      });
+
       DeliveryOptions opts = new DeliveryOptions().setSendTimeout(timeoutMs);
       vertx.eventBus().request(targetAddress, sanitized, opts)
         .onSuccess(reply -> {
@@ -150,6 +256,7 @@ public class HttpApiVerticle extends AbstractVerticle {
             .end(((JsonObject) reply.body()).encodePrettily());
         }).onFailure(err -> {
           LOG.warning("Request failed on " + routePath + ": " + err.getMessage());
+          cancel(correlationId, err.getMessage());
           ctx.response().setStatusCode(500)
             .putHeader("content-type", "application/json")
             .end(new JsonObject()
@@ -167,4 +274,15 @@ public class HttpApiVerticle extends AbstractVerticle {
       })
       .onFailure(startPromise::fail);
   }
+
+  /** Tell the agent runner to stop work nobody is waiting for any more. */
+  private void cancel(String correlationId, String reason) {
+    if (cancelAddress == null) {
+      return;
+    }
+    LOG.info("Publishing cancel for correlationId=" + correlationId + ": " + reason);
+    vertx.eventBus().publish(cancelAddress, new JsonObject()
+        .put("correlationId", correlationId)
+        .put("reason", reason));
+  }
 }
@@ -0,0 +1,52 @@
+package dev.mars.agent.api;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Whether the pipeline is ready for traffic, as reported by
+ * {@code GET /health} on {@link HttpApiVerticle}.
+ *
+ * <p>The bootstrap creates one in the starting state, hands it to the
+ * HTTP verticle and {@linkplain #markReady marks it ready} once every
+ * verticle is deployed and the startup warm-up has finished. Until then
+ * {@code /health} answers {@code 503}, so a load balancer keeps routing
+ * elsewhere. Thread-safe.
+ */
+public final class Readiness {
+
+  private volatile boolean ready;
+  private volatile JsonObject details = new JsonObject();
+
+  /** A readiness flag in the starting state. */
+  public Readiness() {
+  }
+
+  /** A readiness flag that is already ready, for callers with no startup phase. */
+  public static Readiness ready() {
+    Readiness readiness = new Readiness();
+    readiness.markReady(new JsonObject());
+    return readiness;
+  }
+
+  /**
+   * Flip to ready.
+   *
+   * @param details extra fields for the health body (e.g. the warm-up
+   *                report); copied
+   */
+  public void markReady(JsonObject details) {
+    this.details = details.copy();
+    this.ready = true;
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  /** The health body: {@code status} {@code UP} or {@code STARTING}, plus the details. */
+  public JsonObject toJson() {
+    return new JsonObject()
+        .put("status", ready ? "UP" : "STARTING")
+        .mergeIn(details);
+  }
+}
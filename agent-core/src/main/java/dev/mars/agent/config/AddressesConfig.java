@@ -6,9 +6,24 @@ package dev.mars.agent.config;
  * @param inbound the address for inbound failure events (request/reply)
  * @param agent   the address for forwarding to the LLM agent (request/reply)
  * @param events  the address for outbound domain events (publish/subscribe)
+ * @param cancel  the address on which ingress verticles publish cancel
+ *                signals for abandoned agent runs (publish/subscribe);
+ *                defaults to {@code <agent>.cancel}
  */
 public record AddressesConfig(
     String inbound,
     String agent,
-    String events
-) {}
+    String events,
+    String cancel
+) {
+  public AddressesConfig {
+    if (cancel == null || cancel.isBlank()) {
+      cancel = agent + ".cancel";
+    }
+  }
+
+  /** Creates an address configuration with the default cancel address. */
+  public AddressesConfig(String inbound, String agent, String events) {
+    this(inbound, agent, events, null);
+  }
+}
@@ -5,8 +5,20 @@ package dev.mars.agent.config;
  *
  * @param maxSteps  maximum iterative steps before safety stop
  * @param timeoutMs timeout for agent dispatch in milliseconds
+ * @param budget    per-run token, wall-clock and tool budgets; defaults to
+ *                  {@link BudgetConfig#UNLIMITED} when omitted
  */
 public record AgentConfig(
     int maxSteps,
-    long timeoutMs
-) {}
+    long timeoutMs,
+    BudgetConfig budget
+) {
+  public AgentConfig {
+    if (budget == null) budget = BudgetConfig.UNLIMITED;
+  }
+
+  /** Creates an agent config without per-run budgets. */
+  public AgentConfig(int maxSteps, long timeoutMs) {
+    this(maxSteps, timeoutMs, null);
+  }
+}
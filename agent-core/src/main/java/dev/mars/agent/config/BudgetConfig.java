@@ -0,0 +1,46 @@
+package dev.mars.agent.config;
+
+/**
+ * Per-run resource budgets for the agent loop.
+ *
+ * <p>Every limit uses {@code 0} to mean "unlimited", so an absent
+ * {@code budget} section (or any omitted field) leaves that dimension
+ * unguarded. When a budget is exhausted the runner stops the loop and
+ * replies with a {@code "partial"} result instead of failing.
+ *
+ * <h2>Example YAML</h2>
+ * <pre>
+ * agent:
+ *   maxSteps: 8
+ *   timeoutMs: 10000
+ *   budget:
+ *     maxTokens: 20000
+ *     maxWallClockMs: 8000
+ *     maxCallsPerTool: 3
+ *     maxToolLatencyMs: 5000
+ * </pre>
+ *
+ * @param maxTokens        maximum LLM tokens (as reported by the provider's
+ *                         {@code usage.total_tokens}) consumed by one run
+ * @param maxWallClockMs   maximum elapsed time of one run in milliseconds
+ * @param maxCallsPerTool  maximum number of invocations of any single tool
+ *                         within one run
+ * @param maxToolLatencyMs maximum cumulative time spent inside tool
+ *                         invocations within one run, in milliseconds
+ */
+public record BudgetConfig(
+    long maxTokens,
+    long maxWallClockMs,
+    int maxCallsPerTool,
+    long maxToolLatencyMs
+) {
+  /** A budget with every dimension unlimited. */
+  public static final BudgetConfig UNLIMITED = new BudgetConfig(0, 0, 0, 0);
+
+  public BudgetConfig {
+    if (maxTokens < 0) throw new IllegalArgumentException("maxTokens must be >= 0");
+    if (maxWallClockMs < 0) throw new IllegalArgumentException("maxWallClockMs must be >= 0");
+    if (maxCallsPerTool < 0) throw new IllegalArgumentException("maxCallsPerTool must be >= 0");
+    if (maxToolLatencyMs < 0) throw new IllegalArgumentException("maxToolLatencyMs must be >= 0");
+  }
+}
@@ -0,0 +1,60 @@
+package dev.mars.agent.config;
+
+import dev.mars.mcp.tool.BlockingExecutor;
+import io.vertx.core.Vertx;
+
+/**
+ * Execution settings for a blocking tool or handler.
+ *
+ * <p>Only applies to components implemented against the blocking
+ * contracts ({@link dev.mars.mcp.tool.BlockingTool},
+ * {@link dev.mars.agent.processor.BlockingFailureHandler}); natively
+ * asynchronous components always run on the event loop.
+ *
+ * <h2>Example YAML</h2>
+ * <pre>
+ * tools:
+ *   - type: "ref-data-jdbc"
+ *     execution:
+ *       mode: "virtual-thread"
+ *       maxConcurrency: 32
+ * </pre>
+ *
+ * @param mode           {@code "virtual-thread"} (default) to run each call
+ *                       on its own virtual thread, or {@code "worker"} to use
+ *                       a dedicated Vert.x worker pool
+ * @param maxConcurrency maximum number of calls running at once
+ *                       ({@code 0} = {@link #DEFAULT_MAX_CONCURRENCY})
+ */
+public record ExecutionConfig(
+    String mode,
+    int maxConcurrency
+) {
+  /** Concurrency limit applied when none is configured. */
+  public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+  /** Virtual threads with the default concurrency limit. */
+  public static final ExecutionConfig DEFAULT = new ExecutionConfig("virtual-thread", 0);
+
+  public ExecutionConfig {
+    if (mode == null || mode.isBlank()) mode = "virtual-thread";
+    if (!mode.equals("virtual-thread") && !mode.equals("worker")) {
+      throw new IllegalArgumentException("execution mode must be 'virtual-thread' or 'worker': " + mode);
+    }
+    if (maxConcurrency < 0) throw new IllegalArgumentException("maxConcurrency must be >= 0");
+    if (maxConcurrency == 0) maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+  }
+
+  /**
+   * Create the executor described by this configuration.
+   *
+   * @param vertx the Vert.x instance (used by the worker mode)
+   * @param name  executor / pool name, typically the tool or handler name
+   * @return a new executor
+   */
+  public BlockingExecutor toExecutor(Vertx vertx, String name) {
+    return mode.equals("worker")
+        ? BlockingExecutor.workerPool(vertx, name, maxConcurrency)
+        : BlockingExecutor.virtualThreads(name, maxConcurrency);
+  }
+}
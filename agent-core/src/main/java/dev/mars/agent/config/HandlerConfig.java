@@ -5,17 +5,26 @@ import java.util.Map;
 /**
  * Configuration for a single deterministic failure handler.
  *
- * @param reason the failure-reason string that triggers this handler
- * @param type   the handler alias (e.g. {@code "lookup-enrich"},
- *               {@code "escalate"}) resolved by the handler factory
- * @param params type-specific parameters (e.g. {@code {identifier: "ISIN"}})
+ * @param reason    the failure-reason string that triggers this handler
+ * @param type      the handler alias (e.g. {@code "lookup-enrich"},
+ *                  {@code "escalate"}) resolved by the handler factory
+ * @param params    type-specific parameters (e.g. {@code {identifier: "ISIN"}})
+ * @param execution optional execution settings for blocking handlers
+ *                  (nullable; blocking handlers default to
+ *                  {@link ExecutionConfig#DEFAULT})
  */
 public record HandlerConfig(
     String reason,
     String type,
-    Map<String, String> params
+    Map<String, String> params,
+    ExecutionConfig execution
 ) {
   public HandlerConfig {
     if (params == null) params = Map.of();
   }
+
+  /** Creates a handler config without execution settings. */
+  public HandlerConfig(String reason, String type, Map<String, String> params) {
+    this(reason, type, params, null);
+  }
 }
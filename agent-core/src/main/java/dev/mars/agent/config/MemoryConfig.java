@@ -0,0 +1,65 @@
+package dev.mars.agent.config;
+
+import dev.mars.agent.memory.MemoryBounds;
+
+/**
+ * Memory store configuration.
+ *
+ * <h2>Example YAML</h2>
+ * <pre>
+ * memory:
+ *   writeBehind: true
+ *   maxBatchSize: 64
+ *   flushDelayMs: 0
+ *   maxCases: 50000
+ *   maxLogEntries: 200
+ *   idleTtlMs: 86400000
+ *   maxBytes: 268435456
+ *   log:
+ *     enabled: false
+ * </pre>
+ *
+ * @param writeBehind   when {@code true}, step entries are queued per case
+ *                      and group-committed in the background; the agent
+ *                      reply waits only for the final flush
+ * @param maxBatchSize  maximum entries per write-behind commit ({@code 0}
+ *                      for the store default)
+ * @param flushDelayMs  how long a write-behind batch waits for more
+ *                      entries before committing ({@code 0} = immediately)
+ * @param maxCases      cases the in-memory store holds before evicting
+ *                      the least recently used ({@code 0} = unlimited)
+ * @param maxLogEntries log entries kept per case ({@code 0} = unlimited)
+ * @param idleTtlMs     evict cases untouched for this long ({@code 0} =
+ *                      never)
+ * @param maxBytes      approximate size budget for the in-memory store
+ *                      ({@code 0} = unlimited)
+ * @param log           durable on-disk log used instead of the in-memory
+ *                      store when enabled (the limits above then do not
+ *                      apply)
+ */
+public record MemoryConfig(
+    boolean writeBehind,
+    int maxBatchSize,
+    long flushDelayMs,
+    int maxCases,
+    int maxLogEntries,
+    long idleTtlMs,
+    long maxBytes,
+    MemoryLogConfig log
+) {
+  /** Synchronous persistence: every append is awaited; nothing is evicted. */
+  public static final MemoryConfig DEFAULT = new MemoryConfig(false, 0, 0, 0, 0, 0, 0, null);
+
+  public MemoryConfig {
+    if (maxBatchSize < 0) throw new IllegalArgumentException("maxBatchSize must be >= 0");
+    if (flushDelayMs < 0) throw new IllegalArgumentException("flushDelayMs must be >= 0");
+    if (log == null) log = MemoryLogConfig.DISABLED;
+    // Validates the remaining limits
+    new MemoryBounds(maxCases, maxLogEntries, idleTtlMs, maxBytes);
+  }
+
+  /** The limits for an {@link dev.mars.agent.memory.InMemoryMemoryStore}. */
+  public MemoryBounds toBounds() {
+    return new MemoryBounds(maxCases, maxLogEntries, idleTtlMs, maxBytes);
+  }
+}
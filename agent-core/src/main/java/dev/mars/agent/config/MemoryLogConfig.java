@@ -0,0 +1,72 @@
+package dev.mars.agent.config;
+
+import dev.mars.agent.memory.SegmentedLogSettings;
+import dev.mars.agent.memory.SegmentedLogSettings.FsyncPolicy;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Durable memory log settings: when enabled, case state and step logs are
+ * kept in a {@link dev.mars.agent.memory.SegmentedLogMemoryStore} on local
+ * disk instead of in memory, and survive restarts.
+ *
+ * <h2>Example YAML</h2>
+ * <pre>
+ * memory:
+ *   log:
+ *     enabled: true
+ *     dir: "data/memory"
+ *     segmentBytes: 67108864
+ *     fsync: "always"        # always | interval | never
+ *     fsyncIntervalMs: 1000
+ * </pre>
+ *
+ * @param enabled            whether to use the durable log
+ * @param dir                directory for the segment files (default
+ *                           {@value #DEFAULT_DIR})
+ * @param segmentBytes       segment size ({@code 0} for the default, 64 MiB)
+ * @param fsync              {@code always}, {@code interval} or {@code never}
+ *                           (default {@code always})
+ * @param fsyncIntervalMs    period for {@code interval} ({@code 0} for the
+ *                           default, 1000)
+ * @param snapshotIntervalMs period of closed-case compaction and index
+ *                           snapshots ({@code 0} for the default, 60000)
+ */
+public record MemoryLogConfig(
+    boolean enabled,
+    String dir,
+    long segmentBytes,
+    String fsync,
+    long fsyncIntervalMs,
+    long snapshotIntervalMs
+) {
+  public static final String DEFAULT_DIR = "data/memory";
+
+  /** Keep memory in process. */
+  public static final MemoryLogConfig DISABLED = new MemoryLogConfig(false, null, 0, null, 0, 0);
+
+  public MemoryLogConfig {
+    if (dir == null || dir.isBlank()) dir = DEFAULT_DIR;
+    if (fsync == null || fsync.isBlank()) fsync = "always";
+    // Validates the remaining fields
+    toSettings(dir, segmentBytes, fsync, fsyncIntervalMs, snapshotIntervalMs);
+  }
+
+  /** The settings for the store. */
+  public SegmentedLogSettings toSettings() {
+    return toSettings(dir, segmentBytes, fsync, fsyncIntervalMs, snapshotIntervalMs);
+  }
+
+  private static SegmentedLogSettings toSettings(String dir, long segmentBytes, String fsync,
+                                                 long fsyncIntervalMs, long snapshotIntervalMs) {
+    FsyncPolicy policy;
+    try {
+      policy = FsyncPolicy.valueOf(fsync.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("fsync must be always, interval or never: " + fsync);
+    }
+    return new SegmentedLogSettings(Path.of(dir), segmentBytes, policy, fsyncIntervalMs,
+        snapshotIntervalMs);
+  }
+}
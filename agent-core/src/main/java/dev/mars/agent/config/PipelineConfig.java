@@ -16,6 +16,7 @@ import java.util.List;
  *   inbound: "trade.failures"
  *   agent:   "agent.required"
  *   events:  "events.out"
+ *   cancel:  "agent.required.cancel"
  *
  * http:
  *   port: 8080
@@ -30,6 +31,9 @@ import java.util.List;
  * agent:
  *   maxSteps: 5
  *   timeoutMs: 10000
+ *   budget:
+ *     maxTokens: 20000
+ *     maxWallClockMs: 8000
  *
  * handlers:
  *   - reason: "Missing ISIN"
@@ -44,6 +48,12 @@ import java.util.List;
  *
  * llm:
  *   type: "stub"
+ *
+ * memory:
+ *   writeBehind: true
+ *
+ * warmup:
+ *   enabled: true
  * </pre>
  *
  * @param addresses event bus address configuration
@@ -55,6 +65,10 @@ import java.util.List;
  * @param llm       LLM client configuration
  * @param mcp       MCP server configuration (nullable; {@code null} means
  *                  disabled)
+ * @param memory    memory store settings; defaults to
+ *                  {@link MemoryConfig#DEFAULT} when omitted
+ * @param warmup    startup warm-up settings; defaults to
+ *                  {@link WarmupConfig#DISABLED} when omitted
  *
  * @see PipelineConfigLoader
  */
@@ -66,5 +80,12 @@ public record PipelineConfig(
     List<HandlerConfig> handlers,
     List<ToolConfig> tools,
     LlmConfig llm,
-    McpConfig mcp
-) {}
+    McpConfig mcp,
+    MemoryConfig memory,
+    WarmupConfig warmup
+) {
+  public PipelineConfig {
+    if (memory == null) memory = MemoryConfig.DEFAULT;
+    if (warmup == null) warmup = WarmupConfig.DISABLED;
+  }
+}
@@ -0,0 +1,54 @@
+package dev.mars.agent.config;
+
+import dev.mars.mcp.tool.CachePolicy;
+
+import java.util.List;
+
+/**
+ * Result-memoisation settings for a single agent tool.
+ *
+ * <p>Caching only takes effect for tools that declare themselves
+ * {@link dev.mars.mcp.tool.Tool#readOnly() read-only}; it is silently
+ * skipped (with a warning) for side-effecting tools.
+ *
+ * <h2>Example YAML</h2>
+ * <pre>
+ * tools:
+ *   - type: "lookup"
+ *     cache:
+ *       enabled: true
+ *       scope: "global"
+ *       keyFields: [tradeId, fields]
+ *       ttlMs: 60000
+ *       maxEntries: 500
+ * </pre>
+ *
+ * @param enabled    whether the tool's results are cached
+ * @param scope      {@code "run"} (default) to share results only within one
+ *                   agent run, or {@code "global"} to share across runs
+ * @param keyFields  argument fields forming the cache key (empty = all)
+ * @param ttlMs      time-to-live in milliseconds ({@code 0} = no expiry)
+ * @param maxEntries LRU bound on cached results ({@code 0} = default)
+ */
+public record ToolCacheConfig(
+    boolean enabled,
+    String scope,
+    List<String> keyFields,
+    long ttlMs,
+    int maxEntries
+) {
+  public ToolCacheConfig {
+    if (scope == null || scope.isBlank()) scope = "run";
+    if (!scope.equals("run") && !scope.equals("global")) {
+      throw new IllegalArgumentException("cache scope must be 'run' or 'global': " + scope);
+    }
+    keyFields = keyFields == null ? List.of() : List.copyOf(keyFields);
+  }
+
+  /** Convert to the policy understood by {@link dev.mars.mcp.tool.CachingTool}. */
+  public CachePolicy toPolicy() {
+    return new CachePolicy(enabled,
+        scope.equals("global") ? CachePolicy.Scope.GLOBAL : CachePolicy.Scope.RUN,
+        keyFields, ttlMs, maxEntries);
+  }
+}
@@ -3,9 +3,26 @@ package dev.mars.agent.config;
 /**
  * Configuration for an agent tool.
  *
- * @param type the tool alias (e.g. {@code "publish-event"},
- *             {@code "raise-ticket"}) resolved by the tool factory
+ * @param type      the tool alias (e.g. {@code "publish-event"},
+ *                  {@code "raise-ticket"}) resolved by the tool factory
+ * @param cache     optional result-memoisation policy (nullable;
+ *                  {@code null} means no caching)
+ * @param execution optional execution settings for blocking tools
+ *                  (nullable; blocking tools default to
+ *                  {@link ExecutionConfig#DEFAULT})
  */
 public record ToolConfig(
-    String type
-) {}
+    String type,
+    ToolCacheConfig cache,
+    ExecutionConfig execution
+) {
+  /** Creates a tool config without caching or execution settings. */
+  public ToolConfig(String type) {
+    this(type, null, null);
+  }
+
+  /** Creates a tool config without execution settings. */
+  public ToolConfig(String type, ToolCacheConfig cache) {
+    this(type, cache, null);
+  }
+}
@@ -0,0 +1,51 @@
+package dev.mars.agent.config;
+
+/**
+ * Startup warm-up configuration.
+ *
+ * <p>When enabled, the bootstrap warms the LLM client — pooled provider
+ * connections plus the request and response code path, using synthetic
+ * events — before the HTTP API starts listening, and {@code /health}
+ * only reports ready afterwards. The first cases after a deploy then do
+ * not pay for DNS, TLS handshakes or a cold JIT.
+ *
+ * <h2>Example YAML</h2>
+ * <pre>
+ * warmup:
+ *   enabled: true
+ *   connections: 4
+ *   iterations: 200
+ *   timeoutMs: 10000
+ * </pre>
+ *
+ * @param enabled     whether to warm up at all
+ * @param connections pooled connections to open per provider endpoint
+ *                    ({@code 0} for the default, {@value #DEFAULT_CONNECTIONS})
+ * @param iterations  passes of the synthetic events through the client
+ *                    ({@code 0} for the default, {@value #DEFAULT_ITERATIONS})
+ * @param timeoutMs   longest startup waits for the warm-up before going
+ *                    ready anyway ({@code 0} for the default,
+ *                    {@value #DEFAULT_TIMEOUT_MS})
+ */
+public record WarmupConfig(
+    boolean enabled,
+    int connections,
+    int iterations,
+    long timeoutMs
+) {
+  public static final int DEFAULT_CONNECTIONS = 4;
+  public static final int DEFAULT_ITERATIONS = 200;
+  public static final long DEFAULT_TIMEOUT_MS = 10_000;
+
+  /** No warm-up: ready as soon as the verticles are deployed. */
+  public static final WarmupConfig DISABLED = new WarmupConfig(false, 0, 0, 0);
+
+  public WarmupConfig {
+    if (connections < 0) throw new IllegalArgumentException("connections must be >= 0");
+    if (iterations < 0) throw new IllegalArgumentException("iterations must be >= 0");
+    if (timeoutMs < 0) throw new IllegalArgumentException("timeoutMs must be >= 0");
+    if (connections == 0) connections = DEFAULT_CONNECTIONS;
+    if (iterations == 0) iterations = DEFAULT_ITERATIONS;
+    if (timeoutMs == 0) timeoutMs = DEFAULT_TIMEOUT_MS;
+  }
+}
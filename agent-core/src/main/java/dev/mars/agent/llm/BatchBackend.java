@@ -0,0 +1,38 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A provider-side batch inference service, in the shape of the OpenAI
+ * Batch API: a JSONL file of requests goes in and, some time later, a
+ * JSONL file of responses comes out.
+ *
+ * <p>Input lines are
+ * {@code {"custom_id": ..., "method": "POST", "url": "/v1/chat/completions", "body": {...}}};
+ * output lines are
+ * {@code {"custom_id": ..., "response": {"status_code": 200, "body": {...}}, "error": null}},
+ * in any order.
+ *
+ * @see BatchingLlmClient
+ * @see LocalBatchBackend
+ */
+public interface BatchBackend {
+
+  /**
+   * Submit a batch.
+   *
+   * @param requests the JSONL request file
+   * @return the batch identifier to poll
+   */
+  Future<String> submit(Buffer requests);
+
+  /**
+   * Check on a submitted batch.
+   *
+   * @param batchId an identifier returned by {@link #submit}
+   * @return the JSONL output once the batch has finished, or {@code null}
+   *         while it is still running
+   */
+  Future<Buffer> poll(String batchId);
+}
@@ -0,0 +1,77 @@
+package dev.mars.agent.llm;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Which decisions {@link BatchingLlmClient} defers, and how batches are
+ * scheduled.
+ *
+ * @param reasons         failure reasons whose cases are batched from the
+ *                        first step
+ * @param severities      {@code case.classify} severities that make the
+ *                        rest of a run batch-eligible
+ * @param windows         times of day in which batches are submitted;
+ *                        empty means any time
+ * @param maxBatchSize    requests per batch; a full queue is submitted
+ *                        without waiting for the flush interval
+ * @param flushIntervalMs how often queued requests are submitted
+ * @param pollIntervalMs  how often submitted batches are checked
+ * @param maxDeferralMs   how long a decision may wait, queued or in a
+ *                        submitted batch, before it fails
+ */
+public record BatchSettings(
+    Set<String> reasons,
+    Set<String> severities,
+    List<BatchWindow> windows,
+    int maxBatchSize,
+    long flushIntervalMs,
+    long pollIntervalMs,
+    long maxDeferralMs
+) {
+  /**
+   * LOW severity, no windows, 500 per batch, flush every minute, poll
+   * every 30 s, give up after 24 h.
+   */
+  public static final BatchSettings DEFAULTS =
+      new BatchSettings(Set.of(), Set.of("LOW"), List.of(), 500, 60_000, 30_000, 86_400_000);
+
+  public BatchSettings {
+    reasons = reasons == null ? Set.of() : Set.copyOf(reasons);
+    severities = severities == null ? Set.of() : Set.copyOf(severities);
+    windows = windows == null ? List.of() : List.copyOf(windows);
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be >= 1");
+    }
+    if (flushIntervalMs < 1 || pollIntervalMs < 1) {
+      throw new IllegalArgumentException("batch intervals must be >= 1 ms");
+    }
+    if (maxDeferralMs < 1) {
+      throw new IllegalArgumentException("maxDeferralMs must be >= 1");
+    }
+  }
+
+  /** Copy with different eligibility rules. */
+  public BatchSettings withEligibility(Set<String> reasons, Set<String> severities) {
+    return new BatchSettings(reasons, severities, windows, maxBatchSize, flushIntervalMs, pollIntervalMs,
+        maxDeferralMs);
+  }
+
+  /** Copy with different submission windows. */
+  public BatchSettings withWindows(List<BatchWindow> windows) {
+    return new BatchSettings(reasons, severities, windows, maxBatchSize, flushIntervalMs, pollIntervalMs,
+        maxDeferralMs);
+  }
+
+  /** Copy with a different batch size and timer intervals. */
+  public BatchSettings withSchedule(int maxBatchSize, long flushIntervalMs, long pollIntervalMs) {
+    return new BatchSettings(reasons, severities, windows, maxBatchSize, flushIntervalMs, pollIntervalMs,
+        maxDeferralMs);
+  }
+
+  /** Copy with a different maximum deferral. */
+  public BatchSettings withMaxDeferral(long maxDeferralMs) {
+    return new BatchSettings(reasons, severities, windows, maxBatchSize, flushIntervalMs, pollIntervalMs,
+        maxDeferralMs);
+  }
+}
@@ -0,0 +1,51 @@
+package dev.mars.agent.llm;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A daily time-of-day window, e.g. {@code 22:00-06:00}, in which
+ * {@link BatchingLlmClient} submits batches. A window whose end is not
+ * after its start wraps past midnight.
+ *
+ * @param start first minute of the window (inclusive)
+ * @param end   end of the window (exclusive)
+ */
+public record BatchWindow(LocalTime start, LocalTime end) {
+
+  public BatchWindow {
+    if (start == null || end == null) {
+      throw new IllegalArgumentException("batch window needs a start and an end");
+    }
+  }
+
+  /**
+   * Parse {@code HH:mm-HH:mm}.
+   *
+   * @throws IllegalArgumentException if the spec is malformed
+   */
+  public static BatchWindow parse(String spec) {
+    String[] parts = spec.trim().split("-");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("batch window '" + spec + "' must be HH:mm-HH:mm");
+    }
+    try {
+      return new BatchWindow(LocalTime.parse(parts[0].trim()), LocalTime.parse(parts[1].trim()));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("batch window '" + spec + "' must be HH:mm-HH:mm");
+    }
+  }
+
+  /** Whether {@code time} falls inside the window. */
+  public boolean contains(LocalTime time) {
+    if (start.isBefore(end)) {
+      return !time.isBefore(start) && time.isBefore(end);
+    }
+    return !time.isBefore(start) || time.isBefore(end);
+  }
+
+  @Override
+  public String toString() {
+    return start + "-" + end;
+  }
+}
@@ -0,0 +1,396 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link LlmClient} decorator that defers low-severity decisions to a
+ * {@link BatchBackend} instead of an interactive chat completion.
+ *
+ * <p>A decision is batch-eligible when the event's {@code reason} is one
+ * of {@link BatchSettings#reasons()} or an earlier step of the run
+ * classified the case with one of {@link BatchSettings#severities()}.
+ * Eligible requests are rendered by an {@link OpenAiLlmClient} exactly as
+ * they would have been sent interactively, queued, and written as a JSONL
+ * batch every {@link BatchSettings#flushIntervalMs() flush interval} (or
+ * as soon as {@link BatchSettings#maxBatchSize() maxBatchSize} are queued)
+ * while one of the configured {@link BatchWindow windows} is open.
+ * Submitted batches are polled, and each caller's future completes — the
+ * agent loop resumes — when its line comes back. Everything else goes to
+ * the interactive client untouched, which keeps interactive capacity and
+ * rate limit for urgent cases.
+ *
+ * <p>{@link #defers} reports eligibility so the runner can reply to its
+ * caller straight away rather than hold the request open for hours.
+ * Batched commands carry {@code "batched": true}. A decision still waiting
+ * after {@link BatchSettings#maxDeferralMs()} — never submitted, or its
+ * batch never finished — fails with a {@link TimeoutException}, since the
+ * run's wall-clock budget does not count the wait.
+ */
+public class BatchingLlmClient implements LlmClient {
+
+  private static final Logger LOG = Logger.getLogger(BatchingLlmClient.class.getName());
+
+  private static final String CLASSIFY_TOOL = "case.classify";
+  /** Recovers the request of an output line that is not valid JSON. */
+  private static final Pattern CUSTOM_ID = Pattern.compile("\"custom_id\"\\s*:\\s*\"([^\"]+)\"");
+
+  private final Vertx vertx;
+  private final LlmClient interactive;
+  private final OpenAiLlmClient renderer;
+  private final BatchBackend backend;
+  private final BatchSettings settings;
+  private final Clock clock;
+
+  private final Deque<Pending> queue = new ArrayDeque<>();
+  private final Map<String, Map<String, Pending>> submitted = new LinkedHashMap<>();
+  private boolean submitting;
+  private final long flushTimer;
+  private final long pollTimer;
+
+  private final AtomicLong deferred = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+
+  /**
+   * @param vertx       the Vert.x instance (for the flush and poll timers)
+   * @param interactive client for decisions that are not deferred
+   * @param renderer    renders batch request bodies and parses their
+   *                    completions
+   * @param backend     where batches are submitted
+   * @param settings    eligibility and scheduling
+   */
+  public BatchingLlmClient(Vertx vertx, LlmClient interactive, OpenAiLlmClient renderer,
+                           BatchBackend backend, BatchSettings settings) {
+    this(vertx, interactive, renderer, backend, settings, Clock.systemDefaultZone());
+  }
+
+  /** As above, with the clock used for window checks. */
+  public BatchingLlmClient(Vertx vertx, LlmClient interactive, OpenAiLlmClient renderer,
+                           BatchBackend backend, BatchSettings settings, Clock clock) {
+    this.vertx = vertx;
+    this.interactive = interactive;
+    this.renderer = renderer;
+    this.backend = backend;
+    this.settings = settings;
+    this.clock = clock;
+    this.flushTimer = vertx.setPeriodic(settings.flushIntervalMs(), t -> flush());
+    this.pollTimer = vertx.setPeriodic(settings.pollIntervalMs(), t -> {
+      expire();
+      poll();
+    });
+  }
+
+  @Override
+  public boolean defers(JsonObject event, JsonObject state) {
+    if (settings.reasons().contains(event.getString("reason"))) {
+      return true;
+    }
+    JsonArray trail = state.getJsonArray("history");
+    if (trail == null) {
+      return false;
+    }
+    for (int i = 0; i < trail.size(); i++) {
+      JsonObject command = trail.getJsonObject(i).getJsonObject("command");
+      if (command != null && CLASSIFY_TOOL.equals(command.getString("tool"))) {
+        JsonObject args = command.getJsonObject("args");
+        String severity = args == null ? null : args.getString("severity");
+        if (severity != null && settings.severities().contains(severity.toUpperCase(Locale.ROOT))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    return interactive.warmUp(plan);
+  }
+
+  @Override
+  public String promptKey(JsonObject event, JsonObject state) {
+    return interactive.promptKey(event, state);
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+    return decideNext(event, state, new CancellationToken());
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                       CancellationToken cancellation) {
+    if (!defers(event, state)) {
+      return interactive.decideNext(event, state, cancellation);
+    }
+    if (cancellation.isCancelled()) {
+      return Future.failedFuture(new CancellationException(cancellation.reason()));
+    }
+    Pending pending = new Pending("req-" + UUID.randomUUID(), renderer.batchRequest(event, state),
+        clock.millis());
+    boolean full;
+    synchronized (this) {
+      queue.add(pending);
+      full = queue.size() >= settings.maxBatchSize();
+    }
+    deferred.incrementAndGet();
+    LOG.fine(() -> "Deferred LLM decision to batch: tradeId=" + event.getString("tradeId")
+        + " step=" + state.getInteger("step", 0));
+    Runnable unregister = cancellation.onCancel(() -> {
+      synchronized (this) {
+        queue.remove(pending);
+      }
+      pending.promise.tryFail(new CancellationException(cancellation.reason()));
+    });
+    if (full) {
+      flush();
+    }
+    return pending.promise.future().onComplete(ar -> unregister.run());
+  }
+
+  /**
+   * Counters: {@code deferred} decisions, {@code queued} and
+   * {@code outstanding} requests, submitted {@code batches}, and
+   * {@code completed}/{@code failed}/{@code expired} batched decisions,
+   * plus the interactive client's under {@code delegate}.
+   */
+  @Override
+  public synchronized JsonObject stats() {
+    int outstanding = 0;
+    for (Map<String, Pending> batch : submitted.values()) {
+      outstanding += batch.size();
+    }
+    return new JsonObject()
+        .put("deferred", deferred.get())
+        .put("queued", queue.size())
+        .put("outstanding", outstanding)
+        .put("batches", batches.get())
+        .put("completed", completed.get())
+        .put("failed", failed.get())
+        .put("expired", expired.get())
+        .put("windowOpen", windowOpen())
+        .put("delegate", interactive.stats());
+  }
+
+  /** Stop the flush and poll timers. Queued and submitted requests are left as they are. */
+  public void close() {
+    vertx.cancelTimer(flushTimer);
+    vertx.cancelTimer(pollTimer);
+  }
+
+  private boolean windowOpen() {
+    if (settings.windows().isEmpty()) {
+      return true;
+    }
+    LocalTime now = LocalTime.now(clock);
+    for (BatchWindow window : settings.windows()) {
+      if (window.contains(now)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Submit up to {@code maxBatchSize} queued requests, if a window is open. */
+  private void flush() {
+    Map<String, Pending> batch = new LinkedHashMap<>();
+    synchronized (this) {
+      if (submitting || queue.isEmpty() || !windowOpen()) {
+        return;
+      }
+      while (!queue.isEmpty() && batch.size() < settings.maxBatchSize()) {
+        Pending p = queue.poll();
+        batch.put(p.customId, p);
+      }
+      submitting = true;
+    }
+    Buffer jsonl = Buffer.buffer();
+    for (Pending p : batch.values()) {
+      jsonl.appendString(new JsonObject()
+          .put("custom_id", p.customId)
+          .put("method", "POST")
+          .put("url", "/v1/chat/completions")
+          .put("body", p.body)
+          .encode()).appendString("\n");
+    }
+    backend.submit(jsonl).onComplete(ar -> {
+      boolean more;
+      synchronized (this) {
+        submitting = false;
+        if (ar.succeeded()) {
+          submitted.put(ar.result(), batch);
+        } else {
+          // Keep the requests, in order, for the next flush
+          List<Pending> retry = new ArrayList<>(batch.values());
+          for (int i = retry.size() - 1; i >= 0; i--) {
+            if (!retry.get(i).promise.future().isComplete()) {
+              queue.addFirst(retry.get(i));
+            }
+          }
+        }
+        more = queue.size() >= settings.maxBatchSize();
+      }
+      if (ar.succeeded()) {
+        batches.incrementAndGet();
+        LOG.info("Submitted LLM batch " + ar.result() + " with " + batch.size() + " request(s)");
+        if (more) {
+          flush();
+        }
+      } else {
+        LOG.warning("LLM batch submission failed; requeued " + batch.size()
+            + " request(s): " + ar.cause().getMessage());
+      }
+    });
+  }
+
+  /** Fail every decision deferred for longer than {@code maxDeferralMs}. */
+  private void expire() {
+    long cutoff = clock.millis() - settings.maxDeferralMs();
+    List<Pending> stale = new ArrayList<>();
+    synchronized (this) {
+      collectStale(queue.iterator(), cutoff, stale);
+      for (Iterator<Map<String, Pending>> it = submitted.values().iterator(); it.hasNext(); ) {
+        Map<String, Pending> batch = it.next();
+        collectStale(batch.values().iterator(), cutoff, stale);
+        if (batch.isEmpty()) {
+          it.remove();
+        }
+      }
+    }
+    for (Pending p : stale) {
+      expired.incrementAndGet();
+      p.promise.tryFail(new TimeoutException("LLM decision " + p.customId + " deferred for more than "
+          + settings.maxDeferralMs() + " ms"));
+    }
+    if (!stale.isEmpty()) {
+      LOG.warning("Expired " + stale.size() + " deferred LLM decision(s) after "
+          + settings.maxDeferralMs() + " ms");
+    }
+  }
+
+  private static void collectStale(Iterator<Pending> it, long cutoff, List<Pending> stale) {
+    while (it.hasNext()) {
+      Pending p = it.next();
+      if (p.deferredAt <= cutoff || p.promise.future().isComplete()) {
+        it.remove();
+        if (!p.promise.future().isComplete()) {
+          stale.add(p);
+        }
+      }
+    }
+  }
+
+  private void poll() {
+    List<String> ids;
+    synchronized (this) {
+      ids = new ArrayList<>(submitted.keySet());
+    }
+    for (String id : ids) {
+      backend.poll(id).onComplete(ar -> {
+        if (ar.failed()) {
+          LOG.warning("Polling LLM batch " + id + " failed: " + ar.cause().getMessage());
+        } else if (ar.result() != null) {
+          Map<String, Pending> batch;
+          synchronized (this) {
+            batch = submitted.remove(id);
+          }
+          if (batch != null) {
+            deliver(id, ar.result(), batch);
+          }
+        }
+      });
+    }
+  }
+
+  /** Complete every request of a finished batch from its output file. */
+  private void deliver(String batchId, Buffer output, Map<String, Pending> batch) {
+    Map<String, Pending> waiting = new HashMap<>(batch);
+    for (String line : output.toString().split("\n")) {
+      if (line.isBlank()) {
+        continue;
+      }
+      JsonObject result;
+      try {
+        result = new JsonObject(line);
+      } catch (DecodeException e) {
+        // Fail just this line's request, if it can be told; the rest are unaffected
+        Matcher id = CUSTOM_ID.matcher(line);
+        Pending p = id.find() ? waiting.remove(id.group(1)) : null;
+        LOG.warning("LLM batch " + batchId + " has an unreadable output line"
+            + (p != null ? " for " + p.customId : "") + ": " + e.getMessage());
+        if (p != null) {
+          failed.incrementAndGet();
+          p.promise.tryFail(e);
+        }
+        continue;
+      }
+      Pending p = waiting.remove(result.getString("custom_id"));
+      if (p == null) {
+        continue;
+      }
+      try {
+        JsonObject response = result.getJsonObject("response");
+        int status = response == null ? 0 : response.getInteger("status_code", 0);
+        if (status < 200 || status >= 300) {
+          JsonObject error = result.getJsonObject("error");
+          throw new LlmApiException(status,
+              error != null ? error.encode() : String.valueOf(response), -1);
+        }
+        JsonObject cmd = renderer.toCommand(response.getJsonObject("body")).put("batched", true);
+        completed.incrementAndGet();
+        p.promise.tryComplete(cmd);
+      } catch (RuntimeException e) {
+        failed.incrementAndGet();
+        p.promise.tryFail(e);
+      }
+    }
+    for (Pending p : waiting.values()) {
+      failed.incrementAndGet();
+      p.promise.tryFail(new IllegalStateException(
+          "Request " + p.customId + " missing from LLM batch " + batchId + " output"));
+    }
+    LOG.info("LLM batch " + batchId + " delivered " + (batch.size() - waiting.size())
+        + "/" + batch.size() + " result(s)");
+  }
+
+  private static final class Pending {
+    final String customId;
+    final JsonObject body;
+    final long deferredAt;
+    final Promise<JsonObject> promise = Promise.promise();
+
+    Pending(String customId, JsonObject body, long deferredAt) {
+      this.customId = customId;
+      this.body = body;
+      this.deferredAt = deferredAt;
+    }
+  }
+}
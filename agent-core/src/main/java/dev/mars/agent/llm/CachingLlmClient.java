@@ -0,0 +1,239 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * {@link LlmClient} decorator that memoises decisions by
+ * {@link LlmClient#promptKey prompt key}.
+ *
+ * <p>Replays, resends and load tests often put byte-for-byte the same
+ * prompt to the model. Since the key is a hash of the model, sampling
+ * temperature, canonicalised messages and tool definitions, a repeated
+ * prompt is answered from the cache without a provider round trip.
+ *
+ * <h2>Tiers</h2>
+ * <ul>
+ *   <li><b>Memory</b> — a bounded LRU map with an optional TTL.</li>
+ *   <li><b>Disk</b> (optional) — one {@code <key>.json} file per entry in
+ *       a directory, read and written through the Vert.x file system, so
+ *       the cache survives restarts. A disk hit is promoted to memory.</li>
+ * </ul>
+ *
+ * <p>Cached commands are returned as copies without the provider
+ * {@code usage} block (no tokens were spent, so the runner's budget is
+ * not charged) and with {@code "cached": true}. The tokens the original
+ * call consumed are added to the {@code savedTokens} counter instead.
+ * Failed decisions are never cached, and a delegate that returns a
+ * {@code null} prompt key is passed straight through.
+ *
+ * <h2>Determinism</h2>
+ * Caching replays one sample of the model's output for every later
+ * identical prompt. That is only sound at (near-)zero temperature;
+ * {@code LlmClientFactory} refuses to enable the cache when the configured
+ * temperature exceeds {@code cache.maxTemperature}.
+ *
+ * @see CanonicalJson
+ */
+public class CachingLlmClient implements LlmClient {
+
+  private static final Logger LOG = Logger.getLogger(CachingLlmClient.class.getName());
+
+  /** Default maximum number of in-memory entries. */
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  private final Vertx vertx;
+  private final LlmClient delegate;
+  private final long ttlMs;
+  private final String diskDir;
+  private final Map<String, Entry> memory;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong diskHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong savedTokens = new AtomicLong();
+
+  private record Entry(JsonObject command, long storedAt) {}
+
+  /**
+   * Creates a caching client.
+   *
+   * @param vertx      the Vert.x instance (for disk I/O)
+   * @param delegate   the client whose decisions are cached
+   * @param maxEntries maximum in-memory entries ({@code 0} for
+   *                   {@value #DEFAULT_MAX_ENTRIES})
+   * @param ttlMs      entry lifetime in milliseconds ({@code 0} = no expiry)
+   * @param diskDir    directory for the on-disk tier, or {@code null} for
+   *                   memory only
+   */
+  public CachingLlmClient(Vertx vertx, LlmClient delegate, int maxEntries, long ttlMs, Path diskDir) {
+    if (maxEntries < 0) throw new IllegalArgumentException("maxEntries must be >= 0");
+    if (ttlMs < 0) throw new IllegalArgumentException("ttlMs must be >= 0");
+    this.vertx = vertx;
+    this.delegate = delegate;
+    this.ttlMs = ttlMs;
+    this.diskDir = diskDir != null ? diskDir.toString() : null;
+    int limit = maxEntries == 0 ? DEFAULT_MAX_ENTRIES : maxEntries;
+    this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > limit) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+    if (this.diskDir != null) {
+      vertx.fileSystem().mkdirsBlocking(this.diskDir);
+    }
+    LOG.info("CachingLlmClient created: delegate=" + delegate.getClass().getSimpleName()
+        + " maxEntries=" + limit + " ttlMs=" + ttlMs + " diskDir=" + this.diskDir);
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+    return decideNext(event, state, new CancellationToken());
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                       CancellationToken cancellation) {
+    String key = delegate.promptKey(event, state);
+    if (key == null) {
+      return delegate.decideNext(event, state, cancellation);
+    }
+
+    Entry entry = memoryGet(key);
+    if (entry != null) {
+      hits.incrementAndGet();
+      LOG.fine("LLM cache hit (memory): key=" + key);
+      return Future.succeededFuture(served(entry));
+    }
+    return diskGet(key).compose(fromDisk -> {
+      if (fromDisk != null) {
+        hits.incrementAndGet();
+        diskHits.incrementAndGet();
+        LOG.fine("LLM cache hit (disk): key=" + key);
+        memoryPut(key, fromDisk);
+        return Future.succeededFuture(served(fromDisk));
+      }
+      misses.incrementAndGet();
+      LOG.fine("LLM cache miss: key=" + key);
+      return delegate.decideNext(event, state, cancellation).map(cmd -> {
+        Entry stored = new Entry(cmd.copy(), System.currentTimeMillis());
+        memoryPut(key, stored);
+        diskPut(key, stored);
+        return cmd;
+      });
+    });
+  }
+
+  @Override
+  public String promptKey(JsonObject event, JsonObject state) {
+    return delegate.promptKey(event, state);
+  }
+
+  @Override
+  public boolean defers(JsonObject event, JsonObject state) {
+    return delegate.defers(event, state);
+  }
+
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    return delegate.warmUp(plan);
+  }
+
+  /**
+   * Hit (total and disk), miss and eviction counters, the provider
+   * tokens saved by cache hits, and the current in-memory size, plus the
+   * delegate's under {@code delegate}.
+   */
+  @Override
+  public JsonObject stats() {
+    int size;
+    synchronized (memory) {
+      size = memory.size();
+    }
+    return new JsonObject()
+        .put("hits", hits.get())
+        .put("diskHits", diskHits.get())
+        .put("misses", misses.get())
+        .put("evictions", evictions.get())
+        .put("savedTokens", savedTokens.get())
+        .put("size", size)
+        .put("delegate", delegate.stats());
+  }
+
+  private JsonObject served(Entry entry) {
+    JsonObject cmd = entry.command().copy();
+    JsonObject usage = (JsonObject) cmd.remove("usage");
+    if (usage != null) {
+      savedTokens.addAndGet(usage.getLong("total_tokens", 0L));
+    }
+    return cmd.put("cached", true);
+  }
+
+  private boolean expired(Entry entry) {
+    return ttlMs > 0 && entry.storedAt() + ttlMs <= System.currentTimeMillis();
+  }
+
+  private Entry memoryGet(String key) {
+    synchronized (memory) {
+      Entry entry = memory.get(key);
+      if (entry != null && expired(entry)) {
+        memory.remove(key);
+        evictions.incrementAndGet();
+        return null;
+      }
+      return entry;
+    }
+  }
+
+  private void memoryPut(String key, Entry entry) {
+    synchronized (memory) {
+      memory.put(key, entry);
+    }
+  }
+
+  private Future<Entry> diskGet(String key) {
+    if (diskDir == null) {
+      return Future.succeededFuture();
+    }
+    String file = diskDir + "/" + key + ".json";
+    return vertx.fileSystem().readFile(file)
+        .map(buf -> {
+          JsonObject json = buf.toJsonObject();
+          Entry entry = new Entry(json.getJsonObject("command"), json.getLong("storedAt", 0L));
+          if (expired(entry)) {
+            vertx.fileSystem().delete(file);
+            return null;
+          }
+          return entry;
+        })
+        // Missing or unreadable file: treat as a miss
+        .otherwiseEmpty();
+  }
+
+  private void diskPut(String key, Entry entry) {
+    if (diskDir == null) {
+      return;
+    }
+    Buffer buf = new JsonObject()
+        .put("storedAt", entry.storedAt())
+        .put("command", entry.command())
+        .toBuffer();
+    vertx.fileSystem().writeFile(diskDir + "/" + key + ".json", buf)
+        .onFailure(err -> LOG.warning("LLM cache disk write failed: " + err.getMessage()));
+  }
+}
@@ -0,0 +1,83 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Deterministic JSON rendering for prompt construction and cache keys.
+ *
+ * <p>Vert.x {@link JsonObject}s preserve insertion order, so two logically
+ * identical payloads can serialise differently depending on how they were
+ * built (and {@code Set}-driven field whitelists iterate in a different
+ * order on every JVM start). {@link #canonical(Object)} returns a deep copy
+ * with object keys sorted, which always encodes to the same bytes.
+ */
+public final class CanonicalJson {
+
+  private CanonicalJson() {}
+
+  /**
+   * Deep copy of {@code value} with all object keys sorted. Arrays keep
+   * their order; scalars are returned as-is.
+   *
+   * @param value a {@link JsonObject}, {@link JsonArray}, {@code Map},
+   *              {@code List} or scalar
+   * @return the canonical form
+   */
+  @SuppressWarnings("unchecked")
+  public static Object canonical(Object value) {
+    if (value instanceof JsonObject obj) {
+      return canonical(obj.getMap());
+    }
+    if (value instanceof Map<?, ?> map) {
+      JsonObject sorted = new JsonObject();
+      new TreeMap<>((Map<String, Object>) map).forEach((k, v) -> sorted.put(k, canonical(v)));
+      return sorted;
+    }
+    if (value instanceof JsonArray arr) {
+      return canonical(arr.getList());
+    }
+    if (value instanceof List<?> list) {
+      JsonArray copy = new JsonArray();
+      list.forEach(v -> copy.add(canonical(v)));
+      return copy;
+    }
+    return value;
+  }
+
+  /** Canonical copy of a JSON object. */
+  public static JsonObject canonical(JsonObject obj) {
+    return (JsonObject) canonical((Object) obj);
+  }
+
+  /** Compact, key-sorted encoding of {@code value}. */
+  public static String encode(Object value) {
+    Object canonical = canonical(value);
+    if (canonical instanceof JsonObject obj) return obj.encode();
+    if (canonical instanceof JsonArray arr) return arr.encode();
+    return String.valueOf(canonical);
+  }
+
+  /** Lower-case hex SHA-256 of the UTF-8 bytes of {@code text}. */
+  public static String sha256(String text) {
+    return sha256(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Lower-case hex SHA-256 of {@code bytes}. */
+  public static String sha256(byte[] bytes) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(bytes));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package dev.mars.agent.llm;
+
+import java.util.Set;
+
+/**
+ * Escalation rules for {@link CascadingLlmClient}.
+ *
+ * @param largeSteps         step indices that always go straight to the
+ *                           large model
+ * @param largeTools         tools whose selection by the small model is
+ *                           re-decided by the large model (e.g. actions
+ *                           that are expensive to get wrong)
+ * @param minConfidence      a small-model command carrying a
+ *                           {@code confidence} below this is escalated;
+ *                           commands without one are accepted
+ * @param severities         {@code case.classify} severities that escalate
+ *                           the classification itself and every later step
+ *                           of the run
+ * @param validateArgs       escalate when the small model names an unknown
+ *                           tool or its arguments fail the tool's schema
+ */
+public record CascadeSettings(
+    Set<Integer> largeSteps,
+    Set<String> largeTools,
+    double minConfidence,
+    Set<String> severities,
+    boolean validateArgs
+) {
+  /** No forced steps or tools, confidence 0.5, HIGH/CRITICAL escalate, validation on. */
+  public static final CascadeSettings DEFAULTS =
+      new CascadeSettings(Set.of(), Set.of(), 0.5, Set.of("HIGH", "CRITICAL"), true);
+
+  public CascadeSettings {
+    largeSteps = largeSteps == null ? Set.of() : Set.copyOf(largeSteps);
+    largeTools = largeTools == null ? Set.of() : Set.copyOf(largeTools);
+    severities = severities == null ? Set.of() : Set.copyOf(severities);
+    if (minConfidence < 0 || minConfidence > 1) {
+      throw new IllegalArgumentException("minConfidence must be in [0, 1]");
+    }
+  }
+
+  /** Copy with different forced steps and tools. */
+  public CascadeSettings withLarge(Set<Integer> largeSteps, Set<String> largeTools) {
+    return new CascadeSettings(largeSteps, largeTools, minConfidence, severities, validateArgs);
+  }
+
+  /** Copy with a different confidence floor. */
+  public CascadeSettings withMinConfidence(double minConfidence) {
+    return new CascadeSettings(largeSteps, largeTools, minConfidence, severities, validateArgs);
+  }
+
+  /** Copy with different escalating severities. */
+  public CascadeSettings withSeverities(Set<String> severities) {
+    return new CascadeSettings(largeSteps, largeTools, minConfidence, severities, validateArgs);
+  }
+
+  /** Copy with argument validation switched on or off. */
+  public CascadeSettings withValidateArgs(boolean validateArgs) {
+    return new CascadeSettings(largeSteps, largeTools, minConfidence, severities, validateArgs);
+  }
+}
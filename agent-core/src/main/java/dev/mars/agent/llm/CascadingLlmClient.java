@@ -0,0 +1,256 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import dev.mars.mcp.tool.Tool;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * {@link LlmClient} that asks a small, fast model first and escalates to
+ * a large model only when the step needs it.
+ *
+ * <p>Most steps of an investigation are routine — the opening
+ * {@code data.lookup}, a {@code comms.notify} after a LOW classification —
+ * and a small model gets them right at a fraction of the latency and
+ * cost. The large model decides instead when:
+ * <ul>
+ *   <li>the step is listed in {@link CascadeSettings#largeSteps()}, or an
+ *       earlier step of the run classified the case with an escalating
+ *       severity (the small model is skipped);</li>
+ *   <li>the small model names an unknown tool or arguments that fail the
+ *       tool's schema ({@link ToolSchemaValidator});</li>
+ *   <li>its command carries a {@code confidence} below
+ *       {@link CascadeSettings#minConfidence()};</li>
+ *   <li>it picks a tool listed in {@link CascadeSettings#largeTools()};</li>
+ *   <li>it classifies the case with an escalating severity;</li>
+ *   <li>the small call fails.</li>
+ * </ul>
+ *
+ * <p>An escalated command carries the summed {@code usage} of both calls,
+ * so the run's token budget sees everything that was spent.
+ */
+public class CascadingLlmClient implements LlmClient {
+
+  private static final Logger LOG = Logger.getLogger(CascadingLlmClient.class.getName());
+
+  private static final String CLASSIFY_TOOL = "case.classify";
+
+  private final LlmClient small;
+  private final LlmClient large;
+  private final CascadeSettings settings;
+  private final Map<String, ToolSchemaValidator> validators = new HashMap<>();
+
+  private final Tier smallTier = new Tier();
+  private final Tier largeTier = new Tier();
+  private final AtomicLong acceptedSmall = new AtomicLong();
+  private final Map<String, AtomicLong> escalations = new ConcurrentHashMap<>();
+
+  /**
+   * @param small    the fast model asked first
+   * @param large    the model escalated to
+   * @param settings escalation rules
+   * @param tools    the agent tools, for argument validation
+   */
+  public CascadingLlmClient(LlmClient small, LlmClient large, CascadeSettings settings,
+                            Collection<Tool> tools) {
+    this.small = small;
+    this.large = large;
+    this.settings = settings;
+    for (Tool tool : tools) {
+      validators.put(tool.name(), ToolSchemaValidator.compile(tool.schema()));
+    }
+  }
+
+  /**
+   * Combines both tiers' keys: a cached cascade answer is only
+   * interchangeable with one produced by the same pair of models.
+   */
+  @Override
+  public String promptKey(JsonObject event, JsonObject state) {
+    String smallKey = small.promptKey(event, state);
+    String largeKey = large.promptKey(event, state);
+    return smallKey == null || largeKey == null ? null
+        : CanonicalJson.sha256(smallKey + "|" + largeKey);
+  }
+
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    Future<JsonObject> smallReport = small.warmUp(plan);
+    Future<JsonObject> largeReport = large.warmUp(plan);
+    return Future.all(smallReport, largeReport).map(v -> new JsonObject()
+        .put("small", smallReport.result())
+        .put("large", largeReport.result()));
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+    return decideNext(event, state, new CancellationToken());
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                       CancellationToken cancellation) {
+    String direct = routeDirect(state);
+    if (direct != null) {
+      return escalate(direct, event, state, cancellation, null);
+    }
+    return smallTier.call(small, event, state, cancellation).transform(ar -> {
+      if (ar.failed()) {
+        if (cancellation.isCancelled()) {
+          return Future.failedFuture(ar.cause());
+        }
+        LOG.warning("Small model failed, escalating: " + ar.cause().getMessage());
+        return escalate("error", event, state, cancellation, null);
+      }
+      JsonObject cmd = ar.result();
+      String reason = review(cmd);
+      if (reason != null) {
+        return escalate(reason, event, state, cancellation, cmd.getJsonObject("usage"));
+      }
+      acceptedSmall.incrementAndGet();
+      return Future.succeededFuture(cmd);
+    });
+  }
+
+  /**
+   * Per-tier {@code calls}, {@code failures}, {@code avgLatencyMs} and
+   * {@code tokens}, with the tier client's own under {@code client}, plus
+   * {@code acceptedSmall} and escalation counts by reason.
+   */
+  @Override
+  public JsonObject stats() {
+    JsonObject byReason = new JsonObject();
+    escalations.forEach((reason, count) -> byReason.put(reason, count.get()));
+    return new JsonObject()
+        .put("small", smallTier.toJson().put("client", small.stats()))
+        .put("large", largeTier.toJson().put("client", large.stats()))
+        .put("acceptedSmall", acceptedSmall.get())
+        .put("escalations", byReason);
+  }
+
+  /** Reason to skip the small model for this step, or {@code null}. */
+  private String routeDirect(JsonObject state) {
+    if (settings.largeSteps().contains(state.getInteger("step", 0))) {
+      return "step";
+    }
+    JsonArray trail = state.getJsonArray("history");
+    if (trail != null) {
+      for (int i = 0; i < trail.size(); i++) {
+        JsonObject command = trail.getJsonObject(i).getJsonObject("command");
+        if (command != null && escalatingSeverity(command)) {
+          return "severity";
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Reason to reject the small model's command, or {@code null} to accept it. */
+  private String review(JsonObject cmd) {
+    String tool = cmd.getString("tool");
+    if (settings.validateArgs()) {
+      ToolSchemaValidator validator = validators.get(tool);
+      if (validator == null) {
+        LOG.fine(() -> "Small model named unknown tool: " + tool);
+        return "validation";
+      }
+      List<String> errors = validator.validate(cmd.getJsonObject("args", new JsonObject()));
+      if (!errors.isEmpty()) {
+        LOG.fine(() -> "Small model arguments for " + tool + " are invalid: " + errors);
+        return "validation";
+      }
+    }
+    Object confidence = cmd.getValue("confidence");
+    if (confidence instanceof Number n && n.doubleValue() < settings.minConfidence()) {
+      return "confidence";
+    }
+    if (settings.largeTools().contains(tool)) {
+      return "tool";
+    }
+    if (escalatingSeverity(cmd)) {
+      return "severity";
+    }
+    return null;
+  }
+
+  private boolean escalatingSeverity(JsonObject cmd) {
+    if (!CLASSIFY_TOOL.equals(cmd.getString("tool"))) {
+      return false;
+    }
+    JsonObject args = cmd.getJsonObject("args");
+    String severity = args == null ? null : args.getString("severity");
+    return severity != null && settings.severities().contains(severity.toUpperCase(Locale.ROOT));
+  }
+
+  private Future<JsonObject> escalate(String reason, JsonObject event, JsonObject state,
+                                      CancellationToken cancellation, JsonObject smallUsage) {
+    escalations.computeIfAbsent(reason, r -> new AtomicLong()).incrementAndGet();
+    LOG.fine(() -> "Escalating step " + state.getInteger("step", 0) + " to large model: " + reason);
+    return largeTier.call(large, event, state, cancellation).map(cmd -> {
+      if (smallUsage != null) {
+        cmd.put("usage", sumUsage(smallUsage, cmd.getJsonObject("usage")));
+      }
+      return cmd;
+    });
+  }
+
+  /** Field-wise sum of two provider {@code usage} blocks. */
+  static JsonObject sumUsage(JsonObject a, JsonObject b) {
+    if (b == null) {
+      return a.copy();
+    }
+    JsonObject sum = b.copy();
+    for (Map.Entry<String, Object> e : a) {
+      if (e.getValue() instanceof Number n && sum.getValue(e.getKey()) instanceof Number m) {
+        sum.put(e.getKey(), n.longValue() + m.longValue());
+      } else if (!sum.containsKey(e.getKey())) {
+        sum.put(e.getKey(), e.getValue());
+      }
+    }
+    return sum;
+  }
+
+  /** Call counters for one model tier. */
+  private static final class Tier {
+    final AtomicLong calls = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong latencyMs = new AtomicLong();
+    final AtomicLong tokens = new AtomicLong();
+
+    Future<JsonObject> call(LlmClient client, JsonObject event, JsonObject state,
+                            CancellationToken cancellation) {
+      calls.incrementAndGet();
+      long start = System.nanoTime();
+      return client.decideNext(event, state, cancellation).andThen(ar -> {
+        latencyMs.addAndGet((System.nanoTime() - start) / 1_000_000);
+        if (ar.failed()) {
+          failures.incrementAndGet();
+          return;
+        }
+        JsonObject usage = ar.result().getJsonObject("usage");
+        if (usage != null) {
+          tokens.addAndGet(usage.getLong("total_tokens", 0L));
+        }
+      });
+    }
+
+    JsonObject toJson() {
+      long n = calls.get();
+      return new JsonObject()
+          .put("calls", n)
+          .put("failures", failures.get())
+          .put("avgLatencyMs", n == 0 ? 0 : latencyMs.get() / n)
+          .put("tokens", tokens.get());
+    }
+  }
+}
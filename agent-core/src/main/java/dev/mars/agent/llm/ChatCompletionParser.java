@@ -0,0 +1,200 @@
+package dev.mars.agent.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+
+/**
+ * Allocation-light reader for a non-streamed Chat Completions response.
+ *
+ * <p>A completion body carries far more than the agent needs — ids,
+ * timestamps, system fingerprints, refusal and logprob fields, further
+ * choices. Rather than materialise the whole tree as a {@link JsonObject},
+ * this walks the bytes once with a Jackson streaming parser and keeps
+ * only {@code choices[0].message.content}, the first entry of
+ * {@code choices[0].message.tool_calls} and {@code usage}; every other
+ * value is skipped without being decoded into objects.
+ *
+ * <p>{@link #fromJson(JsonObject)} gives the same view of a response that
+ * is already a tree (assembled from a stream, or read from a batch
+ * output file). Thread-safe.
+ */
+public final class ChatCompletionParser {
+
+  /** Jackson factories are thread-safe and meant to be shared. */
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  /**
+   * The parts of a completion the agent uses.
+   *
+   * @param choices   whether {@code choices} had at least one entry
+   * @param toolName  name of the first tool call, or {@code null}
+   * @param arguments raw JSON arguments of the first tool call, or {@code null}
+   * @param content   assistant text, or {@code null}
+   * @param usage     the provider's {@code usage} block, or {@code null}
+   */
+  public record Completion(boolean choices, String toolName, String arguments,
+                           String content, JsonObject usage) {
+
+    /** Whether the model called a tool. */
+    public boolean hasToolCall() {
+      return toolName != null;
+    }
+  }
+
+  private ChatCompletionParser() {}
+
+  /**
+   * Parse a response body.
+   *
+   * @throws DecodeException if the body is not valid JSON
+   */
+  public static Completion parse(Buffer body) {
+    try (JsonParser p = FACTORY.createParser(body.getBytes())) {
+      if (p.nextToken() != JsonToken.START_OBJECT) {
+        throw new DecodeException("Chat completion is not a JSON object");
+      }
+      State s = new State();
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        JsonToken value = p.nextToken();
+        if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+          readChoices(p, s);
+        } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+          s.usage = readObject(p);
+        } else {
+          p.skipChildren();
+        }
+      }
+      return new Completion(s.choices, s.toolName, s.arguments, s.content, s.usage);
+    } catch (IOException e) {
+      throw new DecodeException("Failed to parse chat completion: " + e.getMessage(), e);
+    }
+  }
+
+  /** The same view of an already-decoded response. */
+  public static Completion fromJson(JsonObject response) {
+    JsonArray choices = response.getJsonArray("choices");
+    if (choices == null || choices.isEmpty()) {
+      return new Completion(false, null, null, null, response.getJsonObject("usage"));
+    }
+    JsonObject message = choices.getJsonObject(0).getJsonObject("message", new JsonObject());
+    JsonArray toolCalls = message.getJsonArray("tool_calls");
+    String name = null;
+    String arguments = null;
+    if (toolCalls != null && !toolCalls.isEmpty()) {
+      JsonObject function = toolCalls.getJsonObject(0).getJsonObject("function", new JsonObject());
+      name = function.getString("name");
+      arguments = function.getString("arguments");
+    }
+    return new Completion(true, name, arguments, message.getString("content"),
+        response.getJsonObject("usage"));
+  }
+
+  private static final class State {
+    boolean choices;
+    String toolName;
+    String arguments;
+    String content;
+    JsonObject usage;
+  }
+
+  private static void readChoices(JsonParser p, State s) throws IOException {
+    while (p.nextToken() != JsonToken.END_ARRAY) {
+      if (s.choices || p.currentToken() != JsonToken.START_OBJECT) {
+        p.skipChildren();
+        continue;
+      }
+      s.choices = true;
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        JsonToken value = p.nextToken();
+        if ("message".equals(field) && value == JsonToken.START_OBJECT) {
+          readMessage(p, s);
+        } else {
+          p.skipChildren();
+        }
+      }
+    }
+  }
+
+  private static void readMessage(JsonParser p, State s) throws IOException {
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.currentName();
+      JsonToken value = p.nextToken();
+      if ("content".equals(field) && value == JsonToken.VALUE_STRING) {
+        s.content = p.getText();
+      } else if ("tool_calls".equals(field) && value == JsonToken.START_ARRAY) {
+        boolean first = true;
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+          if (first && p.currentToken() == JsonToken.START_OBJECT) {
+            readToolCall(p, s);
+            first = false;
+          } else {
+            p.skipChildren();
+          }
+        }
+      } else {
+        p.skipChildren();
+      }
+    }
+  }
+
+  private static void readToolCall(JsonParser p, State s) throws IOException {
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.currentName();
+      JsonToken value = p.nextToken();
+      if (!"function".equals(field) || value != JsonToken.START_OBJECT) {
+        p.skipChildren();
+        continue;
+      }
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String name = p.currentName();
+        JsonToken v = p.nextToken();
+        if ("name".equals(name) && v == JsonToken.VALUE_STRING) {
+          s.toolName = p.getText();
+        } else if ("arguments".equals(name) && v == JsonToken.VALUE_STRING) {
+          s.arguments = p.getText();
+        } else {
+          p.skipChildren();
+        }
+      }
+    }
+  }
+
+  /** Decode the object at the current {@code START_OBJECT} — only used for the small usage block. */
+  private static JsonObject readObject(JsonParser p) throws IOException {
+    JsonObject obj = new JsonObject();
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.currentName();
+      obj.put(field, readValue(p, p.nextToken()));
+    }
+    return obj;
+  }
+
+  private static Object readValue(JsonParser p, JsonToken token) throws IOException {
+    return switch (token) {
+      case START_OBJECT -> readObject(p);
+      case START_ARRAY -> {
+        JsonArray arr = new JsonArray();
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+          arr.add(readValue(p, t));
+        }
+        yield arr;
+      }
+      case VALUE_STRING -> p.getText();
+      case VALUE_NUMBER_INT -> p.getLongValue();
+      case VALUE_NUMBER_FLOAT -> p.getDoubleValue();
+      case VALUE_TRUE -> true;
+      case VALUE_FALSE -> false;
+      default -> null;
+    };
+  }
+}
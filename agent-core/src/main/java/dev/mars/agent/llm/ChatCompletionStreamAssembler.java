@@ -0,0 +1,225 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Incremental assembler for a streamed ({@code "stream": true}) Chat
+ * Completions response.
+ *
+ * <p>The provider sends Server-Sent Events, one {@code data: {...}} line
+ * per chunk, terminated by {@code data: [DONE]}. Each chunk carries a
+ * {@code choices[0].delta} with a fragment of the assistant message:
+ * {@code content} text, or {@code tool_calls[i]} entries whose
+ * {@code function.arguments} string arrives a few characters at a time.
+ *
+ * <p>{@link #feed(Buffer)} accepts network buffers as they arrive (lines
+ * may be split across buffers). Bytes are only decoded as UTF-8 once a
+ * whole line has arrived — {@code '\n'} never occurs inside a multi-byte
+ * sequence — so a character split between two buffers survives. The
+ * assembler tracks the brace depth of the first tool call's arguments as
+ * they stream in, so
+ * {@link #firstToolCallComplete()} turns {@code true} as soon as its name
+ * and a complete JSON argument object are known — typically well before
+ * the end-of-stream marker and any trailing usage chunk.
+ *
+ * <p>{@link #toResponse()} renders what has been received so far in the
+ * shape of a non-streamed response ({@code choices[0].message} plus
+ * {@code usage} when present), so the normal response parser can be
+ * reused. Not thread-safe; feed it from a single context.
+ */
+public final class ChatCompletionStreamAssembler {
+
+  private static final Logger LOG = Logger.getLogger(ChatCompletionStreamAssembler.class.getName());
+
+  /** Bytes of the line being received; {@code scanned} of them hold no newline. */
+  private Buffer pending = Buffer.buffer();
+  private int scanned;
+  private final StringBuilder content = new StringBuilder();
+  private final List<ToolCall> toolCalls = new ArrayList<>();
+  private JsonObject usage;
+  private String finishReason;
+  private boolean done;
+
+  /** Accumulated state of one streamed tool call. */
+  private static final class ToolCall {
+    String id;
+    String name;
+    final StringBuilder arguments = new StringBuilder();
+    int depth;
+    boolean started;
+    boolean inString;
+    boolean escaped;
+    boolean complete;
+
+    /** Advance the brace scanner over a newly received argument fragment. */
+    void scan(String fragment) {
+      for (int i = 0; i < fragment.length() && !complete; i++) {
+        char c = fragment.charAt(i);
+        if (inString) {
+          if (escaped) {
+            escaped = false;
+          } else if (c == '\\') {
+            escaped = true;
+          } else if (c == '"') {
+            inString = false;
+          }
+        } else if (c == '"') {
+          inString = true;
+        } else if (c == '{') {
+          depth++;
+          started = true;
+        } else if (c == '}') {
+          depth--;
+          if (started && depth == 0) {
+            complete = true;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Feed the next network buffer.
+   *
+   * @param chunk raw bytes from the response stream
+   */
+  public void feed(Buffer chunk) {
+    pending.appendBuffer(chunk);
+    int start = 0;
+    for (int i = scanned; i < pending.length(); i++) {
+      if (pending.getByte(i) == '\n') {
+        onLine(pending.getString(start, i, StandardCharsets.UTF_8.name()).trim());
+        start = i + 1;
+      }
+    }
+    if (start > 0) {
+      pending = pending.getBuffer(start, pending.length());
+    }
+    scanned = pending.length();
+  }
+
+  /** Whether the {@code [DONE]} marker has been received. */
+  public boolean done() {
+    return done;
+  }
+
+  /**
+   * Whether the first tool call's name and complete arguments object have
+   * been received. A later tool call starting, or a {@code finish_reason},
+   * also completes it.
+   */
+  public boolean firstToolCallComplete() {
+    if (toolCalls.isEmpty()) {
+      return false;
+    }
+    ToolCall first = toolCalls.get(0);
+    return first.name != null && (first.complete || toolCalls.size() > 1 || finishReason != null);
+  }
+
+  /** The {@code usage} block, if the stream has delivered it yet. */
+  public JsonObject usage() {
+    return usage;
+  }
+
+  /**
+   * Render the data received so far as a non-streamed response body:
+   * {@code {"choices":[{"message":{...},"finish_reason":...}],"usage":...}}.
+   */
+  public JsonObject toResponse() {
+    JsonObject message = new JsonObject().put("role", "assistant");
+    if (content.length() > 0) {
+      message.put("content", content.toString());
+    }
+    if (!toolCalls.isEmpty()) {
+      JsonArray calls = new JsonArray();
+      for (ToolCall call : toolCalls) {
+        calls.add(new JsonObject()
+            .put("id", call.id)
+            .put("type", "function")
+            .put("function", new JsonObject()
+                .put("name", call.name)
+                .put("arguments", call.arguments.toString())));
+      }
+      message.put("tool_calls", calls);
+    }
+    JsonObject response = new JsonObject().put("choices", new JsonArray()
+        .add(new JsonObject().put("message", message).put("finish_reason", finishReason)));
+    if (usage != null) {
+      response.put("usage", usage);
+    }
+    return response;
+  }
+
+  private void onLine(String line) {
+    if (!line.startsWith("data:")) {
+      return; // blank separator, comment or "event:" line
+    }
+    String data = line.substring(5).trim();
+    if ("[DONE]".equals(data)) {
+      done = true;
+      return;
+    }
+    JsonObject chunk;
+    try {
+      chunk = new JsonObject(data);
+    } catch (RuntimeException e) {
+      LOG.warning("Skipping malformed stream chunk: " + data);
+      return;
+    }
+    JsonObject chunkUsage = chunk.getJsonObject("usage");
+    if (chunkUsage != null) {
+      usage = chunkUsage;
+    }
+    JsonArray choices = chunk.getJsonArray("choices");
+    if (choices == null || choices.isEmpty()) {
+      return;
+    }
+    JsonObject choice = choices.getJsonObject(0);
+    if (choice.getString("finish_reason") != null) {
+      finishReason = choice.getString("finish_reason");
+    }
+    JsonObject delta = choice.getJsonObject("delta");
+    if (delta == null) {
+      return;
+    }
+    String text = delta.getString("content");
+    if (text != null) {
+      content.append(text);
+    }
+    JsonArray calls = delta.getJsonArray("tool_calls");
+    if (calls != null) {
+      for (int i = 0; i < calls.size(); i++) {
+        onToolCallDelta(calls.getJsonObject(i));
+      }
+    }
+  }
+
+  private void onToolCallDelta(JsonObject delta) {
+    int index = delta.getInteger("index", toolCalls.isEmpty() ? 0 : toolCalls.size() - 1);
+    while (toolCalls.size() <= index) {
+      toolCalls.add(new ToolCall());
+    }
+    ToolCall call = toolCalls.get(index);
+    if (delta.getString("id") != null) {
+      call.id = delta.getString("id");
+    }
+    JsonObject function = delta.getJsonObject("function");
+    if (function != null) {
+      if (function.getString("name") != null) {
+        call.name = function.getString("name");
+      }
+      String fragment = function.getString("arguments");
+      if (fragment != null) {
+        call.arguments.append(fragment);
+        call.scan(fragment);
+      }
+    }
+  }
+}
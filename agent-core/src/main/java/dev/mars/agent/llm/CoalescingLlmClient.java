@@ -0,0 +1,192 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * {@link LlmClient} decorator that shares one upstream call between
+ * concurrent identical decisions ("single-flight").
+ *
+ * <p>During a failure storm many cases with the same event content reach
+ * the same step at nearly the same time and would each pay for an
+ * identical completion. Calls are keyed by the delegate's
+ * {@link LlmClient#promptKey prompt key}: the first caller for a key
+ * starts the upstream call, later callers for the same key join it while
+ * it is in flight, and every caller gets its own copy of the command.
+ * Nothing is retained once the call completes — long-lived reuse is
+ * {@link CachingLlmClient}'s job.
+ *
+ * <p>The oldest remaining caller's copy keeps the provider {@code usage};
+ * the others drop it and carry {@code "coalesced": true}, so the tokens
+ * are charged to exactly one run's budget.
+ *
+ * <h2>Cancellation</h2>
+ * A caller whose token fires leaves the flight with a
+ * {@link CancellationException}; the upstream call is only cancelled
+ * once every caller has left.
+ */
+public class CoalescingLlmClient implements LlmClient {
+
+  private static final Logger LOG = Logger.getLogger(CoalescingLlmClient.class.getName());
+
+  private final LlmClient delegate;
+  private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong leaders = new AtomicLong();
+  private final AtomicLong joined = new AtomicLong();
+
+  public CoalescingLlmClient(LlmClient delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String promptKey(JsonObject event, JsonObject state) {
+    return delegate.promptKey(event, state);
+  }
+
+  @Override
+  public boolean defers(JsonObject event, JsonObject state) {
+    return delegate.defers(event, state);
+  }
+
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    return delegate.warmUp(plan);
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+    return decideNext(event, state, new CancellationToken());
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                       CancellationToken cancellation) {
+    String key = delegate.promptKey(event, state);
+    if (key == null) {
+      return delegate.decideNext(event, state, cancellation);
+    }
+    if (cancellation.isCancelled()) {
+      return Future.failedFuture(new CancellationException(cancellation.reason()));
+    }
+    while (true) {
+      Flight flight = inFlight.computeIfAbsent(key, k -> new Flight(k));
+      Caller caller = flight.join(cancellation);
+      if (caller == null) {
+        // Lost a race with completion; the entry is being removed
+        inFlight.remove(key, flight);
+        continue;
+      }
+      if (caller.leader) {
+        leaders.incrementAndGet();
+        delegate.decideNext(event, state, flight.upstream).onComplete(flight::finish);
+      } else {
+        joined.incrementAndGet();
+        LOG.fine(() -> "Coalesced LLM decision onto in-flight call: key=" + key);
+      }
+      return caller.promise.future();
+    }
+  }
+
+  /**
+   * Counters: {@code leaders} (upstream calls), {@code joined} and
+   * {@code inFlight}, plus the delegate's under {@code delegate}.
+   */
+  @Override
+  public JsonObject stats() {
+    return new JsonObject()
+        .put("leaders", leaders.get())
+        .put("joined", joined.get())
+        .put("inFlight", inFlight.size())
+        .put("delegate", delegate.stats());
+  }
+
+  private static final class Caller {
+    final boolean leader;
+    final Promise<JsonObject> promise = Promise.promise();
+    Runnable unregister = () -> {};
+
+    Caller(boolean leader) {
+      this.leader = leader;
+    }
+  }
+
+  /** One upstream call and the callers waiting on it. */
+  private final class Flight {
+    final String key;
+    final CancellationToken upstream = new CancellationToken();
+    private final List<Caller> callers = new ArrayList<>();
+    private boolean done;
+
+    Flight(String key) {
+      this.key = key;
+    }
+
+    /** Add a caller, or {@code null} if the flight has already landed. */
+    Caller join(CancellationToken cancellation) {
+      Caller caller;
+      synchronized (this) {
+        if (done) {
+          return null;
+        }
+        caller = new Caller(callers.isEmpty());
+        callers.add(caller);
+      }
+      caller.unregister = cancellation.onCancel(() -> leave(caller, cancellation.reason()));
+      return caller;
+    }
+
+    private void leave(Caller caller, String reason) {
+      boolean last;
+      synchronized (this) {
+        if (done || !callers.remove(caller)) {
+          return;
+        }
+        last = callers.isEmpty();
+        if (last) {
+          done = true;
+        }
+      }
+      if (last) {
+        inFlight.remove(key, this);
+        upstream.cancel(reason);
+      }
+      caller.promise.tryFail(new CancellationException(reason));
+    }
+
+    void finish(AsyncResult<JsonObject> ar) {
+      List<Caller> waiting;
+      synchronized (this) {
+        done = true;
+        waiting = new ArrayList<>(callers);
+        callers.clear();
+      }
+      inFlight.remove(key, this);
+      for (int i = 0; i < waiting.size(); i++) {
+        Caller c = waiting.get(i);
+        c.unregister.run();
+        if (ar.failed()) {
+          c.promise.tryFail(ar.cause());
+        } else if (i == 0) {
+          // The oldest remaining caller (the leader unless it left) pays
+          c.promise.tryComplete(ar.result().copy());
+        } else {
+          JsonObject copy = ar.result().copy();
+          copy.remove("usage");
+          c.promise.tryComplete(copy.put("coalesced", true));
+        }
+      }
+    }
+  }
+}
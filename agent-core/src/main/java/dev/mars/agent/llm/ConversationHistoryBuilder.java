@@ -0,0 +1,143 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Renders a run's step trail as a compact prompt section that fits a
+ * token budget.
+ *
+ * <p>Each step becomes one line of compact JSON:
+ * <pre>
+ * Step 0: data.lookup {"tradeId":"T-1"} → {"isin":null,"positions":[…]}
+ * </pre>
+ * When the rendered trail exceeds the budget (as measured by
+ * {@link TokenEstimator}) it is compacted in two passes, oldest step
+ * first, so the most recent results survive longest:
+ * <ol>
+ *   <li><b>Summarise</b> — a tool result is replaced by its shape:
+ *       short scalars are kept, long strings are truncated and nested
+ *       objects/arrays collapse to {@code "{n fields}"} /
+ *       {@code "[n items]"}. Bulky payloads such as {@code data.lookup}
+ *       snapshots shrink the most.</li>
+ *   <li><b>Drop</b> — whole steps are removed and replaced by a single
+ *       "N earlier step(s) omitted" line. The newest step is always
+ *       kept.</li>
+ * </ol>
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public final class ConversationHistoryBuilder {
+
+  /** Budget used when none is configured. */
+  public static final int DEFAULT_TOKEN_BUDGET = 1500;
+
+  /** Longest string value kept verbatim in a summarised result. */
+  static final int SUMMARY_VALUE_CHARS = 40;
+
+  private final int tokenBudget;
+
+  /**
+   * @param tokenBudget maximum estimated tokens for the rendered history;
+   *                    {@code 0} selects {@link #DEFAULT_TOKEN_BUDGET}
+   */
+  public ConversationHistoryBuilder(int tokenBudget) {
+    if (tokenBudget < 0) {
+      throw new IllegalArgumentException("tokenBudget must be >= 0");
+    }
+    this.tokenBudget = tokenBudget == 0 ? DEFAULT_TOKEN_BUDGET : tokenBudget;
+  }
+
+  public int tokenBudget() {
+    return tokenBudget;
+  }
+
+  /**
+   * Render {@code trail} (entries of {@code {step, command, toolResult}})
+   * within the budget. Returns an empty string for an empty trail.
+   */
+  public String build(JsonArray trail) {
+    int n = trail.size();
+    if (n == 0) {
+      return "";
+    }
+    String[] lines = new String[n];
+    int[] costs = new int[n];
+    int total = 0;
+    for (int i = 0; i < n; i++) {
+      lines[i] = line(trail.getJsonObject(i), false);
+      costs[i] = TokenEstimator.estimate(lines[i]);
+      total += costs[i];
+    }
+
+    // Pass 1: summarise tool results, oldest first
+    for (int i = 0; i < n && total > tokenBudget; i++) {
+      String summary = line(trail.getJsonObject(i), true);
+      int cost = TokenEstimator.estimate(summary);
+      if (cost < costs[i]) {
+        total -= costs[i] - cost;
+        lines[i] = summary;
+        costs[i] = cost;
+      }
+    }
+
+    // Pass 2: drop whole steps, oldest first, always keeping the newest
+    int first = 0;
+    while (total > tokenBudget && first < n - 1) {
+      total -= costs[first++];
+    }
+
+    StringBuilder sb = new StringBuilder(total * 4);
+    if (first > 0) {
+      sb.append('(').append(first).append(" earlier step(s) omitted)\n");
+    }
+    for (int i = first; i < n; i++) {
+      sb.append(lines[i]);
+      if (i < n - 1) {
+        sb.append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String line(JsonObject entry, boolean summarise) {
+    StringBuilder sb = new StringBuilder("Step ").append(entry.getInteger("step", 0)).append(": ");
+    JsonObject command = entry.getJsonObject("command");
+    if (command != null) {
+      sb.append(command.getString("tool", "?")).append(' ')
+        .append(CanonicalJson.encode(command.getJsonObject("args", new JsonObject())));
+    } else {
+      sb.append("(no tool)");
+    }
+    JsonObject result = entry.getJsonObject("toolResult");
+    sb.append(" → ");
+    if (result == null) {
+      sb.append("no result");
+    } else if (summarise) {
+      sb.append(CanonicalJson.encode(summarise(result))).append(" (summarised)");
+    } else {
+      sb.append(CanonicalJson.encode(result));
+    }
+    return sb.toString();
+  }
+
+  /** The shape of {@code result}: short scalars kept, containers collapsed. */
+  static JsonObject summarise(JsonObject result) {
+    JsonObject out = new JsonObject();
+    for (Map.Entry<String, Object> e : result) {
+      Object v = e.getValue();
+      if (v instanceof JsonObject obj) {
+        out.put(e.getKey(), "{" + obj.size() + " fields}");
+      } else if (v instanceof JsonArray arr) {
+        out.put(e.getKey(), "[" + arr.size() + " items]");
+      } else if (v instanceof String s && s.length() > SUMMARY_VALUE_CHARS) {
+        out.put(e.getKey(), s.substring(0, SUMMARY_VALUE_CHARS) + "…");
+      } else {
+        out.put(e.getKey(), v);
+      }
+    }
+    return out;
+  }
+}
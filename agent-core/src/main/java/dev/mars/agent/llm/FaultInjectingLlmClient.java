@@ -0,0 +1,165 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LlmClient} decorator that adds provider-like latency and failures
+ * to an offline backend such as {@link StubLlmClient}.
+ *
+ * <p>A stub answers instantly, so a load test against it shows the
+ * pipeline at zero LLM latency and never exercises retries, back-off or
+ * queueing. This client holds each decision on a Vert.x timer for a draw
+ * from the profile's {@link LatencyProfile}, then either passes it to the
+ * delegate or fails it the way a provider would: {@link LlmApiException}
+ * {@code 429} with a retry-after, {@code 500}, or a
+ * {@link TimeoutException} after {@code timeoutMs}. No thread is ever
+ * blocked.
+ *
+ * <p>A cancelled decision stops its timer and fails with a
+ * {@link CancellationException}. {@link #warmUp} is passed straight
+ * through, so warm-up does not pay the injected latency.
+ */
+public class FaultInjectingLlmClient implements LlmClient {
+
+  private final Vertx vertx;
+  private final LlmClient delegate;
+  private final FaultProfile profile;
+  private final SplittableRandom random;
+
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong delayedMs = new AtomicLong();
+
+  /**
+   * @param vertx    the Vert.x instance (for the delay timers)
+   * @param delegate the backend to slow down
+   * @param profile  latency and failure rates
+   * @param seed     seed for the draws, or {@code null} for a random one
+   */
+  public FaultInjectingLlmClient(Vertx vertx, LlmClient delegate, FaultProfile profile, Long seed) {
+    this.vertx = vertx;
+    this.delegate = delegate;
+    this.profile = profile;
+    this.random = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+  }
+
+  @Override
+  public String promptKey(JsonObject event, JsonObject state) {
+    return delegate.promptKey(event, state);
+  }
+
+  @Override
+  public boolean defers(JsonObject event, JsonObject state) {
+    return delegate.defers(event, state);
+  }
+
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    return delegate.warmUp(plan);
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+    return decideNext(event, state, new CancellationToken());
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                       CancellationToken cancellation) {
+    if (cancellation.isCancelled()) {
+      return Future.failedFuture(new CancellationException(cancellation.reason()));
+    }
+    calls.incrementAndGet();
+    long delay;
+    double draw;
+    synchronized (this) {
+      delay = profile.latency().sampleMs(random);
+      draw = random.nextDouble();
+    }
+    Fault fault = fault(draw);
+    if (fault == Fault.TIMEOUT) {
+      delay = profile.timeoutMs();
+    }
+    if (delay <= 0) {
+      return answer(fault, event, state, cancellation);
+    }
+    delayedMs.addAndGet(delay);
+    Promise<JsonObject> promise = Promise.promise();
+    long timer = vertx.setTimer(delay, t ->
+        answer(fault, event, state, cancellation).onComplete(ar -> {
+          if (ar.succeeded()) {
+            promise.tryComplete(ar.result());
+          } else {
+            promise.tryFail(ar.cause());
+          }
+        }));
+    Runnable unregister = cancellation.onCancel(() -> {
+      vertx.cancelTimer(timer);
+      promise.tryFail(new CancellationException(cancellation.reason()));
+    });
+    return promise.future().onComplete(ar -> unregister.run());
+  }
+
+  /**
+   * Counters: {@code calls}, {@code throttled}, {@code errors},
+   * {@code timeouts} and {@code delayedMs} (total injected delay), plus
+   * the delegate's under {@code delegate}.
+   */
+  @Override
+  public JsonObject stats() {
+    return new JsonObject()
+        .put("calls", calls.get())
+        .put("throttled", throttled.get())
+        .put("errors", errors.get())
+        .put("timeouts", timeouts.get())
+        .put("delayedMs", delayedMs.get())
+        .put("delegate", delegate.stats());
+  }
+
+  private enum Fault { NONE, THROTTLE, ERROR, TIMEOUT }
+
+  private Fault fault(double draw) {
+    if (draw < profile.throttleRate()) {
+      return Fault.THROTTLE;
+    }
+    draw -= profile.throttleRate();
+    if (draw < profile.errorRate()) {
+      return Fault.ERROR;
+    }
+    draw -= profile.errorRate();
+    return draw < profile.timeoutRate() ? Fault.TIMEOUT : Fault.NONE;
+  }
+
+  private Future<JsonObject> answer(Fault fault, JsonObject event, JsonObject state,
+                                    CancellationToken cancellation) {
+    return switch (fault) {
+      case THROTTLE -> {
+        throttled.incrementAndGet();
+        yield Future.failedFuture(new LlmApiException(429,
+            "{\"error\":{\"message\":\"Rate limit reached (injected)\"}}", profile.retryAfterMs()));
+      }
+      case ERROR -> {
+        errors.incrementAndGet();
+        yield Future.failedFuture(new LlmApiException(500,
+            "{\"error\":{\"message\":\"Internal server error (injected)\"}}", -1));
+      }
+      case TIMEOUT -> {
+        timeouts.incrementAndGet();
+        yield Future.failedFuture(new TimeoutException(
+            "LLM call timed out after " + profile.timeoutMs() + " ms (injected)"));
+      }
+      case NONE -> delegate.decideNext(event, state, cancellation);
+    };
+  }
+}
@@ -0,0 +1,62 @@
+package dev.mars.agent.llm;
+
+/**
+ * What a {@link FaultInjectingLlmClient} does to each call, so an offline
+ * backend behaves like a real provider under load.
+ *
+ * <p>Every call is delayed by a draw from {@code latency}; then, by the
+ * given probabilities, it is answered with a {@code 429}
+ * ({@code throttleRate}), a {@code 500} ({@code errorRate}) or — instead
+ * of the latency — hangs for {@code timeoutMs} and fails with a timeout
+ * ({@code timeoutRate}). The three rates must not sum to more than 1.
+ *
+ * @param latency      time before the call answers
+ * @param errorRate    fraction of calls failing with {@code 500}
+ * @param throttleRate fraction of calls failing with {@code 429}
+ * @param retryAfterMs wait advertised on a {@code 429}
+ * @param timeoutRate  fraction of calls that time out
+ * @param timeoutMs    how long a timed-out call hangs before failing
+ */
+public record FaultProfile(LatencyProfile latency, double errorRate, double throttleRate,
+                           long retryAfterMs, double timeoutRate, long timeoutMs) {
+
+  /** No latency and no failures. */
+  public static final FaultProfile NONE = new FaultProfile(LatencyProfile.NONE, 0, 0, 1_000, 0, 30_000);
+
+  public FaultProfile {
+    if (latency == null) latency = LatencyProfile.NONE;
+    if (errorRate < 0 || throttleRate < 0 || timeoutRate < 0
+        || errorRate + throttleRate + timeoutRate > 1) {
+      throw new IllegalArgumentException("fault rates must be >= 0 and sum to <= 1");
+    }
+    if (retryAfterMs < 0 || timeoutMs < 0) {
+      throw new IllegalArgumentException("retryAfterMs and timeoutMs must be >= 0");
+    }
+  }
+
+  /** {@code true} if this profile changes nothing. */
+  public boolean isNone() {
+    return latency.kind() == LatencyProfile.Kind.NONE
+        && errorRate == 0 && throttleRate == 0 && timeoutRate == 0;
+  }
+
+  /** Copy with a different latency distribution. */
+  public FaultProfile withLatency(LatencyProfile latency) {
+    return new FaultProfile(latency, errorRate, throttleRate, retryAfterMs, timeoutRate, timeoutMs);
+  }
+
+  /** Copy with a different {@code 500} rate. */
+  public FaultProfile withErrorRate(double errorRate) {
+    return new FaultProfile(latency, errorRate, throttleRate, retryAfterMs, timeoutRate, timeoutMs);
+  }
+
+  /** Copy with a different {@code 429} rate and advertised wait. */
+  public FaultProfile withThrottle(double throttleRate, long retryAfterMs) {
+    return new FaultProfile(latency, errorRate, throttleRate, retryAfterMs, timeoutRate, timeoutMs);
+  }
+
+  /** Copy with a different timeout rate and hang time. */
+  public FaultProfile withTimeouts(double timeoutRate, long timeoutMs) {
+    return new FaultProfile(latency, errorRate, throttleRate, retryAfterMs, timeoutRate, timeoutMs);
+  }
+}
@@ -0,0 +1,214 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A JSON value with {@code ${name}} placeholders, parsed once and
+ * rendered many times.
+ *
+ * <p>Compiling walks the value a single time and turns every string into
+ * literal segments and variable references, so rendering is a walk that
+ * appends segments — no scanning, no regular expressions. The compiled
+ * form is immutable and thread-safe; each render returns fresh JSON the
+ * caller owns.
+ *
+ * <h2>Placeholders</h2>
+ * <ul>
+ *   <li>{@code ${name}} — the variable's value; the empty string if unset.</li>
+ *   <li>{@code ${name:-default}} — {@code default} if unset.</li>
+ *   <li>A string that is exactly one placeholder renders to the raw value,
+ *       so {@code "${step}"} stays a number and {@code "${altIds}"} an
+ *       array; unset without a default, it renders {@code null}. Its
+ *       default is read as a JSON scalar, so {@code "${step:-0}"} renders
+ *       {@code 0} and {@code "${dryRun:-false}"} {@code false}; anything
+ *       else stays a string.</li>
+ * </ul>
+ */
+public final class JsonTemplate {
+
+  private final Node root;
+
+  private JsonTemplate(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Compile {@code value}: a {@link JsonObject}, {@link JsonArray},
+   * {@link Map}, {@link List}, string, number, boolean or {@code null}.
+   *
+   * @throws IllegalArgumentException on an unterminated placeholder or an
+   *         unsupported value type
+   */
+  public static JsonTemplate compile(Object value) {
+    return new JsonTemplate(node(value));
+  }
+
+  /** Render with variables looked up in {@code vars} ({@code null} = unset). */
+  public Object render(Function<String, Object> vars) {
+    return root.render(vars);
+  }
+
+  /**
+   * Render a template whose root is an object.
+   *
+   * @throws IllegalStateException if the root is not an object
+   */
+  public JsonObject renderObject(Function<String, Object> vars) {
+    if (!(root instanceof Obj)) {
+      throw new IllegalStateException("template root is not an object");
+    }
+    return (JsonObject) root.render(vars);
+  }
+
+  // ── Compilation ───────────────────────────────────────────────────
+
+  private static Node node(Object value) {
+    if (value instanceof JsonObject obj) {
+      return node(obj.getMap());
+    }
+    if (value instanceof JsonArray arr) {
+      return node(arr.getList());
+    }
+    if (value instanceof Map<?, ?> map) {
+      String[] keys = new String[map.size()];
+      Node[] values = new Node[map.size()];
+      int i = 0;
+      for (Map.Entry<?, ?> e : map.entrySet()) {
+        keys[i] = String.valueOf(e.getKey());
+        values[i++] = node(e.getValue());
+      }
+      return new Obj(keys, values);
+    }
+    if (value instanceof List<?> list) {
+      return new Arr(list.stream().map(JsonTemplate::node).toArray(Node[]::new));
+    }
+    if (value instanceof String s) {
+      return text(s);
+    }
+    if (value == null || value instanceof Number || value instanceof Boolean) {
+      return new Const(value);
+    }
+    throw new IllegalArgumentException("unsupported template value: " + value.getClass().getName());
+  }
+
+  private static Node text(String s) {
+    List<String> literals = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    List<String> defaults = new ArrayList<>();
+    int pos = 0;
+    while (true) {
+      int open = s.indexOf("${", pos);
+      if (open < 0) {
+        literals.add(s.substring(pos));
+        break;
+      }
+      int close = s.indexOf('}', open + 2);
+      if (close < 0) {
+        throw new IllegalArgumentException("unterminated placeholder in '" + s + "'");
+      }
+      literals.add(s.substring(pos, open));
+      String ref = s.substring(open + 2, close);
+      int sep = ref.indexOf(":-");
+      names.add((sep < 0 ? ref : ref.substring(0, sep)).trim());
+      defaults.add(sep < 0 ? null : ref.substring(sep + 2));
+      pos = close + 1;
+    }
+    if (names.isEmpty()) {
+      return new Const(s);
+    }
+    if (names.size() == 1 && literals.get(0).isEmpty() && literals.get(1).isEmpty()) {
+      String fallback = defaults.get(0);
+      return new Whole(names.get(0), fallback == null ? null : scalar(fallback));
+    }
+    return new Text(literals.toArray(String[]::new), names.toArray(String[]::new),
+        defaults.toArray(String[]::new));
+  }
+
+  /** {@code text} as a JSON number, boolean or {@code null}; otherwise the text itself. */
+  private static Object scalar(String text) {
+    Object value;
+    try {
+      value = Json.decodeValue(text);
+    } catch (DecodeException e) {
+      return text;
+    }
+    return value == null || value instanceof Number || value instanceof Boolean ? value : text;
+  }
+
+  // ── Compiled nodes ────────────────────────────────────────────────
+
+  private sealed interface Node permits Const, Whole, Text, Obj, Arr {
+    Object render(Function<String, Object> vars);
+  }
+
+  /** A string, number, boolean or {@code null} with no placeholders. */
+  private record Const(Object value) implements Node {
+    @Override
+    public Object render(Function<String, Object> vars) {
+      return value;
+    }
+  }
+
+  /** A string that is a single placeholder: renders the raw value. */
+  private record Whole(String name, Object fallback) implements Node {
+    @Override
+    public Object render(Function<String, Object> vars) {
+      Object value = vars.apply(name);
+      if (value == null) {
+        return fallback;
+      }
+      // Containers are copied so the caller's variables are never shared
+      if (value instanceof JsonObject obj) return obj.copy();
+      if (value instanceof JsonArray arr) return arr.copy();
+      return value;
+    }
+  }
+
+  /** {@code literals[0] var[0] literals[1] ... var[n-1] literals[n]}. */
+  private record Text(String[] literals, String[] names, String[] fallbacks) implements Node {
+    @Override
+    public Object render(Function<String, Object> vars) {
+      StringBuilder sb = new StringBuilder(literals[0]);
+      for (int i = 0; i < names.length; i++) {
+        Object value = vars.apply(names[i]);
+        if (value != null) {
+          sb.append(value);
+        } else if (fallbacks[i] != null) {
+          sb.append(fallbacks[i]);
+        }
+        sb.append(literals[i + 1]);
+      }
+      return sb.toString();
+    }
+  }
+
+  private record Obj(String[] keys, Node[] values) implements Node {
+    @Override
+    public Object render(Function<String, Object> vars) {
+      JsonObject out = new JsonObject();
+      for (int i = 0; i < keys.length; i++) {
+        out.put(keys[i], values[i].render(vars));
+      }
+      return out;
+    }
+  }
+
+  private record Arr(Node[] items) implements Node {
+    @Override
+    public Object render(Function<String, Object> vars) {
+      JsonArray out = new JsonArray();
+      for (Node item : items) {
+        out.add(item.render(vars));
+      }
+      return out;
+    }
+  }
+}
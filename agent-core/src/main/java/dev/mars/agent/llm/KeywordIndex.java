@@ -0,0 +1,149 @@
+package dev.mars.agent.llm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Multi-keyword matcher: which of many keyword groups occur in a text,
+ * found in one pass over the text.
+ *
+ * <p>An <a href="https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm">Aho-Corasick</a>
+ * automaton over every keyword of every group. Scanning costs time
+ * proportional to the text plus the number of hits, however many groups
+ * and keywords there are — where testing each group's keywords with
+ * {@link String#contains} costs a pass per keyword.
+ *
+ * <p>Matching is on the text as given; callers normalise case (e.g.
+ * lowercase once) and keywords are lowercased with {@link Locale#ROOT}
+ * when the index is built. Immutable and thread-safe once built.
+ */
+public final class KeywordIndex {
+
+  /** Per state: outgoing edge labels, sorted, and their target states. */
+  private final char[][] edgeChars;
+  private final int[][] edgeTargets;
+  /** Per state: the longest proper suffix that is also a trie path. */
+  private final int[] fail;
+  /** Per state: the groups with a keyword ending here, own or via suffix. */
+  private final int[][] outputs;
+  private final int groups;
+
+  private KeywordIndex(char[][] edgeChars, int[][] edgeTargets, int[] fail,
+                       int[][] outputs, int groups) {
+    this.edgeChars = edgeChars;
+    this.edgeTargets = edgeTargets;
+    this.fail = fail;
+    this.outputs = outputs;
+    this.groups = groups;
+  }
+
+  /**
+   * Build an index; group {@code i} matches when any keyword in
+   * {@code keywordGroups.get(i)} occurs. Blank keywords are ignored.
+   */
+  public static KeywordIndex build(List<? extends Iterable<String>> keywordGroups) {
+    // Trie
+    List<Map<Character, Integer>> trie = new ArrayList<>();
+    List<BitSet> ends = new ArrayList<>();
+    trie.add(new TreeMap<>());
+    ends.add(new BitSet());
+    for (int g = 0; g < keywordGroups.size(); g++) {
+      for (String keyword : keywordGroups.get(g)) {
+        if (keyword == null || keyword.isBlank()) {
+          continue;
+        }
+        int state = 0;
+        for (char c : normalise(keyword).toCharArray()) {
+          Integer next = trie.get(state).get(c);
+          if (next == null) {
+            next = trie.size();
+            trie.add(new TreeMap<>());
+            ends.add(new BitSet());
+            trie.get(state).put(c, next);
+          }
+          state = next;
+        }
+        ends.get(state).set(g);
+      }
+    }
+
+    // Failure links, breadth-first so a state's suffix is done before it
+    int n = trie.size();
+    int[] fail = new int[n];
+    ArrayDeque<Integer> queue = new ArrayDeque<>(trie.get(0).values());
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      ends.get(state).or(ends.get(fail[state]));
+      for (Map.Entry<Character, Integer> edge : trie.get(state).entrySet()) {
+        int child = edge.getValue();
+        int f = fail[state];
+        while (f != 0 && !trie.get(f).containsKey(edge.getKey())) {
+          f = fail[f];
+        }
+        Integer target = trie.get(f).get(edge.getKey());
+        fail[child] = target != null && target != child ? target : 0;
+        queue.add(child);
+      }
+    }
+
+    // Freeze into arrays
+    char[][] edgeChars = new char[n][];
+    int[][] edgeTargets = new int[n][];
+    int[][] outputs = new int[n][];
+    for (int s = 0; s < n; s++) {
+      Map<Character, Integer> edges = trie.get(s);
+      edgeChars[s] = new char[edges.size()];
+      edgeTargets[s] = new int[edges.size()];
+      int i = 0;
+      for (Map.Entry<Character, Integer> e : edges.entrySet()) {
+        edgeChars[s][i] = e.getKey();
+        edgeTargets[s][i++] = e.getValue();
+      }
+      outputs[s] = ends.get(s).stream().toArray();
+    }
+    return new KeywordIndex(edgeChars, edgeTargets, fail, outputs, keywordGroups.size());
+  }
+
+  /** Lowercase as keywords are stored; callers use it to prepare text once. */
+  public static String normalise(String text) {
+    return text.toLowerCase(Locale.ROOT);
+  }
+
+  /** Number of keyword groups. */
+  public int groups() {
+    return groups;
+  }
+
+  /**
+   * The groups with at least one keyword in {@code text}.
+   *
+   * @param text already {@linkplain #normalise normalised}
+   */
+  public BitSet matches(CharSequence text) {
+    BitSet hits = new BitSet(groups);
+    int state = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      int next;
+      while ((next = step(state, c)) < 0 && state != 0) {
+        state = fail[state];
+      }
+      state = Math.max(next, 0);
+      for (int g : outputs[state]) {
+        hits.set(g);
+      }
+    }
+    return hits;
+  }
+
+  private int step(int state, char c) {
+    int i = Arrays.binarySearch(edgeChars[state], c);
+    return i < 0 ? -1 : edgeTargets[state][i];
+  }
+}
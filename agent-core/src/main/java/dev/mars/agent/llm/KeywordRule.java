@@ -0,0 +1,51 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link StubRule} that applies when the event's {@code reason}
+ * contains any of its keywords (case-insensitive), and then defers to
+ * {@code action} for the command.
+ *
+ * <p>Declaring keywords rather than testing them inside the rule lets
+ * {@link StubLlmClient} index every rule's keywords together and find
+ * the candidates in one pass over the reason (see {@link KeywordIndex}).
+ * Evaluated on its own, the rule tests its keywords directly.
+ *
+ * @param keywords lowercased on construction; at least one
+ * @param action   produces the command once a keyword matched; may still
+ *                 return {@code null} to fall through
+ */
+public record KeywordRule(Set<String> keywords, StubRule action) implements StubRule {
+
+  public KeywordRule {
+    keywords = keywords.stream()
+        .filter(k -> k != null && !k.isBlank())
+        .map(KeywordIndex::normalise)
+        .collect(Collectors.toUnmodifiableSet());
+    if (keywords.isEmpty()) {
+      throw new IllegalArgumentException("a keyword rule needs at least one keyword");
+    }
+    if (action == null) {
+      throw new IllegalArgumentException("action must not be null");
+    }
+  }
+
+  @Override
+  public JsonObject tryMatch(JsonObject event) {
+    return matches(event) ? action.tryMatch(event) : null;
+  }
+
+  @Override
+  public JsonObject tryMatch(JsonObject event, JsonObject state) {
+    return matches(event) ? action.tryMatch(event, state) : null;
+  }
+
+  private boolean matches(JsonObject event) {
+    String reason = KeywordIndex.normalise(event.getString("reason", ""));
+    return keywords.stream().anyMatch(reason::contains);
+  }
+}
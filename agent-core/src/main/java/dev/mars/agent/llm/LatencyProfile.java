@@ -0,0 +1,199 @@
+package dev.mars.agent.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.random.RandomGenerator;
+
+/**
+ * A latency distribution for simulated LLM backends.
+ *
+ * <p>Written as a compact spec so it fits a YAML string or a verticle
+ * config value:
+ * <ul>
+ *   <li>{@code none} — no delay</li>
+ *   <li>{@code fixed:<ms>}</li>
+ *   <li>{@code uniform:<minMs>:<maxMs>}</li>
+ *   <li>{@code lognormal:<medianMs>:<p99Ms>} — the long right tail real
+ *       providers show; {@code p99} fixes the spread</li>
+ *   <li>{@code empirical:<upToMs>=<weight>,...} — a histogram measured
+ *       from a real provider, e.g. {@code empirical:300=50,800=35,4000=15}:
+ *       a bucket is picked by weight and the latency drawn uniformly
+ *       between the previous bucket's bound (or 0) and its own</li>
+ * </ul>
+ *
+ * @param kind    the distribution
+ * @param a       fixed value, minimum or median (ms); {@code 0} for
+ *                {@code empirical}
+ * @param b       maximum or p99 (ms); the last bucket bound for
+ *                {@code empirical}; unused for {@code none}/{@code fixed}
+ * @param buckets the histogram, ascending by bound; empty unless
+ *                {@code empirical}
+ */
+public record LatencyProfile(Kind kind, long a, long b, List<Bucket> buckets) {
+
+  public enum Kind { NONE, FIXED, UNIFORM, LOGNORMAL, EMPIRICAL }
+
+  /**
+   * One histogram bucket: latencies up to {@code upToMs}, observed
+   * {@code weight} times (or with that relative frequency).
+   */
+  public record Bucket(long upToMs, long weight) {
+    public Bucket {
+      if (upToMs < 0 || weight < 0) {
+        throw new IllegalArgumentException("bucket bound and weight must be >= 0");
+      }
+    }
+  }
+
+  /** No delay. */
+  public static final LatencyProfile NONE = new LatencyProfile(Kind.NONE, 0, 0);
+
+  /** z-score of the 99th percentile of a standard normal. */
+  private static final double Z_99 = 2.326;
+
+  public LatencyProfile {
+    if (kind == null) kind = Kind.NONE;
+    buckets = buckets == null ? List.of() : List.copyOf(buckets);
+    if (kind == Kind.EMPIRICAL) {
+      long previous = -1;
+      long total = 0;
+      for (Bucket bucket : buckets) {
+        if (bucket.upToMs() <= previous) {
+          throw new IllegalArgumentException("empirical bucket bounds must ascend");
+        }
+        previous = bucket.upToMs();
+        total += bucket.weight();
+      }
+      if (total == 0) {
+        throw new IllegalArgumentException("empirical profile needs a bucket with weight > 0");
+      }
+      a = 0;
+      b = previous;
+    } else if (!buckets.isEmpty()) {
+      throw new IllegalArgumentException(kind + " takes no buckets");
+    }
+    if (a < 0 || b < 0) {
+      throw new IllegalArgumentException("latencies must be >= 0");
+    }
+    if ((kind == Kind.UNIFORM || kind == Kind.LOGNORMAL) && b < a) {
+      throw new IllegalArgumentException(kind + " requires " + a + " <= " + b);
+    }
+    if (kind == Kind.LOGNORMAL && a == 0) {
+      throw new IllegalArgumentException("lognormal median must be > 0");
+    }
+  }
+
+  /** A parametric profile (anything but {@code empirical}). */
+  public LatencyProfile(Kind kind, long a, long b) {
+    this(kind, a, b, List.of());
+  }
+
+  /** An {@code empirical} profile over {@code buckets}. */
+  public static LatencyProfile empirical(List<Bucket> buckets) {
+    return new LatencyProfile(Kind.EMPIRICAL, 0, 0, buckets);
+  }
+
+  /**
+   * Parse a spec such as {@code "lognormal:200:1500"}; {@code null} or
+   * blank is {@link #NONE}.
+   *
+   * @throws IllegalArgumentException if the spec is malformed
+   */
+  public static LatencyProfile parse(String spec) {
+    if (spec == null || spec.isBlank()) {
+      return NONE;
+    }
+    String[] parts = spec.trim().split(":");
+    Kind kind;
+    try {
+      kind = Kind.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("unknown latency distribution in '" + spec + "'");
+    }
+    if (kind == Kind.EMPIRICAL) {
+      return parseEmpirical(spec, spec.trim().substring(parts[0].length()));
+    }
+    int expected = switch (kind) {
+      case NONE -> 1;
+      case FIXED -> 2;
+      case UNIFORM, LOGNORMAL -> 3;
+      case EMPIRICAL -> throw new AssertionError();
+    };
+    if (parts.length != expected) {
+      throw new IllegalArgumentException("latency spec '" + spec + "' needs "
+          + (expected - 1) + " value(s)");
+    }
+    try {
+      long a = expected > 1 ? Long.parseLong(parts[1].trim()) : 0;
+      long b = expected > 2 ? Long.parseLong(parts[2].trim()) : 0;
+      return new LatencyProfile(kind, a, b);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("latency spec '" + spec + "' has a non-integer value");
+    }
+  }
+
+  private static LatencyProfile parseEmpirical(String spec, String rest) {
+    if (!rest.startsWith(":") || rest.length() == 1) {
+      throw new IllegalArgumentException("latency spec '" + spec + "' needs <upToMs>=<weight> buckets");
+    }
+    List<Bucket> buckets = new ArrayList<>();
+    for (String entry : rest.substring(1).split(",")) {
+      String[] kv = entry.split("=");
+      if (kv.length != 2) {
+        throw new IllegalArgumentException("latency spec '" + spec + "' has a malformed bucket '"
+            + entry.trim() + "'");
+      }
+      try {
+        buckets.add(new Bucket(Long.parseLong(kv[0].trim()), Long.parseLong(kv[1].trim())));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("latency spec '" + spec + "' has a non-integer value");
+      }
+    }
+    return empirical(buckets);
+  }
+
+  /** Draw one latency in milliseconds. */
+  public long sampleMs(RandomGenerator random) {
+    return switch (kind) {
+      case NONE -> 0;
+      case FIXED -> a;
+      case UNIFORM -> a == b ? a : random.nextLong(a, b + 1);
+      case LOGNORMAL -> {
+        double mu = Math.log(a);
+        double sigma = (Math.log(Math.max(b, a)) - mu) / Z_99;
+        yield Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+      }
+      case EMPIRICAL -> sampleHistogram(random);
+    };
+  }
+
+  private long sampleHistogram(RandomGenerator random) {
+    long total = 0;
+    for (Bucket bucket : buckets) {
+      total += bucket.weight();
+    }
+    long pick = random.nextLong(total);
+    long lower = 0;
+    for (Bucket bucket : buckets) {
+      if (pick < bucket.weight()) {
+        return lower == bucket.upToMs() ? lower : random.nextLong(lower, bucket.upToMs() + 1);
+      }
+      pick -= bucket.weight();
+      lower = bucket.upToMs();
+    }
+    return b;
+  }
+
+  @Override
+  public String toString() {
+    return switch (kind) {
+      case NONE -> "none";
+      case FIXED -> "fixed:" + a;
+      case UNIFORM -> "uniform:" + a + ":" + b;
+      case LOGNORMAL -> "lognormal:" + a + ":" + b;
+      case EMPIRICAL -> "empirical:" + String.join(",", buckets.stream()
+          .map(bucket -> bucket.upToMs() + "=" + bucket.weight()).toList());
+    };
+  }
+}
@@ -0,0 +1,39 @@
+package dev.mars.agent.llm;
+
+/**
+ * A non-2xx response from an LLM provider.
+ *
+ * <p>Carries the status and, when the provider sent one, how long it asked
+ * the client to wait, so callers can tell throttling and transient server
+ * errors ({@link #retryable()}) from requests that will never succeed.
+ */
+public class LlmApiException extends RuntimeException {
+
+  private final int status;
+  private final long retryAfterMs;
+
+  /**
+   * @param status       the HTTP status
+   * @param body         the response body, for the message
+   * @param retryAfterMs the provider's requested wait, or {@code -1}
+   */
+  public LlmApiException(int status, String body, long retryAfterMs) {
+    super("LLM API returned " + status + ": " + body);
+    this.status = status;
+    this.retryAfterMs = retryAfterMs;
+  }
+
+  public int status() {
+    return status;
+  }
+
+  /** The provider's requested wait in milliseconds, or {@code -1} if none. */
+  public long retryAfterMs() {
+    return retryAfterMs;
+  }
+
+  /** {@code 429} and {@code 5xx} are worth retrying; other statuses are not. */
+  public boolean retryable() {
+    return status == 429 || status >= 500;
+  }
+}
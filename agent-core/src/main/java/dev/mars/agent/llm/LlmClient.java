@@ -1,5 +1,6 @@
 package dev.mars.agent.llm;
 
+import dev.mars.mcp.tool.CancellationToken;
 import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
 
@@ -27,11 +28,17 @@ import io.vertx.core.json.JsonObject;
  *   "intent": "CALL_TOOL",         // action type (currently only CALL_TOOL)
  *   "tool":   "case.raiseTicket",   // name of the tool the agent should invoke
  *   "args":   { ... },              // arguments forwarded to Tool.invoke()
- *   "stop":   true | false          // true  = this is the final step
+ *   "stop":   true | false,         // true  = this is the final step
  *                                    // false = runner should call decideNext again
+ *   "usage":  { "total_tokens": 812, ... }, // optional provider token usage
+ *   "confidence": 0.9                // optional, 0..1; see CascadingLlmClient
  * }
  * </pre>
  *
+ * <p>Clients backed by a metered provider should pass the provider's
+ * {@code usage} block through unchanged so the runner can enforce its
+ * per-run token budget.
+ *
  * <h2>Implementations</h2>
  * <ul>
  *   <li>{@link StubLlmClient} — rule-based stub for local development
@@ -56,8 +63,82 @@ public interface LlmClient {
    * should do next.
    *
    * @param event the original failure event ({@code tradeId}, {@code reason}, etc.)
-   * @param state the accumulated case state from the {@link dev.mars.agent.memory.MemoryStore}
+   * @param state the accumulated case state from the {@link dev.mars.agent.memory.MemoryStore},
+   *              plus the runner's {@code step}, {@code last} entry and
+   *              {@code history} (this run's trail so far)
    * @return a Future containing a structured command JSON
    */
   Future<JsonObject> decideNext(JsonObject event, JsonObject state);
+
+  /**
+   * Cancellable variant of {@link #decideNext(JsonObject, JsonObject)}.
+   *
+   * <p>Clients that make network calls should override this and abort the
+   * in-flight request when {@code cancellation} fires, so abandoned runs
+   * stop consuming provider tokens. The default ignores the token.
+   *
+   * @param event        the original failure event
+   * @param state        the accumulated case state
+   * @param cancellation the run's cancellation token
+   * @return a Future containing a structured command JSON
+   */
+  default Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                        CancellationToken cancellation) {
+    return decideNext(event, state);
+  }
+
+  /**
+   * A stable key identifying the exact prompt {@link #decideNext} would
+   * send for this event and state, or {@code null} if the client cannot
+   * produce one (in which case its decisions are never cached).
+   *
+   * <p>Two calls with the same key must be interchangeable: same model,
+   * same messages and same tool definitions. Used by
+   * {@link CachingLlmClient}.
+   *
+   * @param event the original failure event
+   * @param state the accumulated case state
+   * @return a prompt key, or {@code null}
+   */
+  default String promptKey(JsonObject event, JsonObject state) {
+    return null;
+  }
+
+  /**
+   * Whether {@link #decideNext} would defer this decision to a batch and
+   * so may take far longer than an interactive call (see
+   * {@link BatchingLlmClient}). The runner uses it to release its caller
+   * before waiting. Decorators should delegate.
+   *
+   * @param event the original failure event
+   * @param state the accumulated case state
+   * @return {@code true} if the decision is deferred
+   */
+  default boolean defers(JsonObject event, JsonObject state) {
+    return false;
+  }
+
+  /**
+   * Prepare for traffic: open provider connections and run {@code plan}'s
+   * synthetic events through the client's own request and response code,
+   * without asking the provider for a decision. Called once at startup,
+   * before the HTTP API listens. Decorators should delegate.
+   *
+   * @param plan what to warm
+   * @return a report of what was warmed; the default warms nothing
+   */
+  default Future<JsonObject> warmUp(WarmupPlan plan) {
+    return Future.succeededFuture(new JsonObject());
+  }
+
+  /**
+   * Counters for monitoring, served on {@code GET /stats}. Decorators
+   * report their own and nest their delegate's under {@code "delegate"},
+   * so the result follows the decorator chain.
+   *
+   * @return a new object; the default reports nothing
+   */
+  default JsonObject stats() {
+    return new JsonObject();
+  }
 }
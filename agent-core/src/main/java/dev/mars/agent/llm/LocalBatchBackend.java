@@ -0,0 +1,99 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * File-based stand-in for a provider batch endpoint, for local
+ * development and tests.
+ *
+ * <p>{@link #submit} writes {@code <dir>/<id>.input.jsonl} and works
+ * through it in the background, one request at a time, through
+ * {@code executor} (which turns a chat-completions request body into a
+ * completion — typically a call to a local or mock endpoint). When every
+ * line is answered it writes {@code <dir>/<id>.output.jsonl}, which is
+ * what {@link #poll} returns. Both files are left behind for inspection.
+ *
+ * <p>Not a production batch path: there is no batch discount and no
+ * separate quota. Each line is an ordinary call on {@code executor}'s
+ * endpoint — pass {@link OpenAiLlmClient#complete} of the interactive
+ * client so the calls are at least paced by its rate limiter.
+ */
+public class LocalBatchBackend implements BatchBackend {
+
+  private static final Logger LOG = Logger.getLogger(LocalBatchBackend.class.getName());
+
+  private final Vertx vertx;
+  private final Path dir;
+  private final Function<JsonObject, Future<JsonObject>> executor;
+
+  /**
+   * @param vertx    the Vert.x instance
+   * @param dir      directory for the input and output files
+   * @param executor request body → chat completion
+   */
+  public LocalBatchBackend(Vertx vertx, Path dir, Function<JsonObject, Future<JsonObject>> executor) {
+    this.vertx = vertx;
+    this.dir = dir;
+    this.executor = executor;
+  }
+
+  @Override
+  public Future<String> submit(Buffer requests) {
+    String id = "batch_" + UUID.randomUUID();
+    FileSystem fs = vertx.fileSystem();
+    return fs.mkdirs(dir.toString())
+        .compose(v -> fs.writeFile(input(id), requests))
+        .map(v -> {
+          LOG.info("Local batch submitted: " + id);
+          process(id, requests.toString().split("\n"), 0, Buffer.buffer())
+              .onFailure(err -> LOG.warning("Local batch " + id + " failed: " + err.getMessage()));
+          return id;
+        });
+  }
+
+  @Override
+  public Future<Buffer> poll(String batchId) {
+    FileSystem fs = vertx.fileSystem();
+    return fs.exists(output(batchId))
+        .compose(done -> done ? fs.readFile(output(batchId)) : Future.succeededFuture());
+  }
+
+  private Future<Void> process(String id, String[] lines, int index, Buffer out) {
+    if (index == lines.length) {
+      LOG.info("Local batch completed: " + id);
+      return vertx.fileSystem().writeFile(output(id), out);
+    }
+    if (lines[index].isBlank()) {
+      return process(id, lines, index + 1, out);
+    }
+    JsonObject request = new JsonObject(lines[index]);
+    String customId = request.getString("custom_id");
+    return executor.apply(request.getJsonObject("body"))
+        .map(completion -> new JsonObject()
+            .put("custom_id", customId)
+            .put("response", new JsonObject().put("status_code", 200).put("body", completion))
+            .putNull("error"))
+        .otherwise(err -> new JsonObject()
+            .put("custom_id", customId)
+            .putNull("response")
+            .put("error", new JsonObject().put("message", String.valueOf(err.getMessage()))))
+        .compose(line -> process(id, lines, index + 1, out.appendString(line.encode()).appendString("\n")));
+  }
+
+  private String input(String id) {
+    return dir.resolve(id + ".input.jsonl").toString();
+  }
+
+  private String output(String id) {
+    return dir.resolve(id + ".output.jsonl").toString();
+  }
+}
@@ -1,15 +1,32 @@
 package dev.mars.agent.llm;
 
+import dev.mars.mcp.tool.CancellationToken;
 import dev.mars.mcp.tool.Tool;
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.client.WebClient;
-import io.vertx.ext.web.client.WebClientOptions;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -34,6 +51,62 @@ import java.util.logging.Logger;
  *     model: "gpt-4o"
  * </pre>
  *
+ * <h2>Streaming</h2>
+ * With {@link OpenAiSettings#stream()} set, the request asks for a
+ * Server-Sent-Events response and {@link #decideNext} completes as soon
+ * as the first tool call's name and arguments are complete (see
+ * {@link ChatCompletionStreamAssembler}), rather than after the
+ * end-of-stream marker.
+ *
+ * <h2>Rate limits and retries</h2>
+ * Every call first acquires a slot from a {@link RateLimiter} sized by
+ * {@link OpenAiSettings#rateLimits()}, so bursts are paced rather than
+ * rejected. {@code 429} and {@code 5xx} responses surface as
+ * {@link LlmApiException} and are retried per
+ * {@link OpenAiSettings#retry()} — after {@code Retry-After} when the
+ * provider sends it, otherwise with jittered exponential backoff — and
+ * {@code x-ratelimit-*} headers keep the limiter in step with the
+ * provider's own accounting.
+ *
+ * <h2>Prompt layout</h2>
+ * The system prompt carries every instruction and the tool definitions are
+ * sorted and key-sorted, so model, tools and system prompt form a
+ * byte-identical prefix across calls and restarts — the part providers
+ * cache and discount. The user message carries only the variable content,
+ * most stable first. {@link #promptCacheStats()} reports the
+ * {@code cached_tokens} hit rate and its latency effect.
+ *
+ * <h2>Strict mode</h2>
+ * With {@link OpenAiSettings#strict()} set, every function is declared
+ * {@code "strict": true} with a schema in the provider's strict form and
+ * {@code tool_choice} is {@code "required"}, so the provider constrains
+ * decoding to one well-formed tool call. The arguments are still checked
+ * locally against each tool's schema with a precompiled
+ * {@link ToolSchemaValidator} — strict decoding is not available from
+ * every compatible provider. An invalid answer (text, malformed JSON, an
+ * unknown tool or schema violations) gets one repair call that names the
+ * errors; if that also fails validation the command is returned with
+ * {@code "confidence": 0.0} and its {@code violations}.
+ *
+ * <h2>Response parsing</h2>
+ * Non-streamed responses are read with {@link ChatCompletionParser}, which
+ * extracts the first tool call, the message content and {@code usage}
+ * without building the rest of the completion tree. Per-call log messages
+ * are only rendered when their level is enabled.
+ *
+ * <h2>Warm-up</h2>
+ * {@link #warmUp} sends concurrent {@code GET /models} requests — free
+ * and token-less — so DNS, the TLS handshake and the connection pool are
+ * paid for before the first case. It then renders requests and parses a
+ * canned completion for the plan's synthetic events on a worker thread,
+ * so the JIT has compiled that path too without holding up the event
+ * loop. No decision is requested from the provider.
+ *
+ * <h2>Cancellation</h2>
+ * Requests go through the core Vert.x {@link HttpClient} so that an
+ * in-flight call can be reset when the run's {@link CancellationToken}
+ * fires; the provider sees the connection drop and stops generating.
+ *
  * @see LlmClient
  * @see StubLlmClient
  */
@@ -41,12 +114,37 @@ public class OpenAiLlmClient implements LlmClient {
 
   private static final Logger LOG = Logger.getLogger(OpenAiLlmClient.class.getName());
 
-  private final WebClient webClient;
+  /** Sampling temperature used when none is configured. */
+  public static final double DEFAULT_TEMPERATURE = 0.1;
+
+  /** Steps per synthetic event during {@link #warmUp}; enough to exercise the history. */
+  private static final int WARM_UP_STEPS = 3;
+
+  /** Runs whose last rendered request is kept; see {@link #prepare}. */
+  private static final int MAX_PREPARED = 256;
+
+  private final Vertx vertx;
+  private final HttpClient httpClient;
   private final String endpoint;
   private final String apiKey;
   private final String model;
+  private final OpenAiSettings settings;
   private final JsonArray toolsDef;
-  private final String systemPrompt;
+  private final RequestTemplate template;
+  private final ConversationHistoryBuilder history;
+  private final RateLimiter limiter;
+  private final AtomicLong retries = new AtomicLong();
+  private final PromptCacheStats cacheStats = new PromptCacheStats();
+  private final Map<String, ToolSchemaValidator> validators = new HashMap<>();
+  private final AtomicLong repairs = new AtomicLong();
+  private final AtomicLong repaired = new AtomicLong();
+  /** The request last rendered per state object; see {@link #prepare}. */
+  private final Map<StateRef, Prepared> prepared = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<StateRef, Prepared> eldest) {
+      return size() > MAX_PREPARED;
+    }
+  };
 
   /**
    * Creates a new OpenAI LLM client.
@@ -61,93 +159,663 @@ public class OpenAiLlmClient implements LlmClient {
    */
   public OpenAiLlmClient(Vertx vertx, String endpoint, String apiKey,
                           String model, Collection<Tool> tools) {
+    this(vertx, endpoint, apiKey, model, OpenAiSettings.DEFAULTS, tools);
+  }
+
+  /**
+   * Creates a new OpenAI LLM client with an explicit sampling temperature.
+   *
+   * @param vertx       the Vert.x instance
+   * @param endpoint    the LLM API base URL
+   * @param apiKey      the API key for authentication
+   * @param model       the model identifier
+   * @param temperature the sampling temperature sent with every request
+   * @param tools       the agent tools exposed for function-calling
+   */
+  public OpenAiLlmClient(Vertx vertx, String endpoint, String apiKey,
+                          String model, double temperature, Collection<Tool> tools) {
+    this(vertx, endpoint, apiKey, model, OpenAiSettings.DEFAULTS.withTemperature(temperature), tools);
+  }
+
+  /**
+   * Creates a new OpenAI LLM client with explicit settings.
+   *
+   * @param vertx    the Vert.x instance
+   * @param endpoint the LLM API base URL
+   * @param apiKey   the API key for authentication
+   * @param model    the model identifier
+   * @param settings temperature, streaming and other tuning
+   * @param tools    the agent tools exposed for function-calling
+   */
+  public OpenAiLlmClient(Vertx vertx, String endpoint, String apiKey,
+                          String model, OpenAiSettings settings, Collection<Tool> tools) {
+    this.vertx = vertx;
+    this.settings = settings;
     this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
     this.apiKey = apiKey;
     this.model = model;
-    this.webClient = WebClient.create(vertx, new WebClientOptions()
+    this.httpClient = vertx.createHttpClient(new HttpClientOptions()
         .setSsl(this.endpoint.startsWith("https"))
         .setTrustAll(false)
         .setConnectTimeout(30_000)
         .setIdleTimeout(120));
-    this.toolsDef = buildToolsDef(tools);
-    this.systemPrompt = buildSystemPrompt();
+    this.toolsDef = buildToolsDef(tools, settings.strict());
+    for (Tool tool : tools) {
+      validators.put(tool.name(), ToolSchemaValidator.compile(tool.schema()));
+    }
+    this.template = buildTemplate();
+    this.history = new ConversationHistoryBuilder(settings.historyTokenBudget());
+    this.limiter = new RateLimiter(vertx, settings.rateLimits());
     LOG.info("OpenAiLlmClient created: endpoint=" + this.endpoint
-        + " model=" + model + " tools=" + toolsDef.size());
+        + " model=" + model + " settings=" + settings + " tools=" + toolsDef.size());
+  }
+
+  /** The sampling temperature sent with every request. */
+  public double temperature() {
+    return settings.temperature();
+  }
+
+  /**
+   * SHA-256 over the rendered request body — model, temperature, tool
+   * definitions and messages, i.e. everything that determines the
+   * provider's answer. The invariant prefix is fixed per client and the
+   * event inside the user message is canonicalised, so the bytes are
+   * stable across key order and correlation IDs.
+   */
+  @Override
+  public String promptKey(JsonObject event, JsonObject state) {
+    return prepare(event, state).key();
   }
 
   @Override
   public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
-    LOG.info("decideNext: tradeId=" + event.getString("tradeId")
+    return decideNext(event, state, new CancellationToken());
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                       CancellationToken cancellation) {
+    LOG.info(() -> "decideNext: tradeId=" + event.getString("tradeId")
         + " step=" + state.getInteger("step", 0));
 
-    JsonArray messages = buildMessages(event, state);
+    Buffer payload = prepare(event, state).payload;
+    // Rough prompt size for the tokens-per-minute bucket; corrected from usage
+    long estimatedTokens = payload.length() / 4;
+    Future<JsonObject> decided = attempt(payload, estimatedTokens, cancellation, 0, this::send);
+    return settings.strict()
+        ? decided.compose(cmd -> repairIfInvalid(event, state, cmd, cancellation))
+        : decided;
+  }
 
-    JsonObject requestBody = new JsonObject()
-        .put("model", model)
-        .put("messages", messages)
-        .put("tools", toolsDef)
-        .put("tool_choice", "auto")
-        .put("temperature", 0.1);
+  /**
+   * Strict mode: give a command that failed validation one repair call.
+   * The repair carries the original prompt plus the errors, so it costs
+   * about one more prompt; its usage is added to the command's.
+   */
+  private Future<JsonObject> repairIfInvalid(JsonObject event, JsonObject state, JsonObject cmd,
+                                             CancellationToken cancellation) {
+    JsonArray violations = cmd.getJsonArray("violations");
+    if (violations == null) {
+      return Future.succeededFuture(cmd);
+    }
+    repairs.incrementAndGet();
+    LOG.fine(() -> "Repairing invalid tool call: " + violations.encode());
+    JsonArray messages = buildMessages(event, state).add(new JsonObject()
+        .put("role", "user")
+        .put("content", repairPrompt(violations)));
+    Buffer payload = template.render(messages);
+    return attempt(payload, payload.length() / 4, cancellation, 0, this::send)
+        .map(fixed -> {
+          if (fixed.getJsonArray("violations") == null) {
+            repaired.incrementAndGet();
+          } else {
+            fixed.put("confidence", 0.0);
+          }
+          JsonObject usage = cmd.getJsonObject("usage");
+          if (usage != null) {
+            fixed.put("usage", CascadingLlmClient.sumUsage(usage, fixed.getJsonObject("usage")));
+          }
+          return fixed;
+        })
+        .recover(err -> {
+          if (cancellation.isCancelled()) {
+            return Future.failedFuture(err);
+          }
+          LOG.warning("Repair call failed; keeping invalid command: " + err.getMessage());
+          return Future.succeededFuture(cmd.put("confidence", 0.0));
+        });
+  }
+
+  private static String repairPrompt(JsonArray violations) {
+    StringBuilder msg = new StringBuilder("## Invalid Reply\nYour previous reply was rejected:\n");
+    violations.forEach(v -> msg.append("- ").append(v).append('\n'));
+    msg.append("\nReply with exactly one call to one of the available tools, "
+        + "with arguments that match its schema.");
+    return msg.toString();
+  }
+
+  /** Strict-mode counters: {@code repairs} attempted and {@code repaired} successfully. */
+  public JsonObject strictStats() {
+    return new JsonObject()
+        .put("repairs", repairs.get())
+        .put("repaired", repaired.get());
+  }
 
+  /**
+   * One paced attempt through {@code call}; throttled and server-error
+   * responses are retried per {@link OpenAiSettings#retry()}, waiting as
+   * long as the provider asked when it said.
+   */
+  private Future<JsonObject> attempt(Buffer payload, long estimatedTokens,
+                                     CancellationToken cancellation, int attempt,
+                                     BiFunction<Buffer, CancellationToken, Future<JsonObject>> call) {
+    return limiter.acquire(estimatedTokens, cancellation)
+        .compose(v -> {
+          long sentAt = System.nanoTime();
+          return call.apply(payload, cancellation).map(cmd -> {
+            JsonObject usage = cmd.getJsonObject("usage");
+            long latencyMs = (System.nanoTime() - sentAt) / 1_000_000;
+            cacheStats.record(usage, latencyMs);
+            if (usage != null) {
+              limiter.reconcile(estimatedTokens, usage.getLong("total_tokens", estimatedTokens));
+              LOG.fine(() -> "LLM call: promptTokens=" + usage.getLong("prompt_tokens", 0L)
+                  + " cachedTokens=" + PromptCacheStats.cachedTokens(usage) + " latencyMs=" + latencyMs);
+            }
+            return cmd;
+          });
+        })
+        .recover(err -> {
+          if (!(err instanceof LlmApiException api) || !api.retryable()
+              || attempt >= settings.retry().maxRetries() || cancellation.isCancelled()) {
+            return Future.failedFuture(err);
+          }
+          long delay = api.retryAfterMs() >= 0
+              ? api.retryAfterMs()
+              : settings.retry().backoffMs(attempt);
+          if (api.status() == 429) {
+            // Everyone sharing this endpoint backs off, not just this call
+            limiter.pauseFor(delay);
+          }
+          retries.incrementAndGet();
+          LOG.warning("LLM API returned " + api.status() + "; retry " + (attempt + 1)
+              + "/" + settings.retry().maxRetries() + " in " + delay + " ms");
+          return sleep(delay, cancellation)
+              .compose(v -> attempt(payload, estimatedTokens, cancellation, attempt + 1, call));
+        });
+  }
+
+  private Future<JsonObject> send(Buffer payload, CancellationToken cancellation) {
     String url = endpoint + "/chat/completions";
+    long sentAt = System.nanoTime();
 
-    return webClient.postAbs(url)
+    if (cancellation.isCancelled()) {
+      return Future.failedFuture(new CancellationException(cancellation.reason()));
+    }
+
+    RequestOptions options = new RequestOptions()
+        .setMethod(HttpMethod.POST)
+        .setAbsoluteURI(url)
         .putHeader("Authorization", "Bearer " + apiKey)
-        .putHeader("Content-Type", "application/json")
-        .sendJsonObject(requestBody)
-        .map(response -> {
-          int status = response.statusCode();
-          if (status < 200 || status >= 300) {
-            String body = response.bodyAsString();
-            LOG.severe("LLM API error: status=" + status + " body=" + body);
-            throw new RuntimeException("LLM API returned " + status + ": " + body);
-          }
-          return parseResponse(response.bodyAsJsonObject());
+        .putHeader("Content-Type", "application/json");
+
+    return httpClient.request(options).compose(req -> {
+      Runnable unregister = cancellation.onCancel(() -> {
+        LOG.info("Aborting in-flight LLM call: " + cancellation.reason());
+        req.reset(0, new CancellationException(cancellation.reason()));
+      });
+      return req.send(payload)
+          .compose(response -> {
+            observeRateLimitHeaders(response);
+            int status = response.statusCode();
+            if (status < 200 || status >= 300) {
+              long retryAfter = RateLimiter.parseRetryAfterMs(
+                  response.getHeader("retry-after-ms"), response.getHeader("Retry-After"),
+                  System.currentTimeMillis());
+              return response.body().map(body -> {
+                LOG.severe("LLM API error: status=" + status + " body=" + body);
+                throw new LlmApiException(status, body.toString(), retryAfter);
+              });
+            }
+            return settings.stream()
+                ? readStream(response, payload.length(), sentAt)
+                : response.body().map(this::parseResponse);
+          })
+          .onComplete(ar -> unregister.run());
+    }).recover(err -> cancellation.isCancelled()
+        ? Future.failedFuture(new CancellationException(cancellation.reason()))
+        : Future.failedFuture(err));
+  }
+
+  /** Feed the provider's {@code x-ratelimit-*} view into the limiter. */
+  private void observeRateLimitHeaders(HttpClientResponse response) {
+    String remainingRequests = response.getHeader("x-ratelimit-remaining-requests");
+    String remainingTokens = response.getHeader("x-ratelimit-remaining-tokens");
+    if (remainingRequests == null && remainingTokens == null) {
+      return;
+    }
+    limiter.observe(
+        parseCount(remainingRequests),
+        RateLimiter.parseDurationMs(response.getHeader("x-ratelimit-reset-requests")),
+        parseCount(remainingTokens),
+        RateLimiter.parseDurationMs(response.getHeader("x-ratelimit-reset-tokens")));
+  }
+
+  private static Long parseCount(String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** A cancellable timer-based delay. */
+  private Future<Void> sleep(long ms, CancellationToken cancellation) {
+    if (ms <= 0) {
+      return Future.succeededFuture();
+    }
+    Promise<Void> promise = Promise.promise();
+    long timer = vertx.setTimer(ms, t -> promise.tryComplete());
+    Runnable unregister = cancellation.onCancel(() -> {
+      vertx.cancelTimer(timer);
+      promise.tryFail(new CancellationException(cancellation.reason()));
+    });
+    return promise.future().onComplete(ar -> unregister.run());
+  }
+
+  /**
+   * Provider prompt-cache hit rate and latency split
+   * ({@link PromptCacheStats#toJson()}).
+   */
+  public JsonObject promptCacheStats() {
+    return cacheStats.toJson();
+  }
+
+  /**
+   * The request body {@link #decideNext} would send, for submission as
+   * one line of a batch; batches are never streamed.
+   */
+  public JsonObject batchRequest(JsonObject event, JsonObject state) {
+    JsonObject body = prepare(event, state).payload.toJsonObject();
+    body.remove("stream");
+    body.remove("stream_options");
+    return body;
+  }
+
+  /**
+   * Send a prepared, non-streaming request body and return the raw chat
+   * completion. Paced by the same {@link RateLimiter} as
+   * {@link #decideNext} and retried the same way, so
+   * {@link LocalBatchBackend}, which uses it to play the part of the
+   * provider's batch worker, stays within the endpoint's limits.
+   */
+  public Future<JsonObject> complete(JsonObject requestBody) {
+    Buffer payload = requestBody.toBuffer();
+    return attempt(payload, payload.length() / 4, new CancellationToken(), 0, this::post);
+  }
+
+  private Future<JsonObject> post(Buffer payload, CancellationToken cancellation) {
+    RequestOptions options = new RequestOptions()
+        .setMethod(HttpMethod.POST)
+        .setAbsoluteURI(endpoint + "/chat/completions")
+        .putHeader("Authorization", "Bearer " + apiKey)
+        .putHeader("Content-Type", "application/json");
+    return httpClient.request(options)
+        .compose(req -> req.send(payload))
+        .compose(response -> {
+          observeRateLimitHeaders(response);
+          return response.body().map(body -> {
+            int status = response.statusCode();
+            if (status < 200 || status >= 300) {
+              throw new LlmApiException(status, body.toString(), RateLimiter.parseRetryAfterMs(
+                  response.getHeader("retry-after-ms"), response.getHeader("Retry-After"),
+                  System.currentTimeMillis()));
+            }
+            return body.toJsonObject();
+          });
         });
   }
 
+  /** Map a chat completion — e.g. one line of batch output — to a command. */
+  public JsonObject toCommand(JsonObject completion) {
+    return parseResponse(completion);
+  }
+
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    long start = System.nanoTime();
+    List<Future<Integer>> pings = new ArrayList<>();
+    for (int i = 0; i < plan.connections(); i++) {
+      pings.add(ping());
+    }
+    return Future.join(pings).transform(ar -> {
+      long reachable = pings.stream().filter(Future::succeeded).count();
+      if (reachable < pings.size()) {
+        Throwable cause = pings.stream().filter(Future::failed).findFirst().orElseThrow().cause();
+        LOG.warning("Warm-up reached " + endpoint + " on " + reachable + "/" + pings.size()
+            + " connections: " + cause.getMessage());
+      }
+      // A worker, so the caller's timeout can still fire on the event loop
+      return vertx.executeBlocking(() -> warmCodePath(plan), false)
+          .map(renders -> new JsonObject()
+              .put("endpoint", endpoint)
+              .put("connections", pings.size())
+              .put("reachable", reachable)
+              .put("renders", renders)
+              .put("ms", (System.nanoTime() - start) / 1_000_000));
+    });
+  }
+
+  /**
+   * One keep-alive request that costs no tokens; any HTTP status means
+   * the connection, and its TLS session, is established and pooled.
+   */
+  private Future<Integer> ping() {
+    RequestOptions options = new RequestOptions()
+        .setMethod(HttpMethod.GET)
+        .setAbsoluteURI(endpoint + "/models")
+        .putHeader("Authorization", "Bearer " + apiKey);
+    return httpClient.request(options)
+        .compose(req -> req.send())
+        .compose(response -> response.body().map(body -> response.statusCode()));
+  }
+
+  /**
+   * Render a request and parse a canned completion for each synthetic
+   * event and step, growing a synthetic history as a run would. Runs on
+   * a worker.
+   *
+   * @return the number of request/response pairs processed
+   */
+  private long warmCodePath(WarmupPlan plan) {
+    String tool = toolsDef.isEmpty() ? "case.raiseTicket"
+        : toolsDef.getJsonObject(0).getJsonObject("function").getString("name");
+    Buffer canned = new JsonObject()
+        .put("choices", new JsonArray().add(new JsonObject()
+            .put("message", new JsonObject()
+                .put("role", "assistant")
+                .put("tool_calls", new JsonArray().add(new JsonObject()
+                    .put("id", "warmup")
+                    .put("type", "function")
+                    .put("function", new JsonObject()
+                        .put("name", tool)
+                        .put("arguments", "{\"tradeId\":\"WARMUP\"}")))))))
+        .put("usage", new JsonObject().put("prompt_tokens", 0).put("total_tokens", 0))
+        .toBuffer();
+    long renders = 0;
+    for (int i = 0; i < plan.iterations(); i++) {
+      for (JsonObject event : plan.events()) {
+        JsonArray trail = new JsonArray();
+        for (int step = 0; step < WARM_UP_STEPS; step++) {
+          renderRequest(event, new JsonObject().put("step", step).put("history", trail));
+          ChatCompletionParser.Completion completion = ChatCompletionParser.parse(canned);
+          trail.add(new JsonObject()
+              .put("step", step)
+              .put("command", new JsonObject()
+                  .put("tool", completion.toolName())
+                  .put("args", new JsonObject(completion.arguments())))
+              .put("toolResult", new JsonObject().put("status", "ok")));
+          renders++;
+        }
+      }
+    }
+    return renders;
+  }
+
+  /**
+   * Rate-limiter state ({@link RateLimiter#stats()}) plus the number of
+   * retried calls.
+   */
+  public JsonObject rateLimitStats() {
+    return limiter.stats().put("retries", retries.get());
+  }
+
+  /** {@link #promptCacheStats()} and {@link #rateLimitStats()}. */
+  @Override
+  public JsonObject stats() {
+    return new JsonObject()
+        .put("promptCache", promptCacheStats())
+        .put("rateLimit", rateLimitStats());
+  }
+
+  // ── Streaming ─────────────────────────────────────────────────────
+
+  /**
+   * Consume a streamed response, completing as soon as the first tool
+   * call is fully assembled. The remainder of the stream is drained in the
+   * background so the connection can be reused.
+   *
+   * <p>The provider's {@code usage} block only arrives in the final chunk.
+   * If the command is completed before then, an estimate (about four
+   * characters per token for the request and the received arguments) is
+   * attached instead, flagged {@code "estimated": true}, so per-run token
+   * budgets keep working. The real usage is then accounted for when the
+   * stream ends: it is recorded in the prompt-cache stats, and the rate
+   * limiter is corrected from the estimate to the actual token count.
+   */
+  private Future<JsonObject> readStream(HttpClientResponse response, int requestBytes, long sentAt) {
+    Promise<JsonObject> promise = Promise.promise();
+    ChatCompletionStreamAssembler assembler = new ChatCompletionStreamAssembler();
+    long startNanos = System.nanoTime();
+    // Estimated total tokens and latency of an early completion, if any
+    long[] early = {-1, 0};
+    response.handler(chunk -> {
+      assembler.feed(chunk);
+      if (!promise.future().isComplete() && assembler.firstToolCallComplete()) {
+        LOG.fine(() -> "Streamed tool call complete after "
+            + (System.nanoTime() - startNanos) / 1_000_000 + " ms; not waiting for end of stream");
+        early[0] = completeFromStream(promise, assembler, requestBytes);
+        early[1] = (System.nanoTime() - sentAt) / 1_000_000;
+      }
+    });
+    response.endHandler(v -> {
+      if (!promise.future().isComplete()) {
+        completeFromStream(promise, assembler, requestBytes);
+      } else if (assembler.usage() != null && early[0] >= 0) {
+        JsonObject usage = assembler.usage();
+        LOG.fine(() -> "Stream finished: usage=" + usage.encode());
+        cacheStats.record(usage, early[1]);
+        limiter.reconcile(early[0], usage.getLong("total_tokens", early[0]));
+      }
+    });
+    response.exceptionHandler(promise::tryFail);
+    return promise.future();
+  }
+
+  /**
+   * Complete {@code promise} from what the stream has delivered so far.
+   *
+   * @return the estimated total tokens attached to the command, or
+   *         {@code -1} when the provider's own usage was used
+   */
+  private long completeFromStream(Promise<JsonObject> promise,
+                                  ChatCompletionStreamAssembler assembler, int requestBytes) {
+    JsonObject body = assembler.toResponse();
+    long estimated = -1;
+    if (body.getJsonObject("usage") == null) {
+      JsonObject message = body.getJsonArray("choices").getJsonObject(0).getJsonObject("message");
+      int completionChars = message.encode().length();
+      long prompt = requestBytes / 4;
+      long completion = completionChars / 4;
+      estimated = prompt + completion;
+      body.put("usage", new JsonObject()
+          .put("prompt_tokens", prompt)
+          .put("completion_tokens", completion)
+          .put("total_tokens", estimated)
+          .put("estimated", true));
+    }
+    try {
+      promise.tryComplete(parseResponse(body));
+    } catch (RuntimeException e) {
+      promise.tryFail(e);
+    }
+    return estimated;
+  }
+
   // ── Message construction ──────────────────────────────────────────
 
+  /**
+   * Encode the invariant part of every request — model, tools,
+   * {@code tool_choice}, temperature, stream options and the system
+   * prompt — once, so each call only serialises its own messages.
+   */
+  private RequestTemplate buildTemplate() {
+    JsonObject fields = new JsonObject()
+        .put("model", model)
+        .put("tools", toolsDef)
+        .put("tool_choice", settings.strict() && !toolsDef.isEmpty() ? "required" : "auto")
+        .put("temperature", settings.temperature());
+    if (settings.strict() && !toolsDef.isEmpty()) {
+      // One decision per step; strict decoding also rules out parallel calls
+      fields.put("parallel_tool_calls", false);
+    }
+    if (settings.stream()) {
+      fields.put("stream", true)
+          .put("stream_options", new JsonObject().put("include_usage", true));
+    }
+    JsonObject system = new JsonObject()
+        .put("role", "system")
+        .put("content", buildSystemPrompt());
+    return new RequestTemplate(fields, system);
+  }
+
+  private Buffer renderRequest(JsonObject event, JsonObject state) {
+    return template.render(buildMessages(event, state));
+  }
+
+  /**
+   * The rendered request for this decision. Decorators ask for the
+   * {@link #promptKey} and then call {@link #decideNext} with the same
+   * objects, so each run's last rendering is reused while everything the
+   * prompt reads is unchanged: the event and state objects, the step, and
+   * the trail and its length. The runner updates one state object in place
+   * from step to step, hence the last three.
+   *
+   * <p>Renderings are kept per state object, so concurrent runs do not
+   * evict each other's; the map is a small LRU, and a miss only costs a
+   * re-render.
+   */
+  private Prepared prepare(JsonObject event, JsonObject state) {
+    StateRef ref = new StateRef(state);
+    synchronized (prepared) {
+      Prepared p = prepared.get(ref);
+      if (p != null && p.matches(event, state)) {
+        return p;
+      }
+    }
+    Prepared p = new Prepared(event, state, renderRequest(event, state));
+    synchronized (prepared) {
+      prepared.put(ref, p);
+    }
+    return p;
+  }
+
+  /** Identity key for a state object; {@link JsonObject#equals} compares contents. */
+  private record StateRef(JsonObject state) {
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof StateRef other && other.state == state;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(state);
+    }
+  }
+
+  /** A rendered request body and, once asked for, its hash. */
+  private static final class Prepared {
+    final JsonObject event;
+    final JsonObject state;
+    final int step;
+    final Object history;
+    final Object last;
+    final int historySize;
+    final Buffer payload;
+    private String key;
+
+    Prepared(JsonObject event, JsonObject state, Buffer payload) {
+      this.event = event;
+      this.state = state;
+      this.step = state.getInteger("step", 0);
+      this.history = state.getValue("history");
+      this.last = state.getValue("last");
+      this.historySize = historySize(state);
+      this.payload = payload;
+    }
+
+    boolean matches(JsonObject event, JsonObject state) {
+      return this.event == event && this.state == state
+          && step == state.getInteger("step", 0)
+          && history == state.getValue("history")
+          && last == state.getValue("last")
+          && historySize == historySize(state);
+    }
+
+    String key() {
+      if (key == null) {
+        key = CanonicalJson.sha256(payload.getBytes());
+      }
+      return key;
+    }
+
+    private static int historySize(JsonObject state) {
+      JsonArray trail = state.getJsonArray("history");
+      return trail == null ? -1 : trail.size();
+    }
+  }
+
+  /**
+   * The event as shown to the model: transport metadata such as the
+   * correlation ID is dropped and keys are sorted, so identical failures
+   * always produce identical prompts.
+   */
+  private static JsonObject promptEvent(JsonObject event) {
+    JsonObject copy = event.copy();
+    copy.remove("correlationId");
+    return CanonicalJson.canonical(copy);
+  }
+
+  /**
+   * The run's step trail: {@code state.history} when the runner provides
+   * it, otherwise just {@code state.last}.
+   */
+  private static JsonArray historyOf(JsonObject state) {
+    JsonArray trail = state.getJsonArray("history");
+    if (trail != null) {
+      return trail;
+    }
+    JsonObject last = state.getJsonObject("last");
+    return last == null ? new JsonArray() : new JsonArray().add(last);
+  }
+
+  /**
+   * The per-step messages that follow the templated system prompt. Only
+   * variable content lives here — every instruction is in the system
+   * prompt — and it is ordered from most to least stable (the event, then
+   * the growing history, then the step number), all key-sorted, so that
+   * consecutive steps of a run share as long a prefix as possible.
+   */
   private JsonArray buildMessages(JsonObject event, JsonObject state) {
     JsonArray messages = new JsonArray();
 
-    // System prompt
-    messages.add(new JsonObject()
-        .put("role", "system")
-        .put("content", systemPrompt));
-
     // User message with the trade failure event
     StringBuilder userMsg = new StringBuilder();
-    userMsg.append("A trade failure event has been received. Analyse it and decide what action to take.\n\n");
     userMsg.append("## Trade Failure Event\n```json\n");
-    userMsg.append(event.encodePrettily());
+    userMsg.append(promptEvent(event).encode());
     userMsg.append("\n```\n");
 
-    // Include prior steps from state so the model has conversation history
-    JsonObject lastStep = state.getJsonObject("last");
-    if (lastStep != null) {
-      userMsg.append("\n## Previous Step Result\n");
-      userMsg.append("Step ").append(lastStep.getInteger("step", 0)).append(":\n");
-      JsonObject prevCommand = lastStep.getJsonObject("command");
-      if (prevCommand != null) {
-        userMsg.append("- Action: called tool `").append(prevCommand.getString("tool", "?")).append("`\n");
-        userMsg.append("- Args: ").append(prevCommand.getJsonObject("args", new JsonObject()).encode()).append("\n");
-      }
-      JsonObject prevResult = lastStep.getJsonObject("toolResult");
-      if (prevResult != null) {
-        userMsg.append("- Tool Result:\n```json\n");
-        userMsg.append(prevResult.encodePrettily());
-        userMsg.append("\n```\n");
-      }
+    // Steps taken so far in this run, compacted to the history budget
+    JsonArray trail = historyOf(state);
+    if (!trail.isEmpty()) {
+      userMsg.append("\n## Investigation So Far\n");
+      userMsg.append(history.build(trail)).append('\n');
     }
 
     int currentStep = state.getInteger("step", 0);
     userMsg.append("\nThis is step ").append(currentStep).append(" of the investigation.");
-    if (lastStep == null) {
-      userMsg.append(" This is the first step — start by gathering data or classifying the failure.");
-    } else {
-      userMsg.append(" Based on the previous step results, decide the next action or conclude the investigation.");
-    }
 
     messages.add(new JsonObject()
         .put("role", "user")
@@ -159,55 +827,84 @@ public class OpenAiLlmClient implements LlmClient {
   // ── Response parsing ──────────────────────────────────────────────
 
   /**
-   * Parse the OpenAI chat completion response into the command schema
-   * expected by AgentRunnerVerticle.
+   * Parse a raw chat completion body with {@link ChatCompletionParser},
+   * which reads only the fields the command needs.
    */
+  private JsonObject parseResponse(Buffer body) {
+    if (LOG.isLoggable(Level.FINE)) {
+      LOG.fine("LLM response: " + body);
+    }
+    return command(ChatCompletionParser.parse(body), body::toString);
+  }
+
+  /** Parse an already-decoded response (assembled from a stream or read from a batch). */
   private JsonObject parseResponse(JsonObject responseBody) {
-    LOG.fine("LLM response: " + responseBody.encode());
+    LOG.fine(() -> "LLM response: " + responseBody.encode());
+    return command(ChatCompletionParser.fromJson(responseBody), responseBody::encode);
+  }
 
-    JsonArray choices = responseBody.getJsonArray("choices");
-    if (choices == null || choices.isEmpty()) {
-      throw new RuntimeException("LLM returned no choices: " + responseBody.encode());
+  /**
+   * Map the parsed completion into the command schema expected by
+   * AgentRunnerVerticle.
+   *
+   * @param raw the response text, rendered only for the error message
+   */
+  private JsonObject command(ChatCompletionParser.Completion completion, Supplier<String> raw) {
+    if (!completion.choices()) {
+      throw new RuntimeException("LLM returned no choices: " + raw.get());
     }
 
-    JsonObject message = choices.getJsonObject(0).getJsonObject("message");
-    JsonArray toolCalls = message.getJsonArray("tool_calls");
-
-    if (toolCalls != null && !toolCalls.isEmpty()) {
+    if (completion.hasToolCall()) {
       // Model wants to call a function
-      JsonObject toolCall = toolCalls.getJsonObject(0);
-      JsonObject function = toolCall.getJsonObject("function");
-      String toolName = function.getString("name");
-      String argsStr = function.getString("arguments", "{}");
+      String toolName = completion.toolName();
+      String argsStr = completion.arguments() == null ? "{}" : completion.arguments();
 
-      JsonObject args;
+      JsonObject parsed;
+      JsonArray violations = new JsonArray();
       try {
-        args = new JsonObject(argsStr);
+        parsed = new JsonObject(argsStr);
       } catch (Exception e) {
         LOG.warning("Failed to parse function arguments as JSON: " + argsStr);
-        args = new JsonObject();
+        parsed = new JsonObject();
+        violations.add("arguments are not a JSON object");
+      }
+      JsonObject args = parsed;
+      if (settings.strict()) {
+        // Strict schemas declare optional fields nullable; absent is what tools expect
+        dropNulls(args);
+        ToolSchemaValidator validator = validators.get(toolName);
+        if (validator == null) {
+          violations.add("unknown tool " + toolName);
+        } else if (violations.isEmpty()) {
+          validator.validate(args).forEach(error -> violations.add(toolName + ": " + error));
+        }
       }
 
       // Determine if this should be the final step.
       // Ticket-raising and notification tools typically conclude the investigation.
       boolean stop = isTerminalTool(toolName);
 
-      LOG.info("LLM decided: tool=" + toolName + " stop=" + stop
+      LOG.info(() -> "LLM decided: tool=" + toolName + " stop=" + stop
           + " args=" + args.encode());
 
-      return new JsonObject()
+      JsonObject cmd = new JsonObject()
           .put("intent", "CALL_TOOL")
           .put("tool", toolName)
           .put("args", args)
           .put("stop", stop);
+      if (settings.strict() && !violations.isEmpty()) {
+        cmd.put("violations", violations);
+      }
+      return withUsage(cmd, completion);
     }
 
     // Model returned a text response instead of a function call.
     // Treat as a final "no-action" step — raise a ticket to escalate.
-    String content = message.getString("content", "");
+    // Zero confidence lets a cascade hand the step to a stronger model.
+    String content = completion.content() == null ? "" : completion.content();
     LOG.warning("LLM returned text instead of tool call: " + content);
 
-    return new JsonObject()
+    JsonObject cmd = new JsonObject()
         .put("intent", "CALL_TOOL")
         .put("tool", "case.raiseTicket")
         .put("args", new JsonObject()
@@ -215,7 +912,35 @@ public class OpenAiLlmClient implements LlmClient {
             .put("category", "Unresolved")
             .put("summary", "LLM could not determine next action")
             .put("detail", content))
-        .put("stop", true);
+        .put("stop", true)
+        .put("confidence", 0.0);
+    if (settings.strict()) {
+      cmd.put("violations", new JsonArray().add("replied with text instead of a tool call"));
+    }
+    return withUsage(cmd, completion);
+  }
+
+  /** Remove {@code null} members, recursively, in place. */
+  private static void dropNulls(JsonObject obj) {
+    for (Iterator<Map.Entry<String, Object>> it = obj.iterator(); it.hasNext(); ) {
+      Object value = it.next().getValue();
+      if (value == null) {
+        it.remove();
+      } else if (value instanceof JsonObject nested) {
+        dropNulls(nested);
+      }
+    }
+  }
+
+  /**
+   * Copy the provider's {@code usage} block (if any) onto the command so
+   * the runner can account tokens against the per-run budget.
+   */
+  private static JsonObject withUsage(JsonObject cmd, ChatCompletionParser.Completion completion) {
+    if (completion.usage() != null) {
+      cmd.put("usage", completion.usage());
+    }
+    return cmd;
   }
 
   /**
@@ -235,21 +960,67 @@ public class OpenAiLlmClient implements LlmClient {
 
   /**
    * Converts the agent's {@link Tool} list into the OpenAI
-   * {@code tools} array format for function-calling.
+   * {@code tools} array format for function-calling. Tools are sorted by
+   * name and their schemas key-sorted: the registry is a hash map, and
+   * the definitions sit at the front of the provider's cached prefix.
+   * In strict mode each function is flagged {@code strict} and its schema
+   * rewritten with {@link #strictSchema}.
    */
-  private static JsonArray buildToolsDef(Collection<Tool> tools) {
+  private static JsonArray buildToolsDef(Collection<Tool> tools, boolean strict) {
     JsonArray arr = new JsonArray();
-    for (Tool tool : tools) {
-      arr.add(new JsonObject()
-          .put("type", "function")
-          .put("function", new JsonObject()
+    tools.stream()
+        .sorted(Comparator.comparing(Tool::name))
+        .forEach(tool -> {
+          JsonObject function = new JsonObject()
               .put("name", tool.name())
-              .put("description", tool.description())
-              .put("parameters", tool.schema())));
-    }
+              .put("description", tool.description());
+          if (strict) {
+            function.put("parameters", CanonicalJson.canonical(strictSchema(tool.schema())))
+                .put("strict", true);
+          } else {
+            function.put("parameters", CanonicalJson.canonical(tool.schema()));
+          }
+          arr.add(new JsonObject().put("type", "function").put("function", function));
+        });
     return arr;
   }
 
+  /**
+   * The provider's strict form of a schema: every object closes with
+   * {@code additionalProperties: false} and lists all its properties as
+   * required, and properties that were optional become nullable instead.
+   */
+  static JsonObject strictSchema(JsonObject schema) {
+    JsonObject out = schema == null ? new JsonObject().put("type", "object") : schema.copy();
+    JsonObject properties = out.getJsonObject("properties");
+    if ("object".equals(out.getString("type"))) {
+      JsonArray required = out.getJsonArray("required", new JsonArray());
+      JsonObject strictProps = new JsonObject();
+      JsonArray allRequired = new JsonArray();
+      if (properties != null) {
+        for (Map.Entry<String, Object> e : properties) {
+          if (!(e.getValue() instanceof JsonObject prop)) {
+            continue;
+          }
+          JsonObject strictProp = strictSchema(prop);
+          if (!required.contains(e.getKey()) && strictProp.getValue("type") instanceof String type) {
+            strictProp.put("type", new JsonArray().add(type).add("null"));
+          }
+          strictProps.put(e.getKey(), strictProp);
+          allRequired.add(e.getKey());
+        }
+      }
+      out.put("properties", strictProps)
+          .put("required", allRequired)
+          .put("additionalProperties", false);
+    }
+    JsonObject items = out.getJsonObject("items");
+    if (items != null) {
+      out.put("items", strictSchema(items));
+    }
+    return out;
+  }
+
   // ── System prompt ─────────────────────────────────────────────────
 
   private static String buildSystemPrompt() {
@@ -293,6 +1064,13 @@ public class OpenAiLlmClient implements LlmClient {
         - For credit events, publish a CreditReview event.
         - For regulatory deadline breaches, publish a RegulatoryBreach event.
         - Keep your reasoning focused on the trade data — do not speculate.
+
+        ## Message format
+        Each user message contains the trade failure event as JSON, the steps taken
+        so far in this investigation (if any) with their results, and the current
+        step number. On the first step, start by gathering data or classifying the
+        failure. On later steps, decide the next action based on the previous step
+        results, or conclude the investigation.
         """;
   }
 }
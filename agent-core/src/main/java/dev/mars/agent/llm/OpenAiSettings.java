@@ -0,0 +1,80 @@
+package dev.mars.agent.llm;
+
+/**
+ * Tuning knobs for {@link OpenAiLlmClient} beyond endpoint, key and model.
+ *
+ * @param temperature        sampling temperature sent with every request
+ * @param stream             request a streamed ({@code "stream": true})
+ *                           response and complete as soon as the first
+ *                           tool call is fully received, instead of
+ *                           waiting for the whole body
+ * @param historyTokenBudget estimated-token budget for the step history
+ *                           included in each prompt (see
+ *                           {@link ConversationHistoryBuilder});
+ *                           {@code 0} selects the builder's default
+ * @param rateLimits         requests/tokens per minute the client paces
+ *                           itself to (see {@link RateLimiter});
+ *                           {@code null} means {@link RateLimits#NONE}
+ * @param retry              retry schedule for {@code 429}/{@code 5xx};
+ *                           {@code null} means {@link RetryPolicy#NONE}
+ * @param strict             strict function calling: the model must call
+ *                           a tool, arguments are checked against the
+ *                           tool's schema, and an invalid answer gets one
+ *                           repair attempt
+ */
+public record OpenAiSettings(
+    double temperature,
+    boolean stream,
+    int historyTokenBudget,
+    RateLimits rateLimits,
+    RetryPolicy retry,
+    boolean strict
+) {
+  /**
+   * Temperature {@value OpenAiLlmClient#DEFAULT_TEMPERATURE}, non-streaming,
+   * default history budget, no rate limits, no retries, not strict.
+   */
+  public static final OpenAiSettings DEFAULTS = new OpenAiSettings(
+      OpenAiLlmClient.DEFAULT_TEMPERATURE, false, 0, RateLimits.NONE, RetryPolicy.NONE, false);
+
+  public OpenAiSettings {
+    if (temperature < 0 || temperature > 2) {
+      throw new IllegalArgumentException("temperature must be between 0 and 2");
+    }
+    if (historyTokenBudget < 0) {
+      throw new IllegalArgumentException("historyTokenBudget must be >= 0");
+    }
+    if (rateLimits == null) rateLimits = RateLimits.NONE;
+    if (retry == null) retry = RetryPolicy.NONE;
+  }
+
+  /** Copy with a different temperature. */
+  public OpenAiSettings withTemperature(double temperature) {
+    return new OpenAiSettings(temperature, stream, historyTokenBudget, rateLimits, retry, strict);
+  }
+
+  /** Copy with streaming switched on or off. */
+  public OpenAiSettings withStream(boolean stream) {
+    return new OpenAiSettings(temperature, stream, historyTokenBudget, rateLimits, retry, strict);
+  }
+
+  /** Copy with a different history token budget. */
+  public OpenAiSettings withHistoryTokenBudget(int historyTokenBudget) {
+    return new OpenAiSettings(temperature, stream, historyTokenBudget, rateLimits, retry, strict);
+  }
+
+  /** Copy with different client-side rate limits. */
+  public OpenAiSettings withRateLimits(RateLimits rateLimits) {
+    return new OpenAiSettings(temperature, stream, historyTokenBudget, rateLimits, retry, strict);
+  }
+
+  /** Copy with a different retry policy. */
+  public OpenAiSettings withRetry(RetryPolicy retry) {
+    return new OpenAiSettings(temperature, stream, historyTokenBudget, rateLimits, retry, strict);
+  }
+
+  /** Copy with strict mode switched on or off. */
+  public OpenAiSettings withStrict(boolean strict) {
+    return new OpenAiSettings(temperature, stream, historyTokenBudget, rateLimits, retry, strict);
+  }
+}
@@ -0,0 +1,78 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provider prompt-cache accounting for one client, from the
+ * {@code usage.prompt_tokens_details.cached_tokens} each completion
+ * reports.
+ *
+ * <p>Splits call latency by whether any prompt tokens were served from
+ * the cache, so the latency gain of a stable prompt prefix can be read
+ * off directly next to the hit rate. Thread-safe.
+ */
+public final class PromptCacheStats {
+
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong promptTokens = new AtomicLong();
+  private final AtomicLong cachedTokens = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong hitLatencyMs = new AtomicLong();
+  private final AtomicLong missLatencyMs = new AtomicLong();
+
+  /**
+   * The cached prompt tokens reported in a {@code usage} block; {@code 0}
+   * when the provider does not report them.
+   */
+  public static long cachedTokens(JsonObject usage) {
+    if (usage == null) {
+      return 0;
+    }
+    JsonObject details = usage.getJsonObject("prompt_tokens_details");
+    return details == null ? 0 : details.getLong("cached_tokens", 0L);
+  }
+
+  /**
+   * Record one completed call.
+   *
+   * @param usage     the provider's {@code usage} block; estimated usage
+   *                  (from an interrupted stream) is ignored
+   * @param latencyMs time from sending the request to the command
+   */
+  public void record(JsonObject usage, long latencyMs) {
+    if (usage == null || usage.getBoolean("estimated", false)) {
+      return;
+    }
+    long cached = cachedTokens(usage);
+    calls.incrementAndGet();
+    promptTokens.addAndGet(usage.getLong("prompt_tokens", 0L));
+    cachedTokens.addAndGet(cached);
+    if (cached > 0) {
+      hits.incrementAndGet();
+      hitLatencyMs.addAndGet(latencyMs);
+    } else {
+      missLatencyMs.addAndGet(latencyMs);
+    }
+  }
+
+  /**
+   * {@code calls}, {@code promptTokens}, {@code cachedTokens},
+   * {@code tokenHitRate} (cached / prompt), {@code callHitRate} and the
+   * average latency of calls with and without a cache hit.
+   */
+  public JsonObject toJson() {
+    long n = calls.get();
+    long h = hits.get();
+    long prompt = promptTokens.get();
+    return new JsonObject()
+        .put("calls", n)
+        .put("promptTokens", prompt)
+        .put("cachedTokens", cachedTokens.get())
+        .put("tokenHitRate", prompt == 0 ? 0.0 : (double) cachedTokens.get() / prompt)
+        .put("callHitRate", n == 0 ? 0.0 : (double) h / n)
+        .put("avgHitLatencyMs", h == 0 ? 0 : hitLatencyMs.get() / h)
+        .put("avgMissLatencyMs", n - h == 0 ? 0 : missLatencyMs.get() / (n - h));
+  }
+}
@@ -0,0 +1,390 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client-side pacing for an LLM endpoint's requests-per-minute and
+ * tokens-per-minute limits.
+ *
+ * <h2>Buckets</h2>
+ * One token bucket per limit, refilled continuously at
+ * {@code limit / 60 s}. Each bucket holds at most
+ * {@value #BURST_SECONDS} seconds' worth, so a burst of cases is spread
+ * out at the sustainable rate instead of spending the whole minute's
+ * allowance at once and then hitting {@code 429}s. A request costing
+ * more tokens than a bucket holds waits for a full bucket and leaves it
+ * in debt.
+ *
+ * <h2>Wait queue</h2>
+ * {@link #acquire} returns a future that completes when both buckets
+ * have room. Waiters are served strictly in arrival order by a single
+ * Vert.x timer — no thread ever blocks — and a waiter whose
+ * {@link CancellationToken} fires leaves the queue.
+ *
+ * <h2>Provider feedback</h2>
+ * {@link #pauseFor} (from {@code Retry-After}) holds every waiter until
+ * the provider's deadline, and {@link #observe} clamps the local buckets
+ * to the provider's {@code x-ratelimit-remaining-*} counts, pausing until
+ * the matching reset when one reaches zero. {@link #reconcile} corrects
+ * the token bucket once the real usage of a call is known.
+ *
+ * <p>Thread-safe; completions run outside the instance lock.
+ */
+public class RateLimiter {
+
+  private static final Logger LOG = Logger.getLogger(RateLimiter.class.getName());
+
+  /** Seconds of sustained rate a bucket can hold. */
+  public static final int BURST_SECONDS = 6;
+
+  private final Vertx vertx;
+  private final RateLimits limits;
+  private final Bucket requests;
+  private final Bucket tokens;
+  private final Deque<Waiter> queue = new ArrayDeque<>();
+
+  private long pausedUntil;
+  private long timerId = -1;
+  private long timerDue;
+
+  private long granted;
+  private long delayed;
+  private long totalWaitMs;
+  private long pauses;
+  private long cancelled;
+
+  private static final class Waiter {
+    final long tokens;
+    final long enqueuedAt;
+    final Promise<Void> promise = Promise.promise();
+    Runnable unregister = () -> {};
+
+    Waiter(long tokens, long enqueuedAt) {
+      this.tokens = tokens;
+      this.enqueuedAt = enqueuedAt;
+    }
+  }
+
+  public RateLimiter(Vertx vertx, RateLimits limits) {
+    this.vertx = vertx;
+    this.limits = limits;
+    this.requests = new Bucket(limits.requestsPerMinute());
+    this.tokens = new Bucket(limits.tokensPerMinute());
+  }
+
+  public RateLimits limits() {
+    return limits;
+  }
+
+  /**
+   * Reserve one request and {@code estimatedTokens} tokens.
+   *
+   * @return a future completed when the call may proceed, or failed with
+   *         {@link CancellationException} if {@code cancellation} fires
+   *         first
+   */
+  public Future<Void> acquire(long estimatedTokens, CancellationToken cancellation) {
+    if (cancellation.isCancelled()) {
+      return Future.failedFuture(new CancellationException(cancellation.reason()));
+    }
+    Waiter waiter;
+    List<Waiter> ready;
+    synchronized (this) {
+      // One clock read: a grant in this same drain must not count as delayed
+      long now = System.currentTimeMillis();
+      waiter = new Waiter(Math.max(0, estimatedTokens), now);
+      queue.addLast(waiter);
+      ready = drain(now);
+    }
+    complete(ready);
+    if (!waiter.promise.future().isComplete()) {
+      waiter.unregister = cancellation.onCancel(() -> {
+        boolean removed;
+        synchronized (this) {
+          removed = queue.remove(waiter);
+          if (removed) {
+            cancelled++;
+          }
+        }
+        if (removed) {
+          waiter.promise.tryFail(new CancellationException(cancellation.reason()));
+        }
+      });
+    }
+    return waiter.promise.future();
+  }
+
+  /**
+   * Correct the token bucket once a call's real usage is known:
+   * over-estimates are refunded, under-estimates charged.
+   */
+  public synchronized void reconcile(long estimatedTokens, long actualTokens) {
+    tokens.refill(System.currentTimeMillis());
+    tokens.add(estimatedTokens - actualTokens);
+  }
+
+  /** Hold every waiter for {@code ms}, e.g. from a {@code Retry-After} header. */
+  public void pauseFor(long ms) {
+    if (ms <= 0) {
+      return;
+    }
+    List<Waiter> ready;
+    synchronized (this) {
+      long until = System.currentTimeMillis() + ms;
+      if (until > pausedUntil) {
+        pausedUntil = until;
+        pauses++;
+        LOG.info("LLM rate limiter paused for " + ms + " ms");
+      }
+      ready = drain();
+    }
+    complete(ready);
+  }
+
+  /**
+   * Apply the provider's view of the current window. Counts that are
+   * {@code null} were absent; a remaining count of zero pauses until its
+   * reset.
+   */
+  public void observe(Long remainingRequests, long resetRequestsMs,
+                      Long remainingTokens, long resetTokensMs) {
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      if (remainingRequests != null) {
+        requests.refill(now);
+        requests.clampTo(remainingRequests);
+      }
+      if (remainingTokens != null) {
+        tokens.refill(now);
+        tokens.clampTo(remainingTokens);
+      }
+    }
+    if (remainingRequests != null && remainingRequests == 0) {
+      pauseFor(resetRequestsMs);
+    }
+    if (remainingTokens != null && remainingTokens == 0) {
+      pauseFor(resetTokensMs);
+    }
+  }
+
+  /**
+   * Limiter state: configured limits, bucket levels, queue length, pause
+   * deadline and counters ({@code granted}, {@code delayed},
+   * {@code totalWaitMs}, {@code pauses}, {@code cancelled}).
+   */
+  public synchronized JsonObject stats() {
+    long now = System.currentTimeMillis();
+    requests.refill(now);
+    tokens.refill(now);
+    return new JsonObject()
+        .put("requestsPerMinute", limits.requestsPerMinute())
+        .put("tokensPerMinute", limits.tokensPerMinute())
+        .put("availableRequests", requests.available())
+        .put("availableTokens", tokens.available())
+        .put("queued", queue.size())
+        .put("pausedForMs", Math.max(0, pausedUntil - now))
+        .put("granted", granted)
+        .put("delayed", delayed)
+        .put("totalWaitMs", totalWaitMs)
+        .put("pauses", pauses)
+        .put("cancelled", cancelled);
+  }
+
+  // ── Queue ─────────────────────────────────────────────────────────
+
+  /** Grant waiters from the head while both buckets allow; caller holds the lock. */
+  private List<Waiter> drain() {
+    return drain(System.currentTimeMillis());
+  }
+
+  private List<Waiter> drain(long now) {
+    List<Waiter> ready = new ArrayList<>();
+    requests.refill(now);
+    tokens.refill(now);
+    while (!queue.isEmpty()) {
+      Waiter head = queue.peekFirst();
+      long waitMs = Math.max(pausedUntil - now,
+          Math.max(requests.msUntil(1), tokens.msUntil(head.tokens)));
+      if (waitMs > 0) {
+        schedule(now, waitMs);
+        break;
+      }
+      queue.pollFirst();
+      requests.take(1);
+      tokens.take(head.tokens);
+      granted++;
+      long waited = now - head.enqueuedAt;
+      if (waited > 0) {
+        delayed++;
+        totalWaitMs += waited;
+      }
+      ready.add(head);
+    }
+    return ready;
+  }
+
+  private void schedule(long now, long waitMs) {
+    long due = now + waitMs;
+    if (timerId >= 0 && timerDue <= due) {
+      return;
+    }
+    if (timerId >= 0) {
+      vertx.cancelTimer(timerId);
+    }
+    timerDue = due;
+    timerId = vertx.setTimer(Math.max(1, waitMs), id -> {
+      List<Waiter> ready;
+      synchronized (this) {
+        if (timerId == id) {
+          timerId = -1;
+        }
+        ready = drain();
+      }
+      complete(ready);
+    });
+  }
+
+  private static void complete(List<Waiter> ready) {
+    for (Waiter w : ready) {
+      w.unregister.run();
+      w.promise.tryComplete();
+    }
+  }
+
+  // ── Bucket ────────────────────────────────────────────────────────
+
+  /** A continuously refilled bucket; a limit of zero never runs dry. */
+  private static final class Bucket {
+    private final boolean unlimited;
+    private final double capacity;
+    private final double perMs;
+    private double level;
+    private long last;
+
+    Bucket(long perMinute) {
+      this.unlimited = perMinute == 0;
+      this.perMs = perMinute / 60_000.0;
+      this.capacity = Math.max(1, perMinute * BURST_SECONDS / 60.0);
+      this.level = capacity;
+      this.last = System.currentTimeMillis();
+    }
+
+    void refill(long now) {
+      if (!unlimited && now > last) {
+        level = Math.min(capacity, level + (now - last) * perMs);
+      }
+      last = Math.max(last, now);
+    }
+
+    /** Milliseconds until {@code cost} (capped at capacity) is available. */
+    long msUntil(long cost) {
+      if (unlimited) {
+        return 0;
+      }
+      double missing = Math.min(cost, capacity) - level;
+      return missing <= 0 ? 0 : (long) Math.ceil(missing / perMs);
+    }
+
+    void take(long cost) {
+      if (!unlimited) {
+        level -= cost;
+      }
+    }
+
+    void add(long amount) {
+      if (!unlimited) {
+        level = Math.min(capacity, level + amount);
+      }
+    }
+
+    void clampTo(long remaining) {
+      if (!unlimited) {
+        level = Math.min(level, remaining);
+      }
+    }
+
+    long available() {
+      return unlimited ? -1 : (long) Math.floor(level);
+    }
+  }
+
+  // ── Header parsing ────────────────────────────────────────────────
+
+  private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+  /**
+   * Parse an OpenAI-style reset duration such as {@code "20ms"},
+   * {@code "1.5s"} or {@code "6m0s"}; a bare number is seconds.
+   * Returns {@code -1} if absent or unparseable.
+   */
+  static long parseDurationMs(String value) {
+    if (value == null || value.isBlank()) {
+      return -1;
+    }
+    String v = value.trim();
+    try {
+      return (long) (Double.parseDouble(v) * 1000);
+    } catch (NumberFormatException ignored) {
+      // fall through to unit syntax
+    }
+    Matcher m = DURATION_PART.matcher(v);
+    double ms = 0;
+    int end = 0;
+    while (m.find() && m.start() == end) {
+      double n = Double.parseDouble(m.group(1));
+      ms += switch (m.group(2)) {
+        case "h" -> n * 3_600_000;
+        case "m" -> n * 60_000;
+        case "s" -> n * 1000;
+        default -> n;
+      };
+      end = m.end();
+    }
+    return end == v.length() && end > 0 ? (long) Math.ceil(ms) : -1;
+  }
+
+  /**
+   * The wait a {@code 429}/{@code 503} asks for: {@code retry-after-ms}
+   * if present, else {@code Retry-After} as seconds or an HTTP date.
+   * Returns {@code -1} if neither is usable.
+   */
+  static long parseRetryAfterMs(String retryAfterMs, String retryAfter, long nowMs) {
+    if (retryAfterMs != null) {
+      try {
+        return Math.max(0, (long) Double.parseDouble(retryAfterMs.trim()));
+      } catch (NumberFormatException ignored) {
+        // try Retry-After
+      }
+    }
+    if (retryAfter == null || retryAfter.isBlank()) {
+      return -1;
+    }
+    try {
+      return Math.max(0, (long) (Double.parseDouble(retryAfter.trim()) * 1000));
+    } catch (NumberFormatException ignored) {
+      // HTTP-date form
+    }
+    try {
+      ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+      return Math.max(0, at.toInstant().toEpochMilli() - nowMs);
+    } catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+}
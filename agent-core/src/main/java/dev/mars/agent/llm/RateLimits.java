@@ -0,0 +1,20 @@
+package dev.mars.agent.llm;
+
+/**
+ * Provider rate limits a client paces itself to.
+ *
+ * @param requestsPerMinute requests per minute ({@code 0} = unlimited)
+ * @param tokensPerMinute   estimated tokens per minute ({@code 0} =
+ *                          unlimited)
+ */
+public record RateLimits(int requestsPerMinute, long tokensPerMinute) {
+
+  /** No client-side limits; provider back-pressure is still honoured. */
+  public static final RateLimits NONE = new RateLimits(0, 0);
+
+  public RateLimits {
+    if (requestsPerMinute < 0 || tokensPerMinute < 0) {
+      throw new IllegalArgumentException("rate limits must be >= 0");
+    }
+  }
+}
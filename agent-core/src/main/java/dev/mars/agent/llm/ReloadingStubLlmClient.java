@@ -0,0 +1,124 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * {@link LlmClient} that serves a {@link YamlStubRuleLoader YAML rule file}
+ * and picks up edits to it without a restart.
+ *
+ * <p>The file's modification time and size are checked every
+ * {@code pollMs}; when either changes the file is parsed and compiled on a
+ * worker thread and the new {@link StubLlmClient} replaces the old one in
+ * a single reference swap. Decisions already running finish on the rules
+ * they started with. A file that fails to load is logged and the previous
+ * rules stay in service, so a half-saved edit never takes the stub down.
+ */
+public class ReloadingStubLlmClient implements LlmClient {
+
+  private static final Logger LOG = Logger.getLogger(ReloadingStubLlmClient.class.getName());
+
+  private final Vertx vertx;
+  private final Path file;
+  private final AtomicReference<StubLlmClient> current = new AtomicReference<>();
+  private final AtomicBoolean reloading = new AtomicBoolean();
+  private final long timer;
+  private volatile long lastModified;
+  private volatile long lastSize;
+
+  private final AtomicLong reloads = new AtomicLong();
+  private final AtomicLong reloadFailures = new AtomicLong();
+
+  /**
+   * Load {@code file} now and re-check it every {@code pollMs}.
+   *
+   * @throws IllegalStateException    if the file cannot be read
+   * @throws IllegalArgumentException if the rules are malformed
+   */
+  public ReloadingStubLlmClient(Vertx vertx, Path file, long pollMs) {
+    if (pollMs <= 0) {
+      throw new IllegalArgumentException("pollMs must be > 0");
+    }
+    this.vertx = vertx;
+    this.file = file;
+    var props = vertx.fileSystem().propsBlocking(file.toString());
+    this.lastModified = props.lastModifiedTime();
+    this.lastSize = props.size();
+    this.current.set(new YamlStubRuleLoader(file).load().toClient());
+    this.timer = vertx.setPeriodic(pollMs, t -> check());
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+    return current.get().decideNext(event, state);
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                       CancellationToken cancellation) {
+    return current.get().decideNext(event, state, cancellation);
+  }
+
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    return current.get().warmUp(plan);
+  }
+
+  /**
+   * Re-read the file now, whether or not it changed.
+   *
+   * @return succeeds once the new rules are in service; fails (keeping
+   *         the old rules) if the file does not load
+   */
+  public Future<Void> reload() {
+    return vertx.executeBlocking(() -> new YamlStubRuleLoader(file).load().toClient())
+        .onSuccess(client -> {
+          current.set(client);
+          reloads.incrementAndGet();
+          LOG.info("Reloaded stub rules from " + file);
+        })
+        .onFailure(err -> {
+          reloadFailures.incrementAndGet();
+          LOG.warning("Stub rules in " + file + " failed to load, keeping previous rules: "
+              + err.getMessage());
+        })
+        .mapEmpty();
+  }
+
+  /** Counters: {@code reloads} and {@code reloadFailures}. */
+  @Override
+  public JsonObject stats() {
+    return new JsonObject()
+        .put("reloads", reloads.get())
+        .put("reloadFailures", reloadFailures.get());
+  }
+
+  /** Stop watching the file. */
+  public void close() {
+    vertx.cancelTimer(timer);
+  }
+
+  private void check() {
+    if (!reloading.compareAndSet(false, true)) {
+      return;
+    }
+    vertx.fileSystem().props(file.toString())
+        .compose(props -> {
+          if (props.lastModifiedTime() == lastModified && props.size() == lastSize) {
+            return Future.<Void>succeededFuture();
+          }
+          lastModified = props.lastModifiedTime();
+          lastSize = props.size();
+          return reload();
+        })
+        .onComplete(ar -> reloading.set(false));
+  }
+}
@@ -0,0 +1,73 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A chat-completions request body whose invariant part is encoded once.
+ *
+ * <p>Model, tools, {@code tool_choice}, temperature, stream options and
+ * the system message are identical for every call a client makes, so
+ * they are serialised into a byte prefix at construction:
+ * <pre>
+ * {"model":…,"tools":[…],…,"messages":[{"role":"system",…}
+ * </pre>
+ * {@link #render} copies that prefix and appends only the per-step
+ * messages and the closing brackets. The result is byte-for-byte stable
+ * for the same step messages, which is what the prompt key hashes.
+ *
+ * <p>Instances are immutable and safe to share between event loops.
+ */
+public final class RequestTemplate {
+
+  private static final byte[] COMMA = {','};
+  private static final byte[] SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+
+  private final byte[] prefix;
+
+  /**
+   * @param fields        the invariant top-level fields; must not contain
+   *                      {@code messages}
+   * @param systemMessage the leading system message
+   */
+  public RequestTemplate(JsonObject fields, JsonObject systemMessage) {
+    if (fields.containsKey("messages")) {
+      throw new IllegalArgumentException("messages is rendered per request");
+    }
+    String head = fields.encode();
+    // Reopen the object: drop the closing brace and start the messages array
+    StringBuilder sb = new StringBuilder(head.length() + 4096)
+        .append(head, 0, head.length() - 1);
+    if (!fields.isEmpty()) {
+      sb.append(',');
+    }
+    sb.append("\"messages\":[").append(systemMessage.encode());
+    this.prefix = sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** Size in bytes of the pre-encoded prefix. */
+  public int prefixLength() {
+    return prefix.length;
+  }
+
+  /**
+   * Render a full request body with {@code stepMessages} following the
+   * system message.
+   */
+  public Buffer render(JsonArray stepMessages) {
+    Buffer[] encoded = new Buffer[stepMessages.size()];
+    int size = prefix.length + SUFFIX.length;
+    for (int i = 0; i < encoded.length; i++) {
+      encoded[i] = stepMessages.getJsonObject(i).toBuffer();
+      size += encoded[i].length() + 1;
+    }
+    Buffer out = Buffer.buffer(size).appendBytes(prefix);
+    for (Buffer message : encoded) {
+      out.appendBytes(COMMA).appendBuffer(message);
+    }
+    return out.appendBytes(SUFFIX);
+  }
+}
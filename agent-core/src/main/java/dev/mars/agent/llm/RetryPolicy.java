@@ -0,0 +1,38 @@
+package dev.mars.agent.llm;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry schedule for throttled ({@code 429}) and server-error
+ * ({@code 5xx}) LLM responses: exponential backoff with "equal jitter",
+ * unless the provider says how long to wait.
+ *
+ * @param maxRetries  retries after the first attempt ({@code 0} = none)
+ * @param baseDelayMs delay cap for the first retry
+ * @param maxDelayMs  upper bound on any single delay
+ */
+public record RetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs) {
+
+  /** Never retry. */
+  public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+  /** Three retries starting at 500 ms, capped at 20 s. */
+  public static final RetryPolicy DEFAULTS = new RetryPolicy(3, 500, 20_000);
+
+  public RetryPolicy {
+    if (maxRetries < 0 || baseDelayMs < 0 || maxDelayMs < baseDelayMs) {
+      throw new IllegalArgumentException("invalid retry policy: maxRetries=" + maxRetries
+          + " baseDelayMs=" + baseDelayMs + " maxDelayMs=" + maxDelayMs);
+    }
+  }
+
+  /**
+   * Delay before retry number {@code attempt} (0-based): uniformly
+   * between half and all of {@code min(maxDelayMs, baseDelayMs × 2^attempt)},
+   * so concurrent callers that failed together spread out.
+   */
+  public long backoffMs(int attempt) {
+    long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 30));
+    return cap <= 1 ? cap : ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+  }
+}
@@ -0,0 +1,368 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Logger;
+
+/**
+ * {@link LlmClient} that spreads decisions over several equivalent
+ * backends — typically the same model behind a primary and a DR
+ * endpoint — to cut tail latency.
+ *
+ * <h2>Routing</h2>
+ * Each backend keeps an exponentially weighted moving average of its
+ * successful latency and of its error rate. Every call goes first to the
+ * backend with the lowest score
+ * <pre>
+ * score = ewmaLatencyMs + ewmaErrorRate × {@value #ERROR_PENALTY_MS}
+ * </pre>
+ * so a backend that starts failing or slowing down loses traffic, and
+ * regains it as its averages recover. Backends without samples score
+ * zero and keep their configured order.
+ *
+ * <h2>Hedging</h2>
+ * If the first backend has not answered within its own observed p95
+ * latency (over the last {@value #WINDOW} successes; the configured
+ * initial delay until {@value #MIN_SAMPLES} samples exist), the same
+ * request is sent to the next-best backend. The first success wins and
+ * the loser's {@link CancellationToken} is cancelled, which resets its
+ * HTTP request so the provider stops generating. A failure before the
+ * hedge fires fails over to the next backend immediately.
+ *
+ * <p>Cancelling the caller's token cancels every attempt.
+ *
+ * @see RoutingSettings
+ */
+public class RoutingLlmClient implements LlmClient {
+
+  private static final Logger LOG = Logger.getLogger(RoutingLlmClient.class.getName());
+
+  /** Latency penalty (ms) for a backend whose every recent call failed. */
+  public static final long ERROR_PENALTY_MS = 10_000;
+
+  /** Number of recent successful latencies the p95 is taken over. */
+  static final int WINDOW = 100;
+
+  /** Samples required before the p95 replaces the initial hedge delay. */
+  static final int MIN_SAMPLES = 20;
+
+  /** A named backend. */
+  public record Backend(String name, LlmClient client) {}
+
+  private final Vertx vertx;
+  private final RoutingSettings settings;
+  private final List<Route> routes;
+
+  /**
+   * @param vertx    the Vert.x instance (for hedge timers)
+   * @param backends the equivalent backends, in preference order
+   * @param settings hedging and averaging knobs
+   */
+  public RoutingLlmClient(Vertx vertx, List<Backend> backends, RoutingSettings settings) {
+    if (backends.isEmpty()) {
+      throw new IllegalArgumentException("at least one backend is required");
+    }
+    this.vertx = vertx;
+    this.settings = settings;
+    this.routes = backends.stream().map(Route::new).toList();
+    LOG.info("RoutingLlmClient created: backends="
+        + backends.stream().map(Backend::name).toList() + " settings=" + settings);
+  }
+
+  /** The first backend's key: all backends serve the same model and prompt. */
+  @Override
+  public String promptKey(JsonObject event, JsonObject state) {
+    return routes.get(0).backend.client().promptKey(event, state);
+  }
+
+  /** Warm every backend, so a hedge or failover does not pay for a cold connection. */
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    List<Future<JsonObject>> reports = routes.stream()
+        .map(r -> r.backend.client().warmUp(plan))
+        .toList();
+    return Future.all(reports).map(v -> {
+      JsonObject out = new JsonObject();
+      for (int i = 0; i < routes.size(); i++) {
+        out.put(routes.get(i).backend.name(), reports.get(i).result());
+      }
+      return new JsonObject().put("backends", out);
+    });
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+    return decideNext(event, state, new CancellationToken());
+  }
+
+  @Override
+  public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                       CancellationToken cancellation) {
+    if (cancellation.isCancelled()) {
+      return Future.failedFuture(new CancellationException(cancellation.reason()));
+    }
+    return new Race(event, state, cancellation, ranked()).start();
+  }
+
+  /**
+   * Per-backend routing statistics: {@code name}, {@code score},
+   * {@code ewmaLatencyMs}, {@code errorRate}, {@code p95Ms},
+   * {@code requests}, {@code errors}, {@code hedges} (times it was the
+   * hedge target) and {@code hedgeWins}, with the backend client's own
+   * under {@code client}.
+   */
+  @Override
+  public JsonObject stats() {
+    JsonArray out = new JsonArray();
+    for (Route r : routes) {
+      out.add(r.toJson().put("client", r.backend.client().stats()));
+    }
+    return new JsonObject().put("backends", out);
+  }
+
+  /** Backends ordered best-first; stable, so ties keep configured order. */
+  private List<Route> ranked() {
+    List<Route> ranked = new ArrayList<>(routes);
+    ranked.sort(Comparator.comparingDouble(Route::score));
+    return ranked;
+  }
+
+  /** How long to wait on {@code route} before hedging. */
+  private long hedgeDelayMs(Route route) {
+    long p95 = route.p95();
+    return p95 < 0 ? settings.initialHedgeDelayMs() : Math.max(settings.minHedgeDelayMs(), p95);
+  }
+
+  // ── One call ──────────────────────────────────────────────────────
+
+  private static final class Attempt {
+    final Route route;
+    final boolean hedge;
+    final CancellationToken token = new CancellationToken();
+    final long startNanos = System.nanoTime();
+
+    Attempt(Route route, boolean hedge) {
+      this.route = route;
+      this.hedge = hedge;
+    }
+
+    long elapsedMs() {
+      return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+  }
+
+  /**
+   * The attempts made for one decision. Results may arrive on different
+   * event loops than the hedge timer, so all state is guarded by the
+   * instance monitor.
+   */
+  private final class Race {
+    private final JsonObject event;
+    private final JsonObject state;
+    private final CancellationToken caller;
+    private final List<Route> ranked;
+    private final Promise<JsonObject> promise = Promise.promise();
+    private final List<Attempt> attempts = new ArrayList<>();
+    private int running;
+    private boolean decided;
+    private long timerId = -1;
+    private Throwable lastError;
+    private Runnable unregisterCaller = () -> {};
+
+    Race(JsonObject event, JsonObject state, CancellationToken caller, List<Route> ranked) {
+      this.event = event;
+      this.state = state;
+      this.caller = caller;
+      this.ranked = ranked;
+    }
+
+    synchronized Future<JsonObject> start() {
+      unregisterCaller = caller.onCancel(() -> cancelAttempts(caller.reason()));
+      Route first = ranked.get(0);
+      launch(false);
+      if (settings.hedge() && ranked.size() > 1 && !decided) {
+        timerId = vertx.setTimer(hedgeDelayMs(first), t -> hedge());
+      }
+      return promise.future();
+    }
+
+    private synchronized void hedge() {
+      timerId = -1;
+      if (decided || attempts.size() > 1) {
+        return;
+      }
+      LOG.fine(() -> "Hedging LLM call: " + attempts.get(0).route.name() + " slower than "
+          + hedgeDelayMs(attempts.get(0).route) + " ms");
+      launch(true);
+    }
+
+    /** Start the next-ranked backend; false when none is left. */
+    private boolean launch(boolean hedge) {
+      if (attempts.size() >= ranked.size()) {
+        return false;
+      }
+      Attempt attempt = new Attempt(ranked.get(attempts.size()), hedge);
+      attempts.add(attempt);
+      running++;
+      attempt.route.started(hedge);
+      attempt.route.backend.client().decideNext(event, state, attempt.token)
+          .onComplete(ar -> finished(attempt, ar));
+      return true;
+    }
+
+    private synchronized void finished(Attempt attempt, AsyncResult<JsonObject> ar) {
+      running--;
+      long ms = attempt.elapsedMs();
+      if (ar.succeeded()) {
+        attempt.route.recordSuccess(ms);
+        if (!decided) {
+          if (attempt.hedge) {
+            attempt.route.hedgeWon();
+          }
+          settle("lost to " + attempt.route.name());
+          promise.complete(ar.result());
+        }
+        return;
+      }
+      if (attempt.token.isCancelled()) {
+        // Cut short by us: the true latency is at least this long
+        attempt.route.recordCensored(ms);
+      } else {
+        attempt.route.recordError();
+        LOG.warning("LLM backend " + attempt.route.name() + " failed after " + ms + " ms: "
+            + ar.cause().getMessage());
+      }
+      if (decided) {
+        return;
+      }
+      lastError = ar.cause();
+      if (caller.isCancelled()) {
+        settle(caller.reason());
+        promise.fail(new CancellationException(caller.reason()));
+      } else if (running == 0 && !launch(false)) {
+        settle(null);
+        promise.fail(lastError);
+      }
+    }
+
+    /**
+     * The race is decided: stop the timer and every attempt still running.
+     * Called before the promise completes, so callers never observe a
+     * result while a loser is still generating.
+     */
+    private void settle(String reason) {
+      decided = true;
+      if (timerId >= 0) {
+        vertx.cancelTimer(timerId);
+        timerId = -1;
+      }
+      unregisterCaller.run();
+      if (reason != null) {
+        cancelAttempts(reason);
+      }
+    }
+
+    private synchronized void cancelAttempts(String reason) {
+      for (Attempt a : attempts) {
+        a.token.cancel(reason);
+      }
+    }
+  }
+
+  // ── Per-backend statistics ────────────────────────────────────────
+
+  private final class Route {
+    final Backend backend;
+    private final long[] window = new long[WINDOW];
+    private int samples;
+    private double ewmaLatency;
+    private boolean latencySeen;
+    private double ewmaError;
+    private long requests;
+    private long errors;
+    private long hedges;
+    private long hedgeWins;
+
+    Route(Backend backend) {
+      this.backend = backend;
+    }
+
+    String name() {
+      return backend.name();
+    }
+
+    synchronized void started(boolean hedge) {
+      requests++;
+      if (hedge) {
+        hedges++;
+      }
+    }
+
+    synchronized void hedgeWon() {
+      hedgeWins++;
+    }
+
+    synchronized void recordSuccess(long ms) {
+      window[samples++ % WINDOW] = ms;
+      ewmaLatency = latencySeen ? blend(ewmaLatency, ms) : ms;
+      latencySeen = true;
+      ewmaError = blend(ewmaError, 0);
+    }
+
+    synchronized void recordError() {
+      errors++;
+      ewmaError = blend(ewmaError, 1);
+    }
+
+    /** A cancelled attempt only tells us the latency is at least {@code ms}. */
+    synchronized void recordCensored(long ms) {
+      if (!latencySeen || ms > ewmaLatency) {
+        ewmaLatency = latencySeen ? blend(ewmaLatency, ms) : ms;
+        latencySeen = true;
+      }
+    }
+
+    private double blend(double average, double sample) {
+      return settings.ewmaAlpha() * sample + (1 - settings.ewmaAlpha()) * average;
+    }
+
+    synchronized double score() {
+      return ewmaLatency + ewmaError * ERROR_PENALTY_MS;
+    }
+
+    /** p95 of the recent successes, or -1 with too few samples. */
+    synchronized long p95() {
+      int n = Math.min(samples, WINDOW);
+      if (n < MIN_SAMPLES) {
+        return -1;
+      }
+      long[] sorted = Arrays.copyOf(window, n);
+      Arrays.sort(sorted);
+      return sorted[(int) Math.ceil(0.95 * n) - 1];
+    }
+
+    synchronized JsonObject toJson() {
+      return new JsonObject()
+          .put("name", name())
+          .put("score", score())
+          .put("ewmaLatencyMs", ewmaLatency)
+          .put("errorRate", ewmaError)
+          .put("p95Ms", p95())
+          .put("requests", requests)
+          .put("errors", errors)
+          .put("hedges", hedges)
+          .put("hedgeWins", hedgeWins);
+    }
+  }
+}
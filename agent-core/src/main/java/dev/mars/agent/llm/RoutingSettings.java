@@ -0,0 +1,48 @@
+package dev.mars.agent.llm;
+
+/**
+ * Tuning knobs for {@link RoutingLlmClient}.
+ *
+ * @param hedge               send a second request to the next-best
+ *                            backend when the first is slower than its
+ *                            observed p95
+ * @param initialHedgeDelayMs hedge delay used until a backend has enough
+ *                            latency samples for a p95
+ * @param minHedgeDelayMs     lower bound on the p95-derived delay, so a
+ *                            very fast backend does not hedge every call
+ * @param ewmaAlpha           weight of the newest sample in the latency
+ *                            and error-rate moving averages (0, 1]
+ */
+public record RoutingSettings(
+    boolean hedge,
+    long initialHedgeDelayMs,
+    long minHedgeDelayMs,
+    double ewmaAlpha
+) {
+  /** Hedging on, 1 s initial delay, 50 ms floor, alpha 0.2. */
+  public static final RoutingSettings DEFAULTS = new RoutingSettings(true, 1000, 50, 0.2);
+
+  public RoutingSettings {
+    if (initialHedgeDelayMs < 0 || minHedgeDelayMs < 0) {
+      throw new IllegalArgumentException("hedge delays must be >= 0");
+    }
+    if (ewmaAlpha <= 0 || ewmaAlpha > 1) {
+      throw new IllegalArgumentException("ewmaAlpha must be in (0, 1]");
+    }
+  }
+
+  /** Copy with hedging switched on or off. */
+  public RoutingSettings withHedge(boolean hedge) {
+    return new RoutingSettings(hedge, initialHedgeDelayMs, minHedgeDelayMs, ewmaAlpha);
+  }
+
+  /** Copy with different hedge delay bounds. */
+  public RoutingSettings withHedgeDelays(long initialHedgeDelayMs, long minHedgeDelayMs) {
+    return new RoutingSettings(hedge, initialHedgeDelayMs, minHedgeDelayMs, ewmaAlpha);
+  }
+
+  /** Copy with a different EWMA weight. */
+  public RoutingSettings withEwmaAlpha(double ewmaAlpha) {
+    return new RoutingSettings(hedge, initialHedgeDelayMs, minHedgeDelayMs, ewmaAlpha);
+  }
+}
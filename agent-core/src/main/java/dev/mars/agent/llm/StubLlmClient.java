@@ -1,10 +1,16 @@
 package dev.mars.agent.llm;
 
+import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
@@ -26,10 +32,20 @@ import java.util.logging.Logger;
  * <ul>
  *   <li>Use {@link #keywordRule(String, String, Function)} for simple
  *       keyword-on-reason matching.</li>
+ *   <li>Use {@link #keywordRule(Collection, StubRule)} to give a
+ *       multi-step rule the reason keywords it answers to.</li>
  *   <li>Implement {@link StubRule} directly for richer logic (regex,
  *       field combinations, look-ups, etc.).</li>
  * </ul>
  *
+ * <h2>Matching</h2>
+ * The keywords of every {@link KeywordRule} are compiled into one
+ * {@link KeywordIndex} when the client is built. Each decision lowercases
+ * the {@code reason} once, finds the keyword rules that apply in a single
+ * pass over it, and evaluates only those plus any rules without declared
+ * keywords — still in list order, so the first match wins as before. The
+ * cost of a decision no longer grows with the number of keyword rules.
+ *
  * @see LlmClient
  * @see StubRule
  */
@@ -37,8 +53,14 @@ public class StubLlmClient implements LlmClient {
 
   private static final Logger LOG = Logger.getLogger(StubLlmClient.class.getName());
 
+  /** Steps per synthetic event during {@link #warmUp}. */
+  private static final int WARM_UP_STEPS = 3;
+
   private final List<StubRule> rules;
   private final StubRule fallback;
+  private final KeywordIndex index;
+  /** Rules without declared keywords: candidates for every event. */
+  private final BitSet unindexed = new BitSet();
 
   /**
    * Creates a new stub client with the given rules and fallback.
@@ -50,6 +72,29 @@ public class StubLlmClient implements LlmClient {
   public StubLlmClient(List<StubRule> rules, StubRule fallback) {
     this.rules = List.copyOf(rules);
     this.fallback = Objects.requireNonNull(fallback, "fallback rule must not be null");
+    List<Set<String>> keywords = new ArrayList<>();
+    for (int i = 0; i < this.rules.size(); i++) {
+      if (this.rules.get(i) instanceof KeywordRule kr) {
+        keywords.add(kr.keywords());
+      } else {
+        keywords.add(Set.of());
+        unindexed.set(i);
+      }
+    }
+    this.index = KeywordIndex.build(keywords);
+  }
+
+  /**
+   * A rule that applies when the {@code reason} contains any of
+   * {@code keywords} (case-insensitive) and then lets {@code action}
+   * decide — e.g. by step. The keywords are indexed by the client.
+   *
+   * @param keywords substrings to look for in the reason
+   * @param action   builds the command once a keyword matched
+   * @return a {@link KeywordRule}
+   */
+  public static StubRule keywordRule(Collection<String> keywords, StubRule action) {
+    return new KeywordRule(Set.copyOf(keywords), action);
   }
 
   /**
@@ -67,18 +112,11 @@ public class StubLlmClient implements LlmClient {
    */
   public static StubRule keywordRule(String keyword, String toolName,
                                      Function<JsonObject, JsonObject> argsBuilder) {
-    String lowerKeyword = keyword.toLowerCase();
-    return event -> {
-      String reason = event.getString("reason", "").toLowerCase();
-      if (reason.contains(lowerKeyword)) {
-        return new JsonObject()
-          .put("intent", "CALL_TOOL")
-          .put("tool", toolName)
-          .put("args", argsBuilder.apply(event))
-          .put("stop", true);
-      }
-      return null;
-    };
+    return keywordRule(Set.of(keyword), event -> new JsonObject()
+        .put("intent", "CALL_TOOL")
+        .put("tool", toolName)
+        .put("args", argsBuilder.apply(event))
+        .put("stop", true));
   }
 
   @Override
@@ -87,16 +125,67 @@ public class StubLlmClient implements LlmClient {
     LOG.info("StubLlmClient evaluating " + rules.size() + " rules for reason='" + reason
         + "' step=" + (state != null ? state.getInteger("step", 0) : 0));
 
-    for (StubRule rule : rules) {
-      JsonObject cmd = rule.tryMatch(event, state);
-      if (cmd != null) {
-        LOG.info("Stub rule matched: tool=" + cmd.getString("tool")
-            + " stop=" + cmd.getBoolean("stop", true));
-        return Future.succeededFuture(cmd);
-      }
+    JsonObject cmd = match(event, state);
+    if (cmd != null) {
+      LOG.info("Stub rule matched: tool=" + cmd.getString("tool")
+          + " stop=" + cmd.getBoolean("stop", true));
+      return Future.succeededFuture(cmd);
     }
 
     LOG.info("No stub rule matched for reason='" + reason + "' — using fallback");
     return Future.succeededFuture(fallback.tryMatch(event, state));
   }
+
+  /**
+   * Evaluate the rules for every synthetic event and step, without the
+   * per-decision logging, so the matching code is compiled before the
+   * first real case. Called on a Vert.x context, the loop runs on a
+   * worker so the caller's timeout can still fire on the event loop.
+   */
+  @Override
+  public Future<JsonObject> warmUp(WarmupPlan plan) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      return Future.succeededFuture(warmRules(plan));
+    }
+    return context.executeBlocking(() -> warmRules(plan), false);
+  }
+
+  private JsonObject warmRules(WarmupPlan plan) {
+    long start = System.nanoTime();
+    long decisions = 0;
+    for (int i = 0; i < plan.iterations(); i++) {
+      for (JsonObject event : plan.events()) {
+        for (int step = 0; step < WARM_UP_STEPS; step++) {
+          JsonObject state = new JsonObject().put("step", step);
+          if (match(event, state) == null) {
+            fallback.tryMatch(event, state);
+          }
+          decisions++;
+        }
+      }
+    }
+    return new JsonObject()
+        .put("decisions", decisions)
+        .put("ms", (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * The first matching rule's command, or {@code null}. Keyword rules
+   * the index ruled out are skipped; the others run in list order.
+   */
+  private JsonObject match(JsonObject event, JsonObject state) {
+    BitSet candidates = index.matches(KeywordIndex.normalise(event.getString("reason", "")));
+    candidates.or(unindexed);
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      StubRule rule = rules.get(i);
+      JsonObject cmd = rule instanceof KeywordRule kr
+          ? kr.action().tryMatch(event, state)
+          : rule.tryMatch(event, state);
+      if (cmd != null) {
+        return cmd;
+      }
+    }
+    return null;
+  }
 }
@@ -25,6 +25,7 @@ import io.vertx.core.json.JsonObject;
  *
  * @see StubLlmClient
  * @see StubLlmClient#keywordRule(String, String, java.util.function.Function)
+ * @see KeywordRule
  */
 @FunctionalInterface
 public interface StubRule {
@@ -0,0 +1,131 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks tool arguments proposed by a model against the tool's
+ * {@link dev.mars.mcp.tool.Tool#schema() JSON Schema}.
+ *
+ * <p>Covers the subset the agent's tools actually use: {@code type},
+ * {@code properties}, {@code required}, {@code enum} and array
+ * {@code items}. Keywords outside that subset are ignored rather than
+ * rejected, so a richer schema never causes a false failure.
+ *
+ * <p>{@link #compile} turns a schema into a tree of checks once, so the
+ * per-call cost is a walk over the arguments rather than over the schema
+ * JSON; compiled validators are immutable and thread-safe.
+ */
+public final class ToolSchemaValidator {
+
+  private final String type;
+  private final JsonArray allowed;
+  private final List<String> required;
+  private final Map<String, ToolSchemaValidator> properties;
+  private final ToolSchemaValidator items;
+
+  private ToolSchemaValidator(JsonObject schema) {
+    this.type = schema.getString("type");
+    JsonArray enumValues = schema.getJsonArray("enum");
+    this.allowed = enumValues == null ? null : enumValues.copy();
+    List<String> req = new ArrayList<>();
+    JsonArray requiredArr = schema.getJsonArray("required");
+    if (requiredArr != null) {
+      requiredArr.forEach(name -> req.add(String.valueOf(name)));
+    }
+    this.required = List.copyOf(req);
+    Map<String, ToolSchemaValidator> props = new LinkedHashMap<>();
+    JsonObject propertiesObj = schema.getJsonObject("properties");
+    if (propertiesObj != null) {
+      for (Map.Entry<String, Object> e : propertiesObj) {
+        if (e.getValue() instanceof JsonObject sub) {
+          props.put(e.getKey(), new ToolSchemaValidator(sub));
+        }
+      }
+    }
+    this.properties = Map.copyOf(props);
+    JsonObject itemsObj = schema.getJsonObject("items");
+    this.items = itemsObj == null ? null : new ToolSchemaValidator(itemsObj);
+  }
+
+  /** Compile {@code schema}; {@code null} compiles to a validator that accepts anything. */
+  public static ToolSchemaValidator compile(JsonObject schema) {
+    return new ToolSchemaValidator(schema == null ? new JsonObject() : schema);
+  }
+
+  /**
+   * Validate {@code args} against {@code schema}.
+   *
+   * @return one message per violation; empty when the arguments conform
+   */
+  public static List<String> validate(JsonObject schema, JsonObject args) {
+    return compile(schema).validate(args);
+  }
+
+  /**
+   * Validate {@code args} against the compiled schema.
+   *
+   * @return one message per violation; empty when the arguments conform
+   */
+  public List<String> validate(JsonObject args) {
+    List<String> errors = new ArrayList<>();
+    check(args, "args", errors);
+    return errors;
+  }
+
+  private void check(Object value, String path, List<String> errors) {
+    if (type != null && !hasType(value, type)) {
+      errors.add(path + " must be " + type + " but was " + typeOf(value));
+      return;
+    }
+    if (allowed != null && !allowed.contains(value)) {
+      errors.add(path + " must be one of " + allowed.encode());
+    }
+    if (value instanceof JsonObject obj) {
+      for (String name : required) {
+        if (obj.getValue(name) == null) {
+          errors.add(path + "." + name + " is required");
+        }
+      }
+      for (Map.Entry<String, Object> field : obj) {
+        ToolSchemaValidator sub = properties.get(field.getKey());
+        if (sub != null && field.getValue() != null) {
+          sub.check(field.getValue(), path + "." + field.getKey(), errors);
+        }
+      }
+    } else if (value instanceof JsonArray arr && items != null) {
+      for (int i = 0; i < arr.size(); i++) {
+        items.check(arr.getValue(i), path + "[" + i + "]", errors);
+      }
+    }
+  }
+
+  private static boolean hasType(Object value, String type) {
+    return switch (type) {
+      case "object" -> value instanceof JsonObject;
+      case "array" -> value instanceof JsonArray;
+      case "string" -> value instanceof String;
+      case "boolean" -> value instanceof Boolean;
+      case "number" -> value instanceof Number;
+      case "integer" -> value instanceof Integer || value instanceof Long
+          || (value instanceof Number n && n.doubleValue() == Math.rint(n.doubleValue()));
+      case "null" -> value == null;
+      default -> true;
+    };
+  }
+
+  private static String typeOf(Object value) {
+    if (value == null) return "null";
+    if (value instanceof JsonObject) return "object";
+    if (value instanceof JsonArray) return "array";
+    if (value instanceof String) return "string";
+    if (value instanceof Boolean) return "boolean";
+    if (value instanceof Number) return "number";
+    return value.getClass().getSimpleName();
+  }
+}
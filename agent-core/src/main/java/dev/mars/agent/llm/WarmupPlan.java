@@ -0,0 +1,25 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.List;
+
+/**
+ * What {@link LlmClient#warmUp} exercises before the pipeline takes
+ * traffic.
+ *
+ * @param connections pooled connections to open per provider endpoint;
+ *                    capped by the HTTP client's pool size
+ * @param iterations  passes of {@code events} through the client's local
+ *                    request and response code
+ * @param events      synthetic failure events; never sent to a provider
+ *                    for a decision
+ */
+public record WarmupPlan(int connections, int iterations, List<JsonObject> events) {
+
+  public WarmupPlan {
+    if (connections < 0) throw new IllegalArgumentException("connections must be >= 0");
+    if (iterations < 0) throw new IllegalArgumentException("iterations must be >= 0");
+    events = events == null ? List.of() : List.copyOf(events);
+  }
+}
@@ -0,0 +1,173 @@
+package dev.mars.agent.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * {@link StubRuleLoader} that reads multi-step rule chains from a YAML
+ * file instead of code.
+ *
+ * <h2>Format</h2>
+ * <pre>
+ * rules:
+ *   - name: lei
+ *     keywords: [lei]
+ *     steps:
+ *       - tool: data.lookup
+ *         args: { tradeId: "${tradeId:-unknown}", fields: [counterparty] }
+ *         reasoning: Look up the counterparty first
+ *       - tool: case.raiseTicket
+ *         args: { tradeId: "${tradeId:-unknown}", detail: "Failure reason: ${reason}" }
+ * fallback:
+ *   steps:
+ *     - tool: data.lookup
+ *       args: { tradeId: "${tradeId:-unknown}" }
+ * </pre>
+ *
+ * <p>A rule applies when the event's {@code reason} contains any of its
+ * {@code keywords} (case-insensitive); step {@code n} of the agent loop
+ * answers with {@code steps[n]}, and steps past the end repeat the last.
+ * Each step is a command as described by {@link StubRule}: {@code intent}
+ * defaults to {@code CALL_TOOL}, and {@code stop} to {@code true} on the
+ * last step and {@code false} before it. The fallback has no keywords and
+ * is required.
+ *
+ * <p>Every step is compiled to a {@link JsonTemplate} at load time, so a
+ * decision only substitutes variables: {@code ${step}} and any top-level
+ * field of the event ({@code ${tradeId}}, {@code ${reason}}, ...).
+ *
+ * @see StubRuleSet
+ * @see ReloadingStubLlmClient
+ */
+public class YamlStubRuleLoader implements StubRuleLoader {
+
+  private static final Logger LOG = Logger.getLogger(YamlStubRuleLoader.class.getName());
+
+  private static final ObjectMapper YAML = new ObjectMapper(new YAMLFactory());
+
+  private final String source;
+  private final Opener opener;
+
+  /** Reads an input stream; {@code null} means the source does not exist. */
+  @FunctionalInterface
+  private interface Opener {
+    InputStream open() throws IOException;
+  }
+
+  /** Load from a file on disk. */
+  public YamlStubRuleLoader(Path file) {
+    this(file.toString(), () -> Files.newInputStream(file));
+  }
+
+  private YamlStubRuleLoader(String source, Opener opener) {
+    this.source = source;
+    this.opener = opener;
+  }
+
+  /** Load from a resource on the classpath. */
+  public static YamlStubRuleLoader fromResource(String resource) {
+    return new YamlStubRuleLoader("classpath:" + resource,
+        () -> Thread.currentThread().getContextClassLoader().getResourceAsStream(resource));
+  }
+
+  /**
+   * @throws IllegalStateException    if the source is missing or not YAML
+   * @throws IllegalArgumentException if the rules are malformed
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public StubRuleSet load() {
+    Map<String, Object> doc;
+    try (InputStream is = opener.open()) {
+      if (is == null) {
+        throw new IllegalStateException("Stub rules not found: " + source);
+      }
+      doc = YAML.readValue(is, Map.class);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read stub rules: " + source, e);
+    }
+    StubRuleSet set = parse(doc == null ? new JsonObject() : new JsonObject(doc));
+    LOG.info("Loaded " + set.rules().size() + " stub rules from " + source);
+    return set;
+  }
+
+  /**
+   * Build a rule set from an already-parsed document.
+   *
+   * @throws IllegalArgumentException if the rules are malformed
+   */
+  public static StubRuleSet parse(JsonObject doc) {
+    List<StubRule> rules = new ArrayList<>();
+    JsonArray ruleDefs = doc.getJsonArray("rules", new JsonArray());
+    for (int i = 0; i < ruleDefs.size(); i++) {
+      JsonObject def = ruleDefs.getJsonObject(i);
+      String name = def.getString("name", "rules[" + i + "]");
+      JsonArray keywords = def.getJsonArray("keywords");
+      if (keywords == null || keywords.isEmpty()) {
+        throw new IllegalArgumentException("stub rule '" + name + "' declares no keywords");
+      }
+      List<String> words = new ArrayList<>();
+      keywords.forEach(k -> words.add(String.valueOf(k)));
+      rules.add(StubLlmClient.keywordRule(words, chain(name, def)));
+    }
+    JsonObject fallback = doc.getJsonObject("fallback");
+    if (fallback == null) {
+      throw new IllegalArgumentException("stub rules declare no fallback");
+    }
+    return new StubRuleSet(rules, chain("fallback", fallback));
+  }
+
+  private static StubRule chain(String name, JsonObject def) {
+    JsonArray steps = def.getJsonArray("steps");
+    if (steps == null || steps.isEmpty()) {
+      throw new IllegalArgumentException("stub rule '" + name + "' has no steps");
+    }
+    JsonTemplate[] compiled = new JsonTemplate[steps.size()];
+    for (int i = 0; i < compiled.length; i++) {
+      JsonObject step = steps.getJsonObject(i);
+      if (step.getString("tool") == null) {
+        throw new IllegalArgumentException("stub rule '" + name + "' step " + i + " has no tool");
+      }
+      Map<String, Object> command = new LinkedHashMap<>();
+      command.put("intent", "CALL_TOOL");
+      command.putAll(step.getMap());
+      command.putIfAbsent("args", Map.of());
+      command.putIfAbsent("stop", i == compiled.length - 1);
+      try {
+        compiled[i] = JsonTemplate.compile(command);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("stub rule '" + name + "' step " + i + ": "
+            + e.getMessage(), e);
+      }
+    }
+    return new ChainRule(compiled);
+  }
+
+  /** Answers step {@code n} with template {@code n}, clamped to the last. */
+  private record ChainRule(JsonTemplate[] steps) implements StubRule {
+
+    @Override
+    public JsonObject tryMatch(JsonObject event) {
+      return tryMatch(event, null);
+    }
+
+    @Override
+    public JsonObject tryMatch(JsonObject event, JsonObject state) {
+      int step = state != null ? state.getInteger("step", 0) : 0;
+      JsonTemplate template = steps[Math.max(0, Math.min(step, steps.length - 1))];
+      return template.renderObject(name -> "step".equals(name) ? step : event.getValue(name));
+    }
+  }
+}
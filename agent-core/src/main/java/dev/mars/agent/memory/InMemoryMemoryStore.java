@@ -1,25 +1,46 @@
 package dev.mars.agent.memory;
 
 import io.vertx.core.Future;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
- * Non-persistent {@link MemoryStore} backed by {@link ConcurrentHashMap}s.
+ * Non-persistent {@link MemoryStore} held in process memory.
  *
  * <p>Suitable for local development, testing, and single-instance deployments.
  * All data is lost on process restart. For production, replace with a durable
  * implementation backed by a database or distributed cache.
  *
+ * <h2>Bounds</h2>
+ * Unbounded by default. With {@link MemoryBounds} the store keeps its
+ * footprint flat over long uptimes: a case's log is trimmed to
+ * {@code maxLogEntries}, and whole cases are evicted least recently used
+ * first once there are more than {@code maxCases} of them or their
+ * approximate encoded size exceeds {@code maxBytes}, or when they have
+ * been idle for {@code idleTtlMs}. Limits are enforced on every
+ * {@link #load} and {@link #append}, so an idle store does not need a
+ * timer. An evicted case that comes back starts again from step 0, so
+ * size the limits well above the number of cases in flight.
+ *
+ * <p>Every eviction and trimmed log entry is handed to the eviction
+ * listener (outside the store's lock), which can spill it to disk or an
+ * archive. {@link #stats()} reports occupancy and eviction counts.
+ *
  * <h2>Thread safety</h2>
- * Both {@link #load} and {@link #append} use {@code ConcurrentHashMap.compute}
- * to ensure atomicity of read-modify-write operations. {@link #load} returns
- * a defensive <em>copy</em> of the state so the caller cannot mutate the
- * canonical store.
+ * All cases sit in one access-ordered map guarded by its monitor, so
+ * every read-modify-write is atomic and the least recently used case is
+ * always the map's eldest. {@link #load} returns a defensive <em>copy</em>
+ * of the state so the caller cannot mutate the canonical store.
  *
  * @see MemoryStore
  */
@@ -27,38 +48,271 @@ public class InMemoryMemoryStore implements MemoryStore {
 
   private static final Logger LOG = Logger.getLogger(InMemoryMemoryStore.class.getName());
 
-  private final Map<String, JsonObject> stateByCase = new ConcurrentHashMap<>();
-  private final Map<String, JsonArray> logByCase = new ConcurrentHashMap<>();
+  /** Rough fixed cost of a case beyond its encoded JSON. */
+  private static final int CASE_OVERHEAD_BYTES = 128;
+
+  /** Why data left the store. */
+  public enum Cause {
+    /** More than {@code maxCases} cases. */
+    CAPACITY,
+    /** Over the {@code maxBytes} budget. */
+    BYTES,
+    /** Not touched for {@code idleTtlMs}. */
+    IDLE,
+    /** Oldest log entries beyond {@code maxLogEntries}; the case stays. */
+    TRIMMED
+  }
+
+  /**
+   * Data removed from the store.
+   *
+   * @param caseId the case
+   * @param state  the case's final state, or {@code null} for
+   *               {@link Cause#TRIMMED}
+   * @param log    the removed log entries, oldest first
+   * @param cause  why it was removed
+   */
+  public record Eviction(String caseId, JsonObject state, List<JsonObject> log, Cause cause) {}
+
+  private final MemoryBounds bounds;
+  private final Consumer<Eviction> onEvict;
+  private final Clock clock;
+
+  private final LinkedHashMap<String, CaseEntry> cases = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes;
+  private long logEntries;
+
+  private final AtomicLong evictedCapacity = new AtomicLong();
+  private final AtomicLong evictedBytes = new AtomicLong();
+  private final AtomicLong evictedIdle = new AtomicLong();
+  private final AtomicLong trimmedEntries = new AtomicLong();
+
+  /** An unbounded store. */
+  public InMemoryMemoryStore() {
+    this(MemoryBounds.UNBOUNDED, eviction -> {});
+  }
+
+  /** A bounded store that discards what it evicts. */
+  public InMemoryMemoryStore(MemoryBounds bounds) {
+    this(bounds, eviction -> {});
+  }
+
+  /**
+   * @param bounds  limits on what is kept
+   * @param onEvict receives every evicted case and trimmed log entry
+   */
+  public InMemoryMemoryStore(MemoryBounds bounds, Consumer<Eviction> onEvict) {
+    this(bounds, onEvict, Clock.systemUTC());
+  }
+
+  /** As above, with the clock used for timestamps and idle checks. */
+  public InMemoryMemoryStore(MemoryBounds bounds, Consumer<Eviction> onEvict, Clock clock) {
+    this.bounds = bounds;
+    this.onEvict = onEvict;
+    this.clock = clock;
+  }
 
   @Override
   public Future<JsonObject> load(String caseId) {
-    JsonObject state = stateByCase.computeIfAbsent(caseId, k -> {
-      LOG.info("Memory: new case state created for caseId=" + caseId);
-      return new JsonObject()
-        .put("caseId", caseId)
-        .put("createdAt", System.currentTimeMillis())
-        .put("step", 0);
-    });
-    LOG.fine("Memory: loaded state for caseId=" + caseId + " step=" + state.getInteger("step", 0));
-    return Future.succeededFuture(state.copy());
+    long now = clock.millis();
+    List<Eviction> evicted = new ArrayList<>();
+    JsonObject copy;
+    synchronized (cases) {
+      expireIdle(now, evicted);
+      CaseEntry entry = cases.get(caseId);
+      if (entry == null) {
+        LOG.info("Memory: new case state created for caseId=" + caseId);
+        entry = new CaseEntry(new JsonObject()
+            .put("caseId", caseId)
+            .put("createdAt", now)
+            .put("step", 0), now);
+        cases.put(caseId, entry);
+        bytes += entry.bytes;
+        enforceLimits(caseId, evicted);
+      }
+      entry.touchedAt = now;
+      copy = entry.state.copy();
+    }
+    notify(evicted);
+    LOG.fine("Memory: loaded state for caseId=" + caseId + " step=" + copy.getInteger("step", 0));
+    return Future.succeededFuture(copy);
   }
 
   @Override
   public Future<Void> append(String caseId, JsonObject entry) {
-    logByCase.compute(caseId, (k, existing) -> {
-      JsonArray log = existing == null ? new JsonArray() : existing;
-      log.add(entry);
-      return log;
-    });
-    stateByCase.compute(caseId, (k, old) -> {
-      JsonObject s = old == null ? new JsonObject() : old.copy();
-      int step = s.getInteger("step", 0);
-      s.put("step", step + 1);
+    long now = clock.millis();
+    int size = entry.encode().length();
+    List<Eviction> evicted = new ArrayList<>();
+    int step;
+    synchronized (cases) {
+      expireIdle(now, evicted);
+      CaseEntry c = cases.get(caseId);
+      if (c == null) {
+        c = new CaseEntry(new JsonObject(), now);
+        cases.put(caseId, c);
+        bytes += c.bytes;
+      }
+      JsonObject s = c.state.copy();
+      step = s.getInteger("step", 0) + 1;
+      s.put("step", step);
       s.put("last", entry);
-      s.put("updatedAt", System.currentTimeMillis());
-      LOG.info("Memory: appended entry for caseId=" + caseId + " newStep=" + (step + 1));
-      return s;
-    });
+      s.put("updatedAt", now);
+      c.state = s;
+      c.touchedAt = now;
+      // The state holds the last entry, so it costs about one entry more
+      long stateDelta = CASE_OVERHEAD_BYTES + size - c.stateBytes;
+      c.stateBytes += stateDelta;
+      c.bytes += stateDelta;
+      bytes += stateDelta;
+      c.log.addLast(new Logged(entry, size));
+      c.bytes += size;
+      bytes += size;
+      logEntries++;
+      trim(caseId, c, evicted);
+      enforceLimits(caseId, evicted);
+    }
+    notify(evicted);
+    LOG.info("Memory: appended entry for caseId=" + caseId + " newStep=" + step);
     return Future.succeededFuture();
   }
+
+  /**
+   * Copies of the case's retained log entries, oldest first. Reading
+   * counts as use of the case for eviction.
+   */
+  public List<JsonObject> log(String caseId) {
+    synchronized (cases) {
+      CaseEntry c = cases.get(caseId);
+      if (c == null) {
+        return List.of();
+      }
+      c.touchedAt = clock.millis();
+      return c.log.stream().map(l -> l.entry().copy()).toList();
+    }
+  }
+
+  /**
+   * Evict every case idle for longer than {@code idleTtlMs} now, rather
+   * than on the next access.
+   *
+   * @return the number of cases evicted
+   */
+  public int evictIdle() {
+    List<Eviction> evicted = new ArrayList<>();
+    synchronized (cases) {
+      expireIdle(clock.millis(), evicted);
+    }
+    notify(evicted);
+    return evicted.size();
+  }
+
+  /**
+   * Occupancy — {@code cases}, {@code logEntries}, {@code bytes}
+   * (approximate) — and removals: {@code evictedCapacity},
+   * {@code evictedBytes}, {@code evictedIdle} and {@code trimmedEntries}.
+   */
+  @Override
+  public JsonObject stats() {
+    JsonObject stats = new JsonObject();
+    synchronized (cases) {
+      stats.put("cases", cases.size())
+          .put("logEntries", logEntries)
+          .put("bytes", bytes);
+    }
+    return stats
+        .put("evictedCapacity", evictedCapacity.get())
+        .put("evictedBytes", evictedBytes.get())
+        .put("evictedIdle", evictedIdle.get())
+        .put("trimmedEntries", trimmedEntries.get());
+  }
+
+  // ── Eviction (callers hold the lock on cases) ─────────────────────
+
+  private void expireIdle(long now, List<Eviction> evicted) {
+    if (bounds.idleTtlMs() == 0) {
+      return;
+    }
+    Iterator<Map.Entry<String, CaseEntry>> it = cases.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, CaseEntry> eldest = it.next();
+      if (now - eldest.getValue().touchedAt < bounds.idleTtlMs()) {
+        break; // access order: everything after is more recent
+      }
+      it.remove();
+      evicted.add(removed(eldest.getKey(), eldest.getValue(), Cause.IDLE));
+      evictedIdle.incrementAndGet();
+    }
+  }
+
+  private void trim(String caseId, CaseEntry c, List<Eviction> evicted) {
+    if (bounds.maxLogEntries() == 0 || c.log.size() <= bounds.maxLogEntries()) {
+      return;
+    }
+    List<JsonObject> dropped = new ArrayList<>();
+    while (c.log.size() > bounds.maxLogEntries()) {
+      Logged oldest = c.log.removeFirst();
+      c.bytes -= oldest.bytes();
+      bytes -= oldest.bytes();
+      logEntries--;
+      dropped.add(oldest.entry());
+    }
+    trimmedEntries.addAndGet(dropped.size());
+    evicted.add(new Eviction(caseId, null, dropped, Cause.TRIMMED));
+  }
+
+  /** Evict least recently used cases, never {@code current}, until within bounds. */
+  private void enforceLimits(String current, List<Eviction> evicted) {
+    Iterator<Map.Entry<String, CaseEntry>> it = cases.entrySet().iterator();
+    while (it.hasNext()) {
+      boolean overCases = bounds.maxCases() > 0 && cases.size() > bounds.maxCases();
+      boolean overBytes = bounds.maxBytes() > 0 && bytes > bounds.maxBytes();
+      if (!overCases && !overBytes) {
+        return;
+      }
+      Map.Entry<String, CaseEntry> eldest = it.next();
+      if (eldest.getKey().equals(current)) {
+        continue;
+      }
+      it.remove();
+      evicted.add(removed(eldest.getKey(), eldest.getValue(),
+          overCases ? Cause.CAPACITY : Cause.BYTES));
+      (overCases ? evictedCapacity : evictedBytes).incrementAndGet();
+    }
+  }
+
+  private Eviction removed(String caseId, CaseEntry c, Cause cause) {
+    bytes -= c.bytes;
+    logEntries -= c.log.size();
+    LOG.fine(() -> "Memory: evicted caseId=" + caseId + " cause=" + cause);
+    return new Eviction(caseId, c.state,
+        c.log.stream().map(Logged::entry).toList(), cause);
+  }
+
+  private void notify(List<Eviction> evicted) {
+    for (Eviction eviction : evicted) {
+      try {
+        onEvict.accept(eviction);
+      } catch (RuntimeException e) {
+        LOG.warning("Memory: eviction listener failed for caseId=" + eviction.caseId()
+            + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private record Logged(JsonObject entry, int bytes) {}
+
+  /** One case: state, retained log and its approximate size. */
+  private static final class CaseEntry {
+    JsonObject state;
+    final ArrayDeque<Logged> log = new ArrayDeque<>();
+    long touchedAt;
+    long stateBytes = CASE_OVERHEAD_BYTES;
+    /** State cost plus every retained log entry. */
+    long bytes = CASE_OVERHEAD_BYTES;
+
+    CaseEntry(JsonObject state, long now) {
+      this.state = state;
+      this.touchedAt = now;
+    }
+  }
 }
@@ -0,0 +1,33 @@
+package dev.mars.agent.memory;
+
+/**
+ * Limits on what an {@link InMemoryMemoryStore} keeps, so its footprint
+ * stays flat over weeks of uptime. Every limit is off at {@code 0}.
+ *
+ * @param maxCases      cases held at once; the least recently used case
+ *                      is evicted beyond it
+ * @param maxLogEntries log entries kept per case; the oldest are dropped
+ *                      beyond it (the step count is unaffected)
+ * @param idleTtlMs     a case not loaded or appended to for this long is
+ *                      evicted
+ * @param maxBytes      approximate budget for all cases, measured as the
+ *                      JSON-encoded size of their state and log; least
+ *                      recently used cases are evicted beyond it
+ */
+public record MemoryBounds(int maxCases, int maxLogEntries, long idleTtlMs, long maxBytes) {
+
+  /** Keep everything forever. */
+  public static final MemoryBounds UNBOUNDED = new MemoryBounds(0, 0, 0, 0);
+
+  public MemoryBounds {
+    if (maxCases < 0) throw new IllegalArgumentException("maxCases must be >= 0");
+    if (maxLogEntries < 0) throw new IllegalArgumentException("maxLogEntries must be >= 0");
+    if (idleTtlMs < 0) throw new IllegalArgumentException("idleTtlMs must be >= 0");
+    if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0");
+  }
+
+  /** {@code true} if no limit is set. */
+  public boolean unbounded() {
+    return maxCases == 0 && maxLogEntries == 0 && idleTtlMs == 0 && maxBytes == 0;
+  }
+}
@@ -3,6 +3,8 @@ package dev.mars.agent.memory;
 import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
 
+import java.util.List;
+
 /**
  * Persistent (or in-memory) store for agent case state and step logs.
  *
@@ -18,7 +20,13 @@ import io.vertx.core.json.JsonObject;
  * <p>Implementations must be safe to call from the Vert.x event loop
  * (i.e. return {@link Future}s and never block).
  *
+ * <p>Durable implementations should override {@link #appendAll} to write a
+ * batch in a single commit; {@link WriteBehindMemoryStore} uses it to
+ * group-commit the steps of a run instead of paying one round trip per
+ * step.
+ *
  * @see InMemoryMemoryStore
+ * @see WriteBehindMemoryStore
  */
 public interface MemoryStore {
 
@@ -40,4 +48,44 @@ public interface MemoryStore {
    * @return a Future that completes when the write is durable
    */
   Future<Void> append(String caseId, JsonObject entry);
+
+  /**
+   * Append several step entries for one case, in order, as one unit of
+   * work. The default appends them one after another.
+   *
+   * @param caseId  the domain-level case identifier
+   * @param entries the step entries, oldest first
+   * @return a Future that completes when every entry is durable
+   */
+  default Future<Void> appendAll(String caseId, List<JsonObject> entries) {
+    Future<Void> chain = Future.succeededFuture();
+    for (JsonObject entry : entries) {
+      chain = chain.compose(v -> append(caseId, entry));
+    }
+    return chain;
+  }
+
+  /**
+   * Wait until every entry appended so far for {@code caseId} is durable.
+   *
+   * <p>Stores whose {@link #append} future already means "durable"
+   * return immediately (the default); write-behind stores complete once
+   * their queue for the case has drained.
+   *
+   * @param caseId the domain-level case identifier
+   * @return a Future that completes when the case's writes are durable
+   */
+  default Future<Void> flush(String caseId) {
+    return Future.succeededFuture();
+  }
+
+  /**
+   * Counters for monitoring, served on {@code GET /stats}. Wrapping
+   * stores nest their delegate's under {@code "delegate"}.
+   *
+   * @return a new object; the default reports nothing
+   */
+  default JsonObject stats() {
+    return new JsonObject();
+  }
 }
@@ -0,0 +1,1132 @@
+package dev.mars.agent.memory;
+
+import dev.mars.agent.memory.SegmentedLogSettings.FsyncPolicy;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable {@link MemoryStore} that writes step entries to an append-only,
+ * segmented log on local disk.
+ *
+ * <h2>On disk</h2>
+ * The log is a sequence of segment files named by number
+ * ({@code 00000000000000000000.seg}, ...). Each record is
+ * <pre>
+ * [int length][int CRC32C of payload][payload: UTF-8 JSON
+ *   {"case": id, "ts": millis, "n": step, "createdAt": millis, "entry": {...}}]
+ * </pre>
+ * Every record carries its step number and the case's creation time, so
+ * a case still loads correctly after compaction has dropped its earlier
+ * records.
+ * When the active segment reaches {@code segmentBytes} it is forced and a
+ * new one is started, so no file grows without bound and old segments
+ * are never rewritten.
+ *
+ * <h2>Writes</h2>
+ * Appends are queued and written by one group commit at a time on a
+ * worker thread: every record that arrived while the previous commit was
+ * running goes out in a single gather write and, with
+ * {@link FsyncPolicy#ALWAYS}, a single {@code fsync}. An append's future
+ * completes once its commit is written (and forced, per the policy), so
+ * many concurrent cases share the cost of one device flush.
+ *
+ * <h2>Reads</h2>
+ * An in-memory index maps every case to the offsets of its records, and
+ * its step count and timestamps, so {@link #load} reads at most one
+ * record — the last entry — with a positional read off the event loop.
+ *
+ * <h2>Snapshots and compaction</h2>
+ * Every {@code snapshotIntervalMs}, and on {@link #close}, a
+ * {@link #checkpoint} runs. It first compacts: a case is <em>closed</em>
+ * once its latest step ended the run (its command has no
+ * {@code "stop": false}), and every record of a closed case but the last
+ * is superseded. A full segment whose records are mostly superseded is
+ * rewritten with only the live ones, or deleted if none are left. The
+ * active segment is never touched. It then writes {@code snapshot.dat}:
+ * the log position it covers, the size of every segment up to it, and
+ * each case's index entry (step count, timestamps, closed flag, record
+ * offsets), framed and checksummed like log records.
+ *
+ * <h2>Recovery</h2>
+ * {@link #open} loads the snapshot, checks that the segments on disk
+ * still match it, and replays only the records written after it, so
+ * restart time follows the number of cases and the tail length, not the
+ * size of the history. A missing, corrupt or stale snapshot (compaction
+ * deletes it before rewriting segments) falls back to a full scan. A
+ * scan checks each record's length and CRC. A torn or corrupt record at
+ * the tail of the newest segment (a crash mid-write) is truncated away;
+ * one inside an older segment ends that segment's scan with a warning.
+ *
+ * @see SegmentedLogSettings
+ */
+public class SegmentedLogMemoryStore implements MemoryStore {
+
+  private static final Logger LOG = Logger.getLogger(SegmentedLogMemoryStore.class.getName());
+
+  /** Record header: payload length and CRC. */
+  static final int HEADER_BYTES = 8;
+  /** Largest payload accepted, guarding recovery against garbage lengths. */
+  static final int MAX_RECORD_BYTES = 16 << 20;
+  private static final String SUFFIX = ".seg";
+  private static final String SNAPSHOT = "snapshot.dat";
+  private static final int SNAPSHOT_VERSION = 1;
+  /** Full segments with at least this share of superseded records are compacted. */
+  static final double COMPACT_DEAD_RATIO = 0.5;
+  /** Low bits of an offset hold the position within its segment. */
+  private static final int POSITION_BITS = 40;
+  private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+
+  private final Vertx vertx;
+  private final SegmentedLogSettings settings;
+  private final Map<String, CaseIndex> index = new ConcurrentHashMap<>();
+  private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+  /** Reads hold it shared; compaction holds it to swap segment files. */
+  private final ReadWriteLock swap = new ReentrantReadWriteLock();
+
+  private final Object lock = new Object();
+  private List<Pending> queue = new ArrayList<>();
+  /** Index captures waiting for the committer to be between batches. */
+  private List<Promise<Image>> captures = new ArrayList<>();
+  private boolean writing;
+  private boolean closed;
+  private boolean segmentsClosing;
+  private Promise<Void> closing;
+  private Future<JsonObject> checkpoint;
+
+  /** Written by the single committer only. */
+  private volatile Segment active;
+  private volatile boolean dirty;
+  private long fsyncTimer = -1;
+  private long snapshotTimer = -1;
+  /** Commits and compactions so far, and how many the last snapshot covers. */
+  private final AtomicLong changes = new AtomicLong();
+  private volatile long snapshotChanges = -1;
+
+  private final AtomicLong records = new AtomicLong();
+  private final AtomicLong commits = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong fsyncs = new AtomicLong();
+  private final AtomicLong truncatedBytes = new AtomicLong();
+  private final AtomicLong replayedRecords = new AtomicLong();
+  private final AtomicLong snapshots = new AtomicLong();
+  private final AtomicLong compactedRecords = new AtomicLong();
+  private final AtomicLong reclaimedBytes = new AtomicLong();
+
+  private SegmentedLogMemoryStore(Vertx vertx, SegmentedLogSettings settings) {
+    this.vertx = vertx;
+    this.settings = settings;
+  }
+
+  /**
+   * Open the log under {@code settings.dir()}, creating it if needed, and
+   * rebuild the index from the latest snapshot and the records after it.
+   *
+   * @return the store, once recovered; fails if the directory cannot be
+   *         read or written
+   */
+  public static Future<SegmentedLogMemoryStore> open(Vertx vertx, SegmentedLogSettings settings) {
+    SegmentedLogMemoryStore store = new SegmentedLogMemoryStore(vertx, settings);
+    return vertx.executeBlocking(() -> {
+      store.recover();
+      return store;
+    }).onSuccess(s -> {
+      if (settings.fsync() == FsyncPolicy.INTERVAL) {
+        s.fsyncTimer = vertx.setPeriodic(settings.fsyncIntervalMs(), t -> s.fsyncIfDirty());
+      }
+      s.snapshotTimer = vertx.setPeriodic(settings.snapshotIntervalMs(), t -> s.checkpoint()
+          .onFailure(err -> LOG.warning("Memory log: checkpoint failed: " + err.getMessage())));
+    });
+  }
+
+  @Override
+  public Future<JsonObject> load(String caseId) {
+    // Only appends add a case to the index; loading an unknown case must not
+    CaseIndex ci = index.get(caseId);
+    if (ci == null || ci.state().steps() == 0) {
+      return Future.succeededFuture(new JsonObject()
+          .put("caseId", caseId)
+          .put("createdAt", ci != null ? ci.state().createdAt() : System.currentTimeMillis())
+          .put("step", 0));
+    }
+    return vertx.executeBlocking(() -> {
+      swap.readLock().lock();
+      try {
+        // Re-read under the lock: compaction may have moved the record
+        CaseIndex.State s = ci.state();
+        return new JsonObject()
+            .put("caseId", caseId)
+            .put("createdAt", s.createdAt())
+            .put("step", s.steps())
+            .put("last", read(s.lastOffset()).getJsonObject("entry"))
+            .put("updatedAt", s.updatedAt());
+      } finally {
+        swap.readLock().unlock();
+      }
+    }, false);
+  }
+
+  @Override
+  public Future<Void> append(String caseId, JsonObject entry) {
+    return appendAll(caseId, List.of(entry));
+  }
+
+  /** The entries join the next group commit together, in order. */
+  @Override
+  public Future<Void> appendAll(String caseId, List<JsonObject> entries) {
+    if (entries.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    Pending pending = new Pending(caseId, List.copyOf(entries), Promise.promise());
+    boolean start;
+    synchronized (lock) {
+      if (closed) {
+        return Future.failedFuture(new IllegalStateException("memory log is closed"));
+      }
+      queue.add(pending);
+      start = !writing;
+      writing = true;
+    }
+    if (start) {
+      commitNext();
+    }
+    return pending.promise.future();
+  }
+
+  /**
+   * Every retained entry of a case, oldest first, read from disk. A
+   * compacted case keeps only its last entry.
+   *
+   * @return the entries; empty for an unknown case
+   */
+  public Future<List<JsonObject>> entries(String caseId) {
+    CaseIndex ci = index.get(caseId);
+    if (ci == null) {
+      return Future.succeededFuture(List.of());
+    }
+    return vertx.executeBlocking(() -> {
+      swap.readLock().lock();
+      try {
+        long[] offsets = ci.offsets();
+        List<JsonObject> out = new ArrayList<>(offsets.length);
+        for (long offset : offsets) {
+          out.add(read(offset).getJsonObject("entry"));
+        }
+        return out;
+      } finally {
+        swap.readLock().unlock();
+      }
+    }, false);
+  }
+
+  /**
+   * Compact closed cases, then snapshot the index so the next
+   * {@link #open} replays only what follows. Runs on its own every
+   * {@code snapshotIntervalMs}; a call while one is running joins it.
+   *
+   * @return {@code compactedRecords} and {@code reclaimedBytes} of this
+   *         run and whether a snapshot was written ({@code snapshot})
+   */
+  public Future<JsonObject> checkpoint() {
+    synchronized (lock) {
+      if (closed) {
+        return Future.failedFuture(new IllegalStateException("memory log is closed"));
+      }
+      if (checkpoint == null) {
+        checkpoint = runCheckpoint();
+      }
+      return checkpoint;
+    }
+  }
+
+  /**
+   * Finish pending commits and any running checkpoint, write a final
+   * snapshot, then force and close every segment. Appends made after this
+   * fail.
+   */
+  public Future<Void> close() {
+    boolean idle;
+    synchronized (lock) {
+      if (closing != null) {
+        return closing.future();
+      }
+      closed = true;
+      closing = Promise.promise();
+      idle = !writing;
+      segmentsClosing = idle;
+    }
+    if (fsyncTimer >= 0) {
+      vertx.cancelTimer(fsyncTimer);
+    }
+    if (snapshotTimer >= 0) {
+      vertx.cancelTimer(snapshotTimer);
+    }
+    if (idle) {
+      closeSegments();
+    }
+    return closing.future();
+  }
+
+  /**
+   * Counters: {@code cases}, {@code segments}, {@code records}
+   * (retained), {@code commits}, {@code bytesWritten}, {@code fsyncs},
+   * {@code truncatedBytes} (torn tail removed at recovery),
+   * {@code replayedRecords} (scanned at recovery), {@code snapshots},
+   * {@code compactedRecords} and {@code reclaimedBytes}.
+   */
+  @Override
+  public JsonObject stats() {
+    return new JsonObject()
+        .put("cases", index.size())
+        .put("segments", segments.size())
+        .put("records", records.get())
+        .put("commits", commits.get())
+        .put("bytesWritten", bytesWritten.get())
+        .put("fsyncs", fsyncs.get())
+        .put("truncatedBytes", truncatedBytes.get())
+        .put("replayedRecords", replayedRecords.get())
+        .put("snapshots", snapshots.get())
+        .put("compactedRecords", compactedRecords.get())
+        .put("reclaimedBytes", reclaimedBytes.get());
+  }
+
+  // ── Group commit ──────────────────────────────────────────────────
+
+  private void commitNext() {
+    List<Pending> batch;
+    List<Promise<Image>> waiting;
+    synchronized (lock) {
+      waiting = captures;
+      if (waiting.isEmpty()) {
+        if (queue.isEmpty()) {
+          writing = false;
+          if (closed && !segmentsClosing) {
+            segmentsClosing = true;
+            vertx.runOnContext(v -> closeSegments());
+          }
+          return;
+        }
+        batch = queue;
+        queue = new ArrayList<>();
+      } else {
+        batch = null;
+        captures = new ArrayList<>();
+      }
+    }
+    if (batch == null) {
+      // Between batches: every commit so far is in the index, none is
+      // running. Copying the index is proportional to the number of cases,
+      // so it runs on a worker; the next commit waits for it.
+      vertx.executeBlocking(this::image, false).onComplete(ar -> {
+        waiting.forEach(p -> p.handle(ar));
+        commitNext();
+      });
+      return;
+    }
+    vertx.executeBlocking(() -> commit(batch), false).onComplete(ar -> {
+      for (int i = 0; i < batch.size(); i++) {
+        Pending p = batch.get(i);
+        Throwable rejected = ar.succeeded() ? ar.result().get(i) : ar.cause();
+        if (rejected == null) {
+          p.promise.complete();
+        } else {
+          p.promise.fail(rejected);
+        }
+      }
+      commitNext();
+    });
+  }
+
+  /**
+   * Write one batch. Runs on a worker, never concurrently with itself.
+   *
+   * @return per pending append, {@code null} or why it was rejected
+   */
+  private List<Throwable> commit(List<Pending> batch) throws IOException {
+    long now = System.currentTimeMillis();
+    List<Throwable> rejected = new ArrayList<>(batch.size());
+    List<ByteBuffer> run = new ArrayList<>();
+    List<Placed> placed = new ArrayList<>();
+    // Step count per case so far, including earlier appends of this batch
+    Map<String, Integer> steps = new HashMap<>();
+    Segment start = active;
+    long startSize = start.size;
+    try {
+      long position = active.size;
+      for (Pending p : batch) {
+        CaseIndex ci = index.get(p.caseId);
+        long createdAt = ci != null ? ci.state().createdAt() : now;
+        int base = steps.computeIfAbsent(p.caseId, k -> ci != null ? ci.state().steps() : 0);
+        List<ByteBuffer> encoded;
+        try {
+          encoded = encode(p, now, createdAt, base);
+        } catch (IllegalArgumentException e) {
+          rejected.add(e);
+          continue;
+        }
+        rejected.add(null);
+        steps.put(p.caseId, base + encoded.size());
+        for (int i = 0; i < encoded.size(); i++) {
+          ByteBuffer record = encoded.get(i);
+          if (position > 0 && position + record.remaining() > settings.segmentBytes()) {
+            write(run);
+            roll();
+            position = 0;
+          }
+          placed.add(new Placed(p.caseId, offset(active.id, position), now, createdAt,
+              base + i + 1, endsRun(p.entries.get(i))));
+          position += record.remaining();
+          run.add(record);
+        }
+      }
+      write(run);
+      if (settings.fsync() == FsyncPolicy.ALWAYS) {
+        force(active);
+      } else {
+        dirty = true;
+      }
+    } catch (IOException e) {
+      try {
+        rollBack(start, startSize);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+    for (Placed r : placed) {
+      index.computeIfAbsent(r.caseId, k -> new CaseIndex(r.createdAt))
+          .add(r.offset, r.ts, r.step, r.endsRun);
+    }
+    records.addAndGet(placed.size());
+    commits.incrementAndGet();
+    changes.incrementAndGet();
+    return rejected;
+  }
+
+  private static List<ByteBuffer> encode(Pending p, long now, long createdAt, int base) {
+    List<ByteBuffer> out = new ArrayList<>(p.entries.size());
+    for (int i = 0; i < p.entries.size(); i++) {
+      JsonObject payload = new JsonObject()
+          .put("case", p.caseId)
+          .put("ts", now)
+          .put("n", base + i + 1)
+          .put("createdAt", createdAt)
+          .put("entry", p.entries.get(i));
+      out.add(frame(payload.encode().getBytes(StandardCharsets.UTF_8)));
+    }
+    return out;
+  }
+
+  /** Whether a step entry ended its run, which closes the case. */
+  static boolean endsRun(JsonObject entry) {
+    return !(entry.getValue("command") instanceof JsonObject command)
+        || !Boolean.FALSE.equals(command.getValue("stop"));
+  }
+
+  static ByteBuffer frame(byte[] payload) {
+    if (payload.length > MAX_RECORD_BYTES) {
+      throw new IllegalArgumentException("memory log entry of " + payload.length
+          + " bytes exceeds the " + MAX_RECORD_BYTES + "-byte record limit");
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(payload);
+    return ByteBuffer.allocate(HEADER_BYTES + payload.length)
+        .putInt(payload.length)
+        .putInt((int) crc.getValue())
+        .put(payload)
+        .flip();
+  }
+
+  private void write(List<ByteBuffer> run) throws IOException {
+    if (run.isEmpty()) {
+      return;
+    }
+    ByteBuffer[] buffers = run.toArray(ByteBuffer[]::new);
+    long total = 0;
+    for (ByteBuffer b : buffers) {
+      total += b.remaining();
+    }
+    long done = 0;
+    while (done < total) {
+      done += active.channel.write(buffers);
+    }
+    active.size += total;
+    bytesWritten.addAndGet(total);
+    run.clear();
+  }
+
+  /**
+   * Undo a failed commit: drop the segments it rolled to and cut the one
+   * it started in back to {@code size}, so none of the batch's records
+   * (which are not in the index) is replayed and the next commit starts
+   * on a record boundary.
+   */
+  private void rollBack(Segment start, long size) throws IOException {
+    for (Segment rolled : List.copyOf(segments.tailMap(start.id, false).values())) {
+      rolled.channel.close();
+      Files.deleteIfExists(rolled.path);
+      segments.remove(rolled.id);
+    }
+    active = start;
+    start.channel.truncate(size);
+    start.channel.position(size);
+    start.size = size;
+    syncDir();
+  }
+
+  private void roll() throws IOException {
+    force(active);
+    Segment next = Segment.open(settings.dir(), active.id + 1);
+    segments.put(next.id, next);
+    active = next;
+    LOG.info("Memory log: rolled to segment " + next.path.getFileName());
+  }
+
+  private void force(Segment segment) throws IOException {
+    segment.channel.force(false);
+    fsyncs.incrementAndGet();
+  }
+
+  private void fsyncIfDirty() {
+    if (!dirty) {
+      return;
+    }
+    dirty = false;
+    Segment segment = active;
+    vertx.executeBlocking(() -> {
+      force(segment);
+      return null;
+    }).onFailure(err -> LOG.warning("Memory log: fsync failed: " + err.getMessage()));
+  }
+
+  private void closeSegments() {
+    Future<JsonObject> running;
+    synchronized (lock) {
+      running = checkpoint;
+    }
+    Future<Object> idle = running == null
+        ? Future.succeededFuture()
+        : running.transform(ar -> Future.succeededFuture());
+    idle.compose(v -> vertx.executeBlocking(() -> {
+      if (changes.get() != snapshotChanges) {
+        try {
+          writeSnapshot(image());
+        } catch (IOException e) {
+          LOG.warning("Memory log: final snapshot failed, the next open replays the log: "
+              + e.getMessage());
+        }
+      }
+      for (Segment segment : segments.values()) {
+        if (segment == active && settings.fsync() != FsyncPolicy.NEVER) {
+          force(segment);
+        }
+        segment.channel.close();
+      }
+      return null;
+    })).onComplete(ar -> {
+      if (ar.succeeded()) {
+        closing.tryComplete();
+      } else {
+        closing.tryFail(ar.cause());
+      }
+    });
+  }
+
+  // ── Compaction and snapshots ──────────────────────────────────────
+
+  private Future<JsonObject> runCheckpoint() {
+    JsonObject result = new JsonObject();
+    return vertx.executeBlocking(() -> compact(result), false)
+        .compose(v -> capture())
+        .compose(image -> vertx.executeBlocking(() -> {
+          boolean write = image.changes() != snapshotChanges;
+          if (write) {
+            writeSnapshot(image);
+          }
+          return result.put("snapshot", write);
+        }, false))
+        .onComplete(ar -> {
+          synchronized (lock) {
+            checkpoint = null;
+          }
+        });
+  }
+
+  /**
+   * Rewrite or delete full segments that are mostly superseded records of
+   * closed cases. Runs on a worker, one checkpoint at a time.
+   */
+  private Void compact(JsonObject result) throws IOException {
+    long activeId = active.id;
+    Map<Long, List<Long>> live = new HashMap<>();
+    Map<Long, Integer> dead = new HashMap<>();
+    // Kept last records of closed cases, restamped in case replay needs them alone
+    Map<Long, CaseIndex.State> restamp = new HashMap<>();
+    for (CaseIndex ci : index.values()) {
+      CaseIndex.State s;
+      long[] offsets;
+      synchronized (ci) {
+        s = ci.state();
+        offsets = ci.offsets();
+      }
+      for (int i = 0; i < offsets.length; i++) {
+        long segment = offsets[i] >>> POSITION_BITS;
+        if (segment >= activeId) {
+          continue;
+        }
+        if (s.closed() && i < offsets.length - 1) {
+          dead.merge(segment, 1, Integer::sum);
+        } else {
+          live.computeIfAbsent(segment, k -> new ArrayList<>()).add(offsets[i]);
+          if (s.closed()) {
+            restamp.put(offsets[i], s);
+          }
+        }
+      }
+    }
+    Map<Long, Long> rewritten = new TreeMap<>();
+    Map<Long, Long> moved = new HashMap<>();
+    for (Map.Entry<Long, Integer> e : new TreeMap<>(dead).entrySet()) {
+      long id = e.getKey();
+      List<Long> kept = live.getOrDefault(id, List.of());
+      if (e.getValue() < (e.getValue() + kept.size()) * COMPACT_DEAD_RATIO) {
+        continue;
+      }
+      rewritten.put(id, kept.isEmpty() ? 0 : rewrite(segments.get(id), kept, restamp, moved));
+    }
+    if (rewritten.isEmpty()) {
+      return null;
+    }
+    // A snapshot taken before the swap would point into the old files
+    Files.deleteIfExists(settings.dir().resolve(SNAPSHOT));
+    syncDir();
+    long reclaimed = 0;
+    int dropped = 0;
+    Set<Long> swapped = new HashSet<>();
+    swap.writeLock().lock();
+    try {
+      for (Map.Entry<Long, Long> e : rewritten.entrySet()) {
+        Segment old = segments.get(e.getKey());
+        if (e.getValue() == 0) {
+          Files.delete(old.path);
+          segments.remove(old.id);
+        } else {
+          Files.move(compacting(old), old.path, StandardCopyOption.ATOMIC_MOVE);
+          Segment fresh = Segment.open(settings.dir(), old.id);
+          fresh.size = e.getValue();
+          segments.put(fresh.id, fresh);
+        }
+        old.channel.close();
+        swapped.add(old.id);
+        reclaimed += old.size - e.getValue();
+      }
+    } finally {
+      for (CaseIndex ci : index.values()) {
+        dropped += ci.compact(swapped, moved);
+      }
+      swap.writeLock().unlock();
+    }
+    syncDir();
+    records.addAndGet(-dropped);
+    compactedRecords.addAndGet(dropped);
+    reclaimedBytes.addAndGet(reclaimed);
+    changes.incrementAndGet();
+    result.put("compactedRecords", dropped).put("reclaimedBytes", reclaimed);
+    LOG.info("Memory log: compacted " + swapped.size() + " segment(s), dropped " + dropped
+        + " superseded record(s), reclaimed " + reclaimed + " bytes");
+    return null;
+  }
+
+  /**
+   * Copy the {@code kept} records of a segment into its compaction file.
+   *
+   * @return the size of the compacted segment
+   */
+  private long rewrite(Segment segment, List<Long> kept, Map<Long, CaseIndex.State> restamp,
+                       Map<Long, Long> moved) throws IOException {
+    Collections.sort(kept);
+    long position = 0;
+    try (FileChannel out = FileChannel.open(compacting(segment), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      for (long offset : kept) {
+        JsonObject record = read(offset);
+        CaseIndex.State s = restamp.get(offset);
+        if (s != null) {
+          record.put("n", s.steps()).put("createdAt", s.createdAt());
+        }
+        ByteBuffer buffer = frame(record.encode().getBytes(StandardCharsets.UTF_8));
+        moved.put(offset, offset(segment.id, position));
+        position += buffer.remaining();
+        while (buffer.hasRemaining()) {
+          out.write(buffer);
+        }
+      }
+      out.force(true);
+    }
+    return position;
+  }
+
+  private static Path compacting(Segment segment) {
+    return segment.path.resolveSibling(segment.path.getFileName() + ".compact");
+  }
+
+  /**
+   * Capture the index once the committer is between batches. The copy is
+   * made on a worker while commits are held back, never on the event loop.
+   */
+  private Future<Image> capture() {
+    Promise<Image> promise = Promise.promise();
+    boolean start;
+    synchronized (lock) {
+      captures.add(promise);
+      start = !writing;
+      writing = true;
+    }
+    if (start) {
+      commitNext();
+    }
+    return promise.future();
+  }
+
+  /** Copy the index; runs on a worker while no commit is running. */
+  private Image image() {
+    Segment head = active;
+    Map<Long, Long> sizes = new TreeMap<>();
+    for (Segment segment : segments.headMap(head.id, true).values()) {
+      sizes.put(segment.id, segment.size);
+    }
+    List<CaseImage> cases = new ArrayList<>(index.size());
+    index.forEach((caseId, ci) -> {
+      CaseImage image = ci.image(caseId);
+      if (image != null) {
+        cases.add(image);
+      }
+    });
+    return new Image(head.id, head.size, changes.get(), sizes, cases);
+  }
+
+  /** Write {@code snapshot.dat} atomically; runs on a worker. */
+  private void writeSnapshot(Image image) throws IOException {
+    Path target = settings.dir().resolve(SNAPSHOT);
+    Path tmp = settings.dir().resolve(SNAPSHOT + ".tmp");
+    JsonArray sizes = new JsonArray();
+    image.sizes().forEach((id, size) -> sizes.add(new JsonArray().add(id).add(size)));
+    try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+         BufferedOutputStream out = new BufferedOutputStream(file, 1 << 16)) {
+      writeFrame(out, new JsonObject()
+          .put("version", SNAPSHOT_VERSION)
+          .put("segment", image.segment())
+          .put("position", image.position())
+          .put("segments", sizes));
+      for (CaseImage c : image.cases()) {
+        JsonArray offsets = new JsonArray();
+        for (long offset : c.offsets()) {
+          offsets.add(offset);
+        }
+        writeFrame(out, new JsonObject()
+            .put("case", c.caseId())
+            .put("createdAt", c.createdAt())
+            .put("updatedAt", c.updatedAt())
+            .put("steps", c.steps())
+            .put("closed", c.closed())
+            .put("offsets", offsets));
+      }
+      writeFrame(out, new JsonObject().put("end", image.cases().size()));
+      out.flush();
+      file.getFD().sync();
+    }
+    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+    syncDir();
+    snapshots.incrementAndGet();
+    snapshotChanges = image.changes();
+    LOG.fine(() -> "Memory log: snapshot at segment " + image.segment() + ":" + image.position()
+        + " cases=" + image.cases().size());
+  }
+
+  private static void writeFrame(BufferedOutputStream out, JsonObject json) throws IOException {
+    ByteBuffer frame = frame(json.encode().getBytes(StandardCharsets.UTF_8));
+    out.write(frame.array(), 0, frame.limit());
+  }
+
+  /**
+   * Read {@code snapshot.dat} and check it against the segment files.
+   *
+   * @param onDisk size of every segment file, by id
+   * @return the snapshot, or {@code null} if missing, unreadable or stale
+   */
+  private Image readSnapshot(Map<Long, Long> onDisk) {
+    Path path = settings.dir().resolve(SNAPSHOT);
+    if (!Files.exists(path)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+      JsonObject header = readFrame(in);
+      if (header.getInteger("version", 0) != SNAPSHOT_VERSION) {
+        throw new IOException("unsupported snapshot version " + header.getValue("version"));
+      }
+      long segment = header.getLong("segment");
+      long position = header.getLong("position");
+      Map<Long, Long> sizes = new TreeMap<>();
+      for (Object pair : header.getJsonArray("segments")) {
+        sizes.put(((JsonArray) pair).getLong(0), ((JsonArray) pair).getLong(1));
+      }
+      String stale = staleness(segment, position, sizes, onDisk);
+      if (stale != null) {
+        LOG.warning("Memory log: ignoring stale snapshot (" + stale + "); replaying the log");
+        return null;
+      }
+      List<CaseImage> cases = new ArrayList<>();
+      while (true) {
+        JsonObject c = readFrame(in);
+        if (c.containsKey("end")) {
+          if (c.getInteger("end") != cases.size()) {
+            throw new IOException("snapshot lists " + c.getInteger("end") + " cases, holds "
+                + cases.size());
+          }
+          return new Image(segment, position, 0, sizes, cases);
+        }
+        JsonArray list = c.getJsonArray("offsets");
+        long[] offsets = new long[list.size()];
+        for (int i = 0; i < offsets.length; i++) {
+          offsets[i] = list.getLong(i);
+        }
+        cases.add(new CaseImage(c.getString("case"), c.getLong("createdAt"),
+            c.getLong("updatedAt"), c.getInteger("steps"), c.getBoolean("closed"), offsets));
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warning("Memory log: ignoring unreadable snapshot (" + e.getMessage()
+          + "); replaying the log");
+      return null;
+    }
+  }
+
+  /** Why the snapshot no longer matches the segments, or {@code null}. */
+  private static String staleness(long segment, long position, Map<Long, Long> sizes,
+                                  Map<Long, Long> onDisk) {
+    for (Map.Entry<Long, Long> e : onDisk.entrySet()) {
+      if (e.getKey() <= segment && !sizes.containsKey(e.getKey())) {
+        return "segment " + e.getKey() + " is not covered";
+      }
+    }
+    for (Map.Entry<Long, Long> e : sizes.entrySet()) {
+      Long actual = onDisk.get(e.getKey());
+      if (actual == null) {
+        return "segment " + e.getKey() + " is missing";
+      }
+      if (e.getKey() == segment ? actual < position : !actual.equals(e.getValue())) {
+        return "segment " + e.getKey() + " is " + actual + " bytes, snapshot expects "
+            + (e.getKey() == segment ? "at least " + position : e.getValue());
+      }
+    }
+    return sizes.containsKey(segment) ? null : "segment " + segment + " is not covered";
+  }
+
+  private static JsonObject readFrame(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    int expected = in.readInt();
+    if (length <= 0 || length > MAX_RECORD_BYTES) {
+      throw new IOException("bad snapshot record length " + length);
+    }
+    byte[] payload = new byte[length];
+    in.readFully(payload);
+    if (crc(payload) != expected) {
+      throw new IOException("snapshot record failed its CRC check");
+    }
+    return new JsonObject(new String(payload, StandardCharsets.UTF_8));
+  }
+
+  private void syncDir() {
+    try (FileChannel dir = FileChannel.open(settings.dir(), StandardOpenOption.READ)) {
+      dir.force(true);
+    } catch (IOException e) {
+      // Not every platform can fsync a directory; the rename is still atomic
+    }
+  }
+
+  // ── Reads and recovery ────────────────────────────────────────────
+
+  static long offset(long segmentId, long position) {
+    return (segmentId << POSITION_BITS) | position;
+  }
+
+  /** Read and check the record at {@code offset}; runs on a worker. */
+  private JsonObject read(long offset) throws IOException {
+    Segment segment = segments.get(offset >>> POSITION_BITS);
+    if (segment == null) {
+      throw new IOException("memory log segment " + (offset >>> POSITION_BITS) + " is missing");
+    }
+    long position = offset & POSITION_MASK;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    readFully(segment.channel, header, position);
+    int length = header.getInt(0);
+    ByteBuffer payload = ByteBuffer.allocate(length);
+    readFully(segment.channel, payload, position + HEADER_BYTES);
+    if (crc(payload.array()) != header.getInt(4)) {
+      throw new IOException("memory log record at " + segment.path.getFileName() + ":"
+          + position + " failed its CRC check");
+    }
+    return new JsonObject(new String(payload.array(), StandardCharsets.UTF_8));
+  }
+
+  private void recover() throws IOException {
+    Files.createDirectories(settings.dir());
+    List<Long> ids;
+    try (Stream<Path> files = Files.list(settings.dir())) {
+      ids = files.map(p -> p.getFileName().toString())
+          .filter(n -> n.endsWith(SUFFIX))
+          .map(n -> Long.parseLong(n.substring(0, n.length() - SUFFIX.length())))
+          .sorted()
+          .toList();
+    }
+    Map<Long, Long> onDisk = new TreeMap<>();
+    for (long id : ids) {
+      Segment segment = Segment.open(settings.dir(), id);
+      segments.put(id, segment);
+      onDisk.put(id, segment.channel.size());
+    }
+    Image snapshot = readSnapshot(onDisk);
+    if (snapshot != null) {
+      for (CaseImage c : snapshot.cases()) {
+        index.put(c.caseId(), CaseIndex.restore(c));
+        records.addAndGet(c.offsets().length);
+      }
+    }
+    for (long id : ids) {
+      Segment segment = segments.get(id);
+      boolean newest = id == ids.get(ids.size() - 1);
+      if (snapshot == null || id > snapshot.segment()) {
+        scan(segment, 0, newest);
+      } else if (id == snapshot.segment()) {
+        scan(segment, snapshot.position(), newest);
+      } else {
+        segment.size = onDisk.get(id);
+      }
+    }
+    // A snapshot with nothing after it needs no rewrite
+    snapshotChanges = snapshot != null && replayedRecords.get() == 0 ? 0 : -1;
+    if (segments.isEmpty()) {
+      Segment first = Segment.open(settings.dir(), 0);
+      segments.put(first.id, first);
+    }
+    active = segments.lastEntry().getValue();
+    active.channel.position(active.size);
+    LOG.info("Memory log opened: dir=" + settings.dir() + " segments=" + segments.size()
+        + " cases=" + index.size() + " records=" + records.get()
+        + " replayed=" + replayedRecords.get()
+        + (snapshot != null ? " from snapshot" : " (full scan)")
+        + " fsync=" + settings.fsync());
+  }
+
+  /**
+   * Index every valid record from {@code position} on; cut a torn tail off
+   * the newest segment.
+   */
+  private void scan(Segment segment, long position, boolean newest) throws IOException {
+    long size = segment.channel.size();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    while (position + HEADER_BYTES <= size) {
+      header.clear();
+      readFully(segment.channel, header, position);
+      int length = header.getInt(0);
+      if (length <= 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > size) {
+        break;
+      }
+      byte[] payload = new byte[length];
+      readFully(segment.channel, ByteBuffer.wrap(payload), position + HEADER_BYTES);
+      if (crc(payload) != header.getInt(4)) {
+        break;
+      }
+      JsonObject record;
+      try {
+        record = new JsonObject(new String(payload, StandardCharsets.UTF_8));
+      } catch (DecodeException e) {
+        break;
+      }
+      long ts = record.getLong("ts", 0L);
+      index.computeIfAbsent(record.getString("case"),
+              k -> new CaseIndex(record.getLong("createdAt", ts)))
+          .add(offset(segment.id, position), ts, record.getInteger("n", 0),
+              endsRun(record.getJsonObject("entry", new JsonObject())));
+      records.incrementAndGet();
+      replayedRecords.incrementAndGet();
+      position += HEADER_BYTES + length;
+    }
+    if (position < size) {
+      if (newest) {
+        LOG.warning("Memory log: truncating " + (size - position) + " torn bytes from "
+            + segment.path.getFileName());
+        segment.channel.truncate(position);
+        segment.channel.force(true);
+        truncatedBytes.addAndGet(size - position);
+        size = position;
+      } else {
+        LOG.warning("Memory log: unreadable record in " + segment.path.getFileName()
+            + " at " + position + "; later records of that segment are skipped");
+      }
+    }
+    segment.size = size;
+  }
+
+  private static int crc(byte[] payload) {
+    CRC32C crc = new CRC32C();
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position + buffer.position());
+      if (n < 0) {
+        throw new EOFException("memory log ends inside a record");
+      }
+    }
+  }
+
+  // ── Internals ─────────────────────────────────────────────────────
+
+  private record Pending(String caseId, List<JsonObject> entries, Promise<Void> promise) {}
+
+  private record Placed(String caseId, long offset, long ts, long createdAt, int step,
+                        boolean endsRun) {}
+
+  /** A captured index: everything before {@code segment:position}. */
+  private record Image(long segment, long position, long changes, Map<Long, Long> sizes,
+                       List<CaseImage> cases) {}
+
+  private record CaseImage(String caseId, long createdAt, long updatedAt, int steps,
+                           boolean closed, long[] offsets) {}
+
+  private static final class Segment {
+    final long id;
+    final Path path;
+    final FileChannel channel;
+    /** Bytes of valid records; only the committer changes it. */
+    volatile long size;
+
+    private Segment(long id, Path path, FileChannel channel) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+    }
+
+    static Segment open(Path dir, long id) throws IOException {
+      Path path = dir.resolve(String.format("%020d%s", id, SUFFIX));
+      return new Segment(id, path, FileChannel.open(path,
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+  }
+
+  /**
+   * Where a case's retained records are, plus the state derived from them.
+   * {@code steps} counts every step, including compacted ones.
+   */
+  private static final class CaseIndex {
+    private final long createdAt;
+    private long updatedAt;
+    private int steps;
+    private boolean closed;
+    private long[] offsets = new long[4];
+    private int count;
+
+    record State(long createdAt, long updatedAt, int steps, boolean closed, long lastOffset) {}
+
+    CaseIndex(long createdAt) {
+      this.createdAt = createdAt;
+    }
+
+    static CaseIndex restore(CaseImage image) {
+      CaseIndex ci = new CaseIndex(image.createdAt());
+      ci.updatedAt = image.updatedAt();
+      ci.steps = image.steps();
+      ci.closed = image.closed();
+      ci.offsets = image.offsets().length == 0 ? new long[4] : image.offsets();
+      ci.count = image.offsets().length;
+      return ci;
+    }
+
+    /** @param step the record's step number, or {@code 0} if it has none */
+    synchronized void add(long offset, long ts, int step, boolean endsRun) {
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, count * 2);
+      }
+      offsets[count++] = offset;
+      updatedAt = ts;
+      steps = step > 0 ? step : steps + 1;
+      closed = endsRun;
+    }
+
+    synchronized State state() {
+      return new State(createdAt, updatedAt, steps, closed, count == 0 ? -1 : offsets[count - 1]);
+    }
+
+    synchronized long[] offsets() {
+      return Arrays.copyOf(offsets, count);
+    }
+
+    synchronized CaseImage image(String caseId) {
+      return steps == 0 ? null
+          : new CaseImage(caseId, createdAt, updatedAt, steps, closed, offsets());
+    }
+
+    /**
+     * Apply a compaction: offsets into the {@code swapped} segments move
+     * as {@code moved} says, or are dropped if it has none.
+     *
+     * @return how many were dropped
+     */
+    synchronized int compact(Set<Long> swapped, Map<Long, Long> moved) {
+      int kept = 0;
+      for (int i = 0; i < count; i++) {
+        long offset = offsets[i];
+        if (swapped.contains(offset >>> POSITION_BITS)) {
+          Long to = moved.get(offset);
+          if (to == null) {
+            continue;
+          }
+          offset = to;
+        }
+        offsets[kept++] = offset;
+      }
+      int dropped = count - kept;
+      count = kept;
+      return dropped;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package dev.mars.agent.memory;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for a {@link SegmentedLogMemoryStore}.
+ *
+ * @param dir                directory holding the segment files
+ * @param segmentBytes       size at which the active segment is closed and
+ *                           a new one started
+ * @param fsync              when written records are forced to the device
+ * @param fsyncIntervalMs    how often {@link FsyncPolicy#INTERVAL} forces the
+ *                           active segment
+ * @param snapshotIntervalMs how often closed cases are compacted and the
+ *                           index is snapshotted, bounding what a restart
+ *                           replays
+ */
+public record SegmentedLogSettings(Path dir, long segmentBytes, FsyncPolicy fsync,
+                                   long fsyncIntervalMs, long snapshotIntervalMs) {
+
+  /** When appended records reach the storage device. */
+  public enum FsyncPolicy {
+    /** Force every group commit before its appends complete: no loss on power failure. */
+    ALWAYS,
+    /** Force on a timer: a crash of the machine can lose the last interval. */
+    INTERVAL,
+    /** Leave it to the operating system: survives process crashes only. */
+    NEVER
+  }
+
+  public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+  public static final long DEFAULT_FSYNC_INTERVAL_MS = 1_000;
+  public static final long DEFAULT_SNAPSHOT_INTERVAL_MS = 60_000;
+
+  /** Largest segment a record offset can address. */
+  static final long MAX_SEGMENT_BYTES = 1L << 40;
+
+  public SegmentedLogSettings {
+    if (dir == null) throw new IllegalArgumentException("dir is required");
+    if (segmentBytes < 0 || segmentBytes > MAX_SEGMENT_BYTES) {
+      throw new IllegalArgumentException("segmentBytes must be between 0 and " + MAX_SEGMENT_BYTES);
+    }
+    if (fsyncIntervalMs < 0) throw new IllegalArgumentException("fsyncIntervalMs must be >= 0");
+    if (snapshotIntervalMs < 0) throw new IllegalArgumentException("snapshotIntervalMs must be >= 0");
+    if (segmentBytes == 0) segmentBytes = DEFAULT_SEGMENT_BYTES;
+    if (fsync == null) fsync = FsyncPolicy.ALWAYS;
+    if (fsyncIntervalMs == 0) fsyncIntervalMs = DEFAULT_FSYNC_INTERVAL_MS;
+    if (snapshotIntervalMs == 0) snapshotIntervalMs = DEFAULT_SNAPSHOT_INTERVAL_MS;
+  }
+
+  /**
+   * Defaults under {@code dir}: 64 MiB segments, fsync on every commit, a
+   * snapshot every minute.
+   */
+  public static SegmentedLogSettings of(Path dir) {
+    return new SegmentedLogSettings(dir, 0, FsyncPolicy.ALWAYS, 0, 0);
+  }
+
+  /** Copy with a different segment size. */
+  public SegmentedLogSettings withSegmentBytes(long segmentBytes) {
+    return new SegmentedLogSettings(dir, segmentBytes, fsync, fsyncIntervalMs, snapshotIntervalMs);
+  }
+
+  /** Copy with a different fsync policy and interval. */
+  public SegmentedLogSettings withFsync(FsyncPolicy fsync, long fsyncIntervalMs) {
+    return new SegmentedLogSettings(dir, segmentBytes, fsync, fsyncIntervalMs, snapshotIntervalMs);
+  }
+
+  /** Copy with a different snapshot interval. */
+  public SegmentedLogSettings withSnapshotInterval(long snapshotIntervalMs) {
+    return new SegmentedLogSettings(dir, segmentBytes, fsync, fsyncIntervalMs, snapshotIntervalMs);
+  }
+}
@@ -0,0 +1,54 @@
+package dev.mars.agent.processor;
+
+import dev.mars.mcp.tool.BlockingExecutor;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A {@link FailureHandler} implemented with synchronous, possibly
+ * blocking code (JDBC reference-data look-ups, SOAP ticketing, SMTP).
+ *
+ * <p>Implement {@link #handleBlocking} and register the handler through
+ * {@link #onExecutor(BlockingFailureHandler, BlockingExecutor)} so each
+ * call runs on a {@link BlockingExecutor} rather than the event loop.
+ * Like {@link dev.mars.mcp.tool.BlockingTool}, the default
+ * {@link #handle} refuses to block an event-loop thread.
+ */
+@FunctionalInterface
+public interface BlockingFailureHandler extends FailureHandler {
+
+  /**
+   * Handle the failure event synchronously.
+   *
+   * @param event the inbound failure event
+   * @return the result JSON (should include "type" and domain-specific fields)
+   * @throws Exception if handling fails
+   */
+  JsonObject handleBlocking(JsonObject event) throws Exception;
+
+  @Override
+  default Future<JsonObject> handle(JsonObject event) {
+    if (Context.isOnEventLoopThread()) {
+      return Future.failedFuture(new IllegalStateException(
+          "Blocking handler invoked on an event-loop thread;"
+              + " wrap it with BlockingFailureHandler.onExecutor(...)"));
+    }
+    try {
+      return Future.succeededFuture(handleBlocking(event));
+    } catch (Exception e) {
+      return Future.failedFuture(e);
+    }
+  }
+
+  /**
+   * Wrap a blocking handler so that every call runs on {@code executor}.
+   *
+   * @param handler  the blocking handler
+   * @param executor the executor to dispatch calls to
+   * @return an event-loop-safe handler
+   */
+  static FailureHandler onExecutor(BlockingFailureHandler handler, BlockingExecutor executor) {
+    return event -> executor.submit(() -> handler.handleBlocking(event));
+  }
+}
@@ -3,13 +3,16 @@ package dev.mars.agent.runner;
 import dev.mars.agent.llm.LlmClient;
 import dev.mars.agent.memory.MemoryStore;
 import dev.mars.mcp.tool.AgentContext;
+import dev.mars.mcp.tool.CancellationToken;
 import dev.mars.mcp.tool.Tool;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
@@ -56,6 +59,15 @@ import java.util.logging.Logger;
  * <ul>
  *   <li>{@code agent.max.steps} — maximum number of iterative steps before
  *       a safety stop is triggered (default {@code 5}).</li>
+ *   <li>{@code agent.budget.max.tokens} — maximum LLM tokens per run, summed
+ *       from the {@code usage} block of each command (default {@code 0},
+ *       unlimited).</li>
+ *   <li>{@code agent.budget.max.wallclock.ms} — maximum elapsed time per run
+ *       (default {@code 0}, unlimited).</li>
+ *   <li>{@code agent.budget.max.calls.per.tool} — maximum invocations of any
+ *       one tool per run (default {@code 0}, unlimited).</li>
+ *   <li>{@code agent.budget.max.tool.latency.ms} — maximum cumulative time
+ *       spent inside tools per run (default {@code 0}, unlimited).</li>
  * </ul>
  *
  * <h2>Safety</h2>
@@ -63,6 +75,41 @@ import java.util.logging.Logger;
  * sets {@code stop: true}. Only tools present in the injected allow-list
  * can be invoked — anything else is rejected with a clear error.
  *
+ * <p>The per-run budgets bound cost and latency rather than step count.
+ * They are checked before every LLM call and before every tool call. The
+ * wall-clock budget is also enforced mid-step: a timer for the remaining
+ * time cancels the run's {@link CancellationToken}, aborting an in-flight
+ * LLM call or tool. When any budget is exhausted the run stops gracefully with
+ * {@code status: "partial"}, the name of the exhausted limit, a
+ * {@link RunBudget#toJson() consumption snapshot}, the trail so far and
+ * the last tool result (if any).
+ *
+ * <h2>Persistence</h2>
+ * Each step is handed to {@link MemoryStore#append} before the next step
+ * starts, and the reply is sent only after {@link MemoryStore#flush} for
+ * the case completes. With a synchronous store both are durable writes;
+ * with a {@link dev.mars.agent.memory.WriteBehindMemoryStore} the appends
+ * return immediately and are group-committed in the background, so only
+ * the final flush sits on the critical path.
+ *
+ * <h2>Cancellation</h2>
+ * Each run gets a {@link CancellationToken}, carried in its
+ * {@link AgentContext}. The runner also consumes a cancel address
+ * ({@code <listenAddress>.cancel} by default); a message
+ * {@code {"correlationId": ..., "reason": ...}} published there cancels
+ * the matching in-flight run. Ingress verticles publish it when their
+ * caller times out or disconnects. A cancelled run stops before its next
+ * LLM or tool call, in-flight LLM requests are aborted, and the run
+ * completes with {@code status: "cancelled"}.
+ *
+ * <h2>Deferred decisions</h2>
+ * When {@link LlmClient#defers} reports that the next decision goes to a
+ * batch, the caller is answered immediately with
+ * {@code {"status": "deferred", "trail": [...]}} and the run carries on
+ * detached; the batch wait does not count against the wall-clock budget.
+ * A detached run's final result is published on
+ * {@code agent.deferred.address} (default {@code <listenAddress>.deferred}).
+ *
  * @see LlmClient
  * @see Tool
  * @see MemoryStore
@@ -78,8 +125,22 @@ public class AgentRunnerVerticle extends AbstractVerticle {
   private final Map<String, Tool> tools;
   private final MemoryStore memory;
   private final String caseIdField;
+  private final String cancelAddress;
+
+  /** Tokens of runs currently in flight, keyed by correlation ID. */
+  private final Map<String, CancellationToken> inFlight = new HashMap<>();
+  /** Callers still waiting for a reply, keyed by correlation ID. */
+  private final Map<String, Message<Object>> awaitingReply = new HashMap<>();
+  /** Wall-clock budget timers of runs in flight, keyed by correlation ID. */
+  private final Map<String, Long> wallClockTimers = new HashMap<>();
+
+  private String deferredAddress;
 
   private int maxSteps;
+  private long maxTokens;
+  private long maxWallClockMs;
+  private int maxCallsPerTool;
+  private long maxToolLatencyMs;
 
   /**
    * Creates a new agent runner verticle.
@@ -94,19 +155,55 @@ public class AgentRunnerVerticle extends AbstractVerticle {
   public AgentRunnerVerticle(String listenAddress, LlmClient llm,
                              Map<String, Tool> tools,
                              MemoryStore memory, String caseIdField) {
+    this(listenAddress, llm, tools, memory, caseIdField, listenAddress + ".cancel");
+  }
+
+  /**
+   * Creates a new agent runner verticle with an explicit cancel address.
+   *
+   * @param listenAddress the event bus address to consume agent requests from
+   * @param llm           the LLM client used to decide each step
+   * @param tools         allow-listed tool map (name → tool)
+   * @param memory        the memory store for case state
+   * @param caseIdField   the JSON field name used to extract the case
+   *                      identifier from incoming events
+   * @param cancelAddress the event bus address on which cancel signals
+   *                      ({@code {"correlationId": ...}}) are published
+   */
+  public AgentRunnerVerticle(String listenAddress, LlmClient llm,
+                             Map<String, Tool> tools,
+                             MemoryStore memory, String caseIdField,
+                             String cancelAddress) {
     this.listenAddress = listenAddress;
     this.llm = llm;
     this.tools = tools;
     this.memory = memory;
     this.caseIdField = caseIdField;
+    this.cancelAddress = cancelAddress;
   }
 
   @Override
   public void start(Promise<Void> startPromise) {
     maxSteps = config().getInteger("agent.max.steps", DEFAULT_MAX_STEPS);
+    maxTokens = config().getLong("agent.budget.max.tokens", 0L);
+    maxWallClockMs = config().getLong("agent.budget.max.wallclock.ms", 0L);
+    maxCallsPerTool = config().getInteger("agent.budget.max.calls.per.tool", 0);
+    maxToolLatencyMs = config().getLong("agent.budget.max.tool.latency.ms", 0L);
+    deferredAddress = config().getString("agent.deferred.address", listenAddress + ".deferred");
 
     LOG.info("AgentRunner starting: address=" + listenAddress
-        + " maxSteps=" + maxSteps + " tools=" + tools.keySet());
+        + " maxSteps=" + maxSteps + " maxTokens=" + maxTokens
+        + " maxWallClockMs=" + maxWallClockMs + " maxCallsPerTool=" + maxCallsPerTool
+        + " maxToolLatencyMs=" + maxToolLatencyMs + " tools=" + tools.keySet()
+        + " cancelAddress=" + cancelAddress);
+
+    vertx.eventBus().<JsonObject>consumer(cancelAddress, msg -> {
+      String corrId = msg.body().getString("correlationId");
+      CancellationToken token = corrId != null ? inFlight.get(corrId) : null;
+      if (token != null && token.cancel(msg.body().getString("reason", "cancelled"))) {
+        LOG.info("Agent run cancelled: correlationId=" + corrId + " reason=" + token.reason());
+      }
+    });
 
     vertx.eventBus().consumer(listenAddress, msg -> {
       JsonObject event = (JsonObject) msg.body();
@@ -115,19 +212,51 @@ public class AgentRunnerVerticle extends AbstractVerticle {
 
       LOG.info("Agent invoked for case=" + caseId + " correlationId=" + corrId);
 
+      RunBudget budget = new RunBudget(maxTokens, maxWallClockMs, maxCallsPerTool, maxToolLatencyMs);
+      CancellationToken token = new CancellationToken();
+      JsonArray trail = new JsonArray();
+      inFlight.put(corrId, token);
+      awaitingReply.put(corrId, msg);
+      armWallClock(corrId, token, budget);
       memory.load(caseId)
-        .compose(state -> runLoop(event, new AgentContext(corrId, caseId, state), 0, new JsonArray()))
-        .onSuccess(msg::reply)
+        .compose(state -> runLoop(event, new AgentContext(corrId, caseId, state, token), 0, trail, budget))
+        .recover(err -> token.isCancelled()
+            ? Future.succeededFuture(cancelledStop(caseId, trail, token, budget))
+            : Future.failedFuture(err))
+        // Only the final reply waits for the trail to be durable
+        .compose(reply -> memory.flush(caseId).map(v -> reply))
+        .onComplete(ar -> {
+          inFlight.remove(corrId, token);
+          disarmWallClock(corrId);
+        })
+        .onSuccess(reply -> {
+          if (awaitingReply.remove(corrId) != null) {
+            msg.reply(reply);
+          } else {
+            LOG.info("Deferred agent run finished for case=" + caseId + " status=" + reply.getString("status"));
+            vertx.eventBus().publish(deferredAddress, reply.copy().put("correlationId", corrId));
+          }
+        })
         .onFailure(err -> {
           LOG.log(Level.SEVERE, "Agent failed for case=" + caseId, err);
-          msg.fail(500, err.getMessage());
+          if (awaitingReply.remove(corrId) != null) {
+            msg.fail(500, err.getMessage());
+          } else {
+            vertx.eventBus().publish(deferredAddress, new JsonObject()
+                .put("status", "error")
+                .put("path", "agent")
+                .put("reason", err.getMessage())
+                .put(caseIdField, caseId)
+                .put("correlationId", corrId));
+          }
         });
     });
 
     startPromise.complete();
   }
 
-  private Future<JsonObject> runLoop(JsonObject event, AgentContext ctx, int step, JsonArray trail) {
+  private Future<JsonObject> runLoop(JsonObject event, AgentContext ctx, int step,
+                                     JsonArray trail, RunBudget budget) {
     if (step >= maxSteps) {
       LOG.warning("Step limit reached for case=" + ctx.caseId());
       return Future.succeededFuture(new JsonObject()
@@ -138,51 +267,169 @@ public class AgentRunnerVerticle extends AbstractVerticle {
         .put(caseIdField, ctx.caseId()));
     }
 
+    if (ctx.cancellation().isCancelled()) {
+      return Future.succeededFuture(cancelledStop(ctx.caseId(), trail, ctx.cancellation(), budget));
+    }
+
+    String exhausted = budget.exhausted();
+    if (exhausted != null) {
+      return Future.succeededFuture(budgetStop(ctx.caseId(), trail, budget, exhausted));
+    }
+
     LOG.fine("Agent step " + step + " for case=" + ctx.caseId());
 
     // Keep the state snapshot current so the LLM can vary its behaviour
     // across iterations (e.g. step 0 → lookup, step 1 → classify, step 2 → act).
     ctx.state().put("step", step);
+    // The full trail of this run, for clients that build prompt history from it
+    ctx.state().put("history", trail);
 
     // Step 1: Ask the LLM what to do — the LLM decides which tool to call
-    return llm.decideNext(event, ctx.state())
+    boolean deferred = llm.defers(event, ctx.state());
+    if (deferred) {
+      releaseCaller(ctx, trail);
+      // The batch wait is not charged to the wall-clock budget
+      disarmWallClock(ctx.correlationId());
+    }
+    long decideStart = System.nanoTime();
+    return llm.decideNext(event, ctx.state(), ctx.cancellation())
+      .onSuccess(cmd -> {
+        if (deferred) {
+          budget.excludeWait(System.nanoTime() - decideStart);
+          armWallClock(ctx.correlationId(), ctx.cancellation(), budget);
+        }
+      })
       // Step 2: Execute the tool the LLM selected (validated against allow-list)
       .compose(cmd -> {
         LOG.info("LLM decided: intent=" + cmd.getString("intent")
             + " tool=" + cmd.getString("tool")
             + " stop=" + cmd.getBoolean("stop", true)
             + " for case=" + ctx.caseId());
-        return executeCommand(cmd, ctx);
-      })
-      // Step 3: Record the step in memory for audit and future LLM context
-      .compose(outcome -> {
-        JsonObject entry = new JsonObject()
-            .put("step", step)
-            .put("command", outcome.getJsonObject("command"))
-            .put("toolResult", outcome.getJsonObject("toolResult"))
-            .put("at", System.currentTimeMillis());
-        // Update the in-flight state so the next iteration's LLM call can
-        // see what tool was invoked and what it returned.
-        ctx.state().put("last", entry);
-        trail.add(entry);
-        return memory.append(ctx.caseId(), entry).map(v -> outcome);
-      })
-      // Step 4: Loop if the LLM said stop=false, otherwise return the result
-      .compose(outcome -> {
-        if (!outcome.getBoolean("stop", true)) {
-          LOG.info("Agent continuing to step " + (step + 1) + " for case=" + ctx.caseId());
-          return runLoop(event, ctx, step + 1, trail);
+        budget.recordUsage(cmd.getJsonObject("usage"));
+        if (ctx.cancellation().isCancelled()) {
+          return Future.succeededFuture(cancelledStop(ctx.caseId(), trail, ctx.cancellation(), budget));
+        }
+        String toolExhausted = budget.exhaustedFor(cmd.getString("tool", ""));
+        if (toolExhausted != null) {
+          return Future.succeededFuture(budgetStop(ctx.caseId(), trail, budget, toolExhausted));
         }
-        LOG.info("Agent completed for case=" + ctx.caseId() + " after " + (step + 1) + " step(s)");
-        return Future.succeededFuture(new JsonObject()
-          .put("status", "ok")
-          .put("path", "agent")
-          .put("result", outcome.getJsonObject("toolResult"))
-          .put("trail", trail)
-          .put(caseIdField, ctx.caseId()));
+        return executeCommand(cmd, ctx, budget)
+          // Step 3: Record the step in memory for audit and future LLM context
+          .compose(outcome -> {
+            JsonObject entry = new JsonObject()
+                .put("step", step)
+                .put("command", outcome.getJsonObject("command"))
+                .put("toolResult", outcome.getJsonObject("toolResult"))
+                .put("at", System.currentTimeMillis());
+            // Update the in-flight state so the next iteration's LLM call can
+            // see what tool was invoked and what it returned.
+            ctx.state().put("last", entry);
+            trail.add(entry);
+            return memory.append(ctx.caseId(), entry).map(v -> outcome);
+          })
+          // Step 4: Loop if the LLM said stop=false, otherwise return the result
+          .compose(outcome -> {
+            if (!outcome.getBoolean("stop", true)) {
+              LOG.info("Agent continuing to step " + (step + 1) + " for case=" + ctx.caseId());
+              return runLoop(event, ctx, step + 1, trail, budget);
+            }
+            LOG.info("Agent completed for case=" + ctx.caseId() + " after " + (step + 1) + " step(s)");
+            return Future.succeededFuture(new JsonObject()
+              .put("status", "ok")
+              .put("path", "agent")
+              .put("result", outcome.getJsonObject("toolResult"))
+              .put("trail", trail)
+              .put(caseIdField, ctx.caseId()));
+          });
       });
   }
 
+  /**
+   * Answer the caller with {@code status: "deferred"} and let the run
+   * continue without it; a no-op once the caller has been answered.
+   */
+  private void releaseCaller(AgentContext ctx, JsonArray trail) {
+    Message<Object> caller = awaitingReply.remove(ctx.correlationId());
+    if (caller == null) {
+      return;
+    }
+    LOG.info("Deferring agent run for case=" + ctx.caseId() + " after " + trail.size() + " step(s)");
+    caller.reply(new JsonObject()
+        .put("status", "deferred")
+        .put("path", "agent")
+        .put("trail", trail.copy())
+        .put("correlationId", ctx.correlationId())
+        .put(caseIdField, ctx.caseId()));
+  }
+
+  /**
+   * Build the graceful "budget exhausted" reply: the run stops without
+   * failing and hands back everything it has done so far.
+   */
+  private JsonObject budgetStop(String caseId, JsonArray trail, RunBudget budget, String exhausted) {
+    LOG.warning("Budget exhausted (" + exhausted + ") for case=" + caseId
+        + " usage=" + budget.toJson().encode());
+    JsonObject last = trail.isEmpty() ? null : trail.getJsonObject(trail.size() - 1);
+    return new JsonObject()
+      .put("status", "partial")
+      .put("path", "agent")
+      .put("reason", "Budget exhausted: " + exhausted)
+      .put("exhausted", exhausted)
+      .put("budget", budget.toJson())
+      .put("result", last != null ? last.getJsonObject("toolResult") : null)
+      .put("trail", trail)
+      .put(caseIdField, caseId);
+  }
+
+  /**
+   * Build the reply for a cancelled run. The requester has usually gone
+   * away, but the reply is still logged and returned for callers that
+   * cancel explicitly. A run cancelled by its wall-clock timer is a
+   * budget stop instead.
+   */
+  private JsonObject cancelledStop(String caseId, JsonArray trail, CancellationToken token,
+                                   RunBudget budget) {
+    if (budget.wallClockExpired()) {
+      return budgetStop(caseId, trail, budget, RunBudget.WALL_CLOCK);
+    }
+    LOG.warning("Agent run cancelled for case=" + caseId + " after " + trail.size()
+        + " step(s): " + token.reason());
+    return new JsonObject()
+      .put("status", "cancelled")
+      .put("path", "agent")
+      .put("reason", "Cancelled: " + token.reason())
+      .put("trail", trail)
+      .put(caseIdField, caseId);
+  }
+
+  /**
+   * Start (or restart) the run's wall-clock timer for the budget left; when
+   * it fires the budget is marked exhausted and the run's token cancelled.
+   * A no-op when the wall-clock budget is unlimited.
+   */
+  private void armWallClock(String corrId, CancellationToken token, RunBudget budget) {
+    long remaining = budget.remainingWallClockMs();
+    if (remaining < 0) {
+      return;
+    }
+    long timerId = vertx.setTimer(Math.max(1, remaining), t -> {
+      wallClockTimers.remove(corrId, t);
+      budget.expireWallClock();
+      token.cancel(RunBudget.WALL_CLOCK);
+    });
+    Long previous = wallClockTimers.put(corrId, timerId);
+    if (previous != null) {
+      vertx.cancelTimer(previous);
+    }
+  }
+
+  private void disarmWallClock(String corrId) {
+    Long timerId = wallClockTimers.remove(corrId);
+    if (timerId != null) {
+      vertx.cancelTimer(timerId);
+    }
+  }
+
   /**
    * Validate and execute the tool command returned by the LLM.
    *
@@ -190,7 +437,7 @@ public class AgentRunnerVerticle extends AbstractVerticle {
    * enforces the allow-list: only tools present in the injected {@code tools}
    * map can be invoked. Unknown tool names are rejected immediately.
    */
-  private Future<JsonObject> executeCommand(JsonObject cmd, AgentContext ctx) {
+  private Future<JsonObject> executeCommand(JsonObject cmd, AgentContext ctx, RunBudget budget) {
     String intent = cmd.getString("intent", "");
     String toolName = cmd.getString("tool", "");
     JsonObject args = cmd.getJsonObject("args", new JsonObject());
@@ -208,7 +455,9 @@ public class AgentRunnerVerticle extends AbstractVerticle {
     }
 
     LOG.info("Invoking tool=" + toolName + " for case=" + ctx.caseId() + " args=" + args.encode());
+    long startNanos = System.nanoTime();
     return tool.invoke(args, ctx).map(result -> {
+      budget.recordToolCall(toolName, System.nanoTime() - startNanos);
       LOG.info("Tool " + toolName + " completed for case=" + ctx.caseId()
           + " result=" + result.encode());
       return new JsonObject()
@@ -0,0 +1,164 @@
+package dev.mars.agent.runner;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mutable accounting of the resources consumed by a single agent run,
+ * checked against the configured limits.
+ *
+ * <p>One instance is created per inbound event and is only touched from
+ * the runner's event-loop context, so no synchronisation is needed.
+ * A limit of {@code 0} means "unlimited".
+ *
+ * @see AgentRunnerVerticle
+ */
+public final class RunBudget {
+
+  /** Exhaustion reason: provider-reported token usage reached the limit. */
+  public static final String TOKENS = "maxTokens";
+  /** Exhaustion reason: the run has been going for too long. */
+  public static final String WALL_CLOCK = "maxWallClockMs";
+  /** Exhaustion reason: the requested tool has already been called too often. */
+  public static final String CALLS_PER_TOOL = "maxCallsPerTool";
+  /** Exhaustion reason: cumulative time spent inside tools reached the limit. */
+  public static final String TOOL_LATENCY = "maxToolLatencyMs";
+
+  private final long maxTokens;
+  private final long maxWallClockMs;
+  private final int maxCallsPerTool;
+  private final long maxToolLatencyMs;
+  private final long startNanos;
+
+  private long tokens;
+  private long cachedTokens;
+  private long toolLatencyNanos;
+  private long excludedNanos;
+  private boolean wallClockExpired;
+  private final Map<String, Integer> callsByTool = new HashMap<>();
+
+  /**
+   * @param maxTokens        token limit ({@code 0} = unlimited)
+   * @param maxWallClockMs   elapsed-time limit ({@code 0} = unlimited)
+   * @param maxCallsPerTool  per-tool invocation limit ({@code 0} = unlimited)
+   * @param maxToolLatencyMs cumulative tool-time limit ({@code 0} = unlimited)
+   */
+  public RunBudget(long maxTokens, long maxWallClockMs,
+                   int maxCallsPerTool, long maxToolLatencyMs) {
+    this.maxTokens = maxTokens;
+    this.maxWallClockMs = maxWallClockMs;
+    this.maxCallsPerTool = maxCallsPerTool;
+    this.maxToolLatencyMs = maxToolLatencyMs;
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Add the tokens reported in an LLM {@code usage} block
+   * ({@code total_tokens}, or {@code prompt_tokens + completion_tokens}),
+   * and the prompt tokens it reports as served from the provider cache.
+   *
+   * @param usage the provider usage object; {@code null} is ignored
+   */
+  public void recordUsage(JsonObject usage) {
+    if (usage == null) return;
+    Long total = usage.getLong("total_tokens");
+    if (total == null) {
+      total = usage.getLong("prompt_tokens", 0L) + usage.getLong("completion_tokens", 0L);
+    }
+    tokens += total;
+    JsonObject details = usage.getJsonObject("prompt_tokens_details");
+    if (details != null) {
+      cachedTokens += details.getLong("cached_tokens", 0L);
+    }
+  }
+
+  /** Record one completed tool invocation and how long it took. */
+  public void recordToolCall(String toolName, long latencyNanos) {
+    callsByTool.merge(toolName, 1, Integer::sum);
+    toolLatencyNanos += latencyNanos;
+  }
+
+  /**
+   * Check the run-wide limits (tokens, wall-clock, tool latency).
+   *
+   * @return the name of the exhausted limit, or {@code null} if the run
+   *         may continue
+   */
+  public String exhausted() {
+    if (maxTokens > 0 && tokens >= maxTokens) return TOKENS;
+    if (wallClockExpired || maxWallClockMs > 0 && elapsedMs() >= maxWallClockMs) return WALL_CLOCK;
+    if (maxToolLatencyMs > 0 && toolLatencyNanos / 1_000_000 >= maxToolLatencyMs) return TOOL_LATENCY;
+    return null;
+  }
+
+  /**
+   * Check whether another call to {@code toolName} is allowed.
+   *
+   * @return {@link #CALLS_PER_TOOL} if the tool's call limit has been
+   *         reached, otherwise {@code null}
+   */
+  public String exhaustedFor(String toolName) {
+    if (maxCallsPerTool > 0 && callsByTool.getOrDefault(toolName, 0) >= maxCallsPerTool) {
+      return CALLS_PER_TOOL;
+    }
+    return null;
+  }
+
+  /**
+   * Leave a wait out of the wall-clock budget — used for decisions
+   * deferred to a batch, which may take hours by design.
+   */
+  public void excludeWait(long nanos) {
+    excludedNanos += nanos;
+  }
+
+  /**
+   * Mark the wall-clock limit as exhausted — called by the runner's timer,
+   * which fires mid-step rather than waiting for the next check.
+   */
+  public void expireWallClock() {
+    wallClockExpired = true;
+  }
+
+  /** Whether {@link #expireWallClock()} has been called. */
+  public boolean wallClockExpired() {
+    return wallClockExpired;
+  }
+
+  /**
+   * Milliseconds of wall-clock budget left, or {@code -1} when the
+   * wall-clock limit is unlimited.
+   */
+  public long remainingWallClockMs() {
+    return maxWallClockMs > 0 ? Math.max(0, maxWallClockMs - elapsedMs()) : -1;
+  }
+
+  /** Milliseconds since this budget was created, less any excluded waits. */
+  public long elapsedMs() {
+    return (System.nanoTime() - startNanos - excludedNanos) / 1_000_000;
+  }
+
+  /** Tokens consumed so far. */
+  public long tokens() {
+    return tokens;
+  }
+
+  /** Snapshot of consumption and limits, suitable for the reply payload. */
+  public JsonObject toJson() {
+    JsonObject calls = new JsonObject();
+    callsByTool.forEach(calls::put);
+    return new JsonObject()
+        .put("tokens", tokens)
+        .put("cachedTokens", cachedTokens)
+        .put("elapsedMs", elapsedMs())
+        .put("toolLatencyMs", toolLatencyNanos / 1_000_000)
+        .put("toolCalls", calls)
+        .put("limits", new JsonObject()
+            .put(TOKENS, maxTokens)
+            .put(WALL_CLOCK, maxWallClockMs)
+            .put(CALLS_PER_TOOL, maxCallsPerTool)
+            .put(TOOL_LATENCY, maxToolLatencyMs));
+  }
+}
@@ -73,4 +73,75 @@ class HttpApiVerticleTest {
         .onSuccess(id -> ctx.completeNow())
         .onFailure(ctx::failNow);
   }
+
+  // ── Cancellation ──────────────────────────────────────────────────
+
+  @Test
+  void timeout_publishes_cancel_with_correlation_id(Vertx vertx, VertxTestContext ctx) throws Exception {
+    String addr = "test.cancel." + SEQ.incrementAndGet();
+    String cancelAddr = addr + ".cancel";
+    String[] dispatched = new String[1];
+    // Consumer that never replies, so the request times out
+    vertx.eventBus().<JsonObject>consumer(addr, msg -> dispatched[0] = msg.body().getString("correlationId"));
+    vertx.eventBus().<JsonObject>consumer(cancelAddr, msg -> ctx.verify(() -> {
+      assertNotNull(dispatched[0]);
+      assertEquals(dispatched[0], msg.body().getString("correlationId"));
+      assertNotNull(msg.body().getString("reason"));
+      ctx.completeNow();
+    }));
+
+    int port;
+    try (var socket = new java.net.ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    var verticle = new HttpApiVerticle("/test", addr, Set.of("id"), Set.of("id"), cancelAddr);
+    var opts = new DeploymentOptions().setConfig(new JsonObject()
+        .put("http.port", port)
+        .put("request.timeout.ms", 100));
+
+    HttpClient client = vertx.createHttpClient();
+    vertx.deployVerticle(verticle, opts)
+        .compose(id -> client.request(HttpMethod.POST, port, "localhost", "/test"))
+        .compose(req -> req.send(Buffer.buffer(new JsonObject().put("id", "X-1").encode())))
+        .onFailure(ctx::failNow);
+  }
+
+  // ── Readiness ─────────────────────────────────────────────────────
+
+  @Test
+  void health_reports_starting_until_ready(Vertx vertx, VertxTestContext ctx) throws Exception {
+    int port;
+    try (var socket = new java.net.ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    var readiness = new Readiness();
+    var verticle = new HttpApiVerticle("/test", "test.health." + SEQ.incrementAndGet(),
+        Set.of("id"), Set.of("id"), null, readiness);
+    var opts = new DeploymentOptions().setConfig(new JsonObject().put("http.port", port));
+
+    HttpClient client = vertx.createHttpClient();
+    vertx.deployVerticle(verticle, opts)
+        .compose(id -> client.request(HttpMethod.GET, port, "localhost", "/health"))
+        .compose(req -> req.send())
+        .compose(resp -> resp.body().map(body -> {
+          ctx.verify(() -> {
+            assertEquals(503, resp.statusCode());
+            assertEquals("STARTING", body.toJsonObject().getString("status"));
+          });
+          readiness.markReady(new JsonObject().put("warmup", new JsonObject().put("ms", 12)));
+          return body;
+        }))
+        .compose(v -> client.request(HttpMethod.GET, port, "localhost", "/health"))
+        .compose(req -> req.send())
+        .compose(resp -> resp.body().map(body -> {
+          ctx.verify(() -> {
+            assertEquals(200, resp.statusCode());
+            assertEquals("UP", body.toJsonObject().getString("status"));
+            assertEquals(12, body.toJsonObject().getJsonObject("warmup").getInteger("ms"));
+          });
+          return body;
+        }))
+        .onSuccess(v -> ctx.completeNow())
+        .onFailure(ctx::failNow);
+  }
 }
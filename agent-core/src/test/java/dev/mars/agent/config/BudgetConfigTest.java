@@ -0,0 +1,39 @@
+package dev.mars.agent.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BudgetConfigTest {
+
+  @Test
+  void agent_config_without_budget_is_unlimited() {
+    var cfg = new AgentConfig(5, 10_000);
+    assertSame(BudgetConfig.UNLIMITED, cfg.budget());
+  }
+
+  @Test
+  void null_budget_defaults_to_unlimited() {
+    var cfg = new AgentConfig(5, 10_000, null);
+    assertEquals(0, cfg.budget().maxTokens());
+    assertEquals(0, cfg.budget().maxCallsPerTool());
+  }
+
+  @Test
+  void explicit_budget_is_preserved() {
+    var budget = new BudgetConfig(20_000, 8_000, 3, 5_000);
+    var cfg = new AgentConfig(5, 10_000, budget);
+    assertEquals(20_000, cfg.budget().maxTokens());
+    assertEquals(8_000, cfg.budget().maxWallClockMs());
+    assertEquals(3, cfg.budget().maxCallsPerTool());
+    assertEquals(5_000, cfg.budget().maxToolLatencyMs());
+  }
+
+  @Test
+  void negative_limits_throw() {
+    assertThrows(IllegalArgumentException.class, () -> new BudgetConfig(-1, 0, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> new BudgetConfig(0, -1, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> new BudgetConfig(0, 0, -1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new BudgetConfig(0, 0, 0, -1));
+  }
+}
@@ -0,0 +1,47 @@
+package dev.mars.agent.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionConfigTest {
+
+  @Test
+  void defaults_to_virtual_threads() {
+    var cfg = new ExecutionConfig(null, 0);
+    assertEquals("virtual-thread", cfg.mode());
+    assertEquals(ExecutionConfig.DEFAULT_MAX_CONCURRENCY, cfg.maxConcurrency());
+  }
+
+  @Test
+  void worker_mode_is_accepted() {
+    var cfg = new ExecutionConfig("worker", 4);
+    assertEquals("worker", cfg.mode());
+    assertEquals(4, cfg.maxConcurrency());
+  }
+
+  @Test
+  void unknown_mode_throws() {
+    assertThrows(IllegalArgumentException.class, () -> new ExecutionConfig("fork-join", 4));
+  }
+
+  @Test
+  void negative_concurrency_throws() {
+    assertThrows(IllegalArgumentException.class, () -> new ExecutionConfig("worker", -1));
+  }
+
+  @Test
+  void virtual_thread_executor_has_configured_limit() {
+    var executor = new ExecutionConfig("virtual-thread", 8).toExecutor(null, "test");
+    assertEquals(8, executor.maxConcurrency());
+    executor.close();
+  }
+
+  @Test
+  void handler_and_tool_configs_default_to_no_execution() {
+    assertNull(new HandlerConfig("r", "escalate", Map.of()).execution());
+    assertNull(new ToolConfig("lookup").execution());
+  }
+}
@@ -0,0 +1,48 @@
+package dev.mars.agent.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryConfigTest {
+
+  @Test
+  void default_is_synchronous() {
+    assertFalse(MemoryConfig.DEFAULT.writeBehind());
+  }
+
+  @Test
+  void negative_values_throw() {
+    assertThrows(IllegalArgumentException.class, () -> new MemoryConfig(true, -1, 0, 0, 0, 0, 0, null));
+    assertThrows(IllegalArgumentException.class, () -> new MemoryConfig(true, 0, -1, 0, 0, 0, 0, null));
+    assertThrows(IllegalArgumentException.class, () -> new MemoryConfig(true, 0, 0, -1, 0, 0, 0, null));
+    assertThrows(IllegalArgumentException.class, () -> new MemoryConfig(true, 0, 0, 0, 0, 0, -1, null));
+  }
+
+  @Test
+  void default_is_unbounded() {
+    assertTrue(MemoryConfig.DEFAULT.toBounds().unbounded());
+    var bounded = new MemoryConfig(false, 0, 0, 100, 20, 60_000, 1 << 20, null).toBounds();
+    assertEquals(100, bounded.maxCases());
+    assertEquals(20, bounded.maxLogEntries());
+    assertEquals(60_000, bounded.idleTtlMs());
+    assertEquals(1 << 20, bounded.maxBytes());
+  }
+
+  @Test
+  void log_is_disabled_by_default() {
+    assertFalse(MemoryConfig.DEFAULT.log().enabled());
+    var settings = new MemoryLogConfig(true, null, 0, "Interval", 250, 0).toSettings();
+    assertEquals(java.nio.file.Path.of(MemoryLogConfig.DEFAULT_DIR), settings.dir());
+    assertEquals(dev.mars.agent.memory.SegmentedLogSettings.FsyncPolicy.INTERVAL, settings.fsync());
+    assertEquals(250, settings.fsyncIntervalMs());
+    assertThrows(IllegalArgumentException.class,
+        () -> new MemoryLogConfig(true, "x", 0, "sometimes", 0, 0));
+  }
+
+  @Test
+  void pipeline_config_defaults_memory_section() {
+    var cfg = new PipelineConfig(null, null, null, null, null, null, null, null, null, null);
+    assertSame(MemoryConfig.DEFAULT, cfg.memory());
+  }
+}
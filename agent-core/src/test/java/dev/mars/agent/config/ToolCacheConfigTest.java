@@ -0,0 +1,41 @@
+package dev.mars.agent.config;
+
+import dev.mars.mcp.tool.CachePolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolCacheConfigTest {
+
+  @Test
+  void tool_config_without_cache_has_null_cache() {
+    assertNull(new ToolConfig("lookup").cache());
+  }
+
+  @Test
+  void scope_defaults_to_run() {
+    var cfg = new ToolCacheConfig(true, null, null, 0, 0);
+    assertEquals("run", cfg.scope());
+    assertTrue(cfg.keyFields().isEmpty());
+    assertEquals(CachePolicy.Scope.RUN, cfg.toPolicy().scope());
+  }
+
+  @Test
+  void global_scope_maps_to_policy() {
+    var cfg = new ToolCacheConfig(true, "global", List.of("tradeId"), 60_000, 50);
+    CachePolicy policy = cfg.toPolicy();
+    assertTrue(policy.enabled());
+    assertEquals(CachePolicy.Scope.GLOBAL, policy.scope());
+    assertEquals(List.of("tradeId"), policy.keyFields());
+    assertEquals(60_000, policy.ttlMs());
+    assertEquals(50, policy.maxEntries());
+  }
+
+  @Test
+  void unknown_scope_throws() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new ToolCacheConfig(true, "cluster", List.of(), 0, 0));
+  }
+}
@@ -0,0 +1,29 @@
+package dev.mars.agent.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WarmupConfigTest {
+
+  @Test
+  void zero_values_take_defaults() {
+    var cfg = new WarmupConfig(true, 0, 0, 0);
+    assertEquals(WarmupConfig.DEFAULT_CONNECTIONS, cfg.connections());
+    assertEquals(WarmupConfig.DEFAULT_ITERATIONS, cfg.iterations());
+    assertEquals(WarmupConfig.DEFAULT_TIMEOUT_MS, cfg.timeoutMs());
+  }
+
+  @Test
+  void negative_values_throw() {
+    assertThrows(IllegalArgumentException.class, () -> new WarmupConfig(true, -1, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> new WarmupConfig(true, 0, -1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new WarmupConfig(true, 0, 0, -1));
+  }
+
+  @Test
+  void pipeline_config_defaults_to_no_warmup() {
+    var cfg = new PipelineConfig(null, null, null, null, null, null, null, null, null, null);
+    assertFalse(cfg.warmup().enabled());
+  }
+}
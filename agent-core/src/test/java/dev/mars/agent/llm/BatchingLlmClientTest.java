@@ -0,0 +1,211 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class BatchingLlmClientTest {
+
+  /** Answers every submitted line with a comms.notify completion once {@code finish} is called. */
+  private static final class FakeBackend implements BatchBackend {
+    final List<Buffer> submissions = new CopyOnWriteArrayList<>();
+    final Map<String, Buffer> outputs = new ConcurrentHashMap<>();
+
+    @Override
+    public Future<String> submit(Buffer requests) {
+      submissions.add(requests);
+      return Future.succeededFuture("batch-" + submissions.size());
+    }
+
+    @Override
+    public Future<Buffer> poll(String batchId) {
+      return Future.succeededFuture(outputs.get(batchId));
+    }
+
+    void finish(int batch) {
+      Buffer out = Buffer.buffer();
+      for (String line : submissions.get(batch - 1).toString().split("\n")) {
+        String id = new JsonObject(line).getString("custom_id");
+        out.appendString(new JsonObject()
+            .put("custom_id", id)
+            .put("response", new JsonObject().put("status_code", 200).put("body", completion()))
+            .encode()).appendString("\n");
+      }
+      outputs.put("batch-" + batch, out);
+    }
+  }
+
+  private static JsonObject completion() {
+    return new JsonObject()
+        .put("choices", new JsonArray().add(new JsonObject().put("message", new JsonObject()
+            .put("tool_calls", new JsonArray().add(new JsonObject().put("function", new JsonObject()
+                .put("name", "comms.notify").put("arguments", "{\"channel\":\"email\"}")))))))
+        .put("usage", new JsonObject().put("total_tokens", 300));
+  }
+
+  private static final JsonObject LOW_EVENT = new JsonObject().put("tradeId", "T-1").put("reason", "Stale price");
+  private static final JsonObject URGENT_EVENT = new JsonObject().put("tradeId", "T-2").put("reason", "Sanctions hit");
+
+  private static final BatchSettings FAST = BatchSettings.DEFAULTS
+      .withEligibility(Set.of("Stale price"), Set.of("LOW"))
+      .withSchedule(10, 20, 20);
+
+  private static final LlmClient INTERACTIVE = (event, state) -> Future.succeededFuture(
+      new JsonObject().put("tool", "data.lookup").put("stop", false));
+
+  private static OpenAiLlmClient renderer(Vertx vertx) {
+    return new OpenAiLlmClient(vertx, "http://localhost:1", "sk-test", "gpt-4o",
+        OpenAiSettings.DEFAULTS.withStream(true), List.of());
+  }
+
+  @Test
+  void eligible_decisions_are_batched_and_resumed(Vertx vertx, VertxTestContext ctx) {
+    var backend = new FakeBackend();
+    var client = new BatchingLlmClient(vertx, INTERACTIVE, renderer(vertx), backend, FAST);
+
+    var first = client.decideNext(LOW_EVENT, new JsonObject().put("step", 0));
+    var second = client.decideNext(LOW_EVENT.copy().put("tradeId", "T-3"), new JsonObject().put("step", 0));
+    assertFalse(first.isComplete());
+    assertEquals(2, client.stats().getInteger("queued"));
+
+    vertx.setTimer(100, t -> ctx.verify(() -> {
+      assertEquals(1, backend.submissions.size());
+      String[] lines = backend.submissions.get(0).toString().split("\n");
+      assertEquals(2, lines.length);
+      JsonObject line = new JsonObject(lines[0]);
+      assertEquals("/v1/chat/completions", line.getString("url"));
+      assertEquals("gpt-4o", line.getJsonObject("body").getString("model"));
+      assertFalse(line.getJsonObject("body").containsKey("stream"), "batches are never streamed");
+      assertEquals(2, client.stats().getInteger("outstanding"));
+      backend.finish(1);
+    }));
+    Future.all(first, second).onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+      assertEquals("comms.notify", first.result().getString("tool"));
+      assertTrue(first.result().getBoolean("batched"));
+      assertEquals(300, first.result().getJsonObject("usage").getInteger("total_tokens"));
+      assertEquals(2, client.stats().getLong("completed"));
+      client.close();
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void urgent_decisions_stay_interactive(Vertx vertx) {
+    var backend = new FakeBackend();
+    var client = new BatchingLlmClient(vertx, INTERACTIVE, renderer(vertx), backend, FAST);
+    assertFalse(client.defers(URGENT_EVENT, new JsonObject()));
+    assertEquals("data.lookup",
+        client.decideNext(URGENT_EVENT, new JsonObject().put("step", 0)).result().getString("tool"));
+    assertEquals(0, client.stats().getLong("deferred"));
+    client.close();
+  }
+
+  @Test
+  void low_severity_classification_makes_the_rest_of_the_run_eligible(Vertx vertx) {
+    var client = new BatchingLlmClient(vertx, INTERACTIVE, renderer(vertx), new FakeBackend(), FAST);
+    var history = new JsonArray().add(new JsonObject().put("command", new JsonObject()
+        .put("tool", "case.classify").put("args", new JsonObject().put("severity", "low"))));
+    assertTrue(client.defers(URGENT_EVENT, new JsonObject().put("history", history)));
+    client.close();
+  }
+
+  @Test
+  void nothing_is_submitted_outside_a_window(Vertx vertx, VertxTestContext ctx) {
+    var backend = new FakeBackend();
+    var noon = Clock.fixed(Instant.parse("2024-01-01T12:00:00Z"), ZoneOffset.UTC);
+    var settings = FAST.withWindows(List.of(BatchWindow.parse("22:00-06:00")));
+    var client = new BatchingLlmClient(vertx, INTERACTIVE, renderer(vertx), backend, settings, noon);
+    client.decideNext(LOW_EVENT, new JsonObject().put("step", 0));
+    vertx.setTimer(100, t -> ctx.verify(() -> {
+      assertTrue(backend.submissions.isEmpty());
+      assertFalse(client.stats().getBoolean("windowOpen"));
+      assertEquals(1, client.stats().getInteger("queued"));
+      client.close();
+      ctx.completeNow();
+    }));
+  }
+
+  @Test
+  void cancelled_request_leaves_the_queue(Vertx vertx) {
+    var client = new BatchingLlmClient(vertx, INTERACTIVE, renderer(vertx), new FakeBackend(),
+        FAST.withSchedule(10, 60_000, 60_000));
+    var token = new CancellationToken();
+    var result = client.decideNext(LOW_EVENT, new JsonObject().put("step", 0), token);
+    token.cancel("caller gone");
+    assertInstanceOf(CancellationException.class, result.cause());
+    assertEquals(0, client.stats().getInteger("queued"));
+    client.close();
+  }
+
+  @Test
+  void corrupt_output_line_fails_only_its_request(Vertx vertx, VertxTestContext ctx) {
+    var backend = new FakeBackend();
+    var client = new BatchingLlmClient(vertx, INTERACTIVE, renderer(vertx), backend, FAST);
+    var first = client.decideNext(LOW_EVENT, new JsonObject().put("step", 0));
+    var second = client.decideNext(LOW_EVENT.copy().put("tradeId", "T-3"), new JsonObject().put("step", 0));
+    var third = client.decideNext(LOW_EVENT.copy().put("tradeId", "T-4"), new JsonObject().put("step", 0));
+    vertx.setTimer(100, t -> {
+      backend.finish(1);
+      String[] lines = backend.outputs.get("batch-1").toString().split("\n");
+      // Line one is cut short, line two has lost its id, line three is intact
+      backend.outputs.put("batch-1", Buffer.buffer(lines[0].substring(0, lines[0].length() / 2)
+          + "\n{\"oops\n" + lines[2] + "\n"));
+    });
+    Future.join(first, second, third).onComplete(ar -> ctx.verify(() -> {
+      assertTrue(first.failed(), "truncated line fails its own request");
+      assertTrue(second.failed(), "a line that names no request leaves it missing");
+      assertEquals("comms.notify", third.result().getString("tool"));
+      assertEquals(1, client.stats().getLong("completed"));
+      assertEquals(2, client.stats().getLong("failed"));
+      client.close();
+      ctx.completeNow();
+    }));
+  }
+
+  @Test
+  void decisions_deferred_too_long_expire(Vertx vertx, VertxTestContext ctx) {
+    var backend = new FakeBackend();
+    var client = new BatchingLlmClient(vertx, INTERACTIVE, renderer(vertx), backend,
+        FAST.withMaxDeferral(50));
+    // Submitted, but the batch never finishes
+    client.decideNext(LOW_EVENT, new JsonObject().put("step", 0))
+        .onComplete(ctx.failing(err -> ctx.verify(() -> {
+          assertInstanceOf(java.util.concurrent.TimeoutException.class, err);
+          assertEquals(1, client.stats().getLong("expired"));
+          assertEquals(0, client.stats().getInteger("outstanding"));
+          client.close();
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void windows_wrap_past_midnight() {
+    var night = BatchWindow.parse("22:00-06:00");
+    assertTrue(night.contains(LocalTime.of(23, 30)));
+    assertTrue(night.contains(LocalTime.of(5, 59)));
+    assertFalse(night.contains(LocalTime.of(6, 0)));
+    assertTrue(BatchWindow.parse("12:00-13:00").contains(LocalTime.NOON));
+    assertThrows(IllegalArgumentException.class, () -> BatchWindow.parse("noon"));
+  }
+}
@@ -0,0 +1,170 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class CachingLlmClientTest {
+
+  /** Delegate keyed on the event's reason and the step; counts real calls. */
+  private static final class CountingClient implements LlmClient {
+    int calls;
+    boolean fail;
+
+    @Override
+    public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+      calls++;
+      if (fail) {
+        return Future.failedFuture("provider down");
+      }
+      return Future.succeededFuture(new JsonObject()
+          .put("intent", "CALL_TOOL")
+          .put("tool", "data.lookup")
+          .put("args", new JsonObject().put("tradeId", event.getString("tradeId")))
+          .put("stop", false)
+          .put("usage", new JsonObject().put("total_tokens", 700)));
+    }
+
+    @Override
+    public String promptKey(JsonObject event, JsonObject state) {
+      return event.getString("reason") == null ? null
+          : CanonicalJson.sha256(event.getString("reason") + "|" + state.getInteger("step", 0));
+    }
+  }
+
+  private static JsonObject event(String reason) {
+    return new JsonObject().put("tradeId", "T-1").put("reason", reason);
+  }
+
+  private static JsonObject step0() {
+    return new JsonObject().put("step", 0);
+  }
+
+  @Test
+  void repeated_prompt_is_served_from_memory(Vertx vertx, VertxTestContext ctx) {
+    var delegate = new CountingClient();
+    var client = new CachingLlmClient(vertx, delegate, 0, 0, null);
+
+    client.decideNext(event("Missing ISIN"), step0())
+      .compose(first -> {
+        assertEquals(700, first.getJsonObject("usage").getInteger("total_tokens"));
+        assertNull(first.getBoolean("cached"));
+        return client.decideNext(event("Missing ISIN"), step0());
+      })
+      .onComplete(ctx.succeeding(second -> ctx.verify(() -> {
+        assertEquals(1, delegate.calls);
+        assertTrue(second.getBoolean("cached"));
+        assertNull(second.getJsonObject("usage"), "cached answers must not charge the token budget");
+        assertEquals("data.lookup", second.getString("tool"));
+        JsonObject stats = client.stats();
+        assertEquals(1L, stats.getLong("hits"));
+        assertEquals(1L, stats.getLong("misses"));
+        assertEquals(700L, stats.getLong("savedTokens"));
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void different_prompts_miss(Vertx vertx, VertxTestContext ctx) {
+    var delegate = new CountingClient();
+    var client = new CachingLlmClient(vertx, delegate, 0, 0, null);
+    client.decideNext(event("Missing ISIN"), step0())
+      .compose(v -> client.decideNext(event("Missing ISIN"), new JsonObject().put("step", 1)))
+      .onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+        assertEquals(2, delegate.calls);
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void null_prompt_key_bypasses_cache(Vertx vertx, VertxTestContext ctx) {
+    var delegate = new CountingClient();
+    var client = new CachingLlmClient(vertx, delegate, 0, 0, null);
+    JsonObject noReason = new JsonObject().put("tradeId", "T-1");
+    client.decideNext(noReason, step0())
+      .compose(v -> client.decideNext(noReason, step0()))
+      .onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+        assertEquals(2, delegate.calls);
+        assertEquals(0L, client.stats().getLong("misses"));
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void expired_entries_are_refetched(Vertx vertx, VertxTestContext ctx) {
+    var delegate = new CountingClient();
+    var client = new CachingLlmClient(vertx, delegate, 0, 20, null);
+    client.decideNext(event("Missing ISIN"), step0())
+      .compose(v -> Future.<Void>future(p -> vertx.setTimer(40, t -> p.complete())))
+      .compose(v -> client.decideNext(event("Missing ISIN"), step0()))
+      .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+        assertEquals(2, delegate.calls);
+        assertNull(cmd.getBoolean("cached"));
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void lru_bound_evicts_oldest(Vertx vertx, VertxTestContext ctx) {
+    var delegate = new CountingClient();
+    var client = new CachingLlmClient(vertx, delegate, 1, 0, null);
+    client.decideNext(event("A"), step0())
+      .compose(v -> client.decideNext(event("B"), step0()))
+      .compose(v -> client.decideNext(event("A"), step0()))
+      .onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+        assertEquals(3, delegate.calls);
+        assertEquals(1, client.stats().getInteger("size"));
+        assertTrue(client.stats().getLong("evictions") >= 1);
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void failures_are_not_cached(Vertx vertx, VertxTestContext ctx) {
+    var delegate = new CountingClient();
+    delegate.fail = true;
+    var client = new CachingLlmClient(vertx, delegate, 0, 0, null);
+    client.decideNext(event("Missing ISIN"), step0())
+      .recover(err -> {
+        delegate.fail = false;
+        return client.decideNext(event("Missing ISIN"), step0());
+      })
+      .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+        assertEquals(2, delegate.calls);
+        assertNull(cmd.getBoolean("cached"));
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void disk_tier_survives_a_new_instance(Vertx vertx, VertxTestContext ctx, @TempDir Path dir) {
+    var delegate = new CountingClient();
+    var first = new CachingLlmClient(vertx, delegate, 0, 0, dir);
+    first.decideNext(event("Missing ISIN"), step0())
+      // Disk writes are fire-and-forget; give it a moment to land
+      .compose(v -> Future.<Void>future(p -> vertx.setTimer(50, t -> p.complete())))
+      .compose(v -> {
+        var restarted = new CachingLlmClient(vertx, delegate, 0, 0, dir);
+        return restarted.decideNext(event("Missing ISIN"), step0())
+            .map(cmd -> {
+              assertEquals(1L, restarted.stats().getLong("diskHits"));
+              return cmd;
+            });
+      })
+      .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+        assertEquals(1, delegate.calls);
+        assertTrue(cmd.getBoolean("cached"));
+        ctx.completeNow();
+      })));
+  }
+}
@@ -0,0 +1,39 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CanonicalJsonTest {
+
+  @Test
+  void key_order_does_not_affect_encoding() {
+    var a = new JsonObject().put("b", 1).put("a", new JsonObject().put("y", 2).put("x", 3));
+    var b = new JsonObject().put("a", new JsonObject().put("x", 3).put("y", 2)).put("b", 1);
+    assertEquals(CanonicalJson.encode(a), CanonicalJson.encode(b));
+    assertEquals("{\"a\":{\"x\":3,\"y\":2},\"b\":1}", CanonicalJson.encode(a));
+  }
+
+  @Test
+  void arrays_keep_their_order() {
+    var arr = new JsonArray().add(new JsonObject().put("z", 1).put("a", 2)).add("s");
+    assertEquals("[{\"a\":2,\"z\":1},\"s\"]", CanonicalJson.encode(arr));
+  }
+
+  @Test
+  void canonical_is_a_deep_copy() {
+    var inner = new JsonObject().put("k", "v");
+    var obj = new JsonObject().put("inner", inner);
+    var copy = CanonicalJson.canonical(obj);
+    inner.put("k", "changed");
+    assertEquals("v", copy.getJsonObject("inner").getString("k"));
+  }
+
+  @Test
+  void sha256_is_hex_and_stable() {
+    String h = CanonicalJson.sha256("abc");
+    assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", h);
+  }
+}
@@ -0,0 +1,169 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.AgentContext;
+import dev.mars.mcp.tool.Tool;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CascadingLlmClientTest {
+
+  private static Tool tool(String name, JsonObject schema) {
+    return new Tool() {
+      @Override
+      public String name() { return name; }
+      @Override
+      public JsonObject schema() { return schema; }
+      @Override
+      public Future<JsonObject> invoke(JsonObject args, AgentContext ctx) {
+        return Future.succeededFuture(new JsonObject());
+      }
+    };
+  }
+
+  private static final List<Tool> TOOLS = List.of(
+      tool("data.lookup", new JsonObject().put("type", "object")
+          .put("properties", new JsonObject().put("tradeId", new JsonObject().put("type", "string")))
+          .put("required", new JsonArray().add("tradeId"))),
+      tool("case.classify", new JsonObject().put("type", "object")),
+      tool("events.publish", new JsonObject().put("type", "object")));
+
+  /** Records the steps it was asked about and answers with {@code answer}. */
+  private static final class ScriptedClient implements LlmClient {
+    final List<Integer> steps = new ArrayList<>();
+    final Function<JsonObject, JsonObject> answer;
+
+    ScriptedClient(Function<JsonObject, JsonObject> answer) {
+      this.answer = answer;
+    }
+
+    @Override
+    public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+      steps.add(state.getInteger("step", 0));
+      JsonObject cmd = answer.apply(state);
+      return cmd == null ? Future.failedFuture("model unavailable") : Future.succeededFuture(cmd);
+    }
+  }
+
+  private static JsonObject command(String tool, JsonObject args, int tokens) {
+    return new JsonObject().put("intent", "CALL_TOOL").put("tool", tool).put("args", args)
+        .put("stop", false).put("usage", new JsonObject().put("total_tokens", tokens));
+  }
+
+  private static final JsonObject EVENT = new JsonObject().put("tradeId", "T-1");
+
+  private static JsonObject step(int n) {
+    return new JsonObject().put("step", n);
+  }
+
+  private final ScriptedClient large = new ScriptedClient(
+      s -> command("data.lookup", new JsonObject().put("tradeId", "T-1"), 1000));
+
+  @Test
+  void routine_step_is_answered_by_small_model() {
+    var small = new ScriptedClient(s -> command("data.lookup", new JsonObject().put("tradeId", "T-1"), 100));
+    var client = new CascadingLlmClient(small, large, CascadeSettings.DEFAULTS, TOOLS);
+
+    var cmd = client.decideNext(EVENT, step(0)).result();
+    assertEquals(100, cmd.getJsonObject("usage").getInteger("total_tokens"));
+    assertTrue(large.steps.isEmpty());
+    assertEquals(1, client.stats().getLong("acceptedSmall"));
+    assertEquals(1, client.stats().getJsonObject("small").getLong("calls"));
+    assertEquals(0, client.stats().getJsonObject("large").getLong("calls"));
+  }
+
+  @Test
+  void invalid_arguments_escalate_and_usage_is_summed() {
+    var small = new ScriptedClient(s -> command("data.lookup", new JsonObject(), 100));
+    var client = new CascadingLlmClient(small, large, CascadeSettings.DEFAULTS, TOOLS);
+
+    var cmd = client.decideNext(EVENT, step(0)).result();
+    assertEquals("T-1", cmd.getJsonObject("args").getString("tradeId"));
+    assertEquals(1100, cmd.getJsonObject("usage").getLong("total_tokens"));
+    assertEquals(1, client.stats().getJsonObject("escalations").getLong("validation"));
+  }
+
+  @Test
+  void unknown_tool_escalates() {
+    var small = new ScriptedClient(s -> command("ledger.delete", new JsonObject(), 100));
+    var client = new CascadingLlmClient(small, large, CascadeSettings.DEFAULTS, TOOLS);
+    client.decideNext(EVENT, step(0));
+    assertEquals(List.of(0), large.steps);
+  }
+
+  @Test
+  void low_confidence_escalates() {
+    var small = new ScriptedClient(s -> command("data.lookup",
+        new JsonObject().put("tradeId", "T-1"), 100).put("confidence", 0.2));
+    var client = new CascadingLlmClient(small, large, CascadeSettings.DEFAULTS, TOOLS);
+    client.decideNext(EVENT, step(0));
+    assertEquals(1, client.stats().getJsonObject("escalations").getLong("confidence"));
+  }
+
+  @Test
+  void high_severity_classification_escalates_it_and_later_steps() {
+    var small = new ScriptedClient(s -> command("case.classify",
+        new JsonObject().put("severity", "critical"), 100));
+    var client = new CascadingLlmClient(small, large, CascadeSettings.DEFAULTS, TOOLS);
+    client.decideNext(EVENT, step(1));
+    assertEquals(List.of(1), large.steps);
+
+    var history = new JsonArray().add(new JsonObject().put("command",
+        command("case.classify", new JsonObject().put("severity", "HIGH"), 0)));
+    client.decideNext(EVENT, step(2).put("history", history));
+    assertEquals(List.of(1), small.steps, "small model skipped once severity is known");
+    assertEquals(List.of(1, 2), large.steps);
+    var escalations = client.stats().getJsonObject("escalations");
+    assertEquals(2, escalations.getLong("severity"));
+  }
+
+  @Test
+  void configured_steps_and_tools_go_to_large_model() {
+    var small = new ScriptedClient(s -> command("events.publish", new JsonObject(), 100));
+    var settings = CascadeSettings.DEFAULTS.withLarge(Set.of(3), Set.of("events.publish"));
+    var client = new CascadingLlmClient(small, large, settings, TOOLS);
+
+    client.decideNext(EVENT, step(3));
+    client.decideNext(EVENT, step(4));
+    assertEquals(List.of(4), small.steps);
+    assertEquals(List.of(3, 4), large.steps);
+    var escalations = client.stats().getJsonObject("escalations");
+    assertEquals(1, escalations.getLong("step"));
+    assertEquals(1, escalations.getLong("tool"));
+  }
+
+  @Test
+  void small_model_failure_falls_back_to_large() {
+    var small = new ScriptedClient(s -> null);
+    var client = new CascadingLlmClient(small, large, CascadeSettings.DEFAULTS, TOOLS);
+    assertTrue(client.decideNext(EVENT, step(0)).succeeded());
+    assertEquals(1, client.stats().getJsonObject("small").getLong("failures"));
+    assertEquals(1, client.stats().getJsonObject("escalations").getLong("error"));
+  }
+
+  @Test
+  void prompt_key_requires_both_tiers() {
+    LlmClient keyed = new LlmClient() {
+      @Override
+      public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+        return Future.succeededFuture(new JsonObject());
+      }
+      @Override
+      public String promptKey(JsonObject event, JsonObject state) {
+        return "k";
+      }
+    };
+    assertNotNull(new CascadingLlmClient(keyed, keyed, CascadeSettings.DEFAULTS, TOOLS)
+        .promptKey(EVENT, step(0)));
+    assertNull(new CascadingLlmClient(keyed, large, CascadeSettings.DEFAULTS, TOOLS)
+        .promptKey(EVENT, step(0)));
+  }
+}
@@ -0,0 +1,85 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatCompletionParserTest {
+
+  private static JsonObject toolCall(String name, String arguments) {
+    return new JsonObject()
+        .put("id", "call_1")
+        .put("type", "function")
+        .put("function", new JsonObject().put("name", name).put("arguments", arguments));
+  }
+
+  private static JsonObject completion() {
+    return new JsonObject()
+        .put("id", "chatcmpl-1")
+        .put("object", "chat.completion")
+        .put("created", 1_700_000_000)
+        .put("system_fingerprint", "fp_1")
+        .put("choices", new JsonArray()
+            .add(new JsonObject()
+                .put("index", 0)
+                .put("logprobs", new JsonObject().put("content", new JsonArray().add(new JsonObject())))
+                .put("message", new JsonObject()
+                    .put("role", "assistant")
+                    .putNull("content")
+                    .put("refusal", new JsonObject().put("nested", new JsonArray().add(1)))
+                    .put("tool_calls", new JsonArray()
+                        .add(toolCall("data.lookup", "{\"tradeId\":\"T-1\"}"))
+                        .add(toolCall("case.classify", "{}"))))
+                .put("finish_reason", "tool_calls"))
+            .add(new JsonObject().put("index", 1).put("message", new JsonObject()
+                .put("content", "second choice"))))
+        .put("usage", new JsonObject()
+            .put("prompt_tokens", 900)
+            .put("completion_tokens", 20)
+            .put("total_tokens", 920)
+            .put("prompt_tokens_details", new JsonObject().put("cached_tokens", 768)));
+  }
+
+  @Test
+  void extracts_first_tool_call_and_usage() {
+    var parsed = ChatCompletionParser.parse(completion().toBuffer());
+    assertTrue(parsed.choices());
+    assertEquals("data.lookup", parsed.toolName());
+    assertEquals("{\"tradeId\":\"T-1\"}", parsed.arguments());
+    assertNull(parsed.content());
+    assertEquals(920, parsed.usage().getLong("total_tokens"));
+    assertEquals(768, parsed.usage().getJsonObject("prompt_tokens_details").getLong("cached_tokens"));
+  }
+
+  @Test
+  void matches_the_tree_based_view() {
+    var json = completion();
+    assertEquals(ChatCompletionParser.fromJson(json), ChatCompletionParser.parse(json.toBuffer()));
+  }
+
+  @Test
+  void reads_text_content_when_no_tool_is_called() {
+    var body = new JsonObject().put("choices", new JsonArray().add(new JsonObject()
+        .put("message", new JsonObject().put("role", "assistant").put("content", "I am not sure."))));
+    var parsed = ChatCompletionParser.parse(body.toBuffer());
+    assertFalse(parsed.hasToolCall());
+    assertEquals("I am not sure.", parsed.content());
+    assertNull(parsed.usage());
+  }
+
+  @Test
+  void reports_missing_choices() {
+    assertFalse(ChatCompletionParser.parse(Buffer.buffer("{\"choices\":[]}")).choices());
+    assertFalse(ChatCompletionParser.parse(Buffer.buffer("{\"error\":{\"message\":\"x\"}}")).choices());
+  }
+
+  @Test
+  void rejects_malformed_json() {
+    assertThrows(DecodeException.class, () -> ChatCompletionParser.parse(Buffer.buffer("{\"choices\":[")));
+    assertThrows(DecodeException.class, () -> ChatCompletionParser.parse(Buffer.buffer("[]")));
+  }
+}
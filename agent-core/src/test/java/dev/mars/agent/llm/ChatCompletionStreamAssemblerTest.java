@@ -0,0 +1,113 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatCompletionStreamAssemblerTest {
+
+  static String toolDelta(int index, String id, String name, String args) {
+    JsonObject function = new JsonObject();
+    if (name != null) function.put("name", name);
+    if (args != null) function.put("arguments", args);
+    JsonObject call = new JsonObject().put("index", index).put("function", function);
+    if (id != null) call.put("id", id);
+    return "data: " + new JsonObject().put("choices", new JsonArray().add(new JsonObject()
+        .put("index", 0)
+        .put("delta", new JsonObject().put("tool_calls", new JsonArray().add(call))))).encode() + "\n\n";
+  }
+
+  @Test
+  void tool_call_completes_when_arguments_balance() {
+    var asm = new ChatCompletionStreamAssembler();
+    asm.feed(Buffer.buffer(toolDelta(0, "call_1", "data.lookup", "")));
+    asm.feed(Buffer.buffer(toolDelta(0, null, null, "{\"tradeId\":")));
+    assertFalse(asm.firstToolCallComplete());
+    asm.feed(Buffer.buffer(toolDelta(0, null, null, "\"T-1\",\"fields\":[\"isin\"]")));
+    assertFalse(asm.firstToolCallComplete());
+    asm.feed(Buffer.buffer(toolDelta(0, null, null, "}")));
+    assertTrue(asm.firstToolCallComplete());
+    assertFalse(asm.done());
+
+    JsonObject call = asm.toResponse().getJsonArray("choices").getJsonObject(0)
+        .getJsonObject("message").getJsonArray("tool_calls").getJsonObject(0);
+    assertEquals("call_1", call.getString("id"));
+    assertEquals("data.lookup", call.getJsonObject("function").getString("name"));
+    assertEquals("T-1", new JsonObject(call.getJsonObject("function").getString("arguments"))
+        .getString("tradeId"));
+  }
+
+  @Test
+  void braces_inside_strings_are_ignored() {
+    var asm = new ChatCompletionStreamAssembler();
+    asm.feed(Buffer.buffer(toolDelta(0, "c", "case.raiseTicket",
+        "{\"summary\":\"closing } brace and \\\" quote {\"")));
+    assertFalse(asm.firstToolCallComplete());
+    asm.feed(Buffer.buffer(toolDelta(0, null, null, "}")));
+    assertTrue(asm.firstToolCallComplete());
+  }
+
+  @Test
+  void multi_byte_character_split_across_buffers_survives() {
+    String text = toolDelta(0, "c", "comms.notify", "{\"message\":\"Zahlung \u00fcber 5\u20ac\"}");
+    byte[] line = text.getBytes(StandardCharsets.UTF_8);
+    // Cut after the first byte of the three-byte euro sign
+    int cut = text.substring(0, text.indexOf('\u20ac')).getBytes(StandardCharsets.UTF_8).length + 1;
+    var asm = new ChatCompletionStreamAssembler();
+    asm.feed(Buffer.buffer(Arrays.copyOfRange(line, 0, cut)));
+    asm.feed(Buffer.buffer(Arrays.copyOfRange(line, cut, line.length)));
+
+    String args = asm.toResponse().getJsonArray("choices").getJsonObject(0)
+        .getJsonObject("message").getJsonArray("tool_calls").getJsonObject(0)
+        .getJsonObject("function").getString("arguments");
+    assertEquals("Zahlung \u00fcber 5\u20ac", new JsonObject(args).getString("message"));
+  }
+
+  @Test
+  void lines_split_across_buffers_are_reassembled() {
+    String line = toolDelta(0, "c", "case.classify", "{\"severity\":\"HIGH\"}");
+    var asm = new ChatCompletionStreamAssembler();
+    asm.feed(Buffer.buffer(line.substring(0, 17)));
+    assertFalse(asm.firstToolCallComplete());
+    asm.feed(Buffer.buffer(line.substring(17)));
+    assertTrue(asm.firstToolCallComplete());
+  }
+
+  @Test
+  void text_content_and_usage_are_collected() {
+    var asm = new ChatCompletionStreamAssembler();
+    asm.feed(Buffer.buffer("data: {\"choices\":[{\"delta\":{\"content\":\"Hel\"}}]}\n\n"
+        + "data: {\"choices\":[{\"delta\":{\"content\":\"lo\"},\"finish_reason\":\"stop\"}]}\n\n"
+        + "data: {\"choices\":[],\"usage\":{\"total_tokens\":42}}\n\n"
+        + "data: [DONE]\n\n"));
+    assertTrue(asm.done());
+    assertFalse(asm.firstToolCallComplete());
+    JsonObject response = asm.toResponse();
+    assertEquals("Hello", response.getJsonArray("choices").getJsonObject(0)
+        .getJsonObject("message").getString("content"));
+    assertEquals(42, response.getJsonObject("usage").getInteger("total_tokens"));
+  }
+
+  @Test
+  void second_tool_call_completes_the_first() {
+    var asm = new ChatCompletionStreamAssembler();
+    asm.feed(Buffer.buffer(toolDelta(0, "a", "data.lookup", "{\"tradeId\":\"T-1\"")));
+    assertFalse(asm.firstToolCallComplete());
+    asm.feed(Buffer.buffer(toolDelta(1, "b", "case.classify", "")));
+    assertTrue(asm.firstToolCallComplete());
+  }
+
+  @Test
+  void malformed_chunks_are_skipped() {
+    var asm = new ChatCompletionStreamAssembler();
+    asm.feed(Buffer.buffer("data: {not json\n\n: keep-alive comment\n\n"));
+    asm.feed(Buffer.buffer(toolDelta(0, "a", "data.lookup", "{}")));
+    assertTrue(asm.firstToolCallComplete());
+  }
+}
@@ -0,0 +1,155 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingLlmClientTest {
+
+  /** Delegate whose calls stay pending until the test completes them. */
+  private static final class PendingClient implements LlmClient {
+    final List<Promise<JsonObject>> calls = new ArrayList<>();
+    final List<CancellationToken> tokens = new ArrayList<>();
+
+    @Override
+    public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+      return decideNext(event, state, new CancellationToken());
+    }
+
+    @Override
+    public Future<JsonObject> decideNext(JsonObject event, JsonObject state, CancellationToken token) {
+      Promise<JsonObject> p = Promise.promise();
+      calls.add(p);
+      tokens.add(token);
+      return p.future();
+    }
+
+    @Override
+    public String promptKey(JsonObject event, JsonObject state) {
+      return event.getString("reason") == null ? null
+          : CanonicalJson.sha256(event.getString("reason") + "|" + state.getInteger("step", 0));
+    }
+
+    void answer(int i) {
+      calls.get(i).complete(new JsonObject()
+          .put("intent", "CALL_TOOL")
+          .put("tool", "data.lookup")
+          .put("args", new JsonObject())
+          .put("usage", new JsonObject().put("total_tokens", 500)));
+    }
+  }
+
+  private static JsonObject event(String reason) {
+    return new JsonObject().put("tradeId", "T-1").put("reason", reason);
+  }
+
+  private static final JsonObject STEP0 = new JsonObject().put("step", 0);
+
+  @Test
+  void concurrent_identical_calls_share_one_upstream_call() {
+    var delegate = new PendingClient();
+    var client = new CoalescingLlmClient(delegate);
+
+    var a = client.decideNext(event("Missing ISIN"), STEP0);
+    var b = client.decideNext(event("Missing ISIN"), STEP0);
+    var c = client.decideNext(event("Missing ISIN"), STEP0);
+    assertEquals(1, delegate.calls.size());
+    assertEquals(1, client.stats().getInteger("inFlight"));
+
+    delegate.answer(0);
+
+    assertEquals(500, a.result().getJsonObject("usage").getInteger("total_tokens"));
+    assertNull(a.result().getBoolean("coalesced"));
+    assertTrue(b.result().getBoolean("coalesced"));
+    assertNull(b.result().getJsonObject("usage"));
+    // Every caller owns its copy
+    b.result().put("tool", "changed");
+    assertEquals("data.lookup", c.result().getString("tool"));
+    assertEquals(1, client.stats().getLong("leaders"));
+    assertEquals(2, client.stats().getLong("joined"));
+    assertEquals(0, client.stats().getInteger("inFlight"));
+  }
+
+  @Test
+  void different_prompts_are_not_coalesced() {
+    var delegate = new PendingClient();
+    var client = new CoalescingLlmClient(delegate);
+    client.decideNext(event("Missing ISIN"), STEP0);
+    client.decideNext(event("Bad SSI"), STEP0);
+    client.decideNext(event("Missing ISIN"), new JsonObject().put("step", 1));
+    assertEquals(3, delegate.calls.size());
+  }
+
+  @Test
+  void nothing_is_retained_after_completion() {
+    var delegate = new PendingClient();
+    var client = new CoalescingLlmClient(delegate);
+    client.decideNext(event("Missing ISIN"), STEP0);
+    delegate.answer(0);
+    client.decideNext(event("Missing ISIN"), STEP0);
+    assertEquals(2, delegate.calls.size());
+  }
+
+  @Test
+  void failure_is_shared_by_all_callers() {
+    var delegate = new PendingClient();
+    var client = new CoalescingLlmClient(delegate);
+    var a = client.decideNext(event("Missing ISIN"), STEP0);
+    var b = client.decideNext(event("Missing ISIN"), STEP0);
+    delegate.calls.get(0).fail("provider down");
+    assertEquals("provider down", a.cause().getMessage());
+    assertEquals("provider down", b.cause().getMessage());
+  }
+
+  @Test
+  void upstream_is_cancelled_only_when_every_caller_leaves() {
+    var delegate = new PendingClient();
+    var client = new CoalescingLlmClient(delegate);
+    var t1 = new CancellationToken();
+    var t2 = new CancellationToken();
+    var a = client.decideNext(event("Missing ISIN"), STEP0, t1);
+    var b = client.decideNext(event("Missing ISIN"), STEP0, t2);
+
+    t1.cancel("client gone");
+    assertInstanceOf(CancellationException.class, a.cause());
+    assertFalse(delegate.tokens.get(0).isCancelled());
+
+    // The remaining caller now pays for the call
+    delegate.answer(0);
+    assertEquals(500, b.result().getJsonObject("usage").getInteger("total_tokens"));
+  }
+
+  @Test
+  void last_caller_leaving_cancels_upstream() {
+    var delegate = new PendingClient();
+    var client = new CoalescingLlmClient(delegate);
+    var t1 = new CancellationToken();
+    var t2 = new CancellationToken();
+    client.decideNext(event("Missing ISIN"), STEP0, t1);
+    client.decideNext(event("Missing ISIN"), STEP0, t2);
+    t1.cancel("a");
+    t2.cancel("b");
+    assertTrue(delegate.tokens.get(0).isCancelled());
+    assertEquals(0, client.stats().getInteger("inFlight"));
+    // A new caller starts a fresh flight
+    client.decideNext(event("Missing ISIN"), STEP0);
+    assertEquals(2, delegate.calls.size());
+  }
+
+  @Test
+  void null_prompt_key_passes_through() {
+    var delegate = new PendingClient();
+    var client = new CoalescingLlmClient(delegate);
+    client.decideNext(new JsonObject(), STEP0);
+    client.decideNext(new JsonObject(), STEP0);
+    assertEquals(2, delegate.calls.size());
+  }
+}
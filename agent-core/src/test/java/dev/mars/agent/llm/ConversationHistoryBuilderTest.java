@@ -0,0 +1,102 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationHistoryBuilderTest {
+
+  private static JsonObject step(int n, String tool, JsonObject result) {
+    return new JsonObject()
+        .put("step", n)
+        .put("command", new JsonObject().put("tool", tool)
+            .put("args", new JsonObject().put("tradeId", "T-1")))
+        .put("toolResult", result);
+  }
+
+  /** A data.lookup-style payload with a large nested section. */
+  private static JsonObject bigLookup() {
+    JsonArray positions = new JsonArray();
+    for (int i = 0; i < 200; i++) {
+      positions.add(new JsonObject().put("account", "ACC-" + i).put("qty", i * 10));
+    }
+    return new JsonObject().put("status", "ok").put("isin", "US0378331005").put("positions", positions);
+  }
+
+  @Test
+  void empty_trail_renders_nothing() {
+    assertEquals("", new ConversationHistoryBuilder(100).build(new JsonArray()));
+  }
+
+  @Test
+  void small_trail_is_rendered_in_full_and_compact() {
+    var trail = new JsonArray()
+        .add(step(0, "data.lookup", new JsonObject().put("isin", "US0378331005")))
+        .add(step(1, "case.classify", new JsonObject().put("category", "Settlement")));
+
+    String text = new ConversationHistoryBuilder(0).build(trail);
+
+    assertEquals("""
+        Step 0: data.lookup {"tradeId":"T-1"} → {"isin":"US0378331005"}
+        Step 1: case.classify {"tradeId":"T-1"} → {"category":"Settlement"}""", text);
+  }
+
+  @Test
+  void large_old_results_are_summarised_first() {
+    var trail = new JsonArray()
+        .add(step(0, "data.lookup", bigLookup()))
+        .add(step(1, "case.classify", new JsonObject().put("category", "Settlement")));
+
+    var builder = new ConversationHistoryBuilder(200);
+    String text = builder.build(trail);
+
+    assertTrue(text.contains("\"positions\":\"[200 items]\""), text);
+    assertTrue(text.contains("\"isin\":\"US0378331005\""), text);
+    assertTrue(text.contains("(summarised)"));
+    assertTrue(text.endsWith("{\"category\":\"Settlement\"}"), "newest step stays verbatim");
+    assertTrue(TokenEstimator.estimate(text) <= builder.tokenBudget());
+  }
+
+  @Test
+  void oldest_steps_are_dropped_when_summaries_do_not_fit() {
+    var trail = new JsonArray();
+    for (int i = 0; i < 20; i++) {
+      trail.add(step(i, "data.lookup", new JsonObject().put("note", "n" + i)));
+    }
+
+    var builder = new ConversationHistoryBuilder(60);
+    String text = builder.build(trail);
+
+    assertTrue(text.startsWith("("), text);
+    assertTrue(text.contains("earlier step(s) omitted"));
+    assertTrue(text.contains("Step 19:"), "newest step is always kept");
+    assertFalse(text.contains("Step 0:"));
+  }
+
+  @Test
+  void newest_step_is_kept_even_over_budget() {
+    var trail = new JsonArray().add(step(0, "data.lookup", bigLookup()));
+    String text = new ConversationHistoryBuilder(5).build(trail);
+    assertTrue(text.startsWith("Step 0: data.lookup"));
+  }
+
+  @Test
+  void summarise_keeps_short_scalars_and_collapses_containers() {
+    var summary = ConversationHistoryBuilder.summarise(new JsonObject()
+        .put("ok", true)
+        .put("n", 3)
+        .put("nested", new JsonObject().put("a", 1).put("b", 2))
+        .put("long", "x".repeat(100)));
+    assertEquals(true, summary.getBoolean("ok"));
+    assertEquals(3, summary.getInteger("n"));
+    assertEquals("{2 fields}", summary.getString("nested"));
+    assertEquals(ConversationHistoryBuilder.SUMMARY_VALUE_CHARS + 1, summary.getString("long").length());
+  }
+
+  @Test
+  void negative_budget_is_rejected() {
+    assertThrows(IllegalArgumentException.class, () -> new ConversationHistoryBuilder(-1));
+  }
+}
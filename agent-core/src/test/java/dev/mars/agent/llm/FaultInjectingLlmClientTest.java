@@ -0,0 +1,95 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class FaultInjectingLlmClientTest {
+
+  private static final LlmClient ANSWER = (event, state) -> Future.succeededFuture(
+      new JsonObject().put("intent", "CALL_TOOL").put("tool", "data.lookup"));
+
+  private static final JsonObject EVENT = new JsonObject().put("reason", "Missing ISIN");
+  private static final JsonObject STEP0 = new JsonObject().put("step", 0);
+
+  @Test
+  void latency_is_applied_on_a_timer(Vertx vertx, VertxTestContext ctx) {
+    var client = new FaultInjectingLlmClient(vertx, ANSWER,
+        FaultProfile.NONE.withLatency(LatencyProfile.parse("fixed:100")), 1L);
+    long start = System.currentTimeMillis();
+    var decision = client.decideNext(EVENT, STEP0);
+    assertFalse(decision.isComplete());
+    decision.onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+      assertTrue(System.currentTimeMillis() - start >= 90);
+      assertEquals("data.lookup", cmd.getString("tool"));
+      assertEquals(100, client.stats().getLong("delayedMs"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void failures_follow_the_configured_rates(Vertx vertx, VertxTestContext ctx) {
+    var client = new FaultInjectingLlmClient(vertx, ANSWER, FaultProfile.NONE
+        .withThrottle(0.2, 250)
+        .withErrorRate(0.1), 42L);
+    List<Future<JsonObject>> all = new ArrayList<>();
+    for (int i = 0; i < 2_000; i++) {
+      all.add(client.decideNext(EVENT, STEP0));
+    }
+    Future.join(all).onComplete(ar -> ctx.verify(() -> {
+      long throttled = client.stats().getLong("throttled");
+      long errors = client.stats().getLong("errors");
+      assertTrue(throttled > 330 && throttled < 470, "throttled " + throttled);
+      assertTrue(errors > 140 && errors < 260, "errors " + errors);
+      LlmApiException e429 = all.stream().filter(Future::failed)
+          .map(f -> (LlmApiException) f.cause()).filter(e -> e.status() == 429)
+          .findFirst().orElseThrow();
+      assertEquals(250, e429.retryAfterMs());
+      assertTrue(e429.retryable());
+      ctx.completeNow();
+    }));
+  }
+
+  @Test
+  void timeouts_hang_then_fail(Vertx vertx, VertxTestContext ctx) {
+    var client = new FaultInjectingLlmClient(vertx, ANSWER,
+        FaultProfile.NONE.withTimeouts(1.0, 50), null);
+    client.decideNext(EVENT, STEP0).onComplete(ctx.failing(err -> ctx.verify(() -> {
+      assertInstanceOf(TimeoutException.class, err);
+      assertEquals(1, client.stats().getLong("timeouts"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void cancellation_stops_the_delay(Vertx vertx, VertxTestContext ctx) {
+    var client = new FaultInjectingLlmClient(vertx, ANSWER,
+        FaultProfile.NONE.withLatency(LatencyProfile.parse("fixed:10000")), null);
+    var token = new CancellationToken();
+    client.decideNext(EVENT, STEP0, token).onComplete(ctx.failing(err -> ctx.verify(() -> {
+      assertInstanceOf(CancellationException.class, err);
+      ctx.completeNow();
+    })));
+    token.cancel("client gone");
+  }
+
+  @Test
+  void rejects_rates_above_one() {
+    assertThrows(IllegalArgumentException.class,
+        () -> FaultProfile.NONE.withErrorRate(0.6).withThrottle(0.6, 0));
+    assertTrue(FaultProfile.NONE.isNone());
+  }
+}
@@ -0,0 +1,89 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonTemplateTest {
+
+  private static final Map<String, Object> VARS = Map.of(
+      "tradeId", "T-1", "step", 2, "ids", new JsonArray().add("A").add("B"));
+
+  @Test
+  void substitutes_placeholders_inside_strings() {
+    var t = JsonTemplate.compile(new JsonObject()
+        .put("summary", "Trade ${tradeId} at step ${step}")
+        .put("plain", "no placeholders")
+        .put("count", 3));
+    JsonObject out = t.renderObject(VARS::get);
+    assertEquals("Trade T-1 at step 2", out.getString("summary"));
+    assertEquals("no placeholders", out.getString("plain"));
+    assertEquals(3, out.getInteger("count"));
+  }
+
+  @Test
+  void whole_string_placeholder_keeps_the_value_type() {
+    var t = JsonTemplate.compile(new JsonObject()
+        .put("step", "${step}")
+        .put("ids", "${ids}")
+        .put("missing", "${nope}"));
+    JsonObject out = t.renderObject(VARS::get);
+    assertEquals(2, out.getInteger("step"));
+    assertEquals(new JsonArray().add("A").add("B"), out.getJsonArray("ids"));
+    assertTrue(out.containsKey("missing"));
+    assertNull(out.getValue("missing"));
+    // Rendered containers are copies
+    out.getJsonArray("ids").add("C");
+    assertEquals(2, ((JsonArray) VARS.get("ids")).size());
+  }
+
+  @Test
+  void defaults_apply_only_when_unset() {
+    var t = JsonTemplate.compile(new JsonArray()
+        .add("${tradeId:-unknown}")
+        .add("${reason:-Unknown failure}")
+        .add("id=${nope}!"));
+    JsonArray out = (JsonArray) t.render(VARS::get);
+    assertEquals(new JsonArray().add("T-1").add("Unknown failure").add("id=!"), out);
+  }
+
+  @Test
+  void whole_string_default_is_a_json_scalar() {
+    var t = JsonTemplate.compile(new JsonArray()
+        .add("${nope:-0}")
+        .add("${nope:-2.5}")
+        .add("${nope:-false}")
+        .add("${nope:-null}")
+        .add("${nope:-007}")
+        .add("${nope:-[1]}")
+        .add("n=${nope:-0}"));
+    JsonArray out = (JsonArray) t.render(VARS::get);
+    assertEquals(0, out.getValue(0));
+    assertEquals(2.5, out.getValue(1));
+    assertEquals(false, out.getValue(2));
+    assertNull(out.getValue(3));
+    assertEquals("007", out.getValue(4));
+    assertEquals("[1]", out.getValue(5));
+    assertEquals("n=0", out.getValue(6));
+  }
+
+  @Test
+  void renders_are_independent() {
+    var t = JsonTemplate.compile(new JsonObject().put("args", new JsonObject().put("id", "${tradeId}")));
+    JsonObject first = t.renderObject(VARS::get);
+    first.getJsonObject("args").put("id", "changed");
+    assertEquals("T-1", t.renderObject(VARS::get).getJsonObject("args").getString("id"));
+  }
+
+  @Test
+  void rejects_malformed_templates() {
+    assertThrows(IllegalArgumentException.class, () -> JsonTemplate.compile("Trade ${tradeId"));
+    assertThrows(IllegalArgumentException.class, () -> JsonTemplate.compile(new Object()));
+    assertThrows(IllegalStateException.class,
+        () -> JsonTemplate.compile("text").renderObject(VARS::get));
+  }
+}
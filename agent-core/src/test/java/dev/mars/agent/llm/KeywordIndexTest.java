@@ -0,0 +1,55 @@
+package dev.mars.agent.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeywordIndexTest {
+
+  private static BitSet bits(int... groups) {
+    BitSet b = new BitSet();
+    for (int g : groups) {
+      b.set(g);
+    }
+    return b;
+  }
+
+  @Test
+  void finds_every_group_with_a_keyword_in_the_text() {
+    var index = KeywordIndex.build(List.of(
+        List.of("lei"),
+        List.of("amount", "mismatch"),
+        List.of("duplicate")));
+    assertEquals(bits(0, 1), index.matches("lei mismatch on settlement"));
+    assertEquals(bits(2), index.matches("possible duplicate booking"));
+    assertEquals(bits(), index.matches("missing isin"));
+    assertEquals(3, index.groups());
+  }
+
+  @Test
+  void overlapping_and_nested_keywords_are_all_reported() {
+    // The classic he/she/his/hers set: matches end inside other matches
+    var index = KeywordIndex.build(List.of(
+        List.of("he"), List.of("she"), List.of("his"), List.of("hers")));
+    assertEquals(bits(0, 1, 3), index.matches("ushers"));
+    assertEquals(bits(2), index.matches("this"));
+  }
+
+  @Test
+  void failure_links_recover_after_a_partial_match() {
+    var index = KeywordIndex.build(List.of(List.of("swap leg"), List.of("leg")));
+    assertEquals(bits(1), index.matches("swap le leg"));
+    assertEquals(bits(0, 1), index.matches("a swap swap leg"));
+  }
+
+  @Test
+  void keywords_are_normalised_and_blanks_ignored() {
+    var index = KeywordIndex.build(List.of(Set.of("OFAC", " "), Set.of()));
+    assertEquals(bits(0), index.matches(KeywordIndex.normalise("OFAC Hit")));
+    assertEquals(bits(), index.matches(""));
+  }
+}
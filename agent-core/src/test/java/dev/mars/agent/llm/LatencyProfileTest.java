@@ -0,0 +1,81 @@
+package dev.mars.agent.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyProfileTest {
+
+  @Test
+  void parses_specs() {
+    assertEquals(LatencyProfile.NONE, LatencyProfile.parse(null));
+    assertEquals(LatencyProfile.NONE, LatencyProfile.parse("none"));
+    assertEquals(new LatencyProfile(LatencyProfile.Kind.FIXED, 50, 0), LatencyProfile.parse("fixed:50"));
+    assertEquals(new LatencyProfile(LatencyProfile.Kind.UNIFORM, 10, 20), LatencyProfile.parse("uniform:10:20"));
+    assertEquals("lognormal:200:1500", LatencyProfile.parse("LogNormal:200:1500").toString());
+  }
+
+  @Test
+  void rejects_malformed_specs() {
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("gaussian:1:2"));
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("fixed"));
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("uniform:20:10"));
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("fixed:abc"));
+  }
+
+  @Test
+  void fixed_and_uniform_stay_in_range() {
+    var rnd = new SplittableRandom(1);
+    assertEquals(50, LatencyProfile.parse("fixed:50").sampleMs(rnd));
+    var uniform = LatencyProfile.parse("uniform:10:20");
+    for (int i = 0; i < 1000; i++) {
+      long v = uniform.sampleMs(rnd);
+      assertTrue(v >= 10 && v <= 20);
+    }
+  }
+
+  @Test
+  void lognormal_matches_median_and_p99() {
+    var profile = LatencyProfile.parse("lognormal:200:1500");
+    var rnd = new SplittableRandom(42);
+    long[] samples = new long[20_000];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = profile.sampleMs(rnd);
+    }
+    Arrays.sort(samples);
+    long median = samples[samples.length / 2];
+    long p99 = samples[(int) (samples.length * 0.99)];
+    assertTrue(median > 180 && median < 220, "median " + median);
+    assertTrue(p99 > 1200 && p99 < 1800, "p99 " + p99);
+  }
+
+  @Test
+  void empirical_histogram_follows_bucket_weights() {
+    var profile = LatencyProfile.parse("empirical:100=70,1000=20,5000=10");
+    assertEquals("empirical:100=70,1000=20,5000=10", profile.toString());
+    assertEquals(5000, profile.b());
+    var rnd = new SplittableRandom(7);
+    int fast = 0;
+    int slow = 0;
+    for (int i = 0; i < 10_000; i++) {
+      long v = profile.sampleMs(rnd);
+      assertTrue(v >= 0 && v <= 5000, "sample " + v);
+      if (v <= 100) fast++;
+      if (v > 1000) slow++;
+    }
+    assertTrue(fast > 6700 && fast < 7300, "fast " + fast);
+    assertTrue(slow > 850 && slow < 1150, "slow " + slow);
+  }
+
+  @Test
+  void rejects_malformed_histograms() {
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("empirical"));
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("empirical:100"));
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("empirical:500=1,100=1"));
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("empirical:100=0"));
+    assertThrows(IllegalArgumentException.class, () -> LatencyProfile.parse("empirical:x=1"));
+  }
+}
@@ -0,0 +1,54 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class LocalBatchBackendTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void processes_each_line_and_writes_output(Vertx vertx, VertxTestContext ctx) {
+    var backend = new LocalBatchBackend(vertx, dir, body -> body.getString("model").equals("broken")
+        ? Future.failedFuture("model not found")
+        : Future.succeededFuture(new JsonObject().put("echo", body.getString("model"))));
+    Buffer input = Buffer.buffer()
+        .appendString(new JsonObject().put("custom_id", "a").put("body", new JsonObject().put("model", "m1")).encode() + "\n")
+        .appendString(new JsonObject().put("custom_id", "b").put("body", new JsonObject().put("model", "broken")).encode() + "\n");
+
+    backend.submit(input).onComplete(ctx.succeeding(id -> awaitOutput(vertx, backend, id)
+        .onComplete(ctx.succeeding(out -> ctx.verify(() -> {
+          String[] lines = out.toString().split("\n");
+          assertEquals(2, lines.length);
+          JsonObject ok = new JsonObject(lines[0]);
+          assertEquals("a", ok.getString("custom_id"));
+          assertEquals(200, ok.getJsonObject("response").getInteger("status_code"));
+          assertEquals("m1", ok.getJsonObject("response").getJsonObject("body").getString("echo"));
+          JsonObject failed = new JsonObject(lines[1]);
+          assertNull(failed.getJsonObject("response"));
+          assertEquals("model not found", failed.getJsonObject("error").getString("message"));
+          assertTrue(Files.exists(dir.resolve(id + ".input.jsonl")));
+          ctx.completeNow();
+        })))));
+  }
+
+  private static Future<Buffer> awaitOutput(Vertx vertx, BatchBackend backend, String id) {
+    return backend.poll(id).compose(out -> out != null ? Future.succeededFuture(out)
+        : Future.<Void>future(p -> vertx.setTimer(10, t -> p.complete()))
+            .compose(v -> awaitOutput(vertx, backend, id)));
+  }
+}
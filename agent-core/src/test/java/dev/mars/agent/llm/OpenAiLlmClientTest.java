@@ -1,5 +1,6 @@
 package dev.mars.agent.llm;
 
+import dev.mars.mcp.tool.CancellationToken;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxExtension;
@@ -8,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -37,4 +39,580 @@ class OpenAiLlmClientTest {
         ctx.completeNow();
       });
   }
+
+  @Test
+  void cancellation_aborts_in_flight_request(Vertx vertx, VertxTestContext ctx) {
+    var token = new CancellationToken();
+    // A server that accepts the request but never answers
+    vertx.createHttpServer()
+      .requestHandler(req -> token.cancel("client disconnected"))
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx,
+            "http://localhost:" + server.actualPort(), "sk-test", "gpt-4o", List.of());
+        client.decideNext(
+            new JsonObject().put("tradeId", "T-101").put("reason", "Missing ISIN"),
+            new JsonObject().put("step", 0), token)
+          .onComplete(ctx.failing(err -> ctx.verify(() -> {
+            assertInstanceOf(CancellationException.class, err);
+            assertEquals("client disconnected", err.getMessage());
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void already_cancelled_token_skips_request(Vertx vertx, VertxTestContext ctx) {
+    var token = new CancellationToken();
+    token.cancel("timeout");
+    var client = new OpenAiLlmClient(vertx,
+        "http://localhost:19999", "sk-test", "gpt-4o", List.of());
+    client.decideNext(new JsonObject(), new JsonObject(), token)
+      .onComplete(ctx.failing(err -> ctx.verify(() -> {
+        assertInstanceOf(CancellationException.class, err);
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void prompt_key_ignores_key_order_and_correlation_id(Vertx vertx) {
+    var client = new OpenAiLlmClient(vertx,
+        "https://api.example.com/v1", "sk-test", "gpt-4o", List.of());
+    var a = new JsonObject().put("tradeId", "T-1").put("reason", "Missing ISIN")
+        .put("correlationId", "c-1");
+    var b = new JsonObject().put("reason", "Missing ISIN").put("tradeId", "T-1")
+        .put("correlationId", "c-2");
+    var state = new JsonObject().put("step", 0);
+    assertEquals(client.promptKey(a, state), client.promptKey(b, state));
+    assertEquals(64, client.promptKey(a, state).length());
+  }
+
+  @Test
+  void prompt_key_changes_with_state_model_and_temperature(Vertx vertx) {
+    var event = new JsonObject().put("tradeId", "T-1").put("reason", "Missing ISIN");
+    var state = new JsonObject().put("step", 0);
+    var base = new OpenAiLlmClient(vertx, "https://api.example.com/v1", "sk", "gpt-4o", List.of());
+    var otherModel = new OpenAiLlmClient(vertx, "https://api.example.com/v1", "sk", "gpt-4o-mini", List.of());
+    var hotter = new OpenAiLlmClient(vertx, "https://api.example.com/v1", "sk", "gpt-4o", 0.9, List.of());
+    String key = base.promptKey(event, state);
+    assertNotEquals(key, base.promptKey(event, new JsonObject().put("step", 1)));
+    assertNotEquals(key, otherModel.promptKey(event, state));
+    assertNotEquals(key, hotter.promptKey(event, state));
+  }
+
+  @Test
+  void prompt_key_is_computed_once_per_decision(Vertx vertx) {
+    var client = new OpenAiLlmClient(vertx, "https://api.example.com/v1", "sk", "gpt-4o", List.of());
+    var event = new JsonObject().put("tradeId", "T-1").put("reason", "Missing ISIN");
+    var trail = new io.vertx.core.json.JsonArray();
+    var state = new JsonObject().put("step", 0).put("history", trail);
+    String key = client.promptKey(event, state);
+    // Each decorator asks again with the same objects: no new rendering
+    assertSame(key, client.promptKey(event, state));
+
+    // The runner updates the same state object in place for the next step
+    trail.add(new JsonObject().put("step", 0)
+        .put("command", new JsonObject().put("tool", "data.lookup")));
+    state.put("step", 1);
+    String next = client.promptKey(event, state);
+    assertNotEquals(key, next);
+    assertEquals(next, client.promptKey(event, state.copy()));
+  }
+
+  @Test
+  void concurrent_runs_keep_their_own_rendered_request(Vertx vertx) {
+    var client = new OpenAiLlmClient(vertx, "https://api.example.com/v1", "sk", "gpt-4o", List.of());
+    var eventA = new JsonObject().put("tradeId", "T-1");
+    var stateA = new JsonObject().put("step", 0);
+    var eventB = new JsonObject().put("tradeId", "T-2");
+    var stateB = new JsonObject().put("step", 0);
+
+    String keyA = client.promptKey(eventA, stateA);
+    String keyB = client.promptKey(eventB, stateB);
+    // Run B's rendering does not evict run A's
+    assertSame(keyA, client.promptKey(eventA, stateA));
+    assertSame(keyB, client.promptKey(eventB, stateB));
+  }
+
+  @Test
+  void request_body_carries_templated_prefix_and_user_message(Vertx vertx, VertxTestContext ctx) {
+    JsonObject[] received = new JsonObject[1];
+    vertx.createHttpServer()
+      .requestHandler(req -> req.body().onSuccess(body -> {
+        received[0] = body.toJsonObject();
+        req.response().setStatusCode(500).end("stop here");
+      }))
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx,
+            "http://localhost:" + server.actualPort(), "sk-test", "gpt-4o", List.of());
+        client.decideNext(new JsonObject().put("tradeId", "T-7"), new JsonObject().put("step", 0))
+          .onComplete(ctx.failing(err -> ctx.verify(() -> {
+            JsonObject body = received[0];
+            assertEquals("gpt-4o", body.getString("model"));
+            assertEquals("auto", body.getString("tool_choice"));
+            assertEquals(OpenAiLlmClient.DEFAULT_TEMPERATURE, body.getDouble("temperature"));
+            assertFalse(body.containsKey("stream"));
+            var messages = body.getJsonArray("messages");
+            assertEquals(2, messages.size());
+            assertEquals("system", messages.getJsonObject(0).getString("role"));
+            assertEquals("user", messages.getJsonObject(1).getString("role"));
+            assertTrue(messages.getJsonObject(1).getString("content").contains("T-7"));
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void prompt_includes_compacted_history(Vertx vertx) {
+    var client = new OpenAiLlmClient(vertx, "https://api.example.com/v1", "sk", "gpt-4o", List.of());
+    var event = new JsonObject().put("tradeId", "T-1");
+    var entry = new JsonObject().put("step", 0)
+        .put("command", new JsonObject().put("tool", "data.lookup"))
+        .put("toolResult", new JsonObject().put("isin", "US0378331005"));
+    var withHistory = new JsonObject().put("step", 1)
+        .put("history", new io.vertx.core.json.JsonArray().add(entry));
+    var withLastOnly = new JsonObject().put("step", 1).put("last", entry);
+    // Both sources render the same prompt; a different trail changes it
+    assertEquals(client.promptKey(event, withHistory), client.promptKey(event, withLastOnly));
+    assertNotEquals(client.promptKey(event, withHistory),
+        client.promptKey(event, new JsonObject().put("step", 1)));
+  }
+
+  @Test
+  void non_streaming_response_is_parsed(Vertx vertx, VertxTestContext ctx) {
+    JsonObject completion = new JsonObject()
+        .put("choices", new io.vertx.core.json.JsonArray().add(new JsonObject()
+            .put("message", new JsonObject()
+                .put("role", "assistant")
+                .put("tool_calls", new io.vertx.core.json.JsonArray().add(new JsonObject()
+                    .put("id", "call_1")
+                    .put("type", "function")
+                    .put("function", new JsonObject()
+                        .put("name", "data.lookup")
+                        .put("arguments", "{\"tradeId\":\"T-1\"}")))))))
+        .put("usage", new JsonObject().put("total_tokens", 321));
+    vertx.createHttpServer()
+      .requestHandler(req -> req.response()
+          .putHeader("content-type", "application/json")
+          .end(completion.encode()))
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx,
+            "http://localhost:" + server.actualPort(), "sk-test", "gpt-4o", List.of());
+        client.decideNext(new JsonObject().put("tradeId", "T-1"), new JsonObject().put("step", 0))
+          .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+            assertEquals("data.lookup", cmd.getString("tool"));
+            assertEquals("T-1", cmd.getJsonObject("args").getString("tradeId"));
+            assertFalse(cmd.getBoolean("stop"));
+            assertEquals(321, cmd.getJsonObject("usage").getInteger("total_tokens"));
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  private static JsonObject completion(String tool) {
+    return new JsonObject()
+        .put("choices", new io.vertx.core.json.JsonArray().add(new JsonObject()
+            .put("message", new JsonObject()
+                .put("role", "assistant")
+                .put("tool_calls", new io.vertx.core.json.JsonArray().add(new JsonObject()
+                    .put("id", "call_1")
+                    .put("type", "function")
+                    .put("function", new JsonObject()
+                        .put("name", tool)
+                        .put("arguments", "{}")))))));
+  }
+
+  @Test
+  void throttled_request_is_retried_after_retry_after(Vertx vertx, VertxTestContext ctx) {
+    var calls = new java.util.concurrent.atomic.AtomicInteger();
+    vertx.createHttpServer()
+      .requestHandler(req -> {
+        if (calls.incrementAndGet() == 1) {
+          req.response().setStatusCode(429)
+              .putHeader("retry-after-ms", "100")
+              .end("{\"error\":\"rate limited\"}");
+        } else {
+          req.response().putHeader("content-type", "application/json")
+              .end(completion("case.classify").encode());
+        }
+      })
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(),
+            "sk-test", "gpt-4o", OpenAiSettings.DEFAULTS.withRetry(new RetryPolicy(2, 10, 50)), List.of());
+        long start = System.currentTimeMillis();
+        client.decideNext(new JsonObject().put("tradeId", "T-3"), new JsonObject().put("step", 0))
+          .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+            assertEquals("case.classify", cmd.getString("tool"));
+            assertEquals(2, calls.get());
+            assertTrue(System.currentTimeMillis() - start >= 90, "waited for Retry-After");
+            JsonObject stats = client.rateLimitStats();
+            assertEquals(1, stats.getLong("retries"));
+            assertEquals(1, stats.getLong("pauses"));
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void batch_stand_in_calls_are_paced_and_retried(Vertx vertx, VertxTestContext ctx) {
+    var calls = new java.util.concurrent.atomic.AtomicInteger();
+    vertx.createHttpServer()
+      .requestHandler(req -> {
+        if (calls.incrementAndGet() == 1) {
+          req.response().setStatusCode(429)
+              .putHeader("retry-after-ms", "50")
+              .end("{\"error\":\"rate limited\"}");
+        } else {
+          req.response().putHeader("content-type", "application/json")
+              .end(completion("comms.notify").encode());
+        }
+      })
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(),
+            "sk-test", "gpt-4o", OpenAiSettings.DEFAULTS.withRetry(new RetryPolicy(2, 10, 50)), List.of());
+        JsonObject body = client.batchRequest(new JsonObject().put("tradeId", "T-5"),
+            new JsonObject().put("step", 0));
+        client.complete(body)
+          .onComplete(ctx.succeeding(completion -> ctx.verify(() -> {
+            assertEquals("comms.notify", client.toCommand(completion).getString("tool"));
+            JsonObject stats = client.rateLimitStats();
+            assertEquals(1, stats.getLong("retries"));
+            assertEquals(2, stats.getLong("granted"));
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void client_errors_are_not_retried(Vertx vertx, VertxTestContext ctx) {
+    var calls = new java.util.concurrent.atomic.AtomicInteger();
+    vertx.createHttpServer()
+      .requestHandler(req -> {
+        calls.incrementAndGet();
+        req.response().setStatusCode(400).end("bad request");
+      })
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(),
+            "sk-test", "gpt-4o", OpenAiSettings.DEFAULTS.withRetry(new RetryPolicy(3, 10, 50)), List.of());
+        client.decideNext(new JsonObject().put("tradeId", "T-4"), new JsonObject().put("step", 0))
+          .onComplete(ctx.failing(err -> ctx.verify(() -> {
+            var api = assertInstanceOf(LlmApiException.class, err);
+            assertEquals(400, api.status());
+            assertFalse(api.retryable());
+            assertEquals(1, calls.get());
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void server_errors_are_retried_until_exhausted(Vertx vertx, VertxTestContext ctx) {
+    var calls = new java.util.concurrent.atomic.AtomicInteger();
+    vertx.createHttpServer()
+      .requestHandler(req -> {
+        calls.incrementAndGet();
+        req.response().setStatusCode(503).end("unavailable");
+      })
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(),
+            "sk-test", "gpt-4o", OpenAiSettings.DEFAULTS.withRetry(new RetryPolicy(2, 10, 20)), List.of());
+        client.decideNext(new JsonObject().put("tradeId", "T-5"), new JsonObject().put("step", 0))
+          .onComplete(ctx.failing(err -> ctx.verify(() -> {
+            assertEquals(503, assertInstanceOf(LlmApiException.class, err).status());
+            assertEquals(3, calls.get());
+            assertEquals(2, client.rateLimitStats().getLong("retries"));
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void streaming_completes_before_end_of_stream(Vertx vertx, VertxTestContext ctx) {
+    JsonObject[] received = new JsonObject[1];
+    // Tool call arrives in fragments; [DONE] only after a 3 s "trailing tokens" pause
+    vertx.createHttpServer()
+      .requestHandler(req -> req.body().onSuccess(body -> {
+        received[0] = body.toJsonObject();
+        var resp = req.response().setChunked(true).putHeader("content-type", "text/event-stream");
+        resp.write(ChatCompletionStreamAssemblerTest.toolDelta(0, "call_1", "case.classify", ""));
+        resp.write(ChatCompletionStreamAssemblerTest.toolDelta(0, null, null, "{\"category\":"));
+        resp.write(ChatCompletionStreamAssemblerTest.toolDelta(0, null, null, "\"Settlement\"}"));
+        vertx.setTimer(3000, t -> {
+          if (!resp.ended()) {
+            resp.end("data: [DONE]\n\n");
+          }
+        });
+      }))
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(),
+            "sk-test", "gpt-4o", OpenAiSettings.DEFAULTS.withStream(true), List.of());
+        long start = System.currentTimeMillis();
+        client.decideNext(new JsonObject().put("tradeId", "T-2"), new JsonObject().put("step", 1))
+          .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+            assertTrue(System.currentTimeMillis() - start < 2000, "should not wait for [DONE]");
+            assertTrue(received[0].getBoolean("stream"));
+            assertEquals("case.classify", cmd.getString("tool"));
+            assertEquals("Settlement", cmd.getJsonObject("args").getString("category"));
+            assertTrue(cmd.getJsonObject("usage").getBoolean("estimated"));
+            assertTrue(cmd.getJsonObject("usage").getLong("total_tokens") > 0);
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void streamed_usage_reaches_prompt_cache_stats_after_early_completion(Vertx vertx, VertxTestContext ctx) {
+    // Tool call completes first; the real usage only arrives in the final chunk
+    vertx.createHttpServer()
+      .requestHandler(req -> req.body().onSuccess(body -> {
+        var resp = req.response().setChunked(true).putHeader("content-type", "text/event-stream");
+        resp.write(ChatCompletionStreamAssemblerTest.toolDelta(0, "call_1", "case.classify",
+            "{\"category\":\"Settlement\"}"));
+        vertx.setTimer(100, t -> resp.end("data: " + new JsonObject()
+            .put("choices", new io.vertx.core.json.JsonArray())
+            .put("usage", new JsonObject()
+                .put("prompt_tokens", 1000).put("completion_tokens", 20).put("total_tokens", 1020)
+                .put("prompt_tokens_details", new JsonObject().put("cached_tokens", 512)))
+            .encode() + "\n\ndata: [DONE]\n\n"));
+      }))
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(),
+            "sk-test", "gpt-4o", OpenAiSettings.DEFAULTS.withStream(true), List.of());
+        client.decideNext(new JsonObject().put("tradeId", "T-2"), new JsonObject().put("step", 1))
+          .onComplete(ctx.succeeding(cmd -> {
+            ctx.verify(() -> {
+              assertTrue(cmd.getJsonObject("usage").getBoolean("estimated"));
+              assertEquals(0, client.promptCacheStats().getLong("calls"));
+            });
+            vertx.setTimer(500, t -> ctx.verify(() -> {
+              var stats = client.promptCacheStats();
+              assertEquals(1, stats.getLong("calls"));
+              assertEquals(1000, stats.getLong("promptTokens"));
+              assertEquals(512, stats.getLong("cachedTokens"));
+              ctx.completeNow();
+            }));
+          }));
+      }));
+  }
+
+  private static dev.mars.mcp.tool.Tool tool(String name, JsonObject schema) {
+    return new dev.mars.mcp.tool.Tool() {
+      @Override
+      public String name() { return name; }
+      @Override
+      public JsonObject schema() { return schema; }
+      @Override
+      public io.vertx.core.Future<JsonObject> invoke(JsonObject args, dev.mars.mcp.tool.AgentContext ctx) {
+        return io.vertx.core.Future.succeededFuture(new JsonObject());
+      }
+    };
+  }
+
+  @Test
+  void tools_and_system_prompt_form_a_stable_prefix(Vertx vertx) {
+    var lookup = tool("data.lookup", new JsonObject().put("type", "object").put("required", new io.vertx.core.json.JsonArray()));
+    var lookupReordered = tool("data.lookup", new JsonObject().put("required", new io.vertx.core.json.JsonArray()).put("type", "object"));
+    var classify = tool("case.classify", new JsonObject().put("type", "object"));
+    var a = new OpenAiLlmClient(vertx, "https://api.example.com/v1", "sk", "gpt-4o", List.of(lookup, classify));
+    var b = new OpenAiLlmClient(vertx, "https://api.example.com/v1", "sk", "gpt-4o", List.of(classify, lookupReordered));
+
+    var first = a.batchRequest(new JsonObject().put("tradeId", "T-1"), new JsonObject().put("step", 0));
+    var second = b.batchRequest(new JsonObject().put("tradeId", "T-2"), new JsonObject().put("step", 3));
+    assertEquals(first.getJsonArray("tools").encode(), second.getJsonArray("tools").encode());
+    assertEquals("case.classify",
+        first.getJsonArray("tools").getJsonObject(0).getJsonObject("function").getString("name"));
+    assertEquals(first.getJsonArray("messages").getJsonObject(0), second.getJsonArray("messages").getJsonObject(0));
+    // Variable content only in the user message; it opens with the event
+    String user = first.getJsonArray("messages").getJsonObject(1).getString("content");
+    assertTrue(user.startsWith("## Trade Failure Event"), user);
+  }
+
+  @Test
+  void cached_prompt_tokens_are_recorded(Vertx vertx, VertxTestContext ctx) {
+    var calls = new java.util.concurrent.atomic.AtomicInteger();
+    vertx.createHttpServer()
+      .requestHandler(req -> {
+        long cached = calls.incrementAndGet() == 1 ? 0 : 768;
+        req.response().end(completion("data.lookup").put("usage", new JsonObject()
+            .put("prompt_tokens", 1000).put("completion_tokens", 20).put("total_tokens", 1020)
+            .put("prompt_tokens_details", new JsonObject().put("cached_tokens", cached))).encode());
+      })
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx,
+            "http://localhost:" + server.actualPort(), "sk-test", "gpt-4o", List.of());
+        var event = new JsonObject().put("tradeId", "T-1");
+        client.decideNext(event, new JsonObject().put("step", 0))
+          .compose(cmd -> client.decideNext(event, new JsonObject().put("step", 1)))
+          .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+            assertEquals(768, cmd.getJsonObject("usage")
+                .getJsonObject("prompt_tokens_details").getLong("cached_tokens"));
+            var stats = client.promptCacheStats();
+            assertEquals(2, stats.getLong("calls"));
+            assertEquals(2000, stats.getLong("promptTokens"));
+            assertEquals(768, stats.getLong("cachedTokens"));
+            assertEquals(0.5, stats.getDouble("callHitRate"));
+            assertEquals(0.384, stats.getDouble("tokenHitRate"), 1e-9);
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  private static final JsonObject CLASSIFY_SCHEMA = new JsonObject()
+      .put("type", "object")
+      .put("properties", new JsonObject()
+          .put("category", new JsonObject().put("type", "string"))
+          .put("severity", new JsonObject().put("type", "string")
+              .put("enum", new io.vertx.core.json.JsonArray().add("LOW").add("HIGH"))))
+      .put("required", new io.vertx.core.json.JsonArray().add("category"));
+
+  private static JsonObject completion(String tool, String arguments, int tokens) {
+    JsonObject body = completion(tool).put("usage", new JsonObject().put("total_tokens", tokens));
+    body.getJsonArray("choices").getJsonObject(0).getJsonObject("message")
+        .getJsonArray("tool_calls").getJsonObject(0).getJsonObject("function")
+        .put("arguments", arguments);
+    return body;
+  }
+
+  @Test
+  void strict_schema_closes_objects_and_makes_optional_fields_nullable() {
+    var strict = OpenAiLlmClient.strictSchema(CLASSIFY_SCHEMA);
+    assertFalse(strict.getBoolean("additionalProperties"));
+    assertEquals(new io.vertx.core.json.JsonArray().add("category").add("severity"),
+        strict.getJsonArray("required"));
+    var props = strict.getJsonObject("properties");
+    assertEquals("string", props.getJsonObject("category").getString("type"));
+    assertEquals(new io.vertx.core.json.JsonArray().add("string").add("null"),
+        props.getJsonObject("severity").getJsonArray("type"));
+    // The tool's own schema is untouched
+    assertNull(CLASSIFY_SCHEMA.getValue("additionalProperties"));
+  }
+
+  @Test
+  void strict_mode_repairs_invalid_arguments_once(Vertx vertx, VertxTestContext ctx) {
+    var requests = new java.util.ArrayList<JsonObject>();
+    vertx.createHttpServer()
+      .requestHandler(req -> req.body().onSuccess(body -> {
+        requests.add(body.toJsonObject());
+        String args = requests.size() == 1
+            ? "{\"severity\":\"EXTREME\"}"
+            : "{\"category\":\"Settlement\",\"severity\":null}";
+        req.response().end(completion("case.classify", args, 100).encode());
+      }))
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(), "sk-test",
+            "gpt-4o", OpenAiSettings.DEFAULTS.withStrict(true), List.of(tool("case.classify", CLASSIFY_SCHEMA)));
+        client.decideNext(new JsonObject().put("tradeId", "T-1"), new JsonObject().put("step", 1))
+          .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+            assertEquals(2, requests.size());
+            var first = requests.get(0);
+            assertEquals("required", first.getString("tool_choice"));
+            assertFalse(first.getBoolean("parallel_tool_calls"));
+            assertTrue(first.getJsonArray("tools").getJsonObject(0).getJsonObject("function").getBoolean("strict"));
+            String repair = requests.get(1).getJsonArray("messages").getJsonObject(2).getString("content");
+            assertTrue(repair.contains("case.classify: args.category is required"), repair);
+            // Nulls for optional fields are dropped; both calls are charged
+            assertEquals(new JsonObject().put("category", "Settlement"), cmd.getJsonObject("args"));
+            assertNull(cmd.getValue("violations"));
+            assertNull(cmd.getValue("confidence"));
+            assertEquals(200, cmd.getJsonObject("usage").getLong("total_tokens"));
+            assertEquals(1, client.strictStats().getLong("repaired"));
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void strict_mode_gives_up_after_one_failed_repair(Vertx vertx, VertxTestContext ctx) {
+    var calls = new java.util.concurrent.atomic.AtomicInteger();
+    vertx.createHttpServer()
+      .requestHandler(req -> {
+        calls.incrementAndGet();
+        req.response().end(completion("case.escalate", "{}", 50).encode());
+      })
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(), "sk-test",
+            "gpt-4o", OpenAiSettings.DEFAULTS.withStrict(true), List.of(tool("case.classify", CLASSIFY_SCHEMA)));
+        client.decideNext(new JsonObject().put("tradeId", "T-1"), new JsonObject().put("step", 1))
+          .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+            assertEquals(2, calls.get());
+            assertEquals(0.0, cmd.getDouble("confidence"));
+            assertEquals("unknown tool case.escalate", cmd.getJsonArray("violations").getString(0));
+            assertEquals(1, client.strictStats().getLong("repairs"));
+            assertEquals(0, client.strictStats().getLong("repaired"));
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void invalid_arguments_pass_through_when_not_strict(Vertx vertx, VertxTestContext ctx) {
+    var calls = new java.util.concurrent.atomic.AtomicInteger();
+    vertx.createHttpServer()
+      .requestHandler(req -> {
+        calls.incrementAndGet();
+        req.response().end(completion("case.classify", "{\"severity\":\"EXTREME\"}", 50).encode());
+      })
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(), "sk-test",
+            "gpt-4o", OpenAiSettings.DEFAULTS, List.of(tool("case.classify", CLASSIFY_SCHEMA)));
+        client.decideNext(new JsonObject().put("tradeId", "T-1"), new JsonObject().put("step", 1))
+          .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+            assertEquals(1, calls.get());
+            assertNull(cmd.getValue("violations"));
+            ctx.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void warm_up_opens_connections_without_requesting_decisions(Vertx vertx, VertxTestContext ctx) {
+    var gets = new java.util.concurrent.atomic.AtomicInteger();
+    var posts = new java.util.concurrent.atomic.AtomicInteger();
+    var connections = java.util.concurrent.ConcurrentHashMap.<Object>newKeySet();
+    vertx.createHttpServer()
+      .connectionHandler(connections::add)
+      .requestHandler(req -> {
+        (req.method() == io.vertx.core.http.HttpMethod.GET ? gets : posts).incrementAndGet();
+        assertEquals("/models", req.path());
+        // Hold the response briefly so the pings overlap and each gets its own connection
+        vertx.setTimer(50, t -> req.response().end("{\"data\":[]}"));
+      })
+      .listen(0)
+      .onComplete(ctx.succeeding(server -> {
+        var client = new OpenAiLlmClient(vertx, "http://localhost:" + server.actualPort(), "sk-test",
+            "gpt-4o", List.of(tool("case.classify", CLASSIFY_SCHEMA)));
+        var plan = new WarmupPlan(3, 5, List.of(new JsonObject().put("tradeId", "W-1").put("reason", "x")));
+        client.warmUp(plan).onComplete(ctx.succeeding(report -> ctx.verify(() -> {
+          assertEquals(3, gets.get());
+          assertEquals(0, posts.get());
+          assertEquals(3, connections.size());
+          assertEquals(3, report.getLong("reachable"));
+          assertEquals(15, report.getLong("renders"));
+          ctx.completeNow();
+        })));
+      }));
+  }
+
+  @Test
+  void warm_up_tolerates_an_unreachable_endpoint(Vertx vertx, VertxTestContext ctx) {
+    var client = new OpenAiLlmClient(vertx, "http://localhost:19999", "sk-test", "gpt-4o", List.of());
+    client.warmUp(new WarmupPlan(2, 1, List.of(new JsonObject())))
+      .onComplete(ctx.succeeding(report -> ctx.verify(() -> {
+        assertEquals(0, report.getLong("reachable"));
+        assertEquals(3, report.getLong("renders"));
+        ctx.completeNow();
+      })));
+  }
 }
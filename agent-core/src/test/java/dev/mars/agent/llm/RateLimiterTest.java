@@ -0,0 +1,143 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class RateLimiterTest {
+
+  @Test
+  void unlimited_grants_immediately(Vertx vertx) {
+    var limiter = new RateLimiter(vertx, RateLimits.NONE);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(limiter.acquire(10_000, new CancellationToken()).succeeded());
+    }
+    assertEquals(100, limiter.stats().getLong("granted"));
+    assertEquals(0, limiter.stats().getLong("delayed"));
+  }
+
+  @Test
+  void burst_is_paced_in_arrival_order(Vertx vertx, VertxTestContext ctx) {
+    // 600 rpm = 10/s; bucket holds 6 s = 60 requests
+    var limiter = new RateLimiter(vertx, new RateLimits(600, 0));
+    List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    List<Future<Void>> all = new ArrayList<>();
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 63; i++) {
+      int n = i;
+      all.add(limiter.acquire(0, new CancellationToken()).onSuccess(v -> order.add(n)));
+    }
+    assertEquals(60, order.size(), "burst capacity granted at once");
+    assertEquals(3, limiter.stats().getInteger("queued"));
+    Future.all(all).onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+      long elapsed = System.currentTimeMillis() - start;
+      // Three more at 10/s take ~300 ms, not a whole minute and not zero
+      assertTrue(elapsed >= 200 && elapsed < 2000, "elapsed " + elapsed);
+      for (int i = 0; i < 63; i++) {
+        assertEquals(i, order.get(i));
+      }
+      assertEquals(3, limiter.stats().getLong("delayed"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void token_bucket_limits_large_requests(Vertx vertx) {
+    // 60 000 tpm → bucket of 6 000 tokens
+    var limiter = new RateLimiter(vertx, new RateLimits(0, 60_000));
+    assertTrue(limiter.acquire(5_000, new CancellationToken()).succeeded());
+    assertFalse(limiter.acquire(5_000, new CancellationToken()).isComplete());
+    assertEquals(1, limiter.stats().getInteger("queued"));
+  }
+
+  @Test
+  void reconcile_refunds_over_estimates(Vertx vertx) {
+    var limiter = new RateLimiter(vertx, new RateLimits(0, 60_000));
+    limiter.acquire(5_000, new CancellationToken());
+    limiter.reconcile(5_000, 1_000);
+    assertTrue(limiter.stats().getLong("availableTokens") >= 5_000);
+    assertTrue(limiter.acquire(4_000, new CancellationToken()).succeeded());
+  }
+
+  @Test
+  void pause_holds_waiters_until_deadline(Vertx vertx, VertxTestContext ctx) {
+    var limiter = new RateLimiter(vertx, RateLimits.NONE);
+    limiter.pauseFor(150);
+    long start = System.currentTimeMillis();
+    var granted = limiter.acquire(1, new CancellationToken());
+    assertFalse(granted.isComplete());
+    assertTrue(limiter.stats().getLong("pausedForMs") > 0);
+    granted.onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+      assertTrue(System.currentTimeMillis() - start >= 140);
+      assertEquals(1, limiter.stats().getLong("pauses"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void provider_remaining_counts_clamp_and_pause(Vertx vertx) {
+    var limiter = new RateLimiter(vertx, new RateLimits(600, 0));
+    limiter.observe(5L, 1_000, null, -1);
+    assertEquals(5, limiter.stats().getLong("availableRequests"));
+    limiter.observe(0L, 1_000, null, -1);
+    assertTrue(limiter.stats().getLong("pausedForMs") > 500);
+    assertFalse(limiter.acquire(0, new CancellationToken()).isComplete());
+  }
+
+  @Test
+  void cancelled_waiter_leaves_queue(Vertx vertx, VertxTestContext ctx) {
+    var limiter = new RateLimiter(vertx, RateLimits.NONE);
+    limiter.pauseFor(10_000);
+    var token = new CancellationToken();
+    limiter.acquire(1, token).onComplete(ctx.failing(err -> ctx.verify(() -> {
+      assertInstanceOf(CancellationException.class, err);
+      assertEquals(0, limiter.stats().getInteger("queued"));
+      assertEquals(1, limiter.stats().getLong("cancelled"));
+      ctx.completeNow();
+    })));
+    token.cancel("timeout");
+  }
+
+  @Test
+  void parses_reset_durations() {
+    assertEquals(20, RateLimiter.parseDurationMs("20ms"));
+    assertEquals(1500, RateLimiter.parseDurationMs("1.5s"));
+    assertEquals(360_000, RateLimiter.parseDurationMs("6m0s"));
+    assertEquals(2000, RateLimiter.parseDurationMs("2"));
+    assertEquals(-1, RateLimiter.parseDurationMs("soon"));
+    assertEquals(-1, RateLimiter.parseDurationMs(null));
+  }
+
+  @Test
+  void parses_retry_after_forms() {
+    assertEquals(250, RateLimiter.parseRetryAfterMs("250", "1", 0));
+    assertEquals(3000, RateLimiter.parseRetryAfterMs(null, "3", 0));
+    long now = java.time.Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    assertEquals(10_000, RateLimiter.parseRetryAfterMs(null, "Mon, 01 Jan 2024 00:00:10 GMT", now));
+    assertEquals(-1, RateLimiter.parseRetryAfterMs(null, null, now));
+  }
+
+  @Test
+  void retry_backoff_is_jittered_and_capped() {
+    var policy = new RetryPolicy(5, 100, 1_000);
+    for (int i = 0; i < 50; i++) {
+      long first = policy.backoffMs(0);
+      assertTrue(first >= 50 && first <= 100, "first " + first);
+      long late = policy.backoffMs(10);
+      assertTrue(late >= 500 && late <= 1_000, "late " + late);
+    }
+    assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(1, 100, 10));
+  }
+}
@@ -0,0 +1,72 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class ReloadingStubLlmClientTest {
+
+  @TempDir
+  Path dir;
+
+  private static String rules(String tool) {
+    return """
+        rules:
+          - keywords: [isin]
+            steps:
+              - tool: %s
+        fallback:
+          steps:
+            - tool: comms.notify
+        """.formatted(tool);
+  }
+
+  private static final JsonObject EVENT = new JsonObject().put("reason", "Missing ISIN");
+  private static final JsonObject STEP0 = new JsonObject().put("step", 0);
+
+  @Test
+  void edits_to_the_file_replace_the_rules(Vertx vertx, VertxTestContext ctx) throws Exception {
+    Path file = dir.resolve("rules.yaml");
+    Files.writeString(file, rules("data.lookup"));
+    var client = new ReloadingStubLlmClient(vertx, file, 20);
+    assertEquals("data.lookup", client.decideNext(EVENT, STEP0).result().getString("tool"));
+
+    Files.writeString(file, rules("case.classify.v2"));
+    vertx.setPeriodic(20, t -> {
+      if (client.stats().getLong("reloads") > 0) {
+        vertx.cancelTimer(t);
+        ctx.verify(() -> {
+          assertEquals("case.classify.v2", client.decideNext(EVENT, STEP0).result().getString("tool"));
+          client.close();
+          ctx.completeNow();
+        });
+      }
+    });
+  }
+
+  @Test
+  void broken_file_keeps_the_previous_rules(Vertx vertx, VertxTestContext ctx) throws Exception {
+    Path file = dir.resolve("rules.yaml");
+    Files.writeString(file, rules("data.lookup"));
+    var client = new ReloadingStubLlmClient(vertx, file, 60_000);
+
+    Files.writeString(file, "rules: [ {keywords: [isin], steps: [] } ]\nfallback: {steps: [{tool: x}]}\n");
+    client.reload().onComplete(ctx.failing(err -> ctx.verify(() -> {
+      assertInstanceOf(IllegalArgumentException.class, err);
+      assertEquals(1, client.stats().getLong("reloadFailures"));
+      assertEquals("data.lookup", client.decideNext(EVENT, STEP0).result().getString("tool"));
+      client.close();
+      ctx.completeNow();
+    })));
+  }
+}
@@ -0,0 +1,62 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTemplateTest {
+
+  private static final JsonObject SYSTEM = new JsonObject()
+      .put("role", "system").put("content", "You are \"careful\".\n");
+
+  @Test
+  void render_matches_full_encoding() {
+    JsonObject fields = new JsonObject()
+        .put("model", "gpt-4o")
+        .put("tools", new JsonArray().add(new JsonObject().put("type", "function")))
+        .put("tool_choice", "auto")
+        .put("temperature", 0.1);
+    JsonArray steps = new JsonArray()
+        .add(new JsonObject().put("role", "user").put("content", "step 0 — ünïcode"));
+
+    JsonObject rendered = new RequestTemplate(fields, SYSTEM).render(steps).toJsonObject();
+
+    JsonObject expected = fields.copy()
+        .put("messages", new JsonArray().add(SYSTEM).addAll(steps));
+    assertEquals(expected, rendered);
+  }
+
+  @Test
+  void render_with_several_and_no_step_messages() {
+    var template = new RequestTemplate(new JsonObject().put("model", "m"), SYSTEM);
+    var two = new JsonArray()
+        .add(new JsonObject().put("role", "user").put("content", "a"))
+        .add(new JsonObject().put("role", "assistant").put("content", "b"));
+
+    assertEquals(3, template.render(two).toJsonObject().getJsonArray("messages").size());
+    assertEquals(1, template.render(new JsonArray()).toJsonObject().getJsonArray("messages").size());
+  }
+
+  @Test
+  void empty_fields_render_only_messages() {
+    var body = new RequestTemplate(new JsonObject(), SYSTEM).render(new JsonArray()).toJsonObject();
+    assertEquals(1, body.size());
+    assertEquals(SYSTEM, body.getJsonArray("messages").getJsonObject(0));
+  }
+
+  @Test
+  void render_is_byte_stable_and_reuses_prefix() {
+    var template = new RequestTemplate(new JsonObject().put("model", "m"), SYSTEM);
+    var steps = new JsonArray().add(new JsonObject().put("role", "user").put("content", "x"));
+    assertArrayEquals(template.render(steps).getBytes(), template.render(steps).getBytes());
+    assertTrue(template.render(steps).length() > template.prefixLength());
+  }
+
+  @Test
+  void messages_field_is_rejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new RequestTemplate(new JsonObject().put("messages", new JsonArray()), SYSTEM));
+  }
+}
@@ -0,0 +1,247 @@
+package dev.mars.agent.llm;
+
+import dev.mars.mcp.tool.CancellationToken;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class RoutingLlmClientTest {
+
+  private static final JsonObject EVENT = new JsonObject().put("tradeId", "T-1");
+  private static final JsonObject STATE = new JsonObject().put("step", 0);
+  private static final RoutingSettings FAST_HEDGE = RoutingSettings.DEFAULTS.withHedgeDelays(50, 10);
+
+  private static JsonObject command(String from) {
+    return new JsonObject().put("intent", "CALL_TOOL").put("tool", "t").put("from", from);
+  }
+
+  /** Answers after {@code delayMs}; fails fast instead when {@code fail} is set. */
+  private static final class MockBackend implements LlmClient {
+    final Vertx vertx;
+    final String name;
+    final long delayMs;
+    volatile boolean fail;
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicBoolean cancelled = new AtomicBoolean();
+
+    MockBackend(Vertx vertx, String name, long delayMs) {
+      this.vertx = vertx;
+      this.name = name;
+      this.delayMs = delayMs;
+    }
+
+    @Override
+    public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+      return decideNext(event, state, new CancellationToken());
+    }
+
+    @Override
+    public Future<JsonObject> decideNext(JsonObject event, JsonObject state, CancellationToken token) {
+      calls.incrementAndGet();
+      if (fail) {
+        return Future.failedFuture(new RuntimeException(name + " down"));
+      }
+      Promise<JsonObject> p = Promise.promise();
+      long timer = vertx.setTimer(delayMs, t -> p.tryComplete(command(name)));
+      token.onCancel(() -> {
+        cancelled.set(true);
+        vertx.cancelTimer(timer);
+        p.tryFail(new CancellationException(token.reason()));
+      });
+      return p.future();
+    }
+  }
+
+  private static RoutingLlmClient routing(Vertx vertx, RoutingSettings settings, MockBackend... backends) {
+    return new RoutingLlmClient(vertx, java.util.Arrays.stream(backends)
+        .map(b -> new RoutingLlmClient.Backend(b.name, b)).toList(), settings);
+  }
+
+  private static JsonObject backendStats(RoutingLlmClient client, int i) {
+    return client.stats().getJsonArray("backends").getJsonObject(i);
+  }
+
+  @Test
+  void fast_primary_answers_without_hedge(Vertx vertx, VertxTestContext ctx) {
+    var primary = new MockBackend(vertx, "primary", 5);
+    var dr = new MockBackend(vertx, "dr", 5);
+    var client = routing(vertx, FAST_HEDGE, primary, dr);
+    client.decideNext(EVENT, STATE).onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+      assertEquals("primary", cmd.getString("from"));
+      assertEquals(0, dr.calls.get());
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void slow_primary_is_hedged_and_loser_cancelled(Vertx vertx, VertxTestContext ctx) {
+    var primary = new MockBackend(vertx, "primary", 5_000);
+    var dr = new MockBackend(vertx, "dr", 5);
+    var client = routing(vertx, FAST_HEDGE, primary, dr);
+    long start = System.currentTimeMillis();
+    client.decideNext(EVENT, STATE).onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+      assertEquals("dr", cmd.getString("from"));
+      assertTrue(System.currentTimeMillis() - start < 1000);
+      assertTrue(primary.cancelled.get(), "loser must be cancelled");
+      assertEquals(1, backendStats(client, 1).getLong("hedges"));
+      assertEquals(1, backendStats(client, 1).getLong("hedgeWins"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void hedging_can_be_disabled(Vertx vertx, VertxTestContext ctx) {
+    var primary = new MockBackend(vertx, "primary", 150);
+    var dr = new MockBackend(vertx, "dr", 5);
+    var client = routing(vertx, FAST_HEDGE.withHedge(false), primary, dr);
+    client.decideNext(EVENT, STATE).onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+      assertEquals("primary", cmd.getString("from"));
+      assertEquals(0, dr.calls.get());
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void failure_fails_over_immediately(Vertx vertx, VertxTestContext ctx) {
+    var primary = new MockBackend(vertx, "primary", 5);
+    primary.fail = true;
+    var dr = new MockBackend(vertx, "dr", 5);
+    var client = routing(vertx, RoutingSettings.DEFAULTS, primary, dr);
+    long start = System.currentTimeMillis();
+    client.decideNext(EVENT, STATE).onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+      assertEquals("dr", cmd.getString("from"));
+      // Default initial hedge delay is 1 s; failover must not wait for it
+      assertTrue(System.currentTimeMillis() - start < 500);
+      assertEquals(1, backendStats(client, 0).getLong("errors"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void all_backends_failing_fails_the_call(Vertx vertx, VertxTestContext ctx) {
+    var primary = new MockBackend(vertx, "primary", 5);
+    var dr = new MockBackend(vertx, "dr", 5);
+    primary.fail = true;
+    dr.fail = true;
+    routing(vertx, FAST_HEDGE, primary, dr).decideNext(EVENT, STATE)
+      .onComplete(ctx.failing(err -> ctx.verify(() -> {
+        assertEquals("dr down", err.getMessage());
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void errors_shift_traffic_to_the_healthy_backend(Vertx vertx, VertxTestContext ctx) {
+    var primary = new MockBackend(vertx, "primary", 5);
+    primary.fail = true;
+    var dr = new MockBackend(vertx, "dr", 5);
+    var client = routing(vertx, FAST_HEDGE, primary, dr);
+    // First call: primary fails, dr answers; afterwards dr ranks first
+    client.decideNext(EVENT, STATE)
+      .compose(v -> {
+        primary.fail = false;
+        return client.decideNext(EVENT, STATE);
+      })
+      .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+        assertEquals("dr", cmd.getString("from"));
+        assertEquals(1, primary.calls.get());
+        assertTrue(backendStats(client, 0).getDouble("score")
+            > backendStats(client, 1).getDouble("score"));
+        ctx.completeNow();
+      })));
+  }
+
+  @Test
+  void p95_replaces_initial_delay_after_enough_samples(Vertx vertx, VertxTestContext ctx) {
+    var primary = new MockBackend(vertx, "primary", 1);
+    var client = routing(vertx, FAST_HEDGE, primary);
+    Future<JsonObject> chain = Future.succeededFuture();
+    for (int i = 0; i < RoutingLlmClient.MIN_SAMPLES; i++) {
+      chain = chain.compose(v -> client.decideNext(EVENT, STATE));
+    }
+    assertEquals(-1, backendStats(client, 0).getLong("p95Ms"));
+    chain.onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+      assertTrue(backendStats(client, 0).getLong("p95Ms") >= 0);
+      assertEquals(RoutingLlmClient.MIN_SAMPLES, backendStats(client, 0).getLong("requests"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void caller_cancellation_cancels_every_attempt(Vertx vertx, VertxTestContext ctx) {
+    var primary = new MockBackend(vertx, "primary", 5_000);
+    var dr = new MockBackend(vertx, "dr", 5_000);
+    var client = routing(vertx, FAST_HEDGE, primary, dr);
+    var token = new CancellationToken();
+    client.decideNext(EVENT, STATE, token).onComplete(ctx.failing(err -> ctx.verify(() -> {
+      assertInstanceOf(CancellationException.class, err);
+      assertEquals("client gone", err.getMessage());
+      assertTrue(primary.cancelled.get());
+      assertTrue(dr.cancelled.get());
+      ctx.completeNow();
+    })));
+    // Cancel once the hedge is in flight
+    vertx.setTimer(200, t -> token.cancel("client gone"));
+  }
+
+  @Test
+  void hedges_between_local_openai_endpoints(Vertx vertx, VertxTestContext ctx) {
+    JsonObject completion = new JsonObject()
+        .put("choices", new JsonArray().add(new JsonObject()
+            .put("message", new JsonObject()
+                .put("role", "assistant")
+                .put("tool_calls", new JsonArray().add(new JsonObject()
+                    .put("id", "call_1")
+                    .put("type", "function")
+                    .put("function", new JsonObject()
+                        .put("name", "case.classify")
+                        .put("arguments", "{}")))))));
+    var slowClosed = ctx.checkpoint();
+    var answered = ctx.checkpoint();
+    // Primary accepts the request and never answers; DR answers at once
+    vertx.createHttpServer()
+      .requestHandler(req -> req.connection().closeHandler(v -> slowClosed.flag()))
+      .listen(0)
+      .compose(slow -> vertx.createHttpServer()
+        .requestHandler(req -> req.response()
+            .putHeader("content-type", "application/json")
+            .end(completion.encode()))
+        .listen(0)
+        .map(fast -> List.of(
+            new RoutingLlmClient.Backend("primary", new OpenAiLlmClient(vertx,
+                "http://localhost:" + slow.actualPort(), "sk", "gpt-4o", List.of())),
+            new RoutingLlmClient.Backend("dr", new OpenAiLlmClient(vertx,
+                "http://localhost:" + fast.actualPort(), "sk", "gpt-4o", List.of())))))
+      .compose(backends -> new RoutingLlmClient(vertx, backends, FAST_HEDGE).decideNext(EVENT, STATE))
+      .onComplete(ctx.succeeding(cmd -> ctx.verify(() -> {
+        assertEquals("case.classify", cmd.getString("tool"));
+        answered.flag();
+      })));
+  }
+
+  @Test
+  void requires_a_backend(Vertx vertx) {
+    assertThrows(IllegalArgumentException.class,
+        () -> new RoutingLlmClient(vertx, List.of(), RoutingSettings.DEFAULTS));
+  }
+
+  @Test
+  void settings_are_validated() {
+    assertThrows(IllegalArgumentException.class, () -> RoutingSettings.DEFAULTS.withEwmaAlpha(0));
+    assertThrows(IllegalArgumentException.class, () -> RoutingSettings.DEFAULTS.withHedgeDelays(-1, 0));
+  }
+}
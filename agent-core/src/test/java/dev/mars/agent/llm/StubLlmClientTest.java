@@ -1,12 +1,18 @@
 package dev.mars.agent.llm;
 
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+@ExtendWith(VertxExtension.class)
 class StubLlmClientTest {
 
   @Test
@@ -86,4 +92,84 @@ class StubLlmClientTest {
     var result = client.decideNext(new JsonObject(), new JsonObject()).result();
     assertNotNull(result);
   }
+
+  @Test
+  void warm_up_evaluates_rules_for_every_event_and_step() {
+    var matched = new java.util.concurrent.atomic.AtomicInteger();
+    StubRule rule = event -> {
+      matched.incrementAndGet();
+      return null;
+    };
+    var client = new StubLlmClient(List.of(rule), event -> new JsonObject());
+    var plan = new WarmupPlan(0, 4, List.of(
+        new JsonObject().put("reason", "a"), new JsonObject().put("reason", "b")));
+    JsonObject report = client.warmUp(plan).result();
+    // 4 iterations x 2 events x 3 steps
+    assertEquals(24, report.getLong("decisions"));
+    assertEquals(24, matched.get());
+  }
+
+  @Test
+  void warm_up_on_a_context_runs_off_the_event_loop(Vertx vertx, VertxTestContext ctx) {
+    var onEventLoop = new java.util.concurrent.atomic.AtomicBoolean();
+    StubRule rule = event -> {
+      if (Context.isOnEventLoopThread()) {
+        onEventLoop.set(true);
+      }
+      return null;
+    };
+    var client = new StubLlmClient(List.of(rule), event -> new JsonObject());
+    var plan = new WarmupPlan(0, 2, List.of(new JsonObject().put("reason", "a")));
+    vertx.runOnContext(v -> client.warmUp(plan).onComplete(ctx.succeeding(report -> ctx.verify(() -> {
+      assertEquals(6, report.getLong("decisions"));
+      assertFalse(onEventLoop.get());
+      ctx.completeNow();
+    }))));
+  }
+
+  @Test
+  void keyword_rules_keep_first_match_order() {
+    var calls = new java.util.ArrayList<String>();
+    StubRule credit = StubLlmClient.keywordRule(List.of("credit", "rating"), event -> {
+      calls.add("credit");
+      return new JsonObject().put("tool", "credit");
+    });
+    // A plain rule between two keyword rules is always evaluated in its place
+    StubRule plain = new StubRule() {
+      @Override
+      public JsonObject tryMatch(JsonObject event) {
+        calls.add("plain");
+        return "Plain".equals(event.getString("reason")) ? new JsonObject().put("tool", "plain") : null;
+      }
+    };
+    StubRule lei = StubLlmClient.keywordRule(List.of("LEI"), event -> {
+      calls.add("lei");
+      return new JsonObject().put("tool", "lei");
+    });
+    var client = new StubLlmClient(List.of(credit, plain, lei), event -> new JsonObject().put("tool", "fallback"));
+    var step0 = new JsonObject().put("step", 0);
+
+    assertEquals("lei", client.decideNext(new JsonObject().put("reason", "LEI missing"), step0)
+        .result().getString("tool"));
+    // The credit rule's action never ran: the index ruled it out
+    assertEquals(List.of("plain", "lei"), calls);
+
+    calls.clear();
+    assertEquals("credit", client.decideNext(new JsonObject().put("reason", "Rating cut; LEI stale"), step0)
+        .result().getString("tool"));
+    assertEquals(List.of("credit"), calls);
+
+    assertEquals("fallback", client.decideNext(new JsonObject().put("reason", "Missing ISIN"), step0)
+        .result().getString("tool"));
+  }
+
+  @Test
+  void keyword_rule_falls_through_when_action_declines() {
+    StubRule declines = StubLlmClient.keywordRule(List.of("lei"), event -> null);
+    StubRule accepts = StubLlmClient.keywordRule(List.of("lei"), event -> new JsonObject().put("tool", "second"));
+    var client = new StubLlmClient(List.of(declines, accepts), event -> new JsonObject());
+    assertEquals("second", client.decideNext(new JsonObject().put("reason", "lei"), new JsonObject())
+        .result().getString("tool"));
+    assertThrows(IllegalArgumentException.class, () -> StubLlmClient.keywordRule(List.of(" "), declines));
+  }
 }
@@ -0,0 +1,34 @@
+package dev.mars.agent.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenEstimatorTest {
+
+  @Test
+  void null_and_empty_are_zero() {
+    assertEquals(0, TokenEstimator.estimate(null));
+    assertEquals(0, TokenEstimator.estimate(""));
+    assertEquals(0, TokenEstimator.estimate("   \n\t"));
+  }
+
+  @Test
+  void words_cost_one_token_per_four_chars() {
+    assertEquals(1, TokenEstimator.estimate("ISIN"));
+    assertEquals(2, TokenEstimator.estimate("trade"));
+    assertEquals(4, TokenEstimator.estimate("missing ISIN code"));
+  }
+
+  @Test
+  void punctuation_costs_one_token_each() {
+    // { " " : " - " }  → 8 punctuation, plus "id", "T", "1"
+    assertEquals(11, TokenEstimator.estimate("{\"id\":\"T-1\"}"));
+  }
+
+  @Test
+  void compact_json_is_cheaper_than_pretty_json_only_by_whitespace() {
+    var obj = new io.vertx.core.json.JsonObject().put("tradeId", "T-1").put("qty", 100);
+    assertEquals(TokenEstimator.estimate(obj.encode()), TokenEstimator.estimate(obj.encodePrettily()));
+  }
+}
@@ -0,0 +1,62 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolSchemaValidatorTest {
+
+  private static final JsonObject SCHEMA = new JsonObject()
+      .put("type", "object")
+      .put("properties", new JsonObject()
+          .put("tradeId", new JsonObject().put("type", "string"))
+          .put("severity", new JsonObject().put("type", "string")
+              .put("enum", new JsonArray().add("LOW").add("HIGH")))
+          .put("limit", new JsonObject().put("type", "integer"))
+          .put("fields", new JsonObject().put("type", "array")
+              .put("items", new JsonObject().put("type", "string"))))
+      .put("required", new JsonArray().add("tradeId"));
+
+  @Test
+  void conforming_args_pass() {
+    var args = new JsonObject().put("tradeId", "T-1").put("severity", "LOW")
+        .put("limit", 5).put("fields", new JsonArray().add("lei")).put("extra", true);
+    assertTrue(ToolSchemaValidator.validate(SCHEMA, args).isEmpty());
+  }
+
+  @Test
+  void missing_required_field_is_reported() {
+    var errors = ToolSchemaValidator.validate(SCHEMA, new JsonObject().put("severity", "LOW"));
+    assertEquals(java.util.List.of("args.tradeId is required"), errors);
+  }
+
+  @Test
+  void wrong_types_and_enum_values_are_reported() {
+    var args = new JsonObject().put("tradeId", 7).put("severity", "EXTREME")
+        .put("limit", 2.5).put("fields", new JsonArray().add("lei").add(3));
+    var errors = ToolSchemaValidator.validate(SCHEMA, args);
+    assertEquals(4, errors.size(), errors.toString());
+    assertTrue(errors.contains("args.fields[1] must be string but was number"));
+  }
+
+  @Test
+  void empty_schema_accepts_anything() {
+    assertTrue(ToolSchemaValidator.validate(new JsonObject(), new JsonObject().put("x", 1)).isEmpty());
+  }
+
+  @Test
+  void compiled_validator_is_reusable() {
+    var validator = ToolSchemaValidator.compile(SCHEMA);
+    assertTrue(validator.validate(new JsonObject().put("tradeId", "T-1")).isEmpty());
+    assertEquals(java.util.List.of("args.tradeId must be string but was number"),
+        validator.validate(new JsonObject().put("tradeId", 1)));
+    // Compiling copies what it needs; later edits to the schema do not leak in
+    var schema = SCHEMA.copy();
+    var compiled = ToolSchemaValidator.compile(schema);
+    schema.getJsonArray("required").add("limit");
+    assertTrue(compiled.validate(new JsonObject().put("tradeId", "T-1")).isEmpty());
+    assertTrue(ToolSchemaValidator.compile(null).validate(new JsonObject().put("x", 1)).isEmpty());
+  }
+}
@@ -0,0 +1,103 @@
+package dev.mars.agent.llm;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class YamlStubRuleLoaderTest {
+
+  static final String RULES = """
+      rules:
+        - name: lei
+          keywords: [lei, legal entity]
+          steps:
+            - tool: data.lookup
+              args: { tradeId: "${tradeId}", fields: [counterparty] }
+              reasoning: Look up step ${step}
+            - tool: case.raiseTicket
+              args: { tradeId: "${tradeId}", detail: "Failure reason: ${reason}" }
+      fallback:
+        steps:
+          - tool: comms.notify
+            args: { tradeId: "${tradeId:-unknown}" }
+      """;
+
+  @TempDir
+  Path dir;
+
+  private static JsonObject event(String reason) {
+    return new JsonObject().put("tradeId", "T-9").put("reason", reason);
+  }
+
+  private static JsonObject step(int n) {
+    return new JsonObject().put("step", n);
+  }
+
+  @Test
+  void loads_multi_step_chains_from_a_file() throws Exception {
+    Path file = dir.resolve("rules.yaml");
+    Files.writeString(file, RULES);
+    StubLlmClient client = new YamlStubRuleLoader(file).load().toClient();
+
+    JsonObject first = client.decideNext(event("Missing LEI"), step(0)).result();
+    assertEquals("CALL_TOOL", first.getString("intent"));
+    assertEquals("data.lookup", first.getString("tool"));
+    assertEquals("T-9", first.getJsonObject("args").getString("tradeId"));
+    assertEquals(new JsonArray().add("counterparty"), first.getJsonObject("args").getJsonArray("fields"));
+    assertEquals("Look up step 0", first.getString("reasoning"));
+    assertFalse(first.getBoolean("stop"));
+
+    JsonObject last = client.decideNext(event("Legal Entity unknown"), step(1)).result();
+    assertEquals("case.raiseTicket", last.getString("tool"));
+    assertEquals("Failure reason: Legal Entity unknown",
+        last.getJsonObject("args").getString("detail"));
+    assertTrue(last.getBoolean("stop"));
+
+    // Steps past the end repeat the last one
+    assertEquals("case.raiseTicket",
+        client.decideNext(event("Missing LEI"), step(7)).result().getString("tool"));
+  }
+
+  @Test
+  void unmatched_reasons_use_the_fallback() throws Exception {
+    Path file = dir.resolve("rules.yaml");
+    Files.writeString(file, RULES);
+    StubLlmClient client = new YamlStubRuleLoader(file).load().toClient();
+    JsonObject cmd = client.decideNext(new JsonObject().put("reason", "Bad SSI"), step(0)).result();
+    assertEquals("comms.notify", cmd.getString("tool"));
+    assertEquals("unknown", cmd.getJsonObject("args").getString("tradeId"));
+    assertTrue(cmd.getBoolean("stop"));
+  }
+
+  @Test
+  void shipped_rules_load_from_the_classpath() {
+    StubRuleSet set = YamlStubRuleLoader.fromResource("stub-rules-test.yaml").load();
+    assertEquals(1, set.rules().size());
+    assertInstanceOf(KeywordRule.class, set.rules().get(0));
+  }
+
+  @Test
+  void malformed_rules_are_rejected_with_the_rule_name() {
+    var noKeywords = assertThrows(IllegalArgumentException.class, () -> YamlStubRuleLoader.parse(
+        new JsonObject("""
+            {"rules":[{"name":"x","steps":[{"tool":"t"}]}],"fallback":{"steps":[{"tool":"t"}]}}""")));
+    assertTrue(noKeywords.getMessage().contains("'x'"));
+    var noTool = assertThrows(IllegalArgumentException.class, () -> YamlStubRuleLoader.parse(
+        new JsonObject("""
+            {"rules":[{"name":"y","keywords":["k"],"steps":[{"args":{}}]}],
+             "fallback":{"steps":[{"tool":"t"}]}}""")));
+    assertTrue(noTool.getMessage().contains("'y' step 0"));
+    assertThrows(IllegalArgumentException.class,
+        () -> YamlStubRuleLoader.parse(new JsonObject().put("rules", new JsonArray())));
+    assertThrows(IllegalStateException.class,
+        () -> new YamlStubRuleLoader(dir.resolve("missing.yaml")).load());
+    assertThrows(IllegalStateException.class,
+        () -> YamlStubRuleLoader.fromResource("no-such-rules.yaml").load());
+  }
+}
@@ -4,12 +4,44 @@ import io.vertx.core.json.JsonObject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class InMemoryMemoryStoreTest {
 
   private InMemoryMemoryStore store;
 
+  /** A clock the test moves by hand. */
+  private static final class ManualClock extends Clock {
+    long millis = 1_000_000;
+
+    @Override
+    public long millis() {
+      return millis;
+    }
+
+    @Override
+    public Instant instant() {
+      return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+  }
+
   @BeforeEach
   void setUp() {
     store = new InMemoryMemoryStore();
@@ -88,4 +120,76 @@ class InMemoryMemoryStoreTest {
     var future = store.load("case-1");
     assertTrue(future.succeeded());
   }
+
+  @Test
+  void least_recently_used_case_is_evicted_beyond_max_cases() {
+    List<InMemoryMemoryStore.Eviction> evicted = new ArrayList<>();
+    var bounded = new InMemoryMemoryStore(new MemoryBounds(2, 0, 0, 0), evicted::add);
+    bounded.append("case-1", new JsonObject().put("n", 1));
+    bounded.append("case-2", new JsonObject().put("n", 2));
+    bounded.load("case-1");              // case-2 is now least recently used
+    bounded.append("case-3", new JsonObject().put("n", 3));
+
+    assertEquals(1, evicted.size());
+    var eviction = evicted.get(0);
+    assertEquals("case-2", eviction.caseId());
+    assertEquals(InMemoryMemoryStore.Cause.CAPACITY, eviction.cause());
+    assertEquals(1, eviction.state().getInteger("step"));
+    assertEquals(2, eviction.log().get(0).getInteger("n"));
+    assertEquals(2, bounded.stats().getInteger("cases"));
+    assertEquals(1, bounded.stats().getLong("evictedCapacity"));
+    assertEquals(0, bounded.load("case-2").result().getInteger("step"));
+  }
+
+  @Test
+  void log_is_trimmed_but_step_count_kept() {
+    List<InMemoryMemoryStore.Eviction> evicted = new ArrayList<>();
+    var bounded = new InMemoryMemoryStore(new MemoryBounds(0, 2, 0, 0), evicted::add);
+    for (int i = 0; i < 5; i++) {
+      bounded.append("case-1", new JsonObject().put("n", i));
+    }
+    assertEquals(List.of(3, 4), bounded.log("case-1").stream().map(e -> e.getInteger("n")).toList());
+    assertEquals(5, bounded.load("case-1").result().getInteger("step"));
+    assertEquals(3, bounded.stats().getLong("trimmedEntries"));
+    assertEquals(2, bounded.stats().getLong("logEntries"));
+    assertTrue(evicted.stream().allMatch(e -> e.cause() == InMemoryMemoryStore.Cause.TRIMMED
+        && e.state() == null));
+  }
+
+  @Test
+  void idle_cases_expire() {
+    var clock = new ManualClock();
+    var bounded = new InMemoryMemoryStore(new MemoryBounds(0, 0, 1_000, 0), e -> {}, clock);
+    bounded.append("old", new JsonObject());
+    clock.millis += 600;
+    bounded.append("recent", new JsonObject());
+    clock.millis += 600;
+
+    assertEquals(1, bounded.evictIdle());
+    assertEquals(1, bounded.stats().getInteger("cases"));
+    assertEquals(1, bounded.stats().getLong("evictedIdle"));
+    assertEquals(1, bounded.load("recent").result().getInteger("step"));
+  }
+
+  @Test
+  void byte_budget_evicts_oldest_cases() {
+    var bounded = new InMemoryMemoryStore(new MemoryBounds(0, 0, 0, 4_000));
+    String payload = "x".repeat(1_000);
+    for (int i = 0; i < 10; i++) {
+      bounded.append("case-" + i, new JsonObject().put("payload", payload));
+    }
+    var stats = bounded.stats();
+    assertTrue(stats.getLong("bytes") <= 4_000, "bytes " + stats.getLong("bytes"));
+    assertTrue(stats.getLong("evictedBytes") >= 7);
+    assertEquals(1, bounded.log("case-9").size());
+  }
+
+  @Test
+  void bytes_are_released_on_eviction() {
+    var bounded = new InMemoryMemoryStore(new MemoryBounds(1, 0, 0, 0));
+    bounded.append("case-1", new JsonObject().put("payload", "x".repeat(500)));
+    long one = bounded.stats().getLong("bytes");
+    bounded.append("case-2", new JsonObject().put("payload", "x".repeat(500)));
+    assertEquals(one, bounded.stats().getLong("bytes"));
+  }
 }
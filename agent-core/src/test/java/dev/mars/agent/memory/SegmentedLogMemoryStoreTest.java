@@ -0,0 +1,416 @@
+package dev.mars.agent.memory;
+
+import dev.mars.agent.memory.SegmentedLogSettings.FsyncPolicy;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class SegmentedLogMemoryStoreTest {
+
+  @TempDir
+  Path dir;
+
+  private static JsonObject entry(int n) {
+    return new JsonObject().put("tool", "data.lookup").put("n", n);
+  }
+
+  private Future<SegmentedLogMemoryStore> open(Vertx vertx) {
+    return SegmentedLogMemoryStore.open(vertx, SegmentedLogSettings.of(dir));
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(p -> p.toString().endsWith(".seg")).sorted().toList();
+    }
+  }
+
+  @Test
+  void state_and_log_survive_a_restart(Vertx vertx, VertxTestContext ctx) {
+    open(vertx)
+        .compose(store -> store.load("T-1")
+            .compose(s -> store.appendAll("T-1", List.of(entry(0), entry(1))))
+            .compose(v -> store.append("T-2", entry(7)))
+            .compose(v -> store.append("T-1", entry(2)))
+            .compose(v -> store.close()))
+        .compose(v -> open(vertx))
+        .compose(store -> store.load("T-1").compose(state -> store.entries("T-1").map(log -> {
+          ctx.verify(() -> {
+            assertEquals("T-1", state.getString("caseId"));
+            assertEquals(3, state.getInteger("step"));
+            assertEquals(2, state.getJsonObject("last").getInteger("n"));
+            assertNotNull(state.getLong("updatedAt"));
+            assertTrue(state.getLong("createdAt") <= state.getLong("updatedAt"));
+            assertEquals(List.of(0, 1, 2), log.stream().map(e -> e.getInteger("n")).toList());
+            assertEquals(2, store.stats().getInteger("cases"));
+            assertEquals(4, store.stats().getLong("records"));
+          });
+          return store;
+        })))
+        .compose(store -> store.load("T-9").map(fresh -> {
+          ctx.verify(() -> {
+            assertEquals(0, fresh.getInteger("step"));
+            assertNull(fresh.getJsonObject("last"));
+            // Loading a case that is never appended to leaves no index entry
+            assertEquals(2, store.stats().getInteger("cases"));
+          });
+          return store;
+        }))
+        .compose(SegmentedLogMemoryStore::close)
+        .onComplete(ctx.succeedingThenComplete());
+  }
+
+  @Test
+  void concurrent_appends_share_group_commits(Vertx vertx, VertxTestContext ctx) {
+    open(vertx).onComplete(ctx.succeeding(store -> {
+      List<Future<Void>> all = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        all.add(store.append("T-" + (i % 10), entry(i)));
+      }
+      Future.all(all).compose(v -> store.load("T-3")).onComplete(ctx.succeeding(state -> ctx.verify(() -> {
+        JsonObject stats = store.stats();
+        assertEquals(20, state.getInteger("step"));
+        assertEquals(200, stats.getLong("records"));
+        assertTrue(stats.getLong("commits") < 200, "commits " + stats.getLong("commits"));
+        // fsync=always: one force per commit
+        assertEquals(stats.getLong("commits"), stats.getLong("fsyncs"));
+        store.close().onComplete(ctx.succeedingThenComplete());
+      })));
+    }));
+  }
+
+  @Test
+  void full_segments_roll_over(Vertx vertx, VertxTestContext ctx) {
+    var settings = SegmentedLogSettings.of(dir).withSegmentBytes(512);
+    Future<Void> chain = Future.succeededFuture();
+    SegmentedLogMemoryStore[] holder = new SegmentedLogMemoryStore[1];
+    chain.compose(v -> SegmentedLogMemoryStore.open(vertx, settings))
+        .compose(store -> {
+          holder[0] = store;
+          Future<Void> appends = Future.succeededFuture();
+          for (int i = 0; i < 30; i++) {
+            int n = i;
+            appends = appends.compose(v -> store.append("T-1", entry(n)));
+          }
+          return appends.compose(v -> store.close());
+        })
+        .compose(v -> SegmentedLogMemoryStore.open(vertx, settings))
+        .compose(store -> store.entries("T-1").map(log -> {
+          ctx.verify(() -> {
+            assertTrue(store.stats().getInteger("segments") > 3);
+            assertTrue(segmentFiles().stream().allMatch(p -> p.toFile().length() <= 512));
+            assertEquals(30, log.size());
+            assertEquals(29, log.get(29).getInteger("n"));
+          });
+          return store;
+        }))
+        .compose(SegmentedLogMemoryStore::close)
+        .onComplete(ctx.succeedingThenComplete());
+  }
+
+  @Test
+  void failed_commit_leaves_none_of_its_records(Vertx vertx, VertxTestContext ctx) {
+    var settings = SegmentedLogSettings.of(dir).withSegmentBytes(512);
+    Path first = dir.resolve(String.format("%020d.seg", 0));
+    // A directory where the batch has to roll to: opening it fails mid-batch
+    Path blocker = dir.resolve(String.format("%020d.seg", 1));
+    List<JsonObject> batch = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      batch.add(entry(i));
+    }
+    SegmentedLogMemoryStore.open(vertx, settings)
+        .compose(store -> store.append("T-1", entry(0))
+            .compose(v -> vertx.executeBlocking(() -> Files.createDirectory(blocker)))
+            .compose(v -> {
+              long before = first.toFile().length();
+              return store.appendAll("T-2", batch).transform(ar -> {
+                ctx.verify(() -> {
+                  assertTrue(ar.failed());
+                  assertEquals(before, first.toFile().length());
+                  assertEquals(1, store.stats().getLong("records"));
+                });
+                return Future.<Void>succeededFuture();
+              });
+            })
+            .compose(v -> vertx.executeBlocking(() -> Files.deleteIfExists(blocker)))
+            // The log ends on a record boundary again
+            .compose(v -> store.append("T-3", entry(1)))
+            .compose(v -> store.close()))
+        .compose(v -> SegmentedLogMemoryStore.open(vertx, settings))
+        .compose(store -> store.load("T-2").map(state -> {
+          ctx.verify(() -> {
+            assertEquals(0, state.getInteger("step"));
+            assertEquals(2, store.stats().getLong("records"));
+          });
+          return store;
+        }))
+        .compose(SegmentedLogMemoryStore::close)
+        .onComplete(ctx.succeedingThenComplete());
+  }
+
+  @Test
+  void torn_tail_is_truncated_on_recovery(Vertx vertx, VertxTestContext ctx) {
+    open(vertx)
+        .compose(store -> store.append("T-1", entry(0))
+            .compose(v -> store.append("T-1", entry(1)))
+            .compose(v -> store.close()))
+        .compose(v -> {
+          try {
+            Path segment = segmentFiles().get(0);
+            // A crash mid-write: a header promising more bytes than arrived
+            Files.write(segment, new byte[] {0, 0, 1, 0, 1, 2, 3, 4, '{', '"'},
+                StandardOpenOption.APPEND);
+          } catch (IOException e) {
+            return Future.failedFuture(e);
+          }
+          return open(vertx);
+        })
+        .compose(store -> store.append("T-1", entry(2))
+            .compose(v -> store.entries("T-1"))
+            .map(log -> {
+              ctx.verify(() -> {
+                assertEquals(10, store.stats().getLong("truncatedBytes"));
+                assertEquals(List.of(0, 1, 2), log.stream().map(e -> e.getInteger("n")).toList());
+              });
+              return store;
+            }))
+        .compose(SegmentedLogMemoryStore::close)
+        .onComplete(ctx.succeedingThenComplete());
+  }
+
+  @Test
+  void corrupt_last_record_fails_its_crc(Vertx vertx, VertxTestContext ctx) {
+    // No close: a crash leaves no snapshot covering the damaged record
+    open(vertx).compose(crashed -> crashed.append("T-1", entry(0))
+            .compose(v -> crashed.append("T-1", entry(1)))
+            .compose(v -> {
+              try {
+                Path segment = segmentFiles().get(0);
+                byte[] bytes = Files.readAllBytes(segment);
+                bytes[bytes.length - 3] ^= 0x20;   // flip a bit inside the last payload
+                Files.write(segment, bytes);
+              } catch (IOException e) {
+                return Future.failedFuture(e);
+              }
+              return open(vertx);
+            })
+            .compose(store -> store.load("T-1").map(state -> {
+              ctx.verify(() -> {
+                assertEquals(1, state.getInteger("step"));
+                assertEquals(0, state.getJsonObject("last").getInteger("n"));
+                assertTrue(store.stats().getLong("truncatedBytes") > 0);
+              });
+              return store;
+            }))
+            .compose(SegmentedLogMemoryStore::close)
+            .compose(v -> crashed.close()))
+        .onComplete(ctx.succeedingThenComplete());
+  }
+
+  @Test
+  void checkpoint_compacts_closed_cases(Vertx vertx, VertxTestContext ctx) {
+    var settings = SegmentedLogSettings.of(dir).withSegmentBytes(1024);
+    SegmentedLogMemoryStore.open(vertx, settings)
+        .compose(store -> {
+          Future<Void> appends = Future.succeededFuture();
+          for (int i = 0; i < 20; i++) {
+            int n = i;
+            // T-1 finishes its run on the last step; T-2 is still mid-run
+            appends = appends
+                .compose(v -> store.append("T-1", n == 19 ? entry(n) : midRun(n)))
+                .compose(v -> store.append("T-2", midRun(n)));
+          }
+          return appends.compose(v -> store.checkpoint()).map(result -> {
+            ctx.verify(() -> {
+              assertTrue(result.getBoolean("snapshot"));
+              assertTrue(result.getInteger("compactedRecords") > 0);
+              assertTrue(result.getLong("reclaimedBytes") > 0);
+              assertEquals(40 - result.getInteger("compactedRecords"),
+                  store.stats().getLong("records"));
+            });
+            return store;
+          });
+        })
+        .compose(store -> verifyCompacted(store).compose(v -> store.close()))
+        // Restart from the snapshot, then from the log alone
+        .compose(v -> SegmentedLogMemoryStore.open(vertx, settings))
+        .compose(store -> verifyCompacted(store).compose(v -> store.close()))
+        .compose(v -> {
+          try {
+            Files.delete(dir.resolve("snapshot.dat"));
+          } catch (IOException e) {
+            return Future.failedFuture(e);
+          }
+          return SegmentedLogMemoryStore.open(vertx, settings);
+        })
+        .compose(store -> verifyCompacted(store).compose(v -> store.close()))
+        .onComplete(ctx.succeedingThenComplete());
+  }
+
+  private static JsonObject midRun(int n) {
+    return entry(n).put("command", new JsonObject().put("stop", false));
+  }
+
+  private static Future<Void> verifyCompacted(SegmentedLogMemoryStore store) {
+    return store.load("T-1")
+        .compose(closed -> store.entries("T-1").compose(closedLog -> store.load("T-2")
+            .compose(open -> store.entries("T-2").map(openLog -> {
+              // Steps and the last entry survive; superseded entries do not
+              assertEquals(20, closed.getInteger("step"));
+              assertEquals(19, closed.getJsonObject("last").getInteger("n"));
+              assertTrue(closedLog.size() < 20, "kept " + closedLog.size());
+              assertEquals(19, closedLog.get(closedLog.size() - 1).getInteger("n"));
+              assertEquals(20, open.getInteger("step"));
+              assertEquals(20, openLog.size());
+              assertTrue(closed.getLong("createdAt") <= open.getLong("createdAt"));
+              return null;
+            }))));
+  }
+
+  @Test
+  void restart_replays_only_the_tail(Vertx vertx, VertxTestContext ctx) {
+    open(vertx).compose(crashed -> {
+      Future<Void> appends = Future.succeededFuture();
+      for (int i = 0; i < 50; i++) {
+        int n = i;
+        appends = appends.compose(v -> crashed.append("T-" + (n % 5), entry(n)));
+      }
+      return appends
+          .compose(v -> crashed.checkpoint())
+          .compose(v -> crashed.append("T-0", entry(50)))
+          .compose(v -> crashed.append("T-9", entry(51)))
+          // Reopen while the first store is still running, as after a crash
+          .compose(v -> open(vertx))
+          .compose(store -> store.load("T-0").map(state -> {
+            ctx.verify(() -> {
+              JsonObject stats = store.stats();
+              assertEquals(2, stats.getLong("replayedRecords"));
+              assertEquals(52, stats.getLong("records"));
+              assertEquals(6, stats.getInteger("cases"));
+              assertEquals(11, state.getInteger("step"));
+              assertEquals(50, state.getJsonObject("last").getInteger("n"));
+            });
+            return store;
+          }))
+          .compose(SegmentedLogMemoryStore::close)
+          .compose(v -> crashed.close());
+    })
+        // A clean close leaves a snapshot covering everything
+        .compose(v -> open(vertx))
+        .compose(store -> {
+          ctx.verify(() -> {
+            assertEquals(0, store.stats().getLong("replayedRecords"));
+            assertEquals(52, store.stats().getLong("records"));
+          });
+          return store.close();
+        })
+        .onComplete(ctx.succeedingThenComplete());
+  }
+
+  @Test
+  void checkpoint_during_appends_captures_a_consistent_image(Vertx vertx, VertxTestContext ctx) {
+    open(vertx).compose(crashed -> {
+      List<Future<?>> all = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        all.add(crashed.append("T-" + (i % 10), entry(i)));
+        if (i == 50) {
+          all.add(crashed.checkpoint());
+        }
+      }
+      // Reopen while the first store is still running, as after a crash
+      return Future.all(all)
+          .compose(v -> open(vertx))
+          .compose(store -> store.load("T-7").map(state -> {
+            ctx.verify(() -> {
+              JsonObject stats = store.stats();
+              assertEquals(100, stats.getLong("records"));
+              assertTrue(stats.getLong("replayedRecords") < 100,
+                  "replayed " + stats.getLong("replayedRecords"));
+              assertEquals(10, state.getInteger("step"));
+              assertEquals(97, state.getJsonObject("last").getInteger("n"));
+            });
+            return store;
+          }))
+          .compose(SegmentedLogMemoryStore::close)
+          .compose(v -> crashed.close());
+    }).onComplete(ctx.succeedingThenComplete());
+  }
+
+  @Test
+  void unreadable_snapshot_falls_back_to_a_full_scan(Vertx vertx, VertxTestContext ctx) {
+    open(vertx)
+        .compose(store -> store.appendAll("T-1", List.of(entry(0), entry(1), entry(2)))
+            .compose(v -> store.close()))
+        .compose(v -> {
+          try {
+            Path snapshot = dir.resolve("snapshot.dat");
+            byte[] bytes = Files.readAllBytes(snapshot);
+            bytes[bytes.length / 2] ^= 0x20;
+            Files.write(snapshot, bytes);
+          } catch (IOException e) {
+            return Future.failedFuture(e);
+          }
+          return open(vertx);
+        })
+        .compose(store -> store.load("T-1").map(state -> {
+          ctx.verify(() -> {
+            assertEquals(3, store.stats().getLong("replayedRecords"));
+            assertEquals(3, state.getInteger("step"));
+          });
+          return store;
+        }))
+        .compose(SegmentedLogMemoryStore::close)
+        .onComplete(ctx.succeedingThenComplete());
+  }
+
+  @Test
+  void interval_fsync_forces_on_a_timer(Vertx vertx, VertxTestContext ctx) {
+    var settings = SegmentedLogSettings.of(dir).withFsync(FsyncPolicy.INTERVAL, 20);
+    SegmentedLogMemoryStore.open(vertx, settings).onComplete(ctx.succeeding(store ->
+        store.append("T-1", entry(0)).onComplete(ctx.succeeding(v -> {
+          assertEquals(0, store.stats().getLong("fsyncs"));
+          vertx.setPeriodic(10, t -> {
+            if (store.stats().getLong("fsyncs") > 0) {
+              vertx.cancelTimer(t);
+              store.close().onComplete(ctx.succeedingThenComplete());
+            }
+          });
+        }))));
+  }
+
+  @Test
+  void closed_store_rejects_appends(Vertx vertx, VertxTestContext ctx) {
+    open(vertx).compose(store -> store.close().map(store))
+        .onComplete(ctx.succeeding(store -> store.append("T-1", entry(0))
+            .onComplete(ctx.failing(err -> ctx.verify(() -> {
+              assertInstanceOf(IllegalStateException.class, err);
+              ctx.completeNow();
+            })))));
+  }
+
+  @Test
+  void settings_are_validated() {
+    assertThrows(IllegalArgumentException.class, () -> new SegmentedLogSettings(null, 0, null, 0, 0));
+    assertThrows(IllegalArgumentException.class,
+        () -> SegmentedLogSettings.of(dir).withSegmentBytes(-1));
+    var defaults = SegmentedLogSettings.of(dir);
+    assertEquals(SegmentedLogSettings.DEFAULT_SEGMENT_BYTES, defaults.segmentBytes());
+    assertEquals(FsyncPolicy.ALWAYS, defaults.fsync());
+    assertEquals(SegmentedLogSettings.DEFAULT_SNAPSHOT_INTERVAL_MS, defaults.snapshotIntervalMs());
+  }
+}
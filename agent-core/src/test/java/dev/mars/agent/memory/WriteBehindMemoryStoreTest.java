@@ -0,0 +1,199 @@
+package dev.mars.agent.memory;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class WriteBehindMemoryStoreTest {
+
+  /** Durable-store stand-in: every commit takes {@code latencyMs}. */
+  private static final class SlowStore implements MemoryStore {
+    final Vertx vertx;
+    final long latencyMs;
+    final InMemoryMemoryStore backing = new InMemoryMemoryStore();
+    final JsonArray written = new JsonArray();
+    final List<Integer> commitSizes = new ArrayList<>();
+    int failNext;
+
+    SlowStore(Vertx vertx, long latencyMs) {
+      this.vertx = vertx;
+      this.latencyMs = latencyMs;
+    }
+
+    @Override
+    public Future<JsonObject> load(String caseId) {
+      return backing.load(caseId);
+    }
+
+    @Override
+    public Future<Void> append(String caseId, JsonObject entry) {
+      return appendAll(caseId, List.of(entry));
+    }
+
+    @Override
+    public Future<Void> appendAll(String caseId, List<JsonObject> entries) {
+      return Future.future(p -> vertx.setTimer(latencyMs, t -> {
+        if (failNext > 0) {
+          failNext--;
+          p.fail("disk full");
+          return;
+        }
+        commitSizes.add(entries.size());
+        entries.forEach(e -> {
+          written.add(e);
+          backing.append(caseId, e);
+        });
+        p.complete();
+      }));
+    }
+  }
+
+  private static JsonObject step(int i) {
+    return new JsonObject().put("step", i);
+  }
+
+  @Test
+  void append_returns_before_commit(Vertx vertx) {
+    var slow = new SlowStore(vertx, 50);
+    var store = new WriteBehindMemoryStore(vertx, slow, 0, 0);
+    assertTrue(store.append("case-1", step(0)).succeeded());
+    assertTrue(slow.written.isEmpty());
+  }
+
+  @Test
+  void entries_are_group_committed_in_order(Vertx vertx, VertxTestContext ctx) {
+    var slow = new SlowStore(vertx, 2);
+    var store = new WriteBehindMemoryStore(vertx, slow, 0, 0);
+    // Append from the event loop, as the runner does, so no commit can
+    // complete between appends
+    vertx.runOnContext(x -> {
+      for (int i = 0; i < 8; i++) {
+        store.append("case-1", step(i));
+      }
+    });
+    vertx.setTimer(1, t -> store.flush("case-1").onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+      assertEquals(8, slow.written.size());
+      for (int i = 0; i < 8; i++) {
+        assertEquals(i, slow.written.getJsonObject(i).getInteger("step"));
+      }
+      // First entry commits alone; the other seven ride the next commit
+      assertEquals(List.of(1, 7), slow.commitSizes);
+      assertEquals(2L, store.stats().getLong("batches"));
+      assertEquals(8L, store.stats().getLong("entries"));
+      assertEquals(0, store.stats().getInteger("pending"));
+      ctx.completeNow();
+    }))));
+  }
+
+  @Test
+  void batch_size_is_capped(Vertx vertx, VertxTestContext ctx) {
+    var slow = new SlowStore(vertx, 1);
+    var store = new WriteBehindMemoryStore(vertx, slow, 3, 20);
+    for (int i = 0; i < 7; i++) {
+      store.append("case-1", step(i));
+    }
+    store.flush("case-1").onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+      assertEquals(List.of(3, 3, 1), slow.commitSizes);
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void flush_delay_groups_entries(Vertx vertx, VertxTestContext ctx) {
+    var slow = new SlowStore(vertx, 1);
+    var store = new WriteBehindMemoryStore(vertx, slow, 0, 30);
+    store.append("case-1", step(0));
+    vertx.setTimer(5, t -> store.append("case-1", step(1)));
+    vertx.setTimer(100, t -> ctx.verify(() -> {
+      assertEquals(List.of(2), slow.commitSizes);
+      ctx.completeNow();
+    }));
+  }
+
+  @Test
+  void load_sees_queued_entries(Vertx vertx, VertxTestContext ctx) {
+    var slow = new SlowStore(vertx, 5);
+    var store = new WriteBehindMemoryStore(vertx, slow, 0, 0);
+    store.append("case-1", step(0));
+    store.append("case-1", step(1));
+    store.load("case-1").onComplete(ctx.succeeding(state -> ctx.verify(() -> {
+      assertEquals(2, state.getInteger("step"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void cases_are_independent(Vertx vertx, VertxTestContext ctx) {
+    var slow = new SlowStore(vertx, 2);
+    var store = new WriteBehindMemoryStore(vertx, slow, 0, 0);
+    store.append("case-1", step(0));
+    store.append("case-2", step(0));
+    store.append("case-2", step(1));
+    Future.all(store.flush("case-1"), store.flush("case-2"))
+        .compose(v -> Future.all(slow.load("case-1"), slow.load("case-2")))
+        .onComplete(ctx.succeeding(all -> ctx.verify(() -> {
+          assertEquals(1, all.<JsonObject>resultAt(0).getInteger("step"));
+          assertEquals(2, all.<JsonObject>resultAt(1).getInteger("step"));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void failed_commit_is_reported_and_retried(Vertx vertx, VertxTestContext ctx) {
+    var slow = new SlowStore(vertx, 20);
+    slow.failNext = 1;
+    var store = new WriteBehindMemoryStore(vertx, slow, 0, 0);
+    store.append("case-1", step(0));
+    store.append("case-1", step(1));
+    store.flush("case-1")
+        .onSuccess(v -> ctx.failNow("Expected the first flush to fail"))
+        .recover(err -> {
+          ctx.verify(() -> assertEquals("disk full", err.getMessage()));
+          return store.flush("case-1");
+        })
+        .onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+          assertEquals(2, slow.written.size());
+          assertEquals(0, slow.written.getJsonObject(0).getInteger("step"));
+          assertEquals(1L, store.stats().getLong("failures"));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void flush_all_drains_every_case(Vertx vertx, VertxTestContext ctx) {
+    var slow = new SlowStore(vertx, 5);
+    var store = new WriteBehindMemoryStore(vertx, slow, 0, 50);
+    for (int i = 0; i < 6; i++) {
+      store.append("case-" + (i % 3), step(i));
+    }
+    store.flushAll().onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+      assertEquals(6, slow.written.size());
+      assertEquals(0, store.stats().getInteger("pending"));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void flush_of_unknown_case_completes_immediately(Vertx vertx) {
+    var store = new WriteBehindMemoryStore(vertx, new InMemoryMemoryStore(), 0, 0);
+    assertTrue(store.flush("nobody").succeeded());
+  }
+
+  @Test
+  void invalid_settings_throw(Vertx vertx) {
+    var delegate = new InMemoryMemoryStore();
+    assertThrows(IllegalArgumentException.class, () -> new WriteBehindMemoryStore(vertx, delegate, -1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new WriteBehindMemoryStore(vertx, delegate, 0, -1));
+  }
+}
@@ -0,0 +1,52 @@
+package dev.mars.agent.processor;
+
+import dev.mars.mcp.tool.BlockingExecutor;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class BlockingFailureHandlerTest {
+
+  private final BlockingFailureHandler jdbcLike = event -> {
+    Thread.sleep(20);
+    return new JsonObject()
+        .put("type", "Enriched")
+        .put("tradeId", event.getString("tradeId"))
+        .put("virtual", Thread.currentThread().isVirtual());
+  };
+
+  @Test
+  void unwrapped_handler_refuses_event_loop(Vertx vertx, VertxTestContext ctx) {
+    vertx.runOnContext(v -> jdbcLike.handle(new JsonObject())
+        .onComplete(ctx.failing(err -> ctx.verify(() -> {
+          assertInstanceOf(IllegalStateException.class, err);
+          ctx.completeNow();
+        }))));
+  }
+
+  @Test
+  void wrapped_handler_works_in_processor(Vertx vertx, VertxTestContext ctx) {
+    FailureHandler handler = BlockingFailureHandler.onExecutor(jdbcLike,
+        BlockingExecutor.virtualThreads("handler-test", 4));
+    var processor = new DeterministicFailureProcessorVerticle(
+        "test.blocking.in", "test.blocking.agent", Map.of("Missing ISIN", handler));
+
+    vertx.deployVerticle(processor).compose(id ->
+      vertx.eventBus().request("test.blocking.in",
+          new JsonObject().put("tradeId", "T-1").put("reason", "Missing ISIN"))
+    ).onComplete(ctx.succeeding(reply -> ctx.verify(() -> {
+      JsonObject body = (JsonObject) reply.body();
+      assertEquals("deterministic", body.getString("path"));
+      assertTrue(body.getJsonObject("resultEvent").getBoolean("virtual"));
+      ctx.completeNow();
+    })));
+  }
+}
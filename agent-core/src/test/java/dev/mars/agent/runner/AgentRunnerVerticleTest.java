@@ -2,11 +2,14 @@ package dev.mars.agent.runner;
 
 import dev.mars.agent.llm.LlmClient;
 import dev.mars.agent.memory.InMemoryMemoryStore;
+import dev.mars.agent.memory.WriteBehindMemoryStore;
 import dev.mars.mcp.tool.AgentContext;
+import dev.mars.mcp.tool.CancellationToken;
 import dev.mars.mcp.tool.Tool;
 import dev.mars.mcp.tool.ToolRegistry;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxExtension;
@@ -14,7 +17,10 @@ import io.vertx.junit5.VertxTestContext;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -156,6 +162,31 @@ class AgentRunnerVerticleTest {
     }).onFailure(ctx::failNow);
   }
 
+  @Test
+  void llm_sees_this_runs_trail_as_history(Vertx vertx, VertxTestContext ctx) {
+    var historySizes = new ArrayList<Integer>();
+    LlmClient llm = (event, state) -> {
+      historySizes.add(state.getJsonArray("history").size());
+      return Future.succeededFuture(new JsonObject()
+          .put("intent", "CALL_TOOL")
+          .put("tool", "test.tool")
+          .put("args", new JsonObject())
+          .put("stop", historySizes.size() == 3));
+    };
+
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.history", llm, ToolRegistry.of(stubTool("test.tool")),
+        new InMemoryMemoryStore(), "tradeId");
+
+    vertx.deployVerticle(verticle).compose(id ->
+      vertx.eventBus().request("test.agent.history",
+          new JsonObject().put("tradeId", "T-H").put("reason", "test"))
+    ).onComplete(ctx.succeeding(reply -> ctx.verify(() -> {
+      assertEquals(List.of(0, 1, 2), historySizes);
+      ctx.completeNow();
+    })));
+  }
+
   @Test
   void custom_case_id_field_is_used(Vertx vertx, VertxTestContext ctx) {
     LlmClient llm = (event, state) -> Future.succeededFuture(new JsonObject()
@@ -177,4 +208,314 @@ class AgentRunnerVerticleTest {
       ctx.completeNow();
     }).onFailure(ctx::failNow);
   }
+
+  @Test
+  void token_budget_stops_with_partial_result(Vertx vertx, VertxTestContext ctx) {
+    // Each decision reports 600 tokens; a 1000-token budget allows two LLM calls
+    var llmCalls = new int[]{0};
+    LlmClient llm = (event, state) -> {
+      llmCalls[0]++;
+      return Future.succeededFuture(new JsonObject()
+          .put("intent", "CALL_TOOL")
+          .put("tool", "test.tool")
+          .put("args", new JsonObject())
+          .put("stop", false)
+          .put("usage", new JsonObject().put("total_tokens", 600)));
+    };
+
+    Map<String, Tool> tools = ToolRegistry.of(stubTool("test.tool"));
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.tokens", llm, tools, new InMemoryMemoryStore(), "tradeId");
+
+    var opts = new DeploymentOptions().setConfig(new JsonObject()
+        .put("agent.max.steps", 10)
+        .put("agent.budget.max.tokens", 1000));
+
+    vertx.deployVerticle(verticle, opts).compose(id ->
+      vertx.eventBus().request("test.agent.tokens",
+          new JsonObject().put("tradeId", "T-6").put("reason", "test"))
+    ).onSuccess(reply -> {
+      JsonObject body = (JsonObject) reply.body();
+      assertEquals("partial", body.getString("status"));
+      assertEquals("maxTokens", body.getString("exhausted"));
+      assertEquals(2, llmCalls[0]);
+      assertEquals(2, body.getJsonArray("trail").size());
+      assertEquals(1200, body.getJsonObject("budget").getLong("tokens"));
+      assertNotNull(body.getJsonObject("result"));
+      ctx.completeNow();
+    }).onFailure(ctx::failNow);
+  }
+
+  @Test
+  void per_tool_call_budget_stops_before_invoking(Vertx vertx, VertxTestContext ctx) {
+    var invocations = new int[]{0};
+    Tool counting = new Tool() {
+      @Override
+      public String name() { return "test.tool"; }
+      @Override
+      public Future<JsonObject> invoke(JsonObject args, AgentContext agentCtx) {
+        invocations[0]++;
+        return Future.succeededFuture(new JsonObject().put("status", "done"));
+      }
+    };
+    LlmClient llm = (event, state) -> Future.succeededFuture(new JsonObject()
+        .put("intent", "CALL_TOOL")
+        .put("tool", "test.tool")
+        .put("args", new JsonObject())
+        .put("stop", false));
+
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.calls", llm, ToolRegistry.of(counting), new InMemoryMemoryStore(), "tradeId");
+
+    var opts = new DeploymentOptions().setConfig(new JsonObject()
+        .put("agent.max.steps", 10)
+        .put("agent.budget.max.calls.per.tool", 2));
+
+    vertx.deployVerticle(verticle, opts).compose(id ->
+      vertx.eventBus().request("test.agent.calls",
+          new JsonObject().put("tradeId", "T-7").put("reason", "test"))
+    ).onSuccess(reply -> {
+      JsonObject body = (JsonObject) reply.body();
+      assertEquals("partial", body.getString("status"));
+      assertEquals("maxCallsPerTool", body.getString("exhausted"));
+      assertEquals(2, invocations[0]);
+      assertEquals(2, body.getJsonObject("budget").getJsonObject("toolCalls").getInteger("test.tool"));
+      ctx.completeNow();
+    }).onFailure(ctx::failNow);
+  }
+
+  @Test
+  void wall_clock_budget_stops_slow_runs(Vertx vertx, VertxTestContext ctx) {
+    // Each tool call takes ~30 ms; a 50 ms wall-clock budget stops the loop early
+    Tool slow = new Tool() {
+      @Override
+      public String name() { return "test.tool"; }
+      @Override
+      public Future<JsonObject> invoke(JsonObject args, AgentContext agentCtx) {
+        return Future.future(p -> vertx.setTimer(30, t -> p.complete(new JsonObject())));
+      }
+    };
+    LlmClient llm = (event, state) -> Future.succeededFuture(new JsonObject()
+        .put("intent", "CALL_TOOL")
+        .put("tool", "test.tool")
+        .put("args", new JsonObject())
+        .put("stop", false));
+
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.clock", llm, ToolRegistry.of(slow), new InMemoryMemoryStore(), "tradeId");
+
+    var opts = new DeploymentOptions().setConfig(new JsonObject()
+        .put("agent.max.steps", 10)
+        .put("agent.budget.max.wallclock.ms", 50));
+
+    vertx.deployVerticle(verticle, opts).compose(id ->
+      vertx.eventBus().request("test.agent.clock",
+          new JsonObject().put("tradeId", "T-8").put("reason", "test"))
+    ).onSuccess(reply -> {
+      JsonObject body = (JsonObject) reply.body();
+      assertEquals("partial", body.getString("status"));
+      assertEquals("maxWallClockMs", body.getString("exhausted"));
+      assertTrue(body.getJsonArray("trail").size() < 10);
+      ctx.completeNow();
+    }).onFailure(ctx::failNow);
+  }
+
+  @Test
+  void wall_clock_budget_aborts_a_hung_llm_call(Vertx vertx, VertxTestContext ctx) {
+    // Step 0 completes; step 1's LLM call never returns unless it is aborted
+    var aborted = new boolean[]{false};
+    LlmClient llm = new LlmClient() {
+      @Override
+      public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+        throw new AssertionError("runner must use the cancellable overload");
+      }
+      @Override
+      public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                           CancellationToken cancellation) {
+        if (state.getInteger("step") == 0) {
+          return Future.succeededFuture(new JsonObject()
+              .put("intent", "CALL_TOOL")
+              .put("tool", "test.tool")
+              .put("args", new JsonObject())
+              .put("stop", false));
+        }
+        Promise<JsonObject> pending = Promise.promise();
+        cancellation.onCancel(() -> {
+          aborted[0] = true;
+          pending.fail(new CancellationException(cancellation.reason()));
+        });
+        return pending.future();
+      }
+    };
+
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.hung", llm, ToolRegistry.of(stubTool("test.tool")),
+        new InMemoryMemoryStore(), "tradeId");
+    var opts = new DeploymentOptions().setConfig(new JsonObject()
+        .put("agent.budget.max.wallclock.ms", 100));
+
+    long start = System.currentTimeMillis();
+    vertx.deployVerticle(verticle, opts).compose(id ->
+      vertx.eventBus().request("test.agent.hung",
+          new JsonObject().put("tradeId", "T-8").put("reason", "test"))
+    ).onSuccess(reply -> ctx.verify(() -> {
+      JsonObject body = (JsonObject) reply.body();
+      assertEquals("partial", body.getString("status"));
+      assertEquals("maxWallClockMs", body.getString("exhausted"));
+      assertEquals(1, body.getJsonArray("trail").size());
+      assertTrue(aborted[0]);
+      assertTrue(System.currentTimeMillis() - start < 5000);
+      ctx.completeNow();
+    })).onFailure(ctx::failNow);
+  }
+
+  @Test
+  void cancel_signal_stops_run_and_aborts_llm_call(Vertx vertx, VertxTestContext ctx) {
+    // Step 0 completes; step 1's LLM call hangs until it is cancelled
+    var llmCalls = new int[]{0};
+    var aborted = new boolean[]{false};
+    LlmClient llm = new LlmClient() {
+      @Override
+      public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+        throw new AssertionError("runner must use the cancellable overload");
+      }
+      @Override
+      public Future<JsonObject> decideNext(JsonObject event, JsonObject state,
+                                           CancellationToken cancellation) {
+        if (llmCalls[0]++ == 0) {
+          return Future.succeededFuture(new JsonObject()
+              .put("intent", "CALL_TOOL")
+              .put("tool", "test.tool")
+              .put("args", new JsonObject())
+              .put("stop", false));
+        }
+        Promise<JsonObject> pending = Promise.promise();
+        cancellation.onCancel(() -> {
+          aborted[0] = true;
+          pending.fail(new CancellationException(cancellation.reason()));
+        });
+        vertx.eventBus().publish("test.agent.cancel.cancel",
+            new JsonObject().put("correlationId", "corr-9").put("reason", "client disconnected"));
+        return pending.future();
+      }
+    };
+
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.cancel", llm, ToolRegistry.of(stubTool("test.tool")),
+        new InMemoryMemoryStore(), "tradeId");
+
+    vertx.deployVerticle(verticle).compose(id ->
+      vertx.eventBus().request("test.agent.cancel",
+          new JsonObject().put("tradeId", "T-9").put("reason", "test")
+              .put("correlationId", "corr-9"))
+    ).onSuccess(reply -> ctx.verify(() -> {
+      JsonObject body = (JsonObject) reply.body();
+      assertEquals("cancelled", body.getString("status"));
+      assertTrue(body.getString("reason").contains("client disconnected"));
+      assertEquals(1, body.getJsonArray("trail").size());
+      assertTrue(aborted[0]);
+      ctx.completeNow();
+    })).onFailure(ctx::failNow);
+  }
+
+  @Test
+  void cancel_for_unknown_correlation_id_is_ignored(Vertx vertx, VertxTestContext ctx) {
+    LlmClient llm = (event, state) -> Future.future(p -> vertx.setTimer(50, t ->
+        p.complete(new JsonObject()
+            .put("intent", "CALL_TOOL")
+            .put("tool", "test.tool")
+            .put("args", new JsonObject())
+            .put("stop", true))));
+
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.other", llm, ToolRegistry.of(stubTool("test.tool")),
+        new InMemoryMemoryStore(), "tradeId", "test.agent.other.stop");
+
+    vertx.deployVerticle(verticle).compose(id -> {
+      var reply = vertx.eventBus().request("test.agent.other",
+          new JsonObject().put("tradeId", "T-10").put("reason", "test")
+              .put("correlationId", "corr-10"));
+      vertx.eventBus().publish("test.agent.other.stop",
+          new JsonObject().put("correlationId", "someone-else"));
+      return reply;
+    }).onSuccess(reply -> ctx.verify(() -> {
+      assertEquals("ok", ((JsonObject) reply.body()).getString("status"));
+      ctx.completeNow();
+    })).onFailure(ctx::failNow);
+  }
+
+  @Test
+  void write_behind_trail_is_durable_before_reply(Vertx vertx, VertxTestContext ctx) {
+    var stepCounter = new int[]{0};
+    LlmClient llm = (event, state) -> Future.succeededFuture(new JsonObject()
+        .put("intent", "CALL_TOOL")
+        .put("tool", "test.tool")
+        .put("args", new JsonObject())
+        .put("stop", ++stepCounter[0] >= 4));
+
+    // Durable store stand-in with a 5 ms commit latency
+    var durable = new InMemoryMemoryStore() {
+      int commits;
+      @Override
+      public Future<Void> appendAll(String caseId, java.util.List<JsonObject> entries) {
+        return Future.<Void>future(p -> vertx.setTimer(5, t -> p.complete()))
+            .compose(v -> { commits++; return super.appendAll(caseId, entries); });
+      }
+    };
+    var store = new WriteBehindMemoryStore(vertx, durable, 0, 0);
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.wb", llm, ToolRegistry.of(stubTool("test.tool")), store, "tradeId");
+
+    vertx.deployVerticle(verticle).compose(id ->
+      vertx.eventBus().request("test.agent.wb",
+          new JsonObject().put("tradeId", "T-11").put("reason", "test"))
+    ).compose(reply -> {
+      assertEquals("ok", ((JsonObject) reply.body()).getString("status"));
+      return durable.load("T-11");
+    }).onSuccess(state -> ctx.verify(() -> {
+      assertEquals(4, state.getInteger("step"));
+      assertTrue(durable.commits < 4, "steps should be group-committed");
+      ctx.completeNow();
+    })).onFailure(ctx::failNow);
+  }
+
+  @Test
+  void deferred_decision_releases_caller_and_publishes_final_result(Vertx vertx, VertxTestContext ctx) {
+    Promise<JsonObject> batchResult = Promise.promise();
+    LlmClient llm = new LlmClient() {
+      @Override
+      public Future<JsonObject> decideNext(JsonObject event, JsonObject state) {
+        return state.getInteger("step") == 0
+            ? Future.succeededFuture(new JsonObject()
+                .put("intent", "CALL_TOOL").put("tool", "test.tool")
+                .put("args", new JsonObject()).put("stop", false))
+            : batchResult.future();
+      }
+      @Override
+      public boolean defers(JsonObject event, JsonObject state) {
+        return state.getInteger("step") > 0;
+      }
+    };
+    var verticle = new AgentRunnerVerticle(
+        "test.agent.defer", llm, ToolRegistry.of(stubTool("test.tool")), new InMemoryMemoryStore(), "tradeId");
+
+    vertx.eventBus().<JsonObject>consumer("test.agent.defer.deferred", msg -> ctx.verify(() -> {
+      assertEquals("ok", msg.body().getString("status"));
+      assertEquals("corr-9", msg.body().getString("correlationId"));
+      assertEquals(2, msg.body().getJsonArray("trail").size());
+      ctx.completeNow();
+    }));
+    vertx.deployVerticle(verticle).compose(id ->
+      vertx.eventBus().request("test.agent.defer",
+          new JsonObject().put("tradeId", "T-12").put("reason", "test").put("correlationId", "corr-9"))
+    ).onSuccess(reply -> ctx.verify(() -> {
+      JsonObject body = (JsonObject) reply.body();
+      assertEquals("deferred", body.getString("status"));
+      assertEquals(1, body.getJsonArray("trail").size());
+      // The batch comes back after the caller has gone
+      batchResult.complete(new JsonObject()
+          .put("intent", "CALL_TOOL").put("tool", "test.tool")
+          .put("args", new JsonObject()).put("stop", true));
+    })).onFailure(ctx::failNow);
+  }
 }
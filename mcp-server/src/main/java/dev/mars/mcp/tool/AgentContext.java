@@ -14,5 +14,15 @@ import io.vertx.core.json.JsonObject;
  * @param state         the accumulated state loaded from the memory store
  *                      at the start of the run; includes step count, last
  *                      result, and timestamps
+ * @param cancellation  cancelled when the original requester goes away;
+ *                      tools doing long-running I/O should register an
+ *                      abort action via {@link CancellationToken#onCancel}
  */
-public record AgentContext(String correlationId, String caseId, JsonObject state) {}
+public record AgentContext(String correlationId, String caseId, JsonObject state,
+                           CancellationToken cancellation) {
+
+  /** Creates a context with a fresh, never-cancelled token. */
+  public AgentContext(String correlationId, String caseId, JsonObject state) {
+    this(correlationId, caseId, state, new CancellationToken());
+  }
+}
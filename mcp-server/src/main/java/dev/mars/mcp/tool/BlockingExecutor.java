@@ -0,0 +1,208 @@
+package dev.mars.mcp.tool;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Runs blocking work off the Vert.x event loop with a bounded level of
+ * concurrency, returning the result as a {@link Future} that completes on
+ * the caller's Vert.x context.
+ *
+ * <p>Two execution modes are supported:
+ * <ul>
+ *   <li>{@link #virtualThreads(String, int) virtual threads} — one virtual
+ *       thread per task; at most {@code maxConcurrency} tasks run at once,
+ *       the rest park cheaply on a semaphore. Suited to synchronous client
+ *       libraries (JDBC, SOAP, SMTP) that spend most of their time waiting
+ *       on I/O.</li>
+ *   <li>{@link #workerPool(Vertx, String, int) worker pool} — a named Vert.x
+ *       shared worker pool of {@code maxConcurrency} platform threads, for
+ *       libraries that pin carrier threads (e.g. heavy
+ *       {@code synchronized} sections or native calls).</li>
+ * </ul>
+ *
+ * <p>This gives the same effect as deploying the caller with Vert.x 5's
+ * {@code ThreadingModel.VIRTUAL_THREAD}, but scoped to a single tool or
+ * handler so the rest of the pipeline stays on the event loop.
+ *
+ * @see BlockingTool
+ */
+public final class BlockingExecutor {
+
+  private static final Logger LOG = Logger.getLogger(BlockingExecutor.class.getName());
+
+  private final String name;
+  private final int maxConcurrency;
+  private final ExecutorService virtualThreads;
+  private final Semaphore permits;
+  private final WorkerExecutor workerPool;
+
+  private BlockingExecutor(String name, int maxConcurrency,
+                           ExecutorService virtualThreads, WorkerExecutor workerPool) {
+    if (maxConcurrency <= 0) {
+      throw new IllegalArgumentException("maxConcurrency must be > 0");
+    }
+    this.name = name;
+    this.maxConcurrency = maxConcurrency;
+    this.virtualThreads = virtualThreads;
+    this.permits = virtualThreads != null ? new Semaphore(maxConcurrency) : null;
+    this.workerPool = workerPool;
+  }
+
+  /**
+   * Create an executor that runs each task on its own virtual thread.
+   *
+   * @param name           thread-name prefix (for diagnostics)
+   * @param maxConcurrency maximum number of tasks running at once
+   * @return a new executor
+   */
+  public static BlockingExecutor virtualThreads(String name, int maxConcurrency) {
+    LOG.info("BlockingExecutor created: name=" + name + " mode=virtual-thread"
+        + " maxConcurrency=" + maxConcurrency);
+    ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name(name + "-vt-", 0).factory());
+    return new BlockingExecutor(name, maxConcurrency, executor, null);
+  }
+
+  /**
+   * Create an executor backed by a named Vert.x shared worker pool.
+   *
+   * @param vertx          the Vert.x instance
+   * @param name           worker pool name
+   * @param maxConcurrency worker pool size
+   * @return a new executor
+   */
+  public static BlockingExecutor workerPool(Vertx vertx, String name, int maxConcurrency) {
+    LOG.info("BlockingExecutor created: name=" + name + " mode=worker"
+        + " maxConcurrency=" + maxConcurrency);
+    return new BlockingExecutor(name, maxConcurrency, null,
+        vertx.createSharedWorkerExecutor(name, maxConcurrency));
+  }
+
+  /**
+   * Run {@code task} off the event loop.
+   *
+   * <p>When called from a Vert.x context the returned future is completed
+   * on that context, so continuations run on the caller's event loop just
+   * as they would for a natively asynchronous tool.
+   *
+   * @param task the blocking work
+   * @param <T>  the result type
+   * @return a future completed with the task's result or failure
+   */
+  public <T> Future<T> submit(Callable<T> task) {
+    return submit(task, null);
+  }
+
+  /**
+   * Run {@code task} off the event loop, interrupting it if
+   * {@code cancellation} fires while it is running. A task cancelled
+   * before it starts is not run at all and fails with a
+   * {@link CancellationException}.
+   *
+   * @param task         the blocking work
+   * @param cancellation the run's cancellation token (may be {@code null})
+   * @param <T>          the result type
+   * @return a future completed with the task's result or failure
+   */
+  public <T> Future<T> submit(Callable<T> task, CancellationToken cancellation) {
+    Callable<T> work = cancellation != null ? interruptible(task, cancellation) : task;
+    if (workerPool != null) {
+      return workerPool.executeBlocking(work, false);
+    }
+    Context context = Vertx.currentContext();
+    Promise<T> promise = Promise.promise();
+    virtualThreads.execute(() -> {
+      T result = null;
+      Throwable failure = null;
+      try {
+        permits.acquire();
+        try {
+          result = work.call();
+        } finally {
+          permits.release();
+        }
+      } catch (Throwable t) {
+        failure = t;
+      }
+      complete(context, promise, result, failure);
+    });
+    return promise.future();
+  }
+
+  /** Name of this executor (thread-name prefix or worker pool name). */
+  public String name() {
+    return name;
+  }
+
+  /** Maximum number of tasks that run concurrently. */
+  public int maxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /** Number of tasks currently holding a permit (virtual-thread mode only). */
+  public int active() {
+    return permits != null ? maxConcurrency - permits.availablePermits() : -1;
+  }
+
+  /** Release the underlying threads. Tasks already running are not interrupted. */
+  public void close() {
+    if (virtualThreads != null) {
+      virtualThreads.shutdown();
+    }
+    if (workerPool != null) {
+      workerPool.close();
+    }
+  }
+
+  /**
+   * Wrap {@code task} so the thread running it is interrupted on
+   * cancellation. The running thread is tracked under a lock so a late
+   * cancel can never interrupt a pooled thread that has moved on to
+   * another task.
+   */
+  private static <T> Callable<T> interruptible(Callable<T> task, CancellationToken cancellation) {
+    return () -> {
+      cancellation.throwIfCancelled();
+      Object lock = new Object();
+      Thread[] running = { Thread.currentThread() };
+      Runnable unregister = cancellation.onCancel(() -> {
+        synchronized (lock) {
+          if (running[0] != null) {
+            running[0].interrupt();
+          }
+        }
+      });
+      try {
+        return task.call();
+      } finally {
+        unregister.run();
+        synchronized (lock) {
+          running[0] = null;
+        }
+        // Clear a pending interrupt that arrived after the task returned
+        Thread.interrupted();
+      }
+    };
+  }
+
+  private static <T> void complete(Context context, Promise<T> promise, T result, Throwable failure) {
+    if (context == null) {
+      if (failure != null) promise.fail(failure); else promise.complete(result);
+      return;
+    }
+    context.runOnContext(v -> {
+      if (failure != null) promise.fail(failure); else promise.complete(result);
+    });
+  }
+}
@@ -0,0 +1,96 @@
+package dev.mars.mcp.tool;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A {@link Tool} whose implementation is synchronous and may block — for
+ * example one built on JDBC, a SOAP client or JavaMail.
+ *
+ * <p>Implement {@link #invokeBlocking} instead of {@link #invoke}. The
+ * tool is then made safe for the event loop by wrapping it with
+ * {@link #onExecutor(BlockingTool, BlockingExecutor)}, which dispatches
+ * each call to a {@link BlockingExecutor} (virtual threads or a worker
+ * pool) with a bounded concurrency.
+ *
+ * <p>The default {@link #invoke} runs the blocking call inline when the
+ * caller is <em>not</em> on an event-loop thread (e.g. a verticle deployed
+ * with {@code ThreadingModel.VIRTUAL_THREAD}), and fails fast otherwise
+ * rather than stalling the event loop.
+ *
+ * <p>When the run is cancelled, the thread executing
+ * {@link #invokeBlocking} is interrupted; implementations should let
+ * {@link InterruptedException} (or the client library's equivalent)
+ * propagate.
+ *
+ * @see BlockingExecutor
+ */
+public interface BlockingTool extends Tool {
+
+  /**
+   * Execute the tool's action synchronously.
+   *
+   * @param args tool-specific arguments from the LLM command
+   * @param ctx  the current agent execution context
+   * @return a JSON result describing the outcome
+   * @throws Exception if the action fails
+   */
+  JsonObject invokeBlocking(JsonObject args, AgentContext ctx) throws Exception;
+
+  @Override
+  default Future<JsonObject> invoke(JsonObject args, AgentContext ctx) {
+    if (Context.isOnEventLoopThread()) {
+      return Future.failedFuture(new IllegalStateException(
+          "Blocking tool '" + name() + "' invoked on an event-loop thread;"
+              + " wrap it with BlockingTool.onExecutor(...)"));
+    }
+    try {
+      return Future.succeededFuture(invokeBlocking(args, ctx));
+    } catch (Exception e) {
+      return Future.failedFuture(e);
+    }
+  }
+
+  /**
+   * Wrap a blocking tool so that every invocation runs on {@code executor}.
+   *
+   * @param tool     the blocking tool
+   * @param executor the executor to dispatch calls to
+   * @return an event-loop-safe tool with the same name, description,
+   *         schema, read-only flag and argument resolution
+   */
+  static Tool onExecutor(BlockingTool tool, BlockingExecutor executor) {
+    return new Tool() {
+      @Override
+      public String name() {
+        return tool.name();
+      }
+
+      @Override
+      public String description() {
+        return tool.description();
+      }
+
+      @Override
+      public JsonObject schema() {
+        return tool.schema();
+      }
+
+      @Override
+      public boolean readOnly() {
+        return tool.readOnly();
+      }
+
+      @Override
+      public JsonObject resolveArgs(JsonObject args, AgentContext ctx) {
+        return tool.resolveArgs(args, ctx);
+      }
+
+      @Override
+      public Future<JsonObject> invoke(JsonObject args, AgentContext ctx) {
+        return executor.submit(() -> tool.invokeBlocking(args, ctx), ctx.cancellation());
+      }
+    };
+  }
+}
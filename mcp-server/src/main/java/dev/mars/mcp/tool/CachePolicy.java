@@ -0,0 +1,49 @@
+package dev.mars.mcp.tool;
+
+import java.util.List;
+
+/**
+ * Memoisation policy for a single {@link Tool}, applied by
+ * {@link CachingTool}.
+ *
+ * @param enabled    whether results of this tool are cached at all
+ * @param scope      {@link Scope#RUN} to share results only within one
+ *                   agent run (keyed by correlation ID), or
+ *                   {@link Scope#GLOBAL} to share them across runs
+ * @param keyFields  argument fields that form the cache key; an empty list
+ *                   means "all arguments"
+ * @param ttlMs      time-to-live of a cached result in milliseconds
+ *                   ({@code 0} = no expiry)
+ * @param maxEntries maximum number of cached results; the least recently
+ *                   used entry is evicted beyond this
+ */
+public record CachePolicy(
+    boolean enabled,
+    Scope scope,
+    List<String> keyFields,
+    long ttlMs,
+    int maxEntries
+) {
+
+  /** Default bound on cached results when none is configured. */
+  public static final int DEFAULT_MAX_ENTRIES = 1_000;
+
+  /** A policy that disables caching. */
+  public static final CachePolicy DISABLED =
+      new CachePolicy(false, Scope.RUN, List.of(), 0, DEFAULT_MAX_ENTRIES);
+
+  /** Sharing scope of cached results. */
+  public enum Scope {
+    /** Results are reused only within the same agent run. */
+    RUN,
+    /** Results are reused across all runs. */
+    GLOBAL
+  }
+
+  public CachePolicy {
+    if (scope == null) scope = Scope.RUN;
+    keyFields = keyFields == null ? List.of() : List.copyOf(keyFields);
+    if (ttlMs < 0) throw new IllegalArgumentException("ttlMs must be >= 0");
+    if (maxEntries <= 0) maxEntries = DEFAULT_MAX_ENTRIES;
+  }
+}
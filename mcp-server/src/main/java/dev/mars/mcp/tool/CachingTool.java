@@ -0,0 +1,204 @@
+package dev.mars.mcp.tool;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * {@link Tool} decorator that memoises the results of a read-only tool
+ * according to a {@link CachePolicy}.
+ *
+ * <p>The cache key is built from the configured {@code keyFields} of the
+ * tool's {@link Tool#resolveArgs resolved arguments} (or all of them,
+ * with keys sorted, when none are configured). With
+ * {@link CachePolicy.Scope#RUN RUN} scope the key is additionally
+ * prefixed with the run's correlation ID, so results are only shared
+ * between steps of the same agent run; with
+ * {@link CachePolicy.Scope#GLOBAL GLOBAL} scope they are shared across
+ * runs (e.g. the legs and hedges of a multi-leg trade looked up by
+ * different cases).
+ *
+ * <p>Tools commonly fill a missing argument from the run's context, so
+ * the raw arguments alone could give two different cases the same key.
+ * A {@code GLOBAL} key is therefore prefixed with the case ID when the
+ * tool does not resolve its arguments, and a {@code GLOBAL} call whose
+ * resolved arguments still miss one of the {@code keyFields} bypasses
+ * the cache.
+ *
+ * <p>Entries are held in a bounded LRU map with an optional TTL. Cached
+ * results are defensively copied on the way in and out, so callers can
+ * never mutate a shared entry. Failed invocations are not cached.
+ *
+ * <h2>Side effects</h2>
+ * Use {@link #wrap} rather than the constructor: it returns the tool
+ * unchanged when the policy is disabled or the tool does not declare
+ * itself {@link Tool#readOnly() read-only}, so a side-effecting tool can
+ * never be memoised by configuration alone.
+ *
+ * <h2>Metrics</h2>
+ * Hit, miss, bypass and eviction counters are exposed via {@link #stats()}.
+ *
+ * @see CachePolicy
+ */
+public final class CachingTool implements Tool {
+
+  private static final Logger LOG = Logger.getLogger(CachingTool.class.getName());
+
+  private final Tool delegate;
+  private final CachePolicy policy;
+  private final Map<String, Entry> cache;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong bypassed = new AtomicLong();
+
+  private record Entry(JsonObject result, long expiresAt) {}
+
+  /**
+   * Decorate {@code tool} with result memoisation if the policy enables it
+   * and the tool is read-only.
+   *
+   * @param tool   the tool to decorate
+   * @param policy the cache policy for this tool
+   * @return a {@link CachingTool}, or {@code tool} itself when caching does
+   *         not apply
+   */
+  public static Tool wrap(Tool tool, CachePolicy policy) {
+    if (policy == null || !policy.enabled()) {
+      return tool;
+    }
+    if (!tool.readOnly()) {
+      LOG.warning("Cache policy ignored for side-effecting tool: " + tool.name());
+      return tool;
+    }
+    LOG.info("Caching enabled for tool=" + tool.name() + " scope=" + policy.scope()
+        + " keyFields=" + policy.keyFields() + " ttlMs=" + policy.ttlMs()
+        + " maxEntries=" + policy.maxEntries());
+    return new CachingTool(tool, policy);
+  }
+
+  CachingTool(Tool delegate, CachePolicy policy) {
+    this.delegate = delegate;
+    this.policy = policy;
+    int maxEntries = policy.maxEntries();
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > maxEntries) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public String name() {
+    return delegate.name();
+  }
+
+  @Override
+  public String description() {
+    return delegate.description();
+  }
+
+  @Override
+  public JsonObject schema() {
+    return delegate.schema();
+  }
+
+  @Override
+  public boolean readOnly() {
+    return true;
+  }
+
+  @Override
+  public JsonObject resolveArgs(JsonObject args, AgentContext ctx) {
+    return delegate.resolveArgs(args, ctx);
+  }
+
+  @Override
+  public Future<JsonObject> invoke(JsonObject args, AgentContext ctx) {
+    String key = keyFor(args, ctx);
+    if (key == null) {
+      bypassed.incrementAndGet();
+      LOG.fine("Cache bypass: tool=" + name() + " (key field missing)");
+      return delegate.invoke(args, ctx);
+    }
+    long now = System.currentTimeMillis();
+
+    Entry entry;
+    synchronized (cache) {
+      entry = cache.get(key);
+      if (entry != null && entry.expiresAt() > 0 && entry.expiresAt() <= now) {
+        cache.remove(key);
+        evictions.incrementAndGet();
+        entry = null;
+      }
+    }
+    if (entry != null) {
+      hits.incrementAndGet();
+      LOG.fine("Cache hit: tool=" + name() + " key=" + key);
+      return Future.succeededFuture(entry.result().copy());
+    }
+
+    misses.incrementAndGet();
+    LOG.fine("Cache miss: tool=" + name() + " key=" + key);
+    return delegate.invoke(args, ctx).map(result -> {
+      long expiresAt = policy.ttlMs() > 0 ? System.currentTimeMillis() + policy.ttlMs() : 0;
+      synchronized (cache) {
+        cache.put(key, new Entry(result.copy(), expiresAt));
+      }
+      return result;
+    });
+  }
+
+  /** Hit, miss, bypass and eviction counters plus the current number of entries. */
+  public JsonObject stats() {
+    int size;
+    synchronized (cache) {
+      size = cache.size();
+    }
+    return new JsonObject()
+        .put("tool", name())
+        .put("scope", policy.scope().name())
+        .put("hits", hits.get())
+        .put("misses", misses.get())
+        .put("bypassed", bypassed.get())
+        .put("evictions", evictions.get())
+        .put("size", size);
+  }
+
+  /** The cache key, or {@code null} if this call must not be cached. */
+  private String keyFor(JsonObject args, AgentContext ctx) {
+    boolean global = policy.scope() == CachePolicy.Scope.GLOBAL;
+    JsonObject resolved = delegate.resolveArgs(args, ctx);
+    JsonObject keyArgs = resolved != null ? resolved : args;
+    String argsKey;
+    if (policy.keyFields().isEmpty()) {
+      argsKey = new JsonObject(new TreeMap<>(keyArgs.getMap())).encode();
+    } else {
+      JsonArray values = new JsonArray();
+      for (String field : policy.keyFields()) {
+        Object value = keyArgs.getValue(field);
+        if (value == null && global) {
+          return null;
+        }
+        values.add(value);
+      }
+      argsKey = values.encode();
+    }
+    if (!global) {
+      return ctx.correlationId() + "|" + argsKey;
+    }
+    return resolved == null ? ctx.caseId() + "|" + argsKey : argsKey;
+  }
+}
@@ -0,0 +1,91 @@
+package dev.mars.mcp.tool;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cooperative cancellation signal for a single agent run.
+ *
+ * <p>A token is created per run and carried in the {@link AgentContext}.
+ * The runner checks it between steps; LLM clients and tools that perform
+ * long-running I/O register an {@link #onCancel(Runnable) action} that
+ * aborts the in-flight call (e.g. {@code HttpClientRequest.reset()}, or
+ * interrupting a blocking thread).
+ *
+ * <p>Cancellation is one-shot and idempotent: the first call to
+ * {@link #cancel(String)} records the reason and runs the registered
+ * actions; later calls are ignored. Actions registered after cancellation
+ * run immediately on the registering thread.
+ */
+public final class CancellationToken {
+
+  private static final Logger LOG = Logger.getLogger(CancellationToken.class.getName());
+
+  private final AtomicReference<String> reason = new AtomicReference<>();
+  private final List<Runnable> actions = new CopyOnWriteArrayList<>();
+
+  /**
+   * Cancel the run.
+   *
+   * @param reason a short human-readable reason (e.g. {@code "client disconnected"})
+   * @return {@code true} if this call cancelled the token, {@code false}
+   *         if it was already cancelled
+   */
+  public boolean cancel(String reason) {
+    if (!this.reason.compareAndSet(null, reason == null ? "cancelled" : reason)) {
+      return false;
+    }
+    for (Runnable action : actions) {
+      run(action);
+    }
+    actions.clear();
+    return true;
+  }
+
+  /** Whether {@link #cancel(String)} has been called. */
+  public boolean isCancelled() {
+    return reason.get() != null;
+  }
+
+  /** The cancellation reason, or {@code null} if not cancelled. */
+  public String reason() {
+    return reason.get();
+  }
+
+  /**
+   * Register an action to run when the token is cancelled.
+   *
+   * @param action the abort action; must be quick and must not block
+   * @return a handle that unregisters the action — call it once the
+   *         guarded operation has completed
+   */
+  public Runnable onCancel(Runnable action) {
+    actions.add(action);
+    if (isCancelled() && actions.remove(action)) {
+      run(action);
+    }
+    return () -> actions.remove(action);
+  }
+
+  /**
+   * @throws CancellationException if the token has been cancelled
+   */
+  public void throwIfCancelled() {
+    String r = reason.get();
+    if (r != null) {
+      throw new CancellationException(r);
+    }
+  }
+
+  private static void run(Runnable action) {
+    try {
+      action.run();
+    } catch (RuntimeException e) {
+      LOG.log(Level.WARNING, "Cancellation action failed", e);
+    }
+  }
+}
@@ -29,7 +29,10 @@ import io.vertx.core.json.JsonObject;
  * <ul>
  *   <li>{@code args} — tool-specific arguments supplied by the LLM command.</li>
  *   <li>{@code ctx} — the current {@link AgentContext} (correlation ID,
- *       case ID, accumulated state), useful for enriching outbound events.</li>
+ *       case ID, accumulated state), useful for enriching outbound events.
+ *       Tools that make long-running outbound calls should register an
+ *       abort action on {@link AgentContext#cancellation()} so the call is
+ *       dropped when the requester goes away.</li>
  *   <li>Return value — a {@code JsonObject} describing the outcome;
  *       the agent runner appends it to the memory store.</li>
  * </ul>
@@ -81,6 +84,39 @@ public interface Tool {
     return new JsonObject().put("type", "object");
   }
 
+  /**
+   * Whether this tool is free of side effects, i.e. invoking it twice with
+   * the same arguments is indistinguishable from invoking it once.
+   *
+   * <p>Only read-only tools are eligible for result memoisation by
+   * {@link CachingTool}; the default is {@code false} so that tools which
+   * publish events, raise tickets or send notifications are never cached
+   * unless they explicitly opt in.
+   *
+   * @return {@code true} if results may be safely reused
+   */
+  default boolean readOnly() {
+    return false;
+  }
+
+  /**
+   * The arguments exactly as {@link #invoke} will use them: optional
+   * fields normalised and any value the tool would fill in from
+   * {@code ctx} (the case ID, say) made explicit.
+   *
+   * <p>{@link CachingTool} keys on this so that two calls share a result
+   * only when the tool would really compute the same thing. The default
+   * returns {@code null}, meaning "unknown"; a globally scoped cache then
+   * keys on the case ID as well, in case the tool reads it.
+   *
+   * @param args tool-specific arguments from the LLM command
+   * @param ctx  the current agent execution context
+   * @return the resolved arguments, or {@code null} if the tool does not say
+   */
+  default JsonObject resolveArgs(JsonObject args, AgentContext ctx) {
+    return null;
+  }
+
   /**
    * Execute the tool's action.
    *
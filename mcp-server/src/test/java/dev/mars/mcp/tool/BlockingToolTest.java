@@ -0,0 +1,165 @@
+package dev.mars.mcp.tool;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class BlockingToolTest {
+
+  /** Blocking tool that sleeps and tracks peak concurrency. */
+  private static final class SleepyTool implements BlockingTool {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger peak = new AtomicInteger();
+
+    @Override
+    public String name() { return "ref.jdbc"; }
+
+    @Override
+    public boolean readOnly() { return true; }
+
+    @Override
+    public JsonObject invokeBlocking(JsonObject args, AgentContext ctx) throws Exception {
+      int now = running.incrementAndGet();
+      peak.accumulateAndGet(now, Math::max);
+      try {
+        Thread.sleep(50);
+        return new JsonObject()
+            .put("virtual", Thread.currentThread().isVirtual())
+            .put("tradeId", args.getString("tradeId"));
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+  }
+
+  private static AgentContext ctx() {
+    return new AgentContext("corr-1", "case-1", new JsonObject());
+  }
+
+  @Test
+  void inline_invoke_on_event_loop_fails_fast(Vertx vertx, VertxTestContext testCtx) {
+    var tool = new SleepyTool();
+    vertx.runOnContext(v -> tool.invoke(new JsonObject(), ctx())
+        .onSuccess(r -> testCtx.failNow("Expected event-loop guard"))
+        .onFailure(err -> testCtx.verify(() -> {
+          assertInstanceOf(IllegalStateException.class, err);
+          testCtx.completeNow();
+        })));
+  }
+
+  @Test
+  void wrapped_tool_keeps_metadata() {
+    var tool = new SleepyTool();
+    Tool wrapped = BlockingTool.onExecutor(tool, BlockingExecutor.virtualThreads("test", 2));
+    assertEquals("ref.jdbc", wrapped.name());
+    assertTrue(wrapped.readOnly());
+    assertEquals(tool.schema(), wrapped.schema());
+  }
+
+  @Test
+  void runs_on_virtual_thread_and_completes_on_caller_context(Vertx vertx, VertxTestContext testCtx) {
+    Tool wrapped = BlockingTool.onExecutor(new SleepyTool(), BlockingExecutor.virtualThreads("test", 2));
+    vertx.runOnContext(v -> {
+      Context caller = Vertx.currentContext();
+      wrapped.invoke(new JsonObject().put("tradeId", "T-1"), ctx())
+          .onComplete(testCtx.succeeding(result -> testCtx.verify(() -> {
+            assertTrue(result.getBoolean("virtual"));
+            assertEquals("T-1", result.getString("tradeId"));
+            assertSame(caller, Vertx.currentContext());
+            testCtx.completeNow();
+          })));
+    });
+  }
+
+  @Test
+  void concurrency_is_limited(Vertx vertx, VertxTestContext testCtx) {
+    var tool = new SleepyTool();
+    Tool wrapped = BlockingTool.onExecutor(tool, BlockingExecutor.virtualThreads("test", 2));
+    List<Future<JsonObject>> calls = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      calls.add(wrapped.invoke(new JsonObject().put("tradeId", "T-" + i), ctx()));
+    }
+    Future.all(calls).onComplete(testCtx.succeeding(all -> testCtx.verify(() -> {
+      assertEquals(2, tool.peak.get());
+      testCtx.completeNow();
+    })));
+  }
+
+  @Test
+  void worker_pool_mode_runs_off_event_loop(Vertx vertx, VertxTestContext testCtx) {
+    Tool wrapped = BlockingTool.onExecutor(new SleepyTool(),
+        BlockingExecutor.workerPool(vertx, "test-workers", 2));
+    vertx.runOnContext(v -> wrapped.invoke(new JsonObject().put("tradeId", "T-9"), ctx())
+        .onComplete(testCtx.succeeding(result -> testCtx.verify(() -> {
+          assertFalse(result.getBoolean("virtual"));
+          assertEquals("T-9", result.getString("tradeId"));
+          testCtx.completeNow();
+        }))));
+  }
+
+  @Test
+  void cancellation_interrupts_running_call(Vertx vertx, VertxTestContext testCtx) {
+    BlockingTool hanging = new BlockingTool() {
+      @Override
+      public String name() { return "ref.hang"; }
+      @Override
+      public JsonObject invokeBlocking(JsonObject args, AgentContext ctx) throws Exception {
+        Thread.sleep(30_000);
+        return new JsonObject();
+      }
+    };
+    var token = new CancellationToken();
+    var ctx = new AgentContext("corr-2", "case-2", new JsonObject(), token);
+    Tool wrapped = BlockingTool.onExecutor(hanging, BlockingExecutor.virtualThreads("test", 1));
+    wrapped.invoke(new JsonObject(), ctx)
+        .onComplete(testCtx.failing(err -> testCtx.verify(() -> {
+          assertInstanceOf(InterruptedException.class, err);
+          testCtx.completeNow();
+        })));
+    vertx.setTimer(100, id -> token.cancel("client disconnected"));
+  }
+
+  @Test
+  void cancelled_call_is_not_started(Vertx vertx, VertxTestContext testCtx) {
+    var tool = new SleepyTool();
+    var token = new CancellationToken();
+    token.cancel("timeout");
+    Tool wrapped = BlockingTool.onExecutor(tool, BlockingExecutor.virtualThreads("test", 1));
+    wrapped.invoke(new JsonObject(), new AgentContext("c", "k", new JsonObject(), token))
+        .onComplete(testCtx.failing(err -> testCtx.verify(() -> {
+          assertInstanceOf(java.util.concurrent.CancellationException.class, err);
+          assertEquals(0, tool.peak.get());
+          testCtx.completeNow();
+        })));
+  }
+
+  @Test
+  void failures_are_propagated(Vertx vertx, VertxTestContext testCtx) {
+    BlockingTool failing = new BlockingTool() {
+      @Override
+      public String name() { return "ref.fail"; }
+      @Override
+      public JsonObject invokeBlocking(JsonObject args, AgentContext ctx) throws Exception {
+        throw new java.io.IOException("connection refused");
+      }
+    };
+    Tool wrapped = BlockingTool.onExecutor(failing, BlockingExecutor.virtualThreads("test", 1));
+    wrapped.invoke(new JsonObject(), ctx())
+        .onComplete(testCtx.failing(err -> testCtx.verify(() -> {
+          assertEquals("connection refused", err.getMessage());
+          testCtx.completeNow();
+        })));
+  }
+}
@@ -0,0 +1,192 @@
+package dev.mars.mcp.tool;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingToolTest {
+
+  /** Read-only tool that counts invocations and echoes its arguments. */
+  private static class CountingTool implements Tool {
+    int calls;
+    final boolean readOnly;
+
+    CountingTool(boolean readOnly) {
+      this.readOnly = readOnly;
+    }
+
+    @Override
+    public String name() { return "data.lookup"; }
+
+    @Override
+    public boolean readOnly() { return readOnly; }
+
+    @Override
+    public Future<JsonObject> invoke(JsonObject args, AgentContext ctx) {
+      calls++;
+      return Future.succeededFuture(new JsonObject()
+          .put("call", calls)
+          .put("tradeId", args.getString("tradeId")));
+    }
+  }
+
+  private static AgentContext ctx(String correlationId) {
+    return new AgentContext(correlationId, "case-1", new JsonObject());
+  }
+
+  private static CachePolicy policy(CachePolicy.Scope scope, long ttlMs, int maxEntries) {
+    return new CachePolicy(true, scope, List.of("tradeId"), ttlMs, maxEntries);
+  }
+
+  @Test
+  void wrap_returns_original_when_disabled() {
+    var tool = new CountingTool(true);
+    assertSame(tool, CachingTool.wrap(tool, CachePolicy.DISABLED));
+  }
+
+  @Test
+  void wrap_refuses_side_effecting_tools() {
+    var tool = new CountingTool(false);
+    assertSame(tool, CachingTool.wrap(tool, policy(CachePolicy.Scope.GLOBAL, 0, 10)));
+  }
+
+  @Test
+  void repeated_call_in_same_run_is_served_from_cache() {
+    var tool = new CountingTool(true);
+    var cached = (CachingTool) CachingTool.wrap(tool, policy(CachePolicy.Scope.RUN, 0, 10));
+    var args = new JsonObject().put("tradeId", "T-900");
+
+    var first = cached.invoke(args, ctx("run-1")).result();
+    var second = cached.invoke(args, ctx("run-1")).result();
+
+    assertEquals(1, tool.calls);
+    assertEquals(first, second);
+    assertEquals(1, cached.stats().getLong("hits"));
+    assertEquals(1, cached.stats().getLong("misses"));
+  }
+
+  @Test
+  void run_scope_does_not_share_across_runs() {
+    var tool = new CountingTool(true);
+    var cached = CachingTool.wrap(tool, policy(CachePolicy.Scope.RUN, 0, 10));
+    var args = new JsonObject().put("tradeId", "T-900");
+
+    cached.invoke(args, ctx("run-1"));
+    cached.invoke(args, ctx("run-2"));
+
+    assertEquals(2, tool.calls);
+  }
+
+  @Test
+  void global_scope_shares_across_runs() {
+    var tool = new CountingTool(true);
+    var cached = CachingTool.wrap(tool, policy(CachePolicy.Scope.GLOBAL, 0, 10));
+    var args = new JsonObject().put("tradeId", "T-900");
+
+    cached.invoke(args, ctx("run-1"));
+    cached.invoke(args, ctx("run-2"));
+
+    assertEquals(1, tool.calls);
+  }
+
+  @Test
+  void global_call_missing_a_key_field_bypasses_the_cache() {
+    var tool = new CountingTool(true);
+    var cached = (CachingTool) CachingTool.wrap(tool, policy(CachePolicy.Scope.GLOBAL, 0, 10));
+    var noTradeId = new JsonObject().put("fields", "all");
+
+    cached.invoke(noTradeId, new AgentContext("run-1", "case-A", new JsonObject()));
+    cached.invoke(noTradeId, new AgentContext("run-2", "case-B", new JsonObject()));
+
+    assertEquals(2, tool.calls, "case B must not get case A's result");
+    assertEquals(2, cached.stats().getLong("bypassed"));
+    assertEquals(0, cached.stats().getInteger("size"));
+  }
+
+  @Test
+  void global_key_covers_the_case_when_the_tool_does_not_resolve_its_args() {
+    var tool = new CountingTool(true);
+    var allArgs = new CachePolicy(true, CachePolicy.Scope.GLOBAL, List.of(), 0, 10);
+    var cached = (CachingTool) CachingTool.wrap(tool, allArgs);
+    var noTradeId = new JsonObject();
+
+    cached.invoke(noTradeId, new AgentContext("run-1", "case-A", new JsonObject()));
+    cached.invoke(noTradeId, new AgentContext("run-2", "case-B", new JsonObject()));
+    cached.invoke(noTradeId, new AgentContext("run-3", "case-A", new JsonObject()));
+
+    assertEquals(2, tool.calls, "case B must not get case A's result");
+    assertEquals(1, cached.stats().getLong("hits"));
+  }
+
+  @Test
+  void global_key_uses_the_resolved_args() {
+    var tool = new CountingTool(true) {
+      @Override
+      public JsonObject resolveArgs(JsonObject args, AgentContext ctx) {
+        return new JsonObject().put("tradeId", args.getString("tradeId", ctx.caseId()));
+      }
+    };
+    var cached = CachingTool.wrap(tool, policy(CachePolicy.Scope.GLOBAL, 0, 10));
+
+    cached.invoke(new JsonObject(), new AgentContext("run-1", "T-1", new JsonObject()));
+    cached.invoke(new JsonObject(), new AgentContext("run-2", "T-2", new JsonObject()));
+    cached.invoke(new JsonObject().put("tradeId", "T-1"),
+        new AgentContext("run-3", "T-9", new JsonObject()));
+
+    assertEquals(2, tool.calls);
+  }
+
+  @Test
+  void only_key_fields_form_the_key() {
+    var tool = new CountingTool(true);
+    var cached = CachingTool.wrap(tool, policy(CachePolicy.Scope.GLOBAL, 0, 10));
+
+    cached.invoke(new JsonObject().put("tradeId", "T-1").put("note", "a"), ctx("r"));
+    cached.invoke(new JsonObject().put("tradeId", "T-1").put("note", "b"), ctx("r"));
+    cached.invoke(new JsonObject().put("tradeId", "T-2"), ctx("r"));
+
+    assertEquals(2, tool.calls);
+  }
+
+  @Test
+  void cached_results_are_defensive_copies() {
+    var tool = new CountingTool(true);
+    var cached = CachingTool.wrap(tool, policy(CachePolicy.Scope.GLOBAL, 0, 10));
+    var args = new JsonObject().put("tradeId", "T-1");
+
+    cached.invoke(args, ctx("r")).result().put("mutated", true);
+    assertNull(cached.invoke(args, ctx("r")).result().getValue("mutated"));
+  }
+
+  @Test
+  void lru_bound_evicts_least_recently_used() {
+    var tool = new CountingTool(true);
+    var cached = (CachingTool) CachingTool.wrap(tool, policy(CachePolicy.Scope.GLOBAL, 0, 2));
+
+    cached.invoke(new JsonObject().put("tradeId", "T-1"), ctx("r"));
+    cached.invoke(new JsonObject().put("tradeId", "T-2"), ctx("r"));
+    cached.invoke(new JsonObject().put("tradeId", "T-3"), ctx("r"));   // evicts T-1
+    cached.invoke(new JsonObject().put("tradeId", "T-1"), ctx("r"));   // miss again
+
+    assertEquals(4, tool.calls);
+    assertEquals(2, cached.stats().getInteger("size"));
+    assertTrue(cached.stats().getLong("evictions") >= 1);
+  }
+
+  @Test
+  void expired_entries_are_refreshed() throws InterruptedException {
+    var tool = new CountingTool(true);
+    var cached = CachingTool.wrap(tool, policy(CachePolicy.Scope.GLOBAL, 20, 10));
+    var args = new JsonObject().put("tradeId", "T-1");
+
+    cached.invoke(args, ctx("r"));
+    Thread.sleep(40);
+    cached.invoke(args, ctx("r"));
+
+    assertEquals(2, tool.calls);
+  }
+}
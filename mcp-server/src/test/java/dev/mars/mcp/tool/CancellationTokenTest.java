@@ -0,0 +1,70 @@
+package dev.mars.mcp.tool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CancellationTokenTest {
+
+  @Test
+  void new_token_is_not_cancelled() {
+    var token = new CancellationToken();
+    assertFalse(token.isCancelled());
+    assertNull(token.reason());
+    assertDoesNotThrow(token::throwIfCancelled);
+  }
+
+  @Test
+  void cancel_runs_actions_once() {
+    var token = new CancellationToken();
+    var runs = new AtomicInteger();
+    token.onCancel(runs::incrementAndGet);
+
+    assertTrue(token.cancel("client disconnected"));
+    assertFalse(token.cancel("again"));
+
+    assertEquals(1, runs.get());
+    assertEquals("client disconnected", token.reason());
+    var ex = assertThrows(CancellationException.class, token::throwIfCancelled);
+    assertEquals("client disconnected", ex.getMessage());
+  }
+
+  @Test
+  void action_registered_after_cancel_runs_immediately() {
+    var token = new CancellationToken();
+    token.cancel("timeout");
+    var runs = new AtomicInteger();
+    token.onCancel(runs::incrementAndGet);
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  void unregistered_action_does_not_run() {
+    var token = new CancellationToken();
+    var runs = new AtomicInteger();
+    Runnable unregister = token.onCancel(runs::incrementAndGet);
+    unregister.run();
+    token.cancel("timeout");
+    assertEquals(0, runs.get());
+  }
+
+  @Test
+  void failing_action_does_not_stop_others() {
+    var token = new CancellationToken();
+    var runs = new AtomicInteger();
+    token.onCancel(() -> { throw new IllegalStateException("boom"); });
+    token.onCancel(runs::incrementAndGet);
+    token.cancel("timeout");
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  void context_convenience_constructor_creates_live_token() {
+    var ctx = new AgentContext("c", "T-1", new io.vertx.core.json.JsonObject());
+    assertNotNull(ctx.cancellation());
+    assertFalse(ctx.cancellation().isCancelled());
+  }
+}